@@ -0,0 +1,98 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Многопоточные бенчмарки HabitService: все потоки работают с общим набором данных.
+ * InMemoryHabitService не потокобезопасен и здесь не участвует.
+ * Группа `mixed` моделирует преобладание чтения: три потока читают серии, один отмечает выполнение.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dhabitapp.pbkdf2.iterations=1000")
+@Threads(4)
+public class ContendedHabitServiceBenchmark {
+
+    @Param({"concurrent", "durable"})
+    String implementation;
+
+    @Param({"1000", "50000"})
+    int users;
+
+    private Implementation services;
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        services = Implementation.create(implementation);
+        dataset = Dataset.populate(services.userService(), services.habitService(), users,
+                HabitServiceBenchmark.HABITS_PER_USER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        services.close();
+    }
+
+    @Benchmark
+    public Habit createHabit(Cursor cursor) {
+        String userId = dataset.userIds[cursor.next(dataset.userIds.length)];
+        return services.habitService().createHabit(userId, "Новая привычка", "Описание", Frequency.DAILY);
+    }
+
+    @Benchmark
+    public void markHabitAsCompleted(Cursor cursor) {
+        mark(cursor);
+    }
+
+    @Benchmark
+    public int getCurrentStreak(Cursor cursor) {
+        return streak(cursor);
+    }
+
+    @Benchmark
+    public double getCompletionPercentage(Cursor cursor) {
+        String habitId = dataset.habitIds[cursor.next(dataset.habitIds.length)];
+        LocalDate start = Dataset.TODAY.minusDays(cursor.next(Dataset.HISTORY_DAYS));
+        return services.habitService().getCompletionPercentage(habitId, start, start.plusDays(30));
+    }
+
+    @Benchmark
+    public List<Habit> getHabitsByUser(Cursor cursor) {
+        return services.habitService().getHabitsByUser(dataset.userIds[cursor.next(dataset.userIds.length)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public int mixedGetCurrentStreak(Cursor cursor) {
+        return streak(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedMarkHabitAsCompleted(Cursor cursor) {
+        mark(cursor);
+    }
+
+    private int streak(Cursor cursor) {
+        return services.habitService().getCurrentStreak(dataset.habitIds[cursor.next(dataset.habitIds.length)]);
+    }
+
+    private void mark(Cursor cursor) {
+        String habitId = dataset.habitIds[cursor.next(dataset.habitIds.length)];
+        LocalDate date = Dataset.TODAY.minusDays(cursor.next(Dataset.HISTORY_DAYS * 2));
+        services.habitService().markHabitAsCompleted(habitId, date);
+    }
+}
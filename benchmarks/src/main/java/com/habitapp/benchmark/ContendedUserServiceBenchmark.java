@@ -0,0 +1,69 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Многопоточные бенчмарки UserService. InMemoryUserService не потокобезопасен,
+ * поэтому конкурентная запись измеряется только для долговременной реализации.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dhabitapp.pbkdf2.iterations=1000")
+@Threads(4)
+public class ContendedUserServiceBenchmark {
+
+    @Param({"durable"})
+    String implementation;
+
+    @Param({"1000", "100000"})
+    int users;
+
+    private Implementation services;
+    private Dataset dataset;
+    private final AtomicLong registered = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        services = Implementation.create(implementation);
+        dataset = Dataset.populate(services.userService(), services.habitService(), users, 0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        services.close();
+    }
+
+    @Benchmark
+    public User register() {
+        long id = registered.incrementAndGet();
+        return services.userService().register("Новый пользователь", "new" + id + "@example.com", "password");
+    }
+
+    @Benchmark
+    public User login(Cursor cursor) {
+        int user = cursor.next(dataset.emails.length);
+        return services.userService().login(dataset.emails[user], Dataset.password(user));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public User mixedLogin(Cursor cursor) {
+        return login(cursor);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public User mixedRegister() {
+        return register();
+    }
+}
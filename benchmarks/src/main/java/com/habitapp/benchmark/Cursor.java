@@ -0,0 +1,20 @@
+package com.habitapp.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Генератор псевдослучайных индексов для потока бенчмарка (xorshift),
+ * чтобы выбор привычки не стоил дороже измеряемой операции.
+ */
+@State(Scope.Thread)
+public class Cursor {
+    private long seed = System.nanoTime() | 1;
+
+    int next(int bound) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (int) ((seed >>> 1) % bound);
+    }
+}
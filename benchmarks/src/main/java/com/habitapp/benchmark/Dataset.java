@@ -0,0 +1,70 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.User;
+import com.habitapp.service.HabitCompletion;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.UserService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Воспроизводимый набор данных: пользователи с привычками и историей выполнения за {@link #HISTORY_DAYS} дней.
+ * Каждая третья привычка еженедельная, остальные ежедневные.
+ */
+final class Dataset {
+    static final LocalDate TODAY = LocalDate.of(2024, 6, 1);
+    static final int HISTORY_DAYS = 120;
+    static final double DENSITY = 0.6;
+
+    final String[] userIds;
+    final String[] emails;
+    final String[] habitIds;
+
+    private Dataset(int users, int habitsPerUser) {
+        userIds = new String[users];
+        emails = new String[users];
+        habitIds = new String[users * habitsPerUser];
+    }
+
+    /**
+     * Заполняет сервисы данными.
+     *
+     * @param userService   сервис пользователей
+     * @param habitService  сервис привычек
+     * @param users         количество пользователей
+     * @param habitsPerUser количество привычек у каждого пользователя
+     * @return идентификаторы созданных объектов
+     */
+    static Dataset populate(UserService userService, HabitService habitService, int users, int habitsPerUser) {
+        Dataset dataset = new Dataset(users, habitsPerUser);
+        Random random = new Random(42);
+        for (int u = 0; u < users; u++) {
+            String email = "user" + u + "@example.com";
+            User user = userService.register("Пользователь " + u, email, password(u));
+            dataset.userIds[u] = user.getId();
+            dataset.emails[u] = email;
+            for (int h = 0; h < habitsPerUser; h++) {
+                Frequency frequency = h % 3 == 0 ? Frequency.WEEKLY : Frequency.DAILY;
+                Habit habit = habitService.createHabit(user.getId(), "Привычка " + h, "Описание привычки", frequency);
+                dataset.habitIds[u * habitsPerUser + h] = habit.getId();
+                List<HabitCompletion> completions = new ArrayList<>();
+                for (int d = 0; d < HISTORY_DAYS; d++) {
+                    if (random.nextDouble() < DENSITY) {
+                        completions.add(new HabitCompletion(habit.getId(), TODAY.minusDays(d)));
+                    }
+                }
+                habitService.markHabitsAsCompleted(completions);
+            }
+        }
+        return dataset;
+    }
+
+    static String password(int user) {
+        return "password" + user;
+    }
+}
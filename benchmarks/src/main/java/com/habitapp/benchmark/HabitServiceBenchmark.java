@@ -0,0 +1,92 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.service.HabitStreak;
+import org.openjdk.jmh.annotations.*;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточные бенчмарки HabitService на заполненном наборе данных.
+ * Каждый пользователь имеет {@link #HABITS_PER_USER} привычек с историей выполнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dhabitapp.pbkdf2.iterations=1000")
+public class HabitServiceBenchmark {
+    static final int HABITS_PER_USER = 4;
+
+    @Param({"inmemory", "concurrent", "durable"})
+    String implementation;
+
+    @Param({"1000", "50000"})
+    int users;
+
+    private Implementation services;
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        services = Implementation.create(implementation);
+        dataset = Dataset.populate(services.userService(), services.habitService(), users, HABITS_PER_USER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        services.close();
+    }
+
+    @Benchmark
+    public Habit createHabit(Cursor cursor) {
+        String userId = dataset.userIds[cursor.next(dataset.userIds.length)];
+        return services.habitService().createHabit(userId, "Новая привычка", "Описание", Frequency.DAILY);
+    }
+
+    @Benchmark
+    public void markHabitAsCompleted(Cursor cursor) {
+        String habitId = dataset.habitIds[cursor.next(dataset.habitIds.length)];
+        LocalDate date = Dataset.TODAY.minusDays(cursor.next(Dataset.HISTORY_DAYS * 2));
+        services.habitService().markHabitAsCompleted(habitId, date);
+    }
+
+    @Benchmark
+    public int getCurrentStreak(Cursor cursor) {
+        return services.habitService().getCurrentStreak(dataset.habitIds[cursor.next(dataset.habitIds.length)]);
+    }
+
+    @Benchmark
+    public double getCompletionPercentage(Cursor cursor) {
+        String habitId = dataset.habitIds[cursor.next(dataset.habitIds.length)];
+        LocalDate start = Dataset.TODAY.minusDays(cursor.next(Dataset.HISTORY_DAYS));
+        return services.habitService().getCompletionPercentage(habitId, start, start.plusDays(30));
+    }
+
+    @Benchmark
+    public List<HabitStreak> getTopStreaks() {
+        return services.habitService().getTopStreaks(10);
+    }
+
+    @Benchmark
+    public List<Habit> getHabitsByUser(Cursor cursor) {
+        return services.habitService().getHabitsByUser(dataset.userIds[cursor.next(dataset.userIds.length)]);
+    }
+
+    @Benchmark
+    public List<Habit> getHabits() {
+        return services.habitService().getHabits();
+    }
+
+    @Benchmark
+    public void forEachHabitByUser(Cursor cursor, Blackhole blackhole) {
+        services.habitService().forEachHabit(dataset.userIds[cursor.next(dataset.userIds.length)], blackhole::consume);
+    }
+}
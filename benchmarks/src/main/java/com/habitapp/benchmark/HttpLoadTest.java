@@ -0,0 +1,231 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.InMemoryUserService;
+import com.habitapp.web.HabitHttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузочный тест HTTP-интерфейса: сервер запускается на localhost в том же процессе,
+ * а клиенты в виртуальных потоках отправляют запросы без пауз, пока не истечет время.
+ * Смесь запросов моделирует преобладание чтения: 60% статистики привычки,
+ * 30% отметок о выполнении, 10% страниц списка привычек. После прогрева печатаются
+ * пропускная способность и перцентили задержки.
+ * <pre>
+ * java -Dhabitapp.pbkdf2.iterations=1000 -cp benchmarks/target/benchmarks.jar \
+ *     com.habitapp.benchmark.HttpLoadTest [клиенты] [секунды] [пользователи] [привычек на пользователя]
+ * </pre>
+ */
+public final class HttpLoadTest {
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([^\"]+)\"");
+    private static final int HISTORY_DAYS = 365;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final String baseUri;
+
+    private HttpLoadTest(int port) {
+        this.baseUri = "http://127.0.0.1:" + port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int users = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int habitsPerUser = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        HabitService habitService = new ConcurrentHabitService();
+        try (HabitHttpServer server = HabitHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new InMemoryUserService(), habitService)) {
+            HttpLoadTest test = new HttpLoadTest(server.getPort());
+            List<Client> sessions = test.populate(users, habitsPerUser);
+            System.out.printf("Данные: %d пользователей, %d привычек; клиентов: %d%n",
+                    users, users * habitsPerUser, clients);
+
+            test.run(sessions, clients, Duration.ofSeconds(Math.max(1, seconds / 3)));
+            long start = System.nanoTime();
+            List<Result> results = test.run(sessions, clients, Duration.ofSeconds(seconds));
+            report(results, System.nanoTime() - start);
+        }
+    }
+
+    // Пользователи и привычки создаются через тот же HTTP-интерфейс
+    private List<Client> populate(int users, int habitsPerUser) throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Client>> futures = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                int user = i;
+                futures.add(executor.submit(() -> createClient(user, habitsPerUser)));
+            }
+            List<Client> sessions = new ArrayList<>(users);
+            for (Future<Client> future : futures) {
+                sessions.add(future.get());
+            }
+            return sessions;
+        }
+    }
+
+    private Client createClient(int user, int habitsPerUser) throws IOException, InterruptedException {
+        String email = "user" + user + "@example.com";
+        expect(201, send("POST", "/users", null,
+                "{\"name\":\"user" + user + "\",\"email\":\"" + email + "\",\"password\":\"password\"}"));
+        String token = find(TOKEN, expect(200, send("POST", "/sessions", null,
+                "{\"email\":\"" + email + "\",\"password\":\"password\"}")));
+        String[] habitIds = new String[habitsPerUser];
+        for (int i = 0; i < habitsPerUser; i++) {
+            String schedule = i % 2 == 0 ? "DAILY" : "WEEKLY";
+            habitIds[i] = find(ID, expect(201, send("POST", "/habits", token,
+                    "{\"title\":\"Привычка " + i + "\",\"schedule\":\"" + schedule + "\"}")));
+        }
+        return new Client(token, habitIds);
+    }
+
+    private List<Result> run(List<Client> sessions, int clients, Duration duration) throws Exception {
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Result>> futures = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                Client session = sessions.get(i % sessions.size());
+                futures.add(executor.submit(() -> load(session, deadline)));
+            }
+            List<Result> results = new ArrayList<>(clients);
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+    }
+
+    private Result load(Client session, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate today = LocalDate.now();
+        Result result = new Result();
+        while (System.nanoTime() < deadline) {
+            String habitId = session.habitIds()[random.nextInt(session.habitIds().length)];
+            int operation = random.nextInt(10);
+            long start = System.nanoTime();
+            int status;
+            try {
+                if (operation < 6) {
+                    status = send("GET", "/habits/" + habitId + "/stats", session.token(), null).statusCode();
+                } else if (operation < 9) {
+                    LocalDate date = today.minusDays(random.nextInt(HISTORY_DAYS));
+                    status = send("POST", "/habits/" + habitId + "/completions", session.token(),
+                            "{\"date\":\"" + date + "\"}").statusCode();
+                } else {
+                    status = send("GET", "/habits?limit=20", session.token(), null).statusCode();
+                }
+            } catch (IOException e) {
+                status = -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            result.record(System.nanoTime() - start, status >= 200 && status < 300);
+        }
+        return result;
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUri + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String expect(int status, HttpResponse<String> response) {
+        if (response.statusCode() != status) {
+            throw new IllegalStateException("Неожиданный ответ " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    private static String find(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Поле не найдено в ответе: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static void report(List<Result> results, long elapsedNanos) {
+        int total = 0;
+        long errors = 0;
+        for (Result result : results) {
+            total += result.count;
+            errors += result.errors;
+        }
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Result result : results) {
+            System.arraycopy(result.latencies, 0, latencies, offset, result.count);
+            offset += result.count;
+        }
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("Запросов: %d, ошибок: %d, пропускная способность: %.0f запросов/с%n",
+                total, errors, total / seconds);
+        if (total == 0) {
+            return;
+        }
+        System.out.printf("Задержка, мс: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Сессия пользователя и его привычки.
+     *
+     * @param token    Токен сессии.
+     * @param habitIds Идентификаторы привычек пользователя.
+     */
+    private record Client(String token, String[] habitIds) {
+    }
+
+    /**
+     * Задержки запросов одного клиента в наносекундах.
+     */
+    private static final class Result {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        void record(long latency, boolean success) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latency;
+            if (!success) {
+                errors++;
+            }
+        }
+    }
+}
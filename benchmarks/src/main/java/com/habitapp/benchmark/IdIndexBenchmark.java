@@ -0,0 +1,62 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.CompactId;
+import com.habitapp.model.IdMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск в индексе по строковому идентификатору, как его выполняют сервисы:
+ * {@code HashMap} по строке, {@code HashMap} по {@link UUID} с разбором строки
+ * и {@link IdMap} с разбором строки в два long. Запрашиваются копии идентификаторов,
+ * чтобы хеш строки не был закэширован, как у идентификатора из HTTP-запроса.
+ * Занимаемую индексами память показывает {@link IdIndexFootprint}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdIndexBenchmark {
+
+    @Param({"10000", "1000000"})
+    int size;
+
+    private final Map<String, Object> byString = new HashMap<>();
+    private final Map<UUID, Object> byUuid = new HashMap<>();
+    private final IdMap<Object> byKey = new IdMap<>();
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queries = new String[size];
+        for (int i = 0; i < size; i++) {
+            String id = UUID.randomUUID().toString();
+            Object value = new Object();
+            byString.put(id, value);
+            byUuid.put(UUID.fromString(id), value);
+            byKey.put(CompactId.high(id), CompactId.low(id), value);
+            queries[i] = new String(id.toCharArray());
+        }
+    }
+
+    @Benchmark
+    public Object stringHashMap(Cursor cursor) {
+        return byString.get(new String(queries[cursor.next(size)]));
+    }
+
+    @Benchmark
+    public Object uuidHashMap(Cursor cursor) {
+        return byUuid.get(CompactId.find(new String(queries[cursor.next(size)])));
+    }
+
+    @Benchmark
+    public Object idMap(Cursor cursor) {
+        return byKey.get(new String(queries[cursor.next(size)]));
+    }
+}
@@ -0,0 +1,86 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.CompactId;
+import com.habitapp.model.IdMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Память на запись индекса по идентификатору: прежний {@code HashMap} и {@code ConcurrentHashMap}
+ * по строке вместе с самой строкой, {@code HashMap} по {@link UUID} и {@link IdMap}.
+ * Значения общие для всех индексов и в расчет не входят. Занятая куча измеряется
+ * после сборки мусора до и после заполнения индекса.
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.habitapp.benchmark.IdIndexFootprint [записей]
+ * </pre>
+ */
+public final class IdIndexFootprint {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private IdIndexFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long[] highs = new long[size];
+        long[] lows = new long[size];
+        for (int i = 0; i < size; i++) {
+            UUID id = UUID.randomUUID();
+            highs[i] = id.getMostSignificantBits();
+            lows[i] = id.getLeastSignificantBits();
+        }
+        Object value = new Object();
+
+        report("HashMap<String>", size, i -> {
+            Map<String, Object> index = new HashMap<>();
+            for (int j = 0; j < i; j++) {
+                index.put(CompactId.toString(highs[j], lows[j]), value);
+            }
+            return index;
+        });
+        report("ConcurrentHashMap<String>", size, i -> {
+            Map<String, Object> index = new ConcurrentHashMap<>();
+            for (int j = 0; j < i; j++) {
+                index.put(CompactId.toString(highs[j], lows[j]), value);
+            }
+            return index;
+        });
+        report("HashMap<UUID>", size, i -> {
+            Map<UUID, Object> index = new HashMap<>();
+            for (int j = 0; j < i; j++) {
+                index.put(new UUID(highs[j], lows[j]), value);
+            }
+            return index;
+        });
+        report("IdMap", size, i -> {
+            IdMap<Object> index = new IdMap<>();
+            for (int j = 0; j < i; j++) {
+                index.put(highs[j], lows[j], value);
+            }
+            return index;
+        });
+    }
+
+    private static void report(String name, int size, IntFunction<Object> build) {
+        long before = usedAfterGc();
+        Object index = build.apply(size);
+        long after = usedAfterGc();
+        System.out.printf("%-28s %8.1f байт на запись%n", name, (after - before) / (double) size);
+        if (index.hashCode() == 0) {
+            System.out.println();
+        }
+    }
+
+    private static long usedAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,75 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.persistence.FsyncPolicy;
+import com.habitapp.service.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Сравниваемые реализации сервисов. Имя реализации задается параметром бенчмарка.
+ * Долговременное хранилище открывается во временном каталоге без fsync,
+ * чтобы измерять накладные расходы журнала, а не скорость диска.
+ */
+final class Implementation implements AutoCloseable {
+    private final UserService userService;
+    private final HabitService habitService;
+    private final DurableStorage storage;
+    private final Path directory;
+
+    private Implementation(UserService userService, HabitService habitService, DurableStorage storage, Path directory) {
+        this.userService = userService;
+        this.habitService = habitService;
+        this.storage = storage;
+        this.directory = directory;
+    }
+
+    /**
+     * Создает пустые сервисы выбранной реализации.
+     *
+     * @param name "inmemory", "concurrent" или "durable"
+     * @return сервисы
+     */
+    static Implementation create(String name) {
+        try {
+            return switch (name) {
+                case "inmemory" -> new Implementation(new InMemoryUserService(), new InMemoryHabitService(), null, null);
+                case "concurrent" -> new Implementation(new InMemoryUserService(), new ConcurrentHabitService(), null, null);
+                case "durable" -> {
+                    Path directory = Files.createTempDirectory("habit-benchmark");
+                    DurableStorage storage = DurableStorage.open(directory, FsyncPolicy.NEVER, Duration.ZERO);
+                    yield new Implementation(storage.getUserService(), storage.getHabitService(), storage, directory);
+                }
+                default -> throw new IllegalArgumentException("Неизвестная реализация: " + name);
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    UserService userService() {
+        return userService;
+    }
+
+    HabitService habitService() {
+        return habitService;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (storage == null) {
+            return;
+        }
+        storage.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
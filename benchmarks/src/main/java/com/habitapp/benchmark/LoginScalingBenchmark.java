@@ -0,0 +1,45 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Зависимость задержки входа от количества пользователей, от тысячи до десяти миллионов.
+ * Вход не изменяет набор пользователей, поэтому он заполняется один раз на запуск,
+ * а PBKDF2 сокращен до одной итерации, чтобы заполнение занимало секунды и измерялся поиск по email.
+ * Десять миллионов пользователей занимают несколько гигабайт кучи.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dhabitapp.pbkdf2.iterations=1", "-Xmx12g"})
+public class LoginScalingBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int users;
+
+    private Implementation services;
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        services = Implementation.create("inmemory");
+        dataset = Dataset.populate(services.userService(), services.habitService(), users, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        services.close();
+    }
+
+    @Benchmark
+    public User login(Cursor cursor) {
+        int user = cursor.next(dataset.emails.length);
+        return services.userService().login(dataset.emails[user], Dataset.password(user));
+    }
+}
@@ -0,0 +1,55 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.User;
+import com.habitapp.security.PasswordHasher;
+import com.habitapp.service.InMemoryUserService;
+import com.habitapp.service.UserService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность авторизации при разной стоимости PBKDF2.
+ * `login` проверяет пароль вычислением хеша, `getUserByToken` — по токену сессии без вычисления хеша.
+ * Помогает выбрать количество итераций под доступный бюджет процессора:
+ * один поток выполняет не больше `login` операций в секунду на ядро.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordHashingBenchmark {
+    private static final int USERS = 100;
+
+    @Param({"10000", "100000", "310000", "600000"})
+    int iterations;
+
+    private UserService userService;
+    private String[] emails;
+    private String[] tokens;
+
+    @Setup
+    public void setUp() {
+        userService = new InMemoryUserService(new PasswordHasher(iterations));
+        emails = new String[USERS];
+        tokens = new String[USERS];
+        for (int user = 0; user < USERS; user++) {
+            emails[user] = "user" + user + "@example.com";
+            userService.register("Пользователь " + user, emails[user], Dataset.password(user));
+            tokens[user] = userService.authenticate(emails[user], Dataset.password(user));
+        }
+    }
+
+    @Benchmark
+    public User login(Cursor cursor) {
+        int user = cursor.next(USERS);
+        return userService.login(emails[user], Dataset.password(user));
+    }
+
+    @Benchmark
+    public User getUserByToken(Cursor cursor) {
+        return userService.getUserByToken(tokens[cursor.next(USERS)]);
+    }
+}
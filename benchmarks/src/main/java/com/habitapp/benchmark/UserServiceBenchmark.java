@@ -0,0 +1,54 @@
+package com.habitapp.benchmark;
+
+import com.habitapp.model.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточные бенчмарки UserService. Регистрация использует новые адреса,
+ * поэтому набор пользователей растет в течение итерации и пересоздается перед каждой.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dhabitapp.pbkdf2.iterations=1000")
+public class UserServiceBenchmark {
+
+    @Param({"inmemory", "durable"})
+    String implementation;
+
+    @Param({"1000", "100000"})
+    int users;
+
+    private Implementation services;
+    private Dataset dataset;
+    private long registered;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        services = Implementation.create(implementation);
+        dataset = Dataset.populate(services.userService(), services.habitService(), users, 0);
+        registered = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        services.close();
+    }
+
+    @Benchmark
+    public User register() {
+        long id = registered++;
+        return services.userService().register("Новый пользователь", "new" + id + "@example.com", "password");
+    }
+
+    @Benchmark
+    public User login(Cursor cursor) {
+        int user = cursor.next(dataset.emails.length);
+        return services.userService().login(dataset.emails[user], Dataset.password(user));
+    }
+}
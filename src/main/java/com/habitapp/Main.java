@@ -2,29 +2,64 @@ package com.habitapp;
 
 import com.habitapp.model.Frequency;
 import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
 import com.habitapp.model.User;
+import com.habitapp.persistence.FsyncPolicy;
+import com.habitapp.service.AccountCleaner;
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.DurableStorage;
 import com.habitapp.service.HabitService;
-import com.habitapp.service.InMemoryHabitService;
+import com.habitapp.service.HabitSummary;
 import com.habitapp.service.InMemoryUserService;
+import com.habitapp.service.Page;
 import com.habitapp.service.UserService;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * Основной класс консольного приложения для управления пользователями и привычками.
+ * Если первым аргументом передан каталог, данные сохраняются в нем между запусками.
  */
 public class Main {
-    public static void main(String[] args) {
-        UserService userService = new InMemoryUserService();
-        HabitService habitService = new InMemoryHabitService();
+    private static final int HABITS_PAGE_SIZE = 20;
+
+    public static void main(String[] args) throws IOException {
+        DurableStorage storage = args.length > 0
+                ? DurableStorage.open(Path.of(args[0]), FsyncPolicy.PERIODIC, Duration.ofMillis(100),
+                        Duration.ofMinutes(10))
+                : null;
+        UserService userService;
+        HabitService habitService;
+        if (storage != null) {
+            userService = storage.getUserService();
+            habitService = storage.getHabitService();
+        } else {
+            // Привычки удаленных пользователей удаляются в фоне, поэтому нужен потокобезопасный сервис
+            InMemoryUserService inMemoryUserService = new InMemoryUserService();
+            habitService = new ConcurrentHabitService();
+            inMemoryUserService.addDeletionListener(new AccountCleaner(habitService)::enqueue);
+            userService = inMemoryUserService;
+        }
         Scanner scanner = new Scanner(System.in);
-        User currentUser = null;
-        boolean isAuth = false;
+        String sessionToken = null;
 
         while (true) {
-            if (!isAuth) {
+            // Каждое действие после входа предъявляет только токен сессии
+            User currentUser = userService.getUserByToken(sessionToken);
+            if (sessionToken != null && currentUser == null) {
+                System.out.println("Сессия истекла. Пожалуйста, войдите снова.");
+                sessionToken = null;
+            }
+            if (currentUser == null) {
                 System.out.println("\nДобро пожаловать в трекер привычек!");
                 System.out.println("Выберите действие:");
                 System.out.println("1. Регистрация");
@@ -40,15 +75,15 @@ public class Main {
                         break;
 
                     case 2:
-                        currentUser = login(userService, scanner);
-                        if (currentUser != null) {
-                            isAuth = true;
-                        }
+                        sessionToken = login(userService, scanner);
                         break;
 
                     case 0:
                         System.out.println("До свидания!");
                         scanner.close();
+                        if (storage != null) {
+                            storage.close();
+                        }
                         return;
 
                     default:
@@ -72,20 +107,19 @@ public class Main {
                         break;
 
                     case 2:
-                        updateProfile(userService, currentUser, scanner);
+                        sessionToken = updateProfile(userService, currentUser, sessionToken, scanner);
                         break;
 
                     case 3:
                         if (deleteAccount(userService, currentUser, scanner)) {
-                            isAuth = false;
-                            currentUser = null;
+                            sessionToken = null;
                         }
                         break;
 
                     case 0:
                         System.out.println("Вы вышли из системы.");
-                        isAuth = false;
-                        currentUser = null;
+                        userService.logout(sessionToken);
+                        sessionToken = null;
                         break;
 
                     default:
@@ -118,19 +152,21 @@ public class Main {
 
     /**
      * Обрабатывает вход пользователя в систему.
+     *
+     * @return токен сессии или null, если вход не удался.
      */
-    private static User login(UserService userService, Scanner scanner) {
+    private static String login(UserService userService, Scanner scanner) {
         System.out.println("\n--- Вход ---");
         System.out.print("Введите email: ");
         String email = scanner.nextLine();
         System.out.print("Введите пароль: ");
         String password = scanner.nextLine();
 
-        User loggedUser = userService.login(email, password);
+        String sessionToken = userService.authenticate(email, password);
 
-        if (loggedUser != null) {
+        if (sessionToken != null) {
             System.out.println("Вы успешно авторизовались!");
-            return loggedUser;
+            return sessionToken;
         } else {
             System.out.println("Неверный логин или пароль");
             return null;
@@ -139,8 +175,12 @@ public class Main {
 
     /**
      * Обрабатывает обновление профиля пользователя.
+     * Смена пароля завершает все сессии пользователя, поэтому для текущей открывается новая.
+     *
+     * @return токен текущей сессии.
      */
-    private static void updateProfile(UserService userService, User currentUser, Scanner scanner) {
+    private static String updateProfile(UserService userService, User currentUser, String sessionToken,
+                                        Scanner scanner) {
         System.out.println("\n--- Обновление профиля ---");
         System.out.println("Выберите, что хотите изменить:");
         System.out.println("1. Изменить имя");
@@ -155,14 +195,14 @@ public class Main {
             case 1:
                 System.out.print("Введите новое имя: ");
                 String newName = scanner.nextLine();
-                currentUser = userService.updateProfile(currentUser.getId(), newName, currentUser.getEmail(), currentUser.getPassword());
+                currentUser = userService.updateProfile(currentUser.getId(), newName, currentUser.getEmail(), null);
                 System.out.println("Имя обновлено: " + currentUser.getName());
                 break;
 
             case 2:
                 System.out.print("Введите новый email: ");
                 String newEmail = scanner.nextLine();
-                currentUser = userService.updateProfile(currentUser.getId(), currentUser.getName(), newEmail, currentUser.getPassword());
+                currentUser = userService.updateProfile(currentUser.getId(), currentUser.getName(), newEmail, null);
                 System.out.println("Email обновлён: " + currentUser.getEmail());
                 break;
 
@@ -171,6 +211,7 @@ public class Main {
                 String newPassword = scanner.nextLine();
                 currentUser = userService.updateProfile(currentUser.getId(), currentUser.getName(), currentUser.getEmail(), newPassword);
                 System.out.println("Пароль обновлён.");
+                sessionToken = userService.authenticate(currentUser.getEmail(), newPassword);
                 break;
 
             case 0:
@@ -181,6 +222,7 @@ public class Main {
                 System.out.println("Неверный выбор. Пожалуйста, попробуйте снова.");
                 break;
         }
+        return sessionToken;
     }
 
     /**
@@ -230,7 +272,7 @@ public class Main {
                     break;
 
                 case 2:
-                    viewHabits(habitService, currentUser);
+                    viewHabits(habitService, currentUser, scanner);
                     break;
 
                 case 3:
@@ -268,49 +310,35 @@ public class Main {
         String title = scanner.nextLine();
         System.out.print("Введите описание привычки: ");
         String description = scanner.nextLine();
-        System.out.print("Введите частоту выполнения: 1 - [Каждый день] или 2 - [Каждую неделю]\n");
-
-        Frequency frequency;
+        Schedule schedule = readSchedule(scanner);
 
-        while (true) {
-            if (scanner.hasNextInt()) {
-                int intInput = scanner.nextInt();
-                switch (intInput) {
-                    case 1:
-                        frequency = Frequency.DAILY;
-                        break;
-                    case 2:
-                        frequency = Frequency.WEEKLY;
-                        break;
-                    default:
-                        System.out.println("Некорректная частота. Пожалуйста, введите 1 для [Каждый день] или 2 для [Каждую неделю]: ");
-                        scanner.next(); // Очистка буфера ввода
-                        continue;
-                }
-                break; // Выход из цикла, если ввод корректен
-            } else {
-                System.out.println("Введите частоту выполнения: 1 - [Каждый день] или 2 - [Каждую неделю]\n");
-                scanner.next(); // Очистка буфера ввода от некорректного ввода
-            }
-        }
-
-        Habit habit = habitService.createHabit(currentUser.getId(), title, description, frequency);
+        Habit habit = habitService.createHabit(currentUser.getId(), title, description, schedule);
         System.out.println("Привычка создана: " + habit);
     }
 
     /**
-     * Просматривает все привычки текущего пользователя.
+     * Просматривает привычки текущего пользователя постранично, без истории выполнения.
      */
-    private static void viewHabits(HabitService habitService, User currentUser) {
+    private static void viewHabits(HabitService habitService, User currentUser, Scanner scanner) {
         System.out.println("\n--- Ваши привычки ---");
-        List<Habit> habits = habitService.getHabitsByUser(currentUser.getId());
+        Page<HabitSummary> page = habitService.listHabitsByUser(currentUser.getId(), null, HABITS_PAGE_SIZE, false);
 
-        if (habits.isEmpty()) {
+        if (page.items().isEmpty()) {
             System.out.println("У вас нет привычек.");
-        } else {
-            for (Habit habit : habits) {
+            return;
+        }
+        while (true) {
+            for (HabitSummary habit : page.items()) {
                 System.out.println(habit);
             }
+            if (!page.hasNext()) {
+                break;
+            }
+            System.out.print("Показать следующие привычки? (да/нет): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("да")) {
+                break;
+            }
+            page = habitService.listHabitsByUser(currentUser.getId(), page.nextCursor(), HABITS_PAGE_SIZE, false);
         }
     }
 
@@ -319,7 +347,7 @@ public class Main {
      */
     private static void updateHabit(HabitService habitService, User currentUser, Scanner scanner) {
         System.out.println("\n--- Обновление привычки ---");
-        viewHabits(habitService, currentUser);
+        viewHabits(habitService, currentUser, scanner);
         System.out.print("Введите ID привычки: ");
         String habitId = scanner.nextLine();
         Habit habit = habitService.getHabitById(habitId);
@@ -343,33 +371,10 @@ public class Main {
             description = habit.getDescription();
         }
 
-        System.out.print("Введите новую частоту выполнения (Введите: 1 - [Каждый день] или 2 - [Каждую неделю], оставьте пустым, чтобы оставить без изменений): ");
-        Frequency frequency;
-
-        while (true) {
-            if (scanner.hasNextInt()) {
-                int intInput = scanner.nextInt();
-                switch (intInput) {
-                    case 1:
-                        frequency = Frequency.DAILY;
-                        break;
-                    case 2:
-                        frequency = Frequency.WEEKLY;
-                        break;
-                    default:
-                        System.out.println("Некорректная частота. Пожалуйста, введите 1 для [Каждый день] или 2 для [Каждую неделю]: ");
-                        scanner.next(); // Очистка буфера ввода
-                        continue;
-                }
-                break; // Выход из цикла, если ввод корректен
-            } else {
-                System.out.println("Введите частоту выполнения: 1 - [Каждый день] или 2 - [Каждую неделю]\n");
-                scanner.next(); // Очистка буфера ввода от некорректного ввода
-            }
-        }
+        Schedule schedule = readSchedule(scanner);
 
         try {
-            Habit updatedHabit = habitService.updateHabit(habitId, title, description, frequency);
+            Habit updatedHabit = habitService.updateHabit(habitId, title, description, schedule);
             System.out.println("Привычка обновлена: " + updatedHabit);
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка: " + e.getMessage());
@@ -381,7 +386,7 @@ public class Main {
      */
     private static void deleteHabit(HabitService habitService, User currentUser, Scanner scanner) {
         System.out.println("\n--- Удаление привычки ---");
-        viewHabits(habitService, currentUser);
+        viewHabits(habitService, currentUser, scanner);
         System.out.print("Введите ID привычки: ");
         String habitId = scanner.nextLine();
         Habit habit = habitService.getHabitById(habitId);
@@ -411,7 +416,7 @@ public class Main {
      */
     private static void markHabitAsCompleted(HabitService habitService, User currentUser, Scanner scanner) {
         System.out.println("\n--- Отметка привычки как выполненной ---");
-        viewHabits(habitService, currentUser);
+        viewHabits(habitService, currentUser, scanner);
         System.out.print("Введите ID привычки: ");
         String habitId = scanner.nextLine();
         Habit habit = habitService.getHabitById(habitId);
@@ -444,7 +449,7 @@ public class Main {
      */
     private static void viewHabitStats(HabitService habitService, User currentUser, Scanner scanner) {
         System.out.println("\n--- Статистика привычки ---");
-        viewHabits(habitService, currentUser);
+        viewHabits(habitService, currentUser, scanner);
         System.out.print("Введите ID привычки: ");
         String habitId = scanner.nextLine();
         Habit habit = habitService.getHabitById(habitId);
@@ -479,12 +484,62 @@ public class Main {
             int streak = habitService.getCurrentStreak(habitId);
             System.out.printf("Процент выполнения за период %s - %s: %.2f%%\n", startDate, endDate, percentage);
             System.out.printf("Текущая серия выполнения: %d %s\n", streak,
-                    habit.getFrequency() == Frequency.DAILY ? "дней" : "недель");
+                    streakUnit(habit.getFrequency()));
         } catch (IllegalArgumentException e) {
             System.out.println("Ошибка: " + e.getMessage());
         }
     }
 
+    /**
+     * Запрашивает расписание выполнения привычки, пока не будет введено корректное.
+     */
+    private static Schedule readSchedule(Scanner scanner) {
+        while (true) {
+            System.out.println("Выберите частоту выполнения: 1 - [Каждый день], 2 - [Каждую неделю], "
+                    + "3 - [Каждые N дней], 4 - [По дням недели], 5 - [Несколько раз в неделю]");
+            try {
+                switch (getIntInput(scanner)) {
+                    case 1:
+                        return Schedule.DAILY;
+                    case 2:
+                        return Schedule.WEEKLY;
+                    case 3:
+                        System.out.print("Введите количество дней между выполнениями: ");
+                        return Schedule.everyNDays(getIntInput(scanner), LocalDate.now());
+                    case 4:
+                        System.out.print("Введите дни недели через пробел (1 - понедельник, ..., 7 - воскресенье): ");
+                        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+                        for (String day : scanner.nextLine().trim().split("\\s+")) {
+                            days.add(DayOfWeek.of(Integer.parseInt(day)));
+                        }
+                        return Schedule.onWeekdays(days);
+                    case 5:
+                        System.out.print("Введите количество выполнений в неделю (от 1 до 7): ");
+                        return Schedule.timesPerWeek(getIntInput(scanner));
+                    default:
+                        System.out.println("Некорректная частота.");
+                }
+            } catch (DateTimeException | IllegalArgumentException e) {
+                System.out.println("Ошибка: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Возвращает единицу измерения серии выполнения для вида расписания.
+     */
+    private static String streakUnit(Frequency frequency) {
+        switch (frequency) {
+            case DAILY:
+                return "дней";
+            case WEEKLY:
+            case TIMES_PER_WEEK:
+                return "недель";
+            default:
+                return "периодов";
+        }
+    }
+
     /**
      * Обрабатывает ввод целочисленного значения.
      */
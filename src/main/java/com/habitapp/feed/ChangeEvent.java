@@ -0,0 +1,33 @@
+package com.habitapp.feed;
+
+import java.time.LocalDate;
+
+/**
+ * Событие ленты изменений. Событие описывает, что изменилось, а актуальное состояние
+ * пользователя или привычки получатель читает из сервисов.
+ *
+ * @param sequence Порядковый номер события в ленте, начиная с 1.
+ * @param type     Вид изменения.
+ * @param userId   Идентификатор пользователя; для событий привычки — ее владельца.
+ * @param habitId  Идентификатор привычки или {@code null} для событий пользователя.
+ * @param date     Дата выполнения для {@link Type#HABIT_COMPLETED}, иначе {@code null}.
+ */
+public record ChangeEvent(long sequence, Type type, String userId, String habitId, LocalDate date) {
+
+    public enum Type {
+        /** Пользователь зарегистрирован. */
+        USER_REGISTERED,
+        /** Профиль пользователя изменен. */
+        USER_UPDATED,
+        /** Аккаунт пользователя удален. */
+        USER_DELETED,
+        /** Привычка создана. */
+        HABIT_CREATED,
+        /** Название, описание или расписание привычки изменены. */
+        HABIT_UPDATED,
+        /** Привычка удалена. */
+        HABIT_DELETED,
+        /** Добавлена отметка о выполнении привычки. */
+        HABIT_COMPLETED
+    }
+}
@@ -0,0 +1,379 @@
+package com.habitapp.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Лента изменений пользователей и привычек по модели {@link Flow}.
+ * События нумеруются по порядку публикации и хранятся в кольцевом буфере фиксированной емкости.
+ * Публикация не ждет получателей: номер выдается атомарным счетчиком, событие записывается
+ * в ячейку буфера, а доставка идет в виртуальных потоках с учетом запрошенного получателем количества.
+ * <p>
+ * Получатель, отставший больше чем на емкость буфера, обрабатывается по политике ленты.
+ * Лента без файла пропускает вытесненные события, и получатель видит разрыв в номерах.
+ * Лента с файлом фоновым потоком дописывает события в файл, и отставший получатель
+ * дочитывает вытесненные события из него. Разрыв возможен и здесь, если запись в файл
+ * сама отстанет больше чем на емкость буфера. Если запись в файл не удалась, получатель,
+ * которому нужны вытесненные события, завершается {@link Flow.Subscriber#onError(Throwable)} с ошибкой записи,
+ * а получатели, успевающие за буфером, продолжают получать события.
+ * <p>
+ * Получатель может подписаться с произвольного номера, например с номера, следующего
+ * за последним обработанным событием. Номера действительны только в пределах процесса.
+ */
+public final class ChangeFeed implements Flow.Publisher<ChangeEvent>, Closeable {
+    // Архиватор сбрасывает файл не реже, чем через столько событий, даже если не успевает за записью
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final AtomicReferenceArray<ChangeEvent> ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Set<FeedSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SpillLog spill;
+    private final Thread archiver;
+    private volatile boolean archiverParked;
+    private volatile IOException spillFailure;
+    private volatile boolean closed;
+
+    /**
+     * Создает ленту, пропускающую события для отставших получателей.
+     *
+     * @param capacity Емкость буфера, степень двойки.
+     * @throws IllegalArgumentException если емкость не является степенью двойки.
+     */
+    public ChangeFeed(int capacity) {
+        this.ring = new AtomicReferenceArray<>(checkCapacity(capacity));
+        this.mask = capacity - 1;
+        this.spill = null;
+        this.archiver = null;
+    }
+
+    /**
+     * Создает ленту, сбрасывающую события в файл для отставших получателей.
+     * Существующий файл перезаписывается.
+     *
+     * @param capacity  Емкость буфера, степень двойки.
+     * @param spillFile Путь к файлу.
+     * @throws IllegalArgumentException если емкость не является степенью двойки.
+     * @throws IOException              если файл не удалось открыть.
+     */
+    public ChangeFeed(int capacity, Path spillFile) throws IOException {
+        this.ring = new AtomicReferenceArray<>(checkCapacity(capacity));
+        this.mask = capacity - 1;
+        this.spill = new SpillLog(spillFile);
+        this.archiver = new Thread(this::archive, "change-feed-archiver");
+        archiver.setDaemon(true);
+        archiver.start();
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Емкость ленты должна быть степенью двойки");
+        }
+        return capacity;
+    }
+
+    /**
+     * Публикует событие. Метод не блокируется и не зависит от скорости получателей.
+     * После закрытия ленты события не публикуются.
+     *
+     * @param type    Вид изменения.
+     * @param userId  Идентификатор пользователя.
+     * @param habitId Идентификатор привычки или {@code null}.
+     * @param date    Дата выполнения или {@code null}.
+     * @return Номер события или 0, если лента закрыта.
+     */
+    public long publish(ChangeEvent.Type type, String userId, String habitId, LocalDate date) {
+        if (closed) {
+            return 0;
+        }
+        long sequence = cursor.incrementAndGet();
+        ChangeEvent event = new ChangeEvent(sequence, type, userId, habitId, date);
+        int index = (int) sequence & mask;
+        // Медленный писатель не затирает более новое событие, уже записанное в ту же ячейку
+        ChangeEvent current = ring.get(index);
+        while ((current == null || current.sequence() < sequence) && !ring.compareAndSet(index, current, event)) {
+            current = ring.get(index);
+        }
+        if (archiverParked) {
+            LockSupport.unpark(archiver);
+        }
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+        return sequence;
+    }
+
+    /**
+     * Возвращает номер последнего опубликованного события.
+     *
+     * @return Номер события или 0, если событий еще не было.
+     */
+    public long lastSequence() {
+        return cursor.get();
+    }
+
+    /**
+     * Подписывает получателя на события, опубликованные после подписки.
+     *
+     * @param subscriber Получатель.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChangeEvent> subscriber) {
+        subscribe(subscriber, cursor.get() + 1);
+    }
+
+    /**
+     * Подписывает получателя на события начиная с указанного номера.
+     * Если события с этого номера уже вытеснены из буфера, они читаются из файла
+     * или пропускаются в зависимости от политики ленты.
+     *
+     * @param subscriber   Получатель.
+     * @param fromSequence Номер первого события, от 1 до номера следующего события.
+     * @throws IllegalArgumentException если номер некорректен.
+     */
+    public void subscribe(Flow.Subscriber<? super ChangeEvent> subscriber, long fromSequence) {
+        Objects.requireNonNull(subscriber);
+        if (fromSequence < 1 || fromSequence > cursor.get() + 1) {
+            throw new IllegalArgumentException("Номер события должен быть от 1 до номера следующего события");
+        }
+        FeedSubscription subscription = new FeedSubscription(subscriber, fromSequence);
+        subscriptions.add(subscription);
+        try {
+            executor.execute(subscription::start);
+        } catch (RejectedExecutionException e) {
+            // Лента закрыта: получатель сразу получает завершение
+            subscriptions.remove(subscription);
+            subscription.start();
+        }
+    }
+
+    /**
+     * Закрывает ленту: новые события больше не публикуются, подписки завершаются
+     * вызовом {@link Flow.Subscriber#onComplete()} без доставки оставшихся событий,
+     * а файл закрывается после того, как запущенные доставки закончатся.
+     *
+     * @throws IOException если файл не удалось закрыть.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (archiver != null) {
+            LockSupport.unpark(archiver);
+            try {
+                archiver.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        signalAll();
+        executor.close();
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private void signalAll() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    // Дописывает события из буфера в файл; ждет новых событий, когда догнал запись
+    private void archive() {
+        long next = 1;
+        int unflushed = 0;
+        try {
+            while (true) {
+                ChangeEvent event = ring.get((int) next & mask);
+                if (event != null && event.sequence() == next && unflushed < FLUSH_INTERVAL) {
+                    spill.append(event);
+                    next++;
+                    unflushed++;
+                } else if (event != null && event.sequence() > next) {
+                    // Архиватор сам отстал на целый буфер: эти события в файл не попадут
+                    next = Math.max(next + 1, cursor.get() - mask);
+                } else if (unflushed > 0) {
+                    spill.flush();
+                    unflushed = 0;
+                    signalAll();
+                } else if (closed && next > cursor.get()) {
+                    return;
+                } else {
+                    archiverParked = true;
+                    ChangeEvent again = ring.get((int) next & mask);
+                    if (!closed && (again == null || again.sequence() < next)) {
+                        LockSupport.park(this);
+                    }
+                    archiverParked = false;
+                }
+            }
+        } catch (IOException e) {
+            // Ошибку получат отставшие получатели, когда им понадобится файл
+            spillFailure = e;
+            signalAll();
+        }
+    }
+
+    /**
+     * Подписка одного получателя. Доставка сериализована счетчиком незавершенных сигналов:
+     * сигнал, пришедший во время доставки, только увеличивает счетчик, и текущая доставка
+     * повторяет проход, поэтому одновременно событие получателю передает не больше одного потока.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ChangeEvent> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        // 1, пока получатель не получил подписку, чтобы сигналы не запускали доставку раньше
+        private final AtomicInteger wip = new AtomicInteger(1);
+        private volatile boolean cancelled;
+        private volatile IllegalArgumentException error;
+        // Используются только потоком доставки
+        private long nextSequence;
+        private SpillLog.Reader reader;
+
+        FeedSubscription(Flow.Subscriber<? super ChangeEvent> subscriber, long fromSequence) {
+            this.subscriber = subscriber;
+            this.nextSequence = fromSequence;
+        }
+
+        void start() {
+            try {
+                subscriber.onSubscribe(this);
+            } catch (RuntimeException e) {
+                cancel();
+            }
+            drain(1);
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(() -> drain(1));
+                } catch (RejectedExecutionException e) {
+                    // Лента закрывается; завершение доставит уже запущенный проход
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Количество запрошенных событий должно быть положительным");
+            } else {
+                requested.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        private void drain(int missed) {
+            do {
+                if (!cancelled) {
+                    deliver();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliver() {
+            long demand = requested.get();
+            long emitted = 0;
+            while (!cancelled) {
+                IllegalArgumentException failure = error;
+                if (failure != null) {
+                    cancel();
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (closed) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (emitted == demand) {
+                    if (demand != Long.MAX_VALUE) {
+                        demand = requested.addAndGet(-emitted);
+                        emitted = 0;
+                    }
+                    if (demand == 0) {
+                        return;
+                    }
+                }
+                ChangeEvent event;
+                try {
+                    event = next();
+                } catch (IOException e) {
+                    cancel();
+                    subscriber.onError(e);
+                    return;
+                }
+                if (event == null) {
+                    if (demand != Long.MAX_VALUE) {
+                        requested.addAndGet(-emitted);
+                    }
+                    return;
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (RuntimeException e) {
+                    // Получатель нарушил контракт Flow: подписка считается отмененной
+                    cancel();
+                    return;
+                }
+                emitted++;
+            }
+        }
+
+        // Следующее событие из буфера, а если оно вытеснено, из файла; null, если события еще нет
+        private ChangeEvent next() throws IOException {
+            while (true) {
+                long sequence = nextSequence;
+                ChangeEvent event = ring.get((int) sequence & mask);
+                if (event != null && event.sequence() == sequence) {
+                    nextSequence = sequence + 1;
+                    return event;
+                }
+                if (event == null || event.sequence() < sequence) {
+                    return null;
+                }
+                if (spill != null) {
+                    IOException failure = spillFailure;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (reader == null) {
+                        reader = spill.reader();
+                    }
+                    ChangeEvent spilled = reader.read(sequence);
+                    if (spilled != null) {
+                        nextSequence = spilled.sequence() + 1;
+                    }
+                    // Если событие еще не записано в файл, доставку продолжит сигнал архиватора
+                    return spilled;
+                }
+                nextSequence = Math.max(sequence + 1, cursor.get() - mask);
+            }
+        }
+    }
+}
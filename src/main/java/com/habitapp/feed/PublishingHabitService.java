@@ -0,0 +1,171 @@
+package com.habitapp.feed;
+
+import com.habitapp.model.CompletionHistory;
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.service.CompletionResult;
+import com.habitapp.service.CompletionStats;
+import com.habitapp.service.HabitCompletion;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.HabitStreak;
+import com.habitapp.service.HabitSummary;
+import com.habitapp.service.Page;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Декоратор HabitService, публикующий в {@link ChangeFeed} событие после каждого
+ * успешного изменения привычки. Отметка публикуется, только если она новая: одиночная отметка
+ * выполняется как пакет из одной отметки, и о ее новизне сообщает сам сервис под блокировкой привычки,
+ * поэтому одновременные одинаковые отметки публикуются один раз. Пакетное удаление
+ * и пакетная отметка публикуют по событию на каждую затронутую привычку.
+ * События публикуются после возврата из сервиса, поэтому события одновременных
+ * изменений одной привычки могут прийти в любом порядке; актуальное состояние
+ * получатель читает из сервиса.
+ */
+public final class PublishingHabitService implements HabitService {
+    private final HabitService delegate;
+    private final ChangeFeed feed;
+
+    /**
+     * Создает декоратор.
+     *
+     * @param delegate Сервис привычек.
+     * @param feed     Лента изменений.
+     */
+    public PublishingHabitService(HabitService delegate, ChangeFeed feed) {
+        this.delegate = delegate;
+        this.feed = feed;
+    }
+
+    @Override
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        Habit habit = delegate.createHabit(userId, title, description, schedule);
+        feed.publish(ChangeEvent.Type.HABIT_CREATED, userId, habit.getId(), null);
+        return habit;
+    }
+
+    @Override
+    public Habit getHabitById(String habitId) {
+        return delegate.getHabitById(habitId);
+    }
+
+    @Override
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
+        Habit habit = delegate.updateHabit(habitId, title, description, schedule);
+        feed.publish(ChangeEvent.Type.HABIT_UPDATED, habit.getUserId(), habitId, null);
+        return habit;
+    }
+
+    @Override
+    public boolean deleteHabit(String habitId) {
+        Habit habit = delegate.getHabitById(habitId);
+        boolean deleted = delegate.deleteHabit(habitId);
+        if (deleted && habit != null) {
+            feed.publish(ChangeEvent.Type.HABIT_DELETED, habit.getUserId(), habitId, null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        List<Habit> deleted = delegate.deleteHabitsByUser(userId, limit);
+        for (Habit habit : deleted) {
+            feed.publish(ChangeEvent.Type.HABIT_DELETED, userId, habit.getId(), null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void markHabitAsCompleted(String habitId, LocalDate date) {
+        CompletionResult result = markHabitsAsCompleted(List.of(new HabitCompletion(habitId, date))).get(0);
+        if (result.status() == CompletionResult.Status.HABIT_NOT_FOUND) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        if (result.status() == CompletionResult.Status.INVALID_DATE) {
+            throw new IllegalArgumentException("Дата выполнения должна быть от " + CompletionHistory.MIN_DATE
+                    + " до " + CompletionHistory.MAX_DATE);
+        }
+    }
+
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        List<CompletionResult> results = delegate.markHabitsAsCompleted(completions);
+        for (CompletionResult result : results) {
+            if (result.status() == CompletionResult.Status.COMPLETED) {
+                Habit habit = delegate.getHabitById(result.habitId());
+                feed.publish(ChangeEvent.Type.HABIT_COMPLETED, habit != null ? habit.getUserId() : null,
+                        result.habitId(), result.date());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public int getCurrentStreak(String habitId) {
+        return delegate.getCurrentStreak(habitId);
+    }
+
+    @Override
+    public double getCompletionPercentage(String habitId, LocalDate startDate, LocalDate endDate) {
+        return delegate.getCompletionPercentage(habitId, startDate, endDate);
+    }
+
+    @Override
+    public List<HabitStreak> getTopStreaks(int limit) {
+        return delegate.getTopStreaks(limit);
+    }
+
+    @Override
+    public CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        return delegate.getUserCompletionStats(userId, frequency, startDate, endDate);
+    }
+
+    @Override
+    public CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        return delegate.getCompletionStats(frequency, startDate, endDate);
+    }
+
+    @Override
+    public List<Habit> getHabitsDueOn(LocalDate date) {
+        return delegate.getHabitsDueOn(date);
+    }
+
+    @Override
+    public List<Habit> getHabitsByUser(String userId) {
+        return delegate.getHabitsByUser(userId);
+    }
+
+    @Override
+    public List<Habit> getHabits() {
+        return delegate.getHabits();
+    }
+
+    @Override
+    public Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory) {
+        return delegate.listHabitsByUser(userId, cursor, limit, includeHistory);
+    }
+
+    @Override
+    public Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory) {
+        return delegate.listHabits(cursor, limit, includeHistory);
+    }
+
+    @Override
+    public void forEachHabit(String userId, Consumer<? super Habit> action) {
+        delegate.forEachHabit(userId, action);
+    }
+
+    @Override
+    public void forEachHabit(Consumer<? super Habit> action) {
+        delegate.forEachHabit(action);
+    }
+
+    @Override
+    public List<LocalDate> getCompletedDatesForHabit(String habitId) {
+        return delegate.getCompletedDatesForHabit(habitId);
+    }
+}
@@ -0,0 +1,72 @@
+package com.habitapp.feed;
+
+import com.habitapp.model.User;
+import com.habitapp.service.UserService;
+
+/**
+ * Декоратор UserService, публикующий в {@link ChangeFeed} событие после каждого
+ * успешного изменения пользователя. Вход, сессии и чтение событий не порождают.
+ */
+public final class PublishingUserService implements UserService {
+    private final UserService delegate;
+    private final ChangeFeed feed;
+
+    /**
+     * Создает декоратор.
+     *
+     * @param delegate Сервис пользователей.
+     * @param feed     Лента изменений.
+     */
+    public PublishingUserService(UserService delegate, ChangeFeed feed) {
+        this.delegate = delegate;
+        this.feed = feed;
+    }
+
+    @Override
+    public User register(String name, String email, String password) {
+        User user = delegate.register(name, email, password);
+        feed.publish(ChangeEvent.Type.USER_REGISTERED, user.getId(), null, null);
+        return user;
+    }
+
+    @Override
+    public User login(String email, String password) {
+        return delegate.login(email, password);
+    }
+
+    @Override
+    public User updateProfile(String userId, String name, String email, String password) {
+        User user = delegate.updateProfile(userId, name, email, password);
+        feed.publish(ChangeEvent.Type.USER_UPDATED, userId, null, null);
+        return user;
+    }
+
+    @Override
+    public boolean deleteAccount(String userId) {
+        boolean deleted = delegate.deleteAccount(userId);
+        if (deleted) {
+            feed.publish(ChangeEvent.Type.USER_DELETED, userId, null, null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        return delegate.getUserById(userId);
+    }
+
+    @Override
+    public String authenticate(String email, String password) {
+        return delegate.authenticate(email, password);
+    }
+
+    @Override
+    public User getUserByToken(String token) {
+        return delegate.getUserByToken(token);
+    }
+
+    @Override
+    public void logout(String token) {
+        delegate.logout(token);
+    }
+}
@@ -0,0 +1,231 @@
+package com.habitapp.feed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Файл, в который лента изменений сбрасывает события, чтобы отставшие получатели
+ * могли дочитать то, что уже вытеснено из кольцевого буфера.
+ * Формат записи: [длина: int][номер: long][вид: byte][пользователь][привычка][дата: long],
+ * строки хранятся как [длина: int][UTF-8], {@code null} — длиной -1, отсутствие даты — {@link Long#MIN_VALUE}.
+ * Пишет один поток; читатели видят только записи, сброшенные {@link #flush()}.
+ * Каждая {@value #INDEX_INTERVAL}-я запись попадает в разреженный индекс номеров,
+ * поэтому чтение с произвольного номера начинается с ближайшей проиндексированной записи.
+ * Файл создается заново при открытии: номера событий действительны только в пределах процесса.
+ */
+final class SpillLog implements Closeable {
+    private static final int INDEX_INTERVAL = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long written;
+    private long appended;
+    private long lastAppended;
+
+    // Разреженный индекс: номер события и смещение его записи
+    private long[] indexSequences = new long[64];
+    private long[] indexOffsets = new long[64];
+    private int indexSize;
+
+    // Граница сброшенных записей; номер пишется после смещения и читается до него
+    private volatile long readableOffset;
+    private volatile long readableSequence;
+
+    SpillLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Дописывает событие в буфер. Номера событий должны возрастать.
+     *
+     * @param event Событие.
+     * @throws IOException если буфер не удалось сбросить в файл.
+     */
+    void append(ChangeEvent event) throws IOException {
+        byte[] userId = bytes(event.userId());
+        byte[] habitId = bytes(event.habitId());
+        int size = Integer.BYTES + Long.BYTES + 1 + stringSize(userId) + stringSize(habitId) + Long.BYTES;
+        if (buffer.remaining() < size) {
+            write(buffer.flip());
+            buffer.clear();
+        }
+        if (appended++ % INDEX_INTERVAL == 0) {
+            index(event.sequence(), written + buffer.position());
+        }
+        ByteBuffer target = size <= buffer.capacity() ? buffer : ByteBuffer.allocate(size);
+        target.putInt(size - Integer.BYTES);
+        target.putLong(event.sequence());
+        target.put((byte) event.type().ordinal());
+        putString(target, userId);
+        putString(target, habitId);
+        target.putLong(event.date() != null ? event.date().toEpochDay() : NO_DATE);
+        if (target != buffer) {
+            write(target.flip());
+        }
+        lastAppended = event.sequence();
+    }
+
+    /**
+     * Сбрасывает буфер в файл и делает дописанные события доступными для чтения.
+     *
+     * @throws IOException если буфер не удалось записать.
+     */
+    void flush() throws IOException {
+        write(buffer.flip());
+        buffer.clear();
+        readableOffset = written;
+        readableSequence = lastAppended;
+    }
+
+    /**
+     * Возвращает последний номер события, доступного для чтения.
+     *
+     * @return Номер события или 0, если файл пуст.
+     */
+    long readableSequence() {
+        return readableSequence;
+    }
+
+    /**
+     * Создает читателя файла.
+     *
+     * @return Читатель.
+     */
+    Reader reader() {
+        return new Reader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            written += channel.write(data, written);
+        }
+    }
+
+    private synchronized void index(long sequence, long offset) {
+        if (indexSize == indexSequences.length) {
+            indexSequences = Arrays.copyOf(indexSequences, indexSize * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+        }
+        indexSequences[indexSize] = sequence;
+        indexOffsets[indexSize] = offset;
+        indexSize++;
+    }
+
+    // Смещение ближайшей проиндексированной записи с номером не больше указанного
+    private synchronized long offsetBefore(long sequence) {
+        int position = Arrays.binarySearch(indexSequences, 0, indexSize, sequence);
+        if (position < 0) {
+            position = -position - 2;
+        }
+        return position < 0 ? 0 : indexOffsets[position];
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] value) {
+        return Integer.BYTES + (value != null ? value.length : 0);
+    }
+
+    private static void putString(ByteBuffer target, byte[] value) {
+        if (value == null) {
+            target.putInt(-1);
+        } else {
+            target.putInt(value.length).put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer source) {
+        int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        source.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Последовательное чтение файла. Позиция после прочитанного события запоминается,
+     * поэтому чтение близких номеров по возрастанию не обращается к индексу.
+     */
+    final class Reader {
+        private ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        private long chunkOffset;
+        private long lastSequence = Long.MAX_VALUE;
+
+        /**
+         * Возвращает первое доступное для чтения событие с номером не меньше указанного.
+         *
+         * @param sequence Номер события.
+         * @return Событие или {@code null}, если таких событий в файле пока нет.
+         * @throws IOException если файл не удалось прочитать.
+         */
+        ChangeEvent read(long sequence) throws IOException {
+            if (sequence > readableSequence) {
+                return null;
+            }
+            long end = readableOffset;
+            if (sequence <= lastSequence || sequence - lastSequence > INDEX_INTERVAL) {
+                chunkOffset = offsetBefore(sequence);
+                chunk.limit(0);
+            }
+            while (fill(Integer.BYTES, end) && fill(Integer.BYTES + chunk.getInt(chunk.position()), end)) {
+                chunk.position(chunk.position() + Integer.BYTES);
+                long eventSequence = chunk.getLong();
+                ChangeEvent.Type type = TYPES[chunk.get()];
+                String userId = getString(chunk);
+                String habitId = getString(chunk);
+                long day = chunk.getLong();
+                lastSequence = eventSequence;
+                if (eventSequence >= sequence) {
+                    return new ChangeEvent(eventSequence, type, userId, habitId,
+                            day != NO_DATE ? LocalDate.ofEpochDay(day) : null);
+                }
+            }
+            return null;
+        }
+
+        // Дочитывает файл до границы сброшенных записей, чтобы в буфере было не меньше указанного числа байт
+        private boolean fill(int bytes, long end) throws IOException {
+            if (chunk.remaining() >= bytes) {
+                return true;
+            }
+            chunkOffset += chunk.position();
+            if (chunk.capacity() < bytes) {
+                chunk = ByteBuffer.allocate(bytes).put(chunk);
+            } else {
+                chunk.compact();
+            }
+            while (chunk.position() < bytes) {
+                long position = chunkOffset + chunk.position();
+                if (position >= end) {
+                    break;
+                }
+                chunk.limit((int) Math.min(chunk.capacity(), end - chunkOffset));
+                if (channel.read(chunk, position) < 0) {
+                    break;
+                }
+            }
+            chunk.flip();
+            return chunk.remaining() >= bytes;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.habitapp.metrics;
+
+/**
+ * Снимок гистограммы задержек.
+ *
+ * @param count  Количество записанных значений.
+ * @param sum    Сумма значений в наносекундах.
+ * @param max    Наибольшее значение в наносекундах.
+ * @param counts Счетчики корзин гистограммы.
+ */
+public record HistogramSnapshot(long count, long sum, long max, long[] counts) {
+
+    /**
+     * Возвращает значение, не меньше которого оказались доля {@code quantile} записей,
+     * с точностью до ширины корзины.
+     *
+     * @param quantile Доля от 0 до 1, например 0.99 для 99-го перцентиля.
+     * @return Значение в наносекундах или 0, если записей нет.
+     * @throws IllegalArgumentException если доля вне диапазона [0, 1].
+     */
+    public long percentile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Доля должна быть от 0 до 1");
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Возвращает среднее значение.
+     *
+     * @return Среднее в наносекундах или 0, если записей нет.
+     */
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+}
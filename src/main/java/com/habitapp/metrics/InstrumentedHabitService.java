@@ -0,0 +1,337 @@
+package com.habitapp.metrics;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.service.CompletionResult;
+import com.habitapp.service.CompletionStats;
+import com.habitapp.service.HabitCompletion;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.HabitStreak;
+import com.habitapp.service.HabitSummary;
+import com.habitapp.service.Page;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Декоратор HabitService, записывающий для каждого метода количество вызовов, исключений
+ * и гистограмму задержек в {@link MetricsRegistry} под именами вида {@code habits.метод}.
+ * Счетчики методов получаются один раз в конструкторе, а запись вызова не выделяет память
+ * и не берет блокировок. Методы с параметром {@link Frequency} по умолчанию вызывают
+ * методы с расписанием и учитываются вместе с ними.
+ */
+public final class InstrumentedHabitService implements HabitService {
+    private final HabitService delegate;
+    private final MethodMetrics createHabit;
+    private final MethodMetrics getHabitById;
+    private final MethodMetrics updateHabit;
+    private final MethodMetrics deleteHabit;
+    private final MethodMetrics deleteHabitsByUser;
+    private final MethodMetrics markHabitAsCompleted;
+    private final MethodMetrics markHabitsAsCompleted;
+    private final MethodMetrics getCurrentStreak;
+    private final MethodMetrics getCompletionPercentage;
+    private final MethodMetrics getTopStreaks;
+    private final MethodMetrics getUserCompletionStats;
+    private final MethodMetrics getCompletionStats;
+    private final MethodMetrics getHabitsDueOn;
+    private final MethodMetrics getHabitsByUser;
+    private final MethodMetrics getHabits;
+    private final MethodMetrics listHabitsByUser;
+    private final MethodMetrics listHabits;
+    private final MethodMetrics forEachHabitByUser;
+    private final MethodMetrics forEachHabit;
+    private final MethodMetrics getCompletedDatesForHabit;
+
+    /**
+     * Создает декоратор.
+     *
+     * @param delegate Сервис привычек.
+     * @param registry Реестр счетчиков.
+     */
+    public InstrumentedHabitService(HabitService delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.createHabit = registry.method("habits.createHabit");
+        this.getHabitById = registry.method("habits.getHabitById");
+        this.updateHabit = registry.method("habits.updateHabit");
+        this.deleteHabit = registry.method("habits.deleteHabit");
+        this.deleteHabitsByUser = registry.method("habits.deleteHabitsByUser");
+        this.markHabitAsCompleted = registry.method("habits.markHabitAsCompleted");
+        this.markHabitsAsCompleted = registry.method("habits.markHabitsAsCompleted");
+        this.getCurrentStreak = registry.method("habits.getCurrentStreak");
+        this.getCompletionPercentage = registry.method("habits.getCompletionPercentage");
+        this.getTopStreaks = registry.method("habits.getTopStreaks");
+        this.getUserCompletionStats = registry.method("habits.getUserCompletionStats");
+        this.getCompletionStats = registry.method("habits.getCompletionStats");
+        this.getHabitsDueOn = registry.method("habits.getHabitsDueOn");
+        this.getHabitsByUser = registry.method("habits.getHabitsByUser");
+        this.getHabits = registry.method("habits.getHabits");
+        this.listHabitsByUser = registry.method("habits.listHabitsByUser");
+        this.listHabits = registry.method("habits.listHabits");
+        this.forEachHabitByUser = registry.method("habits.forEachHabitByUser");
+        this.forEachHabit = registry.method("habits.forEachHabit");
+        this.getCompletedDatesForHabit = registry.method("habits.getCompletedDatesForHabit");
+    }
+
+    @Override
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        long start = System.nanoTime();
+        try {
+            return delegate.createHabit(userId, title, description, schedule);
+        } catch (RuntimeException e) {
+            createHabit.error();
+            throw e;
+        } finally {
+            createHabit.record(start);
+        }
+    }
+
+    @Override
+    public Habit getHabitById(String habitId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHabitById(habitId);
+        } catch (RuntimeException e) {
+            getHabitById.error();
+            throw e;
+        } finally {
+            getHabitById.record(start);
+        }
+    }
+
+    @Override
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateHabit(habitId, title, description, schedule);
+        } catch (RuntimeException e) {
+            updateHabit.error();
+            throw e;
+        } finally {
+            updateHabit.record(start);
+        }
+    }
+
+    @Override
+    public boolean deleteHabit(String habitId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteHabit(habitId);
+        } catch (RuntimeException e) {
+            deleteHabit.error();
+            throw e;
+        } finally {
+            deleteHabit.record(start);
+        }
+    }
+
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteHabitsByUser(userId, limit);
+        } catch (RuntimeException e) {
+            deleteHabitsByUser.error();
+            throw e;
+        } finally {
+            deleteHabitsByUser.record(start);
+        }
+    }
+
+    @Override
+    public void markHabitAsCompleted(String habitId, LocalDate date) {
+        long start = System.nanoTime();
+        try {
+            delegate.markHabitAsCompleted(habitId, date);
+        } catch (RuntimeException e) {
+            markHabitAsCompleted.error();
+            throw e;
+        } finally {
+            markHabitAsCompleted.record(start);
+        }
+    }
+
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        long start = System.nanoTime();
+        try {
+            return delegate.markHabitsAsCompleted(completions);
+        } catch (RuntimeException e) {
+            markHabitsAsCompleted.error();
+            throw e;
+        } finally {
+            markHabitsAsCompleted.record(start);
+        }
+    }
+
+    @Override
+    public int getCurrentStreak(String habitId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCurrentStreak(habitId);
+        } catch (RuntimeException e) {
+            getCurrentStreak.error();
+            throw e;
+        } finally {
+            getCurrentStreak.record(start);
+        }
+    }
+
+    @Override
+    public double getCompletionPercentage(String habitId, LocalDate startDate, LocalDate endDate) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCompletionPercentage(habitId, startDate, endDate);
+        } catch (RuntimeException e) {
+            getCompletionPercentage.error();
+            throw e;
+        } finally {
+            getCompletionPercentage.record(start);
+        }
+    }
+
+    @Override
+    public List<HabitStreak> getTopStreaks(int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getTopStreaks(limit);
+        } catch (RuntimeException e) {
+            getTopStreaks.error();
+            throw e;
+        } finally {
+            getTopStreaks.record(start);
+        }
+    }
+
+    @Override
+    public CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUserCompletionStats(userId, frequency, startDate, endDate);
+        } catch (RuntimeException e) {
+            getUserCompletionStats.error();
+            throw e;
+        } finally {
+            getUserCompletionStats.record(start);
+        }
+    }
+
+    @Override
+    public CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCompletionStats(frequency, startDate, endDate);
+        } catch (RuntimeException e) {
+            getCompletionStats.error();
+            throw e;
+        } finally {
+            getCompletionStats.record(start);
+        }
+    }
+
+    @Override
+    public List<Habit> getHabitsDueOn(LocalDate date) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHabitsDueOn(date);
+        } catch (RuntimeException e) {
+            getHabitsDueOn.error();
+            throw e;
+        } finally {
+            getHabitsDueOn.record(start);
+        }
+    }
+
+    @Override
+    public List<Habit> getHabitsByUser(String userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHabitsByUser(userId);
+        } catch (RuntimeException e) {
+            getHabitsByUser.error();
+            throw e;
+        } finally {
+            getHabitsByUser.record(start);
+        }
+    }
+
+    @Override
+    public List<Habit> getHabits() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getHabits();
+        } catch (RuntimeException e) {
+            getHabits.error();
+            throw e;
+        } finally {
+            getHabits.record(start);
+        }
+    }
+
+    @Override
+    public Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory) {
+        long start = System.nanoTime();
+        try {
+            return delegate.listHabitsByUser(userId, cursor, limit, includeHistory);
+        } catch (RuntimeException e) {
+            listHabitsByUser.error();
+            throw e;
+        } finally {
+            listHabitsByUser.record(start);
+        }
+    }
+
+    @Override
+    public Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory) {
+        long start = System.nanoTime();
+        try {
+            return delegate.listHabits(cursor, limit, includeHistory);
+        } catch (RuntimeException e) {
+            listHabits.error();
+            throw e;
+        } finally {
+            listHabits.record(start);
+        }
+    }
+
+    @Override
+    public void forEachHabit(String userId, Consumer<? super Habit> action) {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachHabit(userId, action);
+        } catch (RuntimeException e) {
+            forEachHabitByUser.error();
+            throw e;
+        } finally {
+            forEachHabitByUser.record(start);
+        }
+    }
+
+    @Override
+    public void forEachHabit(Consumer<? super Habit> action) {
+        long start = System.nanoTime();
+        try {
+            delegate.forEachHabit(action);
+        } catch (RuntimeException e) {
+            forEachHabit.error();
+            throw e;
+        } finally {
+            forEachHabit.record(start);
+        }
+    }
+
+    @Override
+    public List<LocalDate> getCompletedDatesForHabit(String habitId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getCompletedDatesForHabit(habitId);
+        } catch (RuntimeException e) {
+            getCompletedDatesForHabit.error();
+            throw e;
+        } finally {
+            getCompletedDatesForHabit.record(start);
+        }
+    }
+}
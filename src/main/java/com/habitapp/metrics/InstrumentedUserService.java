@@ -0,0 +1,142 @@
+package com.habitapp.metrics;
+
+import com.habitapp.model.User;
+import com.habitapp.service.UserService;
+
+/**
+ * Декоратор UserService, записывающий для каждого метода количество вызовов, исключений
+ * и гистограмму задержек в {@link MetricsRegistry} под именами вида {@code users.метод}.
+ */
+public final class InstrumentedUserService implements UserService {
+    private final UserService delegate;
+    private final MethodMetrics register;
+    private final MethodMetrics login;
+    private final MethodMetrics updateProfile;
+    private final MethodMetrics deleteAccount;
+    private final MethodMetrics getUserById;
+    private final MethodMetrics authenticate;
+    private final MethodMetrics getUserByToken;
+    private final MethodMetrics logout;
+
+    /**
+     * Создает декоратор.
+     *
+     * @param delegate Сервис пользователей.
+     * @param registry Реестр счетчиков.
+     */
+    public InstrumentedUserService(UserService delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.register = registry.method("users.register");
+        this.login = registry.method("users.login");
+        this.updateProfile = registry.method("users.updateProfile");
+        this.deleteAccount = registry.method("users.deleteAccount");
+        this.getUserById = registry.method("users.getUserById");
+        this.authenticate = registry.method("users.authenticate");
+        this.getUserByToken = registry.method("users.getUserByToken");
+        this.logout = registry.method("users.logout");
+    }
+
+    @Override
+    public User register(String name, String email, String password) {
+        long start = System.nanoTime();
+        try {
+            return delegate.register(name, email, password);
+        } catch (RuntimeException e) {
+            register.error();
+            throw e;
+        } finally {
+            register.record(start);
+        }
+    }
+
+    @Override
+    public User login(String email, String password) {
+        long start = System.nanoTime();
+        try {
+            return delegate.login(email, password);
+        } catch (RuntimeException e) {
+            login.error();
+            throw e;
+        } finally {
+            login.record(start);
+        }
+    }
+
+    @Override
+    public User updateProfile(String userId, String name, String email, String password) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateProfile(userId, name, email, password);
+        } catch (RuntimeException e) {
+            updateProfile.error();
+            throw e;
+        } finally {
+            updateProfile.record(start);
+        }
+    }
+
+    @Override
+    public boolean deleteAccount(String userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteAccount(userId);
+        } catch (RuntimeException e) {
+            deleteAccount.error();
+            throw e;
+        } finally {
+            deleteAccount.record(start);
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUserById(userId);
+        } catch (RuntimeException e) {
+            getUserById.error();
+            throw e;
+        } finally {
+            getUserById.record(start);
+        }
+    }
+
+    @Override
+    public String authenticate(String email, String password) {
+        long start = System.nanoTime();
+        try {
+            return delegate.authenticate(email, password);
+        } catch (RuntimeException e) {
+            authenticate.error();
+            throw e;
+        } finally {
+            authenticate.record(start);
+        }
+    }
+
+    @Override
+    public User getUserByToken(String token) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getUserByToken(token);
+        } catch (RuntimeException e) {
+            getUserByToken.error();
+            throw e;
+        } finally {
+            getUserByToken.record(start);
+        }
+    }
+
+    @Override
+    public void logout(String token) {
+        long start = System.nanoTime();
+        try {
+            delegate.logout(token);
+        } catch (RuntimeException e) {
+            logout.error();
+            throw e;
+        } finally {
+            logout.record(start);
+        }
+    }
+}
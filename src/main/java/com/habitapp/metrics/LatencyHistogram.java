@@ -0,0 +1,82 @@
+package com.habitapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с логарифмически-линейными корзинами, как в HdrHistogram.
+ * Каждая степень двойки делится на {@value #SUB_BUCKETS} равных корзин, поэтому
+ * относительная погрешность значения не превышает 1/{@value #SUB_BUCKETS}, а значения
+ * меньше {@value #SUB_BUCKETS} нс хранятся точно. Значения больше {@link #MAX_VALUE} нс
+ * попадают в последнюю корзину. Запись — несколько атомарных операций над заранее
+ * выделенными счетчиками, без блокировок и без выделения памяти, поэтому ее можно
+ * вызывать из любого числа потоков. Снимок читает счетчики без остановки записи,
+ * поэтому может не включать записи, идущие одновременно с ним.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * Наибольшее различимое значение в наносекундах, около 18 минут.
+     */
+    public static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Записывает значение.
+     *
+     * @param nanos Задержка в наносекундах; отрицательные значения считаются нулем.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(index(value));
+        total.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Возвращает снимок гистограммы.
+     *
+     * @return Снимок.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = counts.get(i);
+            count += buckets[i];
+        }
+        return new HistogramSnapshot(count, total.get(), max.get(), buckets);
+    }
+
+    // Корзины [0, 32) точные; дальше для степени 2^e корзина задается пятью битами после старшего
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Наибольшее значение, попадающее в корзину
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
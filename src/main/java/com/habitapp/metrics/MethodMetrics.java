@@ -0,0 +1,53 @@
+package com.habitapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики одного метода: количество вызовов, количество завершившихся исключением
+ * и гистограмма задержек. Вызовы считаются по гистограмме, поэтому в снимке
+ * количество вызовов совпадает с количеством значений гистограммы.
+ */
+public final class MethodMetrics {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+
+    MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Возвращает имя метода.
+     *
+     * @return Имя вида {@code сервис.метод}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Записывает завершившийся вызов.
+     *
+     * @param startNanos Значение {@link System#nanoTime()} перед вызовом.
+     */
+    public void record(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Учитывает вызов, завершившийся исключением; задержка записывается отдельно через {@link #record(long)}.
+     */
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Возвращает снимок счетчиков.
+     *
+     * @return Снимок.
+     */
+    public MethodSnapshot snapshot() {
+        HistogramSnapshot histogram = latency.snapshot();
+        return new MethodSnapshot(name, histogram.count(), errors.get(), histogram);
+    }
+}
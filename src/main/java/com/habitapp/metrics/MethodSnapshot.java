@@ -0,0 +1,12 @@
+package com.habitapp.metrics;
+
+/**
+ * Снимок счетчиков одного метода.
+ *
+ * @param name    Имя вида {@code сервис.метод}.
+ * @param calls   Количество завершившихся вызовов.
+ * @param errors  Количество вызовов, завершившихся исключением.
+ * @param latency Гистограмма задержек в наносекундах.
+ */
+public record MethodSnapshot(String name, long calls, long errors, HistogramSnapshot latency) {
+}
@@ -0,0 +1,91 @@
+package com.habitapp.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодическая запись снимка счетчиков в локальный файл.
+ * Запись идет в отдельном фоновом потоке; при закрытии записывается последний снимок.
+ * Сами записи учитываются в реестре как метод {@value #REPORT_METHOD}, поэтому сбои записи
+ * видны в его счетчике ошибок, а последний сбой возвращает {@link #lastFailure()}.
+ */
+public final class MetricsFileReporter implements Closeable {
+    /**
+     * Имя счетчиков записи снимков в реестре.
+     */
+    public static final String REPORT_METHOD = "metrics.report";
+
+    private final MetricsRegistry registry;
+    private final Path file;
+    private final MethodMetrics reports;
+    private final ScheduledExecutorService executor;
+    private volatile IOException lastFailure;
+
+    /**
+     * Запускает периодическую запись.
+     *
+     * @param registry Реестр счетчиков.
+     * @param file     Путь к файлу; файл перезаписывается при каждой записи.
+     * @param interval Период записи.
+     * @throws IllegalArgumentException если период не положителен.
+     */
+    public MetricsFileReporter(MetricsRegistry registry, Path file, Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Период записи должен быть положительным");
+        }
+        this.registry = registry;
+        this.file = file;
+        this.reports = registry.method(REPORT_METHOD);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = interval.toNanos();
+        executor.scheduleWithFixedDelay(this::report, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Возвращает ошибку последней периодической записи.
+     *
+     * @return Ошибка или {@code null}, если последняя запись удалась или записей еще не было.
+     */
+    public IOException lastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Останавливает периодическую запись и записывает последний снимок.
+     *
+     * @throws IOException если последний снимок не удалось записать.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        registry.writeTo(file);
+    }
+
+    private void report() {
+        long start = System.nanoTime();
+        try {
+            registry.writeTo(file);
+            lastFailure = null;
+        } catch (IOException e) {
+            // Следующая запись повторит попытку; сбой отчета не должен останавливать расписание
+            reports.error();
+            lastFailure = e;
+        } finally {
+            reports.record(start);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.habitapp.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Реестр счетчиков методов. Счетчики создаются один раз при построении декоратора,
+ * а запись в них не обращается к реестру. Снимок запрашивается по требованию
+ * и не останавливает запись.
+ */
+public final class MetricsRegistry {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ConcurrentSkipListMap<String, MethodMetrics> methods = new ConcurrentSkipListMap<>();
+
+    /**
+     * Возвращает счетчики метода, создавая их при первом обращении.
+     *
+     * @param name Имя вида {@code сервис.метод}.
+     * @return Счетчики метода.
+     */
+    public MethodMetrics method(String name) {
+        return methods.computeIfAbsent(name, MethodMetrics::new);
+    }
+
+    /**
+     * Возвращает снимки счетчиков всех методов в порядке имен.
+     *
+     * @return Снимки счетчиков.
+     */
+    public List<MethodSnapshot> snapshot() {
+        List<MethodSnapshot> snapshots = new ArrayList<>(methods.size());
+        for (MethodMetrics metrics : methods.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Записывает снимок в текстовый файл: по строке на метод с количеством вызовов, ошибок
+     * и задержками в микросекундах. Файл заменяется атомарно, поэтому читатель
+     * не видит недописанный снимок.
+     *
+     * @param file Путь к файлу.
+     * @throws IOException если файл не удалось записать.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("# " + Instant.now() + "\n");
+            writer.write(String.format(Locale.ROOT, "%-40s %12s %10s %10s %10s %10s %10s %10s %10s%n",
+                    "method", "calls", "errors", "mean_us", "p50_us", "p90_us", "p99_us", "p999_us", "max_us"));
+            for (MethodSnapshot method : snapshot()) {
+                HistogramSnapshot latency = method.latency();
+                writer.write(String.format(Locale.ROOT, "%-40s %12d %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                        method.name(), method.calls(), method.errors(), latency.mean() / 1e3,
+                        latency.percentile(0.5) / 1e3, latency.percentile(0.9) / 1e3,
+                        latency.percentile(0.99) / 1e3, latency.percentile(0.999) / 1e3, latency.max() / 1e3));
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
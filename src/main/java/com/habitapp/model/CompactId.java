@@ -0,0 +1,137 @@
+package com.habitapp.model;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Компактное представление строковых идентификаторов в виде 128-битного ключа из двух long.
+ * Идентификаторы, созданные {@link UUID#randomUUID()}, хранятся своими битами и восстанавливаются
+ * в прежнем виде, поэтому вместо строки из 36 символов объект хранит 16 байт.
+ * Компактными считаются только UUID версии 4 в каноническом виде строчными буквами:
+ * для них преобразование взаимно однозначно.
+ * <p>
+ * Прочим идентификаторам выдается суррогатный ключ со старшей половиной 0 и порядковым
+ * номером в младшей; у UUID версии 4 старшая половина не бывает нулевой, поэтому ключи
+ * не пересекаются. Суррогаты общие для процесса и не освобождаются: такие идентификаторы
+ * встречаются только в перенесенных данных и тестах.
+ */
+public final class CompactId {
+    private static final int LENGTH = 36;
+    private static final ConcurrentMap<String, Long> SURROGATES = new ConcurrentHashMap<>();
+    private static final AtomicLong LAST_SURROGATE = new AtomicLong();
+    // Значения шестнадцатеричных цифр; таблица вместо сравнений избегает непредсказуемых ветвлений
+    private static final byte[] DIGITS = new byte[128];
+
+    static {
+        Arrays.fill(DIGITS, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            DIGITS["0123456789abcdef".charAt(i)] = (byte) i;
+        }
+    }
+
+    private CompactId() {
+    }
+
+    /**
+     * Проверяет, хранится ли идентификатор своими битами.
+     *
+     * @param id Идентификатор.
+     * @return {@code true} для UUID версии 4 в каноническом виде строчными буквами.
+     */
+    public static boolean isCompact(String id) {
+        if (id == null || id.length() != LENGTH || id.charAt(14) != '4') {
+            return false;
+        }
+        char variant = id.charAt(19);
+        if (variant != '8' && variant != '9' && variant != 'a' && variant != 'b') {
+            return false;
+        }
+        if (id.charAt(8) != '-' || id.charAt(13) != '-' || id.charAt(18) != '-' || id.charAt(23) != '-') {
+            return false;
+        }
+        return isHex(id, 0, 8) && isHex(id, 9, 13) && isHex(id, 14, 18) && isHex(id, 19, 23) && isHex(id, 24, LENGTH);
+    }
+
+    /**
+     * Возвращает старшую половину ключа идентификатора, выдавая суррогат при необходимости.
+     *
+     * @param id Идентификатор.
+     * @return Старшие 64 бита ключа.
+     */
+    public static long high(String id) {
+        return isCompact(id) ? parseHigh(id) : 0;
+    }
+
+    /**
+     * Возвращает младшую половину ключа идентификатора, выдавая суррогат при необходимости.
+     *
+     * @param id Идентификатор.
+     * @return Младшие 64 бита ключа.
+     */
+    public static long low(String id) {
+        if (isCompact(id)) {
+            return parseLow(id);
+        }
+        return id == null ? 0 : SURROGATES.computeIfAbsent(id, key -> LAST_SURROGATE.incrementAndGet());
+    }
+
+    /**
+     * Возвращает ключ идентификатора, не выдавая новый суррогат.
+     *
+     * @param id Идентификатор.
+     * @return Ключ или {@code null}, если идентификатору еще не выдан суррогат.
+     */
+    public static UUID find(String id) {
+        if (isCompact(id)) {
+            return new UUID(parseHigh(id), parseLow(id));
+        }
+        if (id == null) {
+            return new UUID(0, 0);
+        }
+        Long surrogate = SURROGATES.get(id);
+        return surrogate != null ? new UUID(0, surrogate) : null;
+    }
+
+    /**
+     * Восстанавливает идентификатор UUID по битам ключа.
+     *
+     * @param high Старшие 64 бита.
+     * @param low  Младшие 64 бита.
+     * @return Идентификатор в каноническом виде.
+     */
+    public static String toString(long high, long low) {
+        return new UUID(high, low).toString();
+    }
+
+    // Разбор идентификатора, уже проверенного isCompact
+    static long parseHigh(String id) {
+        return parse(parse(parse(0, id, 0, 8), id, 9, 13), id, 14, 18);
+    }
+
+    static long parseLow(String id) {
+        return parse(parse(0, id, 19, 23), id, 24, LENGTH);
+    }
+
+    // Дописывает к битам шестнадцатеричные цифры между позициями
+    private static long parse(long bits, String id, int from, int to) {
+        for (int i = from; i < to; i++) {
+            bits = bits << 4 | digit(id.charAt(i));
+        }
+        return bits;
+    }
+
+    private static boolean isHex(String id, int from, int to) {
+        int invalid = 0;
+        for (int i = from; i < to; i++) {
+            invalid |= digit(id.charAt(i));
+        }
+        return invalid >= 0;
+    }
+
+    private static int digit(char c) {
+        return c < DIGITS.length ? DIGITS[c] : -1;
+    }
+}
@@ -0,0 +1,196 @@
+package com.habitapp.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Хранилище историй выполнения вне кучи. Память выделяется блоками по {@value #CHUNK_BYTES} байт
+ * в прямых буферах или в отображенном в память файле и нарезается на слэбы размером степени двойки
+ * от {@value #MIN_SLAB_BYTES} байт. Привычка хранит в куче только дескриптор своего слэба,
+ * поэтому занятая ею куча не растет вместе с историей. Слэб, из которого выросла история,
+ * и слэб привычки, ставшей недостижимой, возвращаются в список свободных слэбов своего размера.
+ * <p>
+ * Файл отображения служит только продолжением памяти: после закрытия хранилища
+ * его содержимое не используется.
+ */
+public final class CompletionArena implements Closeable {
+    static final int MIN_SLAB_BYTES = 32;
+    private static final int CHUNK_SHIFT = 24;
+    private static final int CHUNK_BYTES = 1 << CHUNK_SHIFT;
+    // Младшие биты дескриптора хранят класс размера: адреса слэбов кратны минимальному размеру
+    private static final long CLASS_MASK = MIN_SLAB_BYTES - 1;
+    private static final int CLASSES = CHUNK_SHIFT - Integer.numberOfTrailingZeros(MIN_SLAB_BYTES) + 1;
+
+    private final FileChannel channel;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private long next; // Следующий свободный адрес в последнем блоке
+    private long limit; // Конец последнего блока
+    private final long[][] free = new long[CLASSES][];
+    private final int[] freeCount = new int[CLASSES];
+    private long usedBytes;
+    private boolean closed;
+
+    private CompletionArena(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Создает хранилище в прямых буферах.
+     *
+     * @return Хранилище.
+     */
+    public static CompletionArena direct() {
+        return new CompletionArena(null);
+    }
+
+    /**
+     * Создает хранилище, отображенное в файл; существующий файл перезаписывается.
+     *
+     * @param file Путь к файлу.
+     * @return Хранилище.
+     * @throws IOException если файл не удалось открыть.
+     */
+    public static CompletionArena mapped(Path file) throws IOException {
+        return new CompletionArena(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Создает пустую историю выполнения в этом хранилище.
+     *
+     * @return История выполнения.
+     */
+    public CompletionStore newHistory() {
+        return new OffHeapCompletionHistory(this);
+    }
+
+    /**
+     * Возвращает объем памяти, занятый слэбами живых историй.
+     *
+     * @return Количество байт.
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Возвращает объем памяти, выделенный под блоки.
+     *
+     * @return Количество байт.
+     */
+    public long reservedBytes() {
+        return (long) chunks.length * CHUNK_BYTES;
+    }
+
+    /**
+     * Закрывает хранилище: новые слэбы больше не выделяются, файл отображения закрывается.
+     * Память блоков освобождается сборщиком мусора вместе с историями.
+     *
+     * @throws IOException если файл не удалось закрыть.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Выделяет слэб, вмещающий указанное количество long.
+     *
+     * @param longs Количество long.
+     * @return Дескриптор слэба.
+     * @throws IllegalArgumentException если слэб больше блока.
+     * @throws IllegalStateException    если хранилище закрыто.
+     */
+    synchronized long allocate(int longs) {
+        if (closed) {
+            throw new IllegalStateException("Хранилище истории выполнения закрыто");
+        }
+        int sizeClass = sizeClass(longs);
+        if (sizeClass >= CLASSES) {
+            throw new IllegalArgumentException("История выполнения слишком длинная");
+        }
+        int bytes = MIN_SLAB_BYTES << sizeClass;
+        usedBytes += bytes;
+        if (freeCount[sizeClass] > 0) {
+            return free[sizeClass][--freeCount[sizeClass]];
+        }
+        if (next + bytes > limit) {
+            // Хвост блока пропускается: слэб не может пересекать границу блоков
+            next = addChunk();
+            limit = (long) chunks.length << CHUNK_SHIFT;
+        }
+        long address = next;
+        next += bytes;
+        return address | sizeClass;
+    }
+
+    /**
+     * Возвращает слэб в список свободных.
+     *
+     * @param handle Дескриптор слэба.
+     */
+    synchronized void free(long handle) {
+        int sizeClass = (int) (handle & CLASS_MASK);
+        long[] list = free[sizeClass];
+        if (list == null) {
+            list = free[sizeClass] = new long[16];
+        } else if (freeCount[sizeClass] == list.length) {
+            list = free[sizeClass] = Arrays.copyOf(list, list.length * 2);
+        }
+        list[freeCount[sizeClass]++] = handle;
+        usedBytes -= MIN_SLAB_BYTES << sizeClass;
+    }
+
+    /**
+     * Возвращает емкость слэба.
+     *
+     * @param handle Дескриптор слэба.
+     * @return Количество long.
+     */
+    static int capacity(long handle) {
+        return (MIN_SLAB_BYTES << (int) (handle & CLASS_MASK)) / Long.BYTES;
+    }
+
+    long getLong(long handle, int index) {
+        long address = handle & ~CLASS_MASK;
+        return chunks[(int) (address >>> CHUNK_SHIFT)].getLong((int) (address & (CHUNK_BYTES - 1)) + index * Long.BYTES);
+    }
+
+    void putLong(long handle, int index, long value) {
+        long address = handle & ~CLASS_MASK;
+        chunks[(int) (address >>> CHUNK_SHIFT)].putLong((int) (address & (CHUNK_BYTES - 1)) + index * Long.BYTES, value);
+    }
+
+    // Добавляет блок и возвращает его начальный адрес; адрес 0 не выдается, чтобы 0 означал отсутствие слэба
+    private long addChunk() {
+        ByteBuffer chunk;
+        long index = chunks.length;
+        if (channel == null) {
+            chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+        } else {
+            try {
+                chunk = channel.map(FileChannel.MapMode.READ_WRITE, index << CHUNK_SHIFT, CHUNK_BYTES);
+            } catch (IOException e) {
+                throw new IllegalStateException("Не удалось расширить файл истории выполнения", e);
+            }
+        }
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[grown.length - 1] = chunk.order(ByteOrder.nativeOrder());
+        chunks = grown;
+        return index == 0 ? MIN_SLAB_BYTES : index << CHUNK_SHIFT;
+    }
+
+    private static int sizeClass(int longs) {
+        int bytes = Math.max(longs * Long.BYTES, MIN_SLAB_BYTES);
+        return 32 - Integer.numberOfLeadingZeros(bytes - 1) - Integer.numberOfTrailingZeros(MIN_SLAB_BYTES);
+    }
+}
@@ -0,0 +1,11 @@
+package com.habitapp.model;
+
+/**
+ * Снимок истории выполнения в виде битового массива.
+ * Младший бит `words[0]` соответствует дню `firstDay` (номер дня от эпохи, кратный 64).
+ *
+ * @param firstDay номер дня, соответствующий первому биту
+ * @param words    биты отмеченных дней
+ */
+public record CompletionBits(long firstDay, long[] words) {
+}
@@ -0,0 +1,362 @@
+package com.habitapp.model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Компактное хранилище дат выполнения привычки.
+ * Каждый день представлен одним битом, индексированным по номеру дня от эпохи
+ * (`LocalDate.toEpochDay()`), поэтому отметка и проверка даты выполняются за O(1),
+ * а история занимает около одного бита на день.
+ * Подсчет отметок и занятых недель в произвольном диапазоне выполняется за O(log n)
+ * по индексам префиксных сумм. Индексы недель строятся при первом запросе
+ * отдельно для каждого из семи возможных сдвигов начала недели.
+ * Даты ограничены диапазоном от {@link #MIN_DATE} до {@link #MAX_DATE}, поэтому битовый массив
+ * одной привычки не превышает нескольких десятков килобайт.
+ * Класс не синхронизирован: доступ к нему защищает владеющая им привычка.
+ */
+public final class CompletionHistory implements CompletionStore {
+    /**
+     * Значение, возвращаемое вместо номера дня, если подходящего дня нет.
+     */
+    public static final long NONE = RankedBitSet.NONE;
+    /**
+     * Самая ранняя дата выполнения, которую можно отметить.
+     */
+    public static final LocalDate MIN_DATE = LocalDate.of(1900, 1, 1);
+    /**
+     * Самая поздняя дата выполнения, которую можно отметить.
+     */
+    public static final LocalDate MAX_DATE = LocalDate.of(2199, 12, 31);
+    private static final long MIN_DAY = MIN_DATE.toEpochDay();
+    private static final long MAX_DAY = MAX_DATE.toEpochDay();
+
+    private final RankedBitSet days = new RankedBitSet();
+    // weeks[r] отмечает занятые семидневные интервалы, начинающиеся в дни с остатком r по модулю 7
+    private RankedBitSet[] weeks;
+    private long lastDay = NONE;
+    private int size;
+
+    /**
+     * Отмечает день как выполненный.
+     *
+     * @param date дата выполнения
+     * @return {@code true}, если дата добавлена впервые
+     * @throws IllegalArgumentException если дата вне поддерживаемого диапазона
+     */
+    @Override
+    public boolean add(LocalDate date) {
+        long day = checkDay(date);
+        if (!days.set(day)) {
+            return false;
+        }
+        size++;
+        lastDay = Math.max(lastDay, day);
+        if (weeks != null) {
+            markWeeks(day);
+        }
+        return true;
+    }
+
+    /**
+     * Проверяет, отмечен ли день как выполненный.
+     *
+     * @param date дата
+     * @return {@code true}, если дата отмечена
+     */
+    @Override
+    public boolean contains(LocalDate date) {
+        return days.get(date.toEpochDay());
+    }
+
+    /**
+     * Возвращает количество отмеченных дней.
+     *
+     * @return количество дат выполнения
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Возвращает номер последнего отмеченного дня.
+     *
+     * @return номер дня от эпохи или {@link #NONE}, если история пуста
+     */
+    @Override
+    public long lastDay() {
+        return lastDay;
+    }
+
+    /**
+     * Проверяет, отмечен ли день с указанным номером.
+     *
+     * @param day номер дня от эпохи
+     * @return {@code true}, если день отмечен
+     */
+    @Override
+    public boolean containsDay(long day) {
+        return days.get(day);
+    }
+
+    /**
+     * Возвращает ближайший отмеченный день, не превышающий указанный.
+     *
+     * @param day номер дня от эпохи
+     * @return номер отмеченного дня или {@link #NONE}
+     */
+    @Override
+    public long previousDay(long day) {
+        return days.previous(day);
+    }
+
+    /**
+     * Возвращает битовый снимок истории без пустых слов по краям.
+     *
+     * @return снимок истории
+     */
+    @Override
+    public CompletionBits toBits() {
+        long[] words = days.words();
+        if (size == 0) {
+            return new CompletionBits(0, new long[0]);
+        }
+        int from = 0;
+        while (words[from] == 0) {
+            from++;
+        }
+        int to = words.length;
+        while (words[to - 1] == 0) {
+            to--;
+        }
+        return new CompletionBits(days.first() + ((long) from << 6), Arrays.copyOfRange(words, from, to));
+    }
+
+    /**
+     * Заменяет историю битовым снимком.
+     *
+     * @param bits снимок истории
+     */
+    @Override
+    public void load(CompletionBits bits) {
+        days.load(bits.firstDay(), bits.words());
+        weeks = null;
+        size = 0;
+        for (long word : bits.words()) {
+            size += Long.bitCount(word);
+        }
+        long[] words = bits.words();
+        lastDay = size == 0 ? NONE : days.previous(bits.firstDay() + ((long) words.length << 6) - 1);
+    }
+
+    /**
+     * Возвращает длину непрерывной серии отмеченных дней, заканчивающейся указанным днем.
+     *
+     * @param day номер дня от эпохи
+     * @return длина серии или 0, если день не отмечен
+     */
+    @Override
+    public int runEndingAt(long day) {
+        return days.runEndingAt(day);
+    }
+
+    /**
+     * Возвращает длину непрерывной серии отмеченных дней, начинающейся указанным днем.
+     *
+     * @param day номер дня от эпохи
+     * @return длина серии или 0, если день не отмечен
+     */
+    @Override
+    public int runStartingAt(long day) {
+        return days.runStartingAt(day);
+    }
+
+    /**
+     * Проверяет, есть ли отмеченные дни в диапазоне [from, to].
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return {@code true}, если в диапазоне есть хотя бы один отмеченный день
+     */
+    @Override
+    public boolean anyBetween(long from, long to) {
+        long previous = days.previous(to);
+        return previous != NONE && previous >= from;
+    }
+
+    /**
+     * Возвращает количество отмеченных дней в диапазоне [from, to] за O(log n).
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return количество отмеченных дней
+     */
+    @Override
+    public int countBetween(long from, long to) {
+        return days.count(from, to);
+    }
+
+    /**
+     * Возвращает количество семидневных интервалов, начиная с `from`, в которых есть
+     * хотя бы одна отметка из диапазона [from, to]. Последний интервал может быть неполным.
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return количество недель с выполнением
+     */
+    @Override
+    public int countWeeksBetween(long from, long to) {
+        if (from > to || size == 0) {
+            return 0;
+        }
+        if (weeks == null) {
+            buildWeeks();
+        }
+        int shift = (int) Math.floorMod(from, 7L);
+        long firstWeek = Math.floorDiv(from - shift, 7L);
+        long lastWeek = Math.floorDiv(to - shift, 7L);
+        int fullWeeks = weeks[shift].count(firstWeek, lastWeek - 1);
+        return fullWeeks + (anyBetween(lastWeek * 7 + shift, to) ? 1 : 0);
+    }
+
+    /**
+     * Возвращает неизменяемый снимок дат выполнения в порядке возрастания.
+     * Снимок хранит копию битового массива, а объекты LocalDate создаются лениво при обходе.
+     *
+     * @return список дат выполнения
+     */
+    @Override
+    public List<LocalDate> asList() {
+        if (size == 0) {
+            return List.of();
+        }
+        return asList(toBits(), size);
+    }
+
+    /**
+     * Проверяет, что дату можно отметить.
+     *
+     * @param date дата выполнения
+     * @return номер дня от эпохи
+     * @throws IllegalArgumentException если дата вне поддерживаемого диапазона
+     */
+    static long checkDay(LocalDate date) {
+        long day = date.toEpochDay();
+        if (day < MIN_DAY || day > MAX_DAY) {
+            throw new IllegalArgumentException("Дата выполнения должна быть от " + MIN_DATE + " до " + MAX_DATE);
+        }
+        return day;
+    }
+
+    /**
+     * Возвращает ленивое представление битового снимка в виде списка дат.
+     *
+     * @param bits снимок истории
+     * @param size количество отмеченных дней в снимке
+     * @return список дат выполнения
+     */
+    static List<LocalDate> asList(CompletionBits bits, int size) {
+        return size == 0 ? List.of() : new DateList(bits.words(), bits.firstDay(), size);
+    }
+
+    private void buildWeeks() {
+        weeks = new RankedBitSet[7];
+        for (int shift = 0; shift < 7; shift++) {
+            weeks[shift] = new RankedBitSet();
+        }
+        for (long day = lastDay; day != NONE; day = days.previous(day - 1)) {
+            markWeeks(day);
+        }
+    }
+
+    private void markWeeks(long day) {
+        for (int shift = 0; shift < 7; shift++) {
+            weeks[shift].set(Math.floorDiv(day - shift, 7L));
+        }
+    }
+
+    /**
+     * Ленивое представление битового снимка в виде списка дат.
+     */
+    private static final class DateList extends AbstractList<LocalDate> {
+        private final long[] words;
+        private final long firstDay;
+        private final int size;
+
+        DateList(long[] words, long firstDay, int size) {
+            this.words = words;
+            this.firstDay = firstDay;
+            this.size = size;
+        }
+
+        @Override
+        public LocalDate get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int remaining = index;
+            for (int i = 0; ; i++) {
+                int count = Long.bitCount(words[i]);
+                if (remaining < count) {
+                    long word = words[i];
+                    for (int j = 0; j < remaining; j++) {
+                        word &= word - 1;
+                    }
+                    return LocalDate.ofEpochDay(firstDay + ((long) i << 6) + Long.numberOfTrailingZeros(word));
+                }
+                remaining -= count;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof LocalDate date)) {
+                return false;
+            }
+            long offset = date.toEpochDay() - firstDay;
+            return offset >= 0 && (offset >>> 6) < words.length
+                    && (words[(int) (offset >>> 6)] & (1L << offset)) != 0;
+        }
+
+        @Override
+        public Iterator<LocalDate> iterator() {
+            return new Iterator<>() {
+                private int wordIndex;
+                private long word = words[0];
+
+                @Override
+                public boolean hasNext() {
+                    while (word == 0 && wordIndex + 1 < words.length) {
+                        word = words[++wordIndex];
+                    }
+                    return word != 0;
+                }
+
+                @Override
+                public LocalDate next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    long day = firstDay + ((long) wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    return LocalDate.ofEpochDay(day);
+                }
+            };
+        }
+    }
+}
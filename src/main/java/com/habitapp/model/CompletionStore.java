@@ -0,0 +1,133 @@
+package com.habitapp.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Хранилище дат выполнения одной привычки, индексированных номером дня от эпохи.
+ * Реализации не синхронизированы: доступ к ним защищает владеющая ими привычка.
+ *
+ * @see CompletionHistory
+ * @see CompletionArena
+ */
+public interface CompletionStore {
+
+    /**
+     * Отмечает день как выполненный.
+     *
+     * @param date дата выполнения
+     * @return {@code true}, если дата добавлена впервые
+     * @throws IllegalArgumentException если дата вне диапазона от {@link CompletionHistory#MIN_DATE}
+     *                                  до {@link CompletionHistory#MAX_DATE}
+     */
+    boolean add(LocalDate date);
+
+    /**
+     * Проверяет, отмечен ли день как выполненный.
+     *
+     * @param date дата
+     * @return {@code true}, если дата отмечена
+     */
+    default boolean contains(LocalDate date) {
+        return containsDay(date.toEpochDay());
+    }
+
+    /**
+     * Возвращает количество отмеченных дней.
+     *
+     * @return количество дат выполнения
+     */
+    int size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Возвращает номер последнего отмеченного дня.
+     *
+     * @return номер дня от эпохи или {@link CompletionHistory#NONE}, если история пуста
+     */
+    long lastDay();
+
+    /**
+     * Проверяет, отмечен ли день с указанным номером.
+     *
+     * @param day номер дня от эпохи
+     * @return {@code true}, если день отмечен
+     */
+    boolean containsDay(long day);
+
+    /**
+     * Возвращает ближайший отмеченный день, не превышающий указанный.
+     *
+     * @param day номер дня от эпохи
+     * @return номер отмеченного дня или {@link CompletionHistory#NONE}
+     */
+    long previousDay(long day);
+
+    /**
+     * Возвращает битовый снимок истории без пустых слов по краям.
+     *
+     * @return снимок истории
+     */
+    CompletionBits toBits();
+
+    /**
+     * Заменяет историю битовым снимком.
+     *
+     * @param bits снимок истории
+     */
+    void load(CompletionBits bits);
+
+    /**
+     * Возвращает длину непрерывной серии отмеченных дней, заканчивающейся указанным днем.
+     *
+     * @param day номер дня от эпохи
+     * @return длина серии или 0, если день не отмечен
+     */
+    int runEndingAt(long day);
+
+    /**
+     * Возвращает длину непрерывной серии отмеченных дней, начинающейся указанным днем.
+     *
+     * @param day номер дня от эпохи
+     * @return длина серии или 0, если день не отмечен
+     */
+    int runStartingAt(long day);
+
+    /**
+     * Проверяет, есть ли отмеченные дни в диапазоне [from, to].
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return {@code true}, если в диапазоне есть хотя бы один отмеченный день
+     */
+    boolean anyBetween(long from, long to);
+
+    /**
+     * Возвращает количество отмеченных дней в диапазоне [from, to].
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return количество отмеченных дней
+     */
+    int countBetween(long from, long to);
+
+    /**
+     * Возвращает количество семидневных интервалов, начиная с `from`, в которых есть
+     * хотя бы одна отметка из диапазона [from, to]. Последний интервал может быть неполным.
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона
+     * @return количество недель с выполнением
+     */
+    int countWeeksBetween(long from, long to);
+
+    /**
+     * Возвращает неизменяемый снимок дат выполнения в порядке возрастания.
+     *
+     * @return список дат выполнения
+     */
+    List<LocalDate> asList();
+}
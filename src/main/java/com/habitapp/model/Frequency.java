@@ -1,8 +1,16 @@
 package com.habitapp.model;
 
+/**
+ * Вид расписания привычки.
+ * Ежедневная и еженедельная частоты не требуют параметров, остальные виды
+ * задаются расписанием с параметрами, см. {@link Schedule}.
+ */
 public enum Frequency {
     DAILY(1, "Каждый день"),
-    WEEKLY(7, "Каждую неделю");
+    WEEKLY(7, "Каждую неделю"),
+    EVERY_N_DAYS(0, "Каждые N дней"),
+    WEEKDAYS(0, "По дням недели"),
+    TIMES_PER_WEEK(7, "Несколько раз в неделю");
 
     private final int daysInterval;
     private final String description;
@@ -16,7 +24,7 @@ public enum Frequency {
     /**
      * Возвращает интервал в днях для этой частоты.
      *
-     * @return количество дней между повторениями привычки
+     * @return количество дней между повторениями привычки или 0, если интервал задается расписанием
      */
     public int getDaysInterval() {
         return daysInterval;
@@ -1,24 +1,52 @@
 package com.habitapp.model;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 /**
  * Класс для описания привычки.
- * Содержит поля: id, userId, title, description, frequency, completionDates
+ * Содержит поля: id, userId, title, description, schedule, completionDates
+ * Экземпляр можно разделять между потоками: поля видимы всем потокам,
+ * а даты выполнения изменяются и читаются под монитором привычки.
+ * Серии выполнения поддерживаются инкрементально при каждой отметке,
+ * поэтому чтение текущей и самой длинной серии не требует сортировки дат.
+ * Для ежедневной и еженедельной частоты сохраняется прежний расчет серий и процентов,
+ * для остальных расписаний они считаются по периодам расписания.
+ * Идентификаторы привычки и владельца хранятся как 128-битные ключи {@link CompactId},
+ * а строки создаются только при обращении к ним.
+ * Даты выполнения хранятся в куче или, если привычке передано {@link CompletionArena}, вне ее.
  */
 public class Habit {
-    private final String id;
+    // Ключ идентификатора; строка хранится только для идентификаторов, не являющихся UUID
+    private final long idHigh;
+    private final long idLow;
+    private final String idText;
 //    private final int orderNumber;
 //    private static int nextOrderNumber = 1;
-    private final String userId; // Идентификатор пользователя-владельца
-    private String title;
-    private String description;
-    private Frequency frequency;
-    private final List<LocalDate> completionDates;
+    private final long sequence; // Порядковый номер создания, задает порядок при постраничном выводе
+    // Ключ идентификатора пользователя-владельца
+    private final long userIdHigh;
+    private final long userIdLow;
+    private final String userIdText;
+    private volatile String title;
+    private volatile String description;
+    private volatile Schedule schedule;
+    private final CompletionStore completionDates;
+
+    // Серия подряд идущих дней, заканчивающаяся последней отметкой
+    private int lastRun;
+    // Та же серия вместе с предыдущей, если их разделяет ровно один пропущенный день
+    private int lastRunWithGap;
+    private int longestDailyStreak;
+    private int longestWeeklyStreak;
+    // Серия подряд идущих недель с отметками, заканчивающаяся неделей последней отметки
+    private int lastWeekRun;
+    // Серия по неделям или периодам расписания зависит от текущей даты и кэшируется на один день
+    private long cachedStreakDay = CompletionHistory.NONE;
+    private int cachedStreak;
+    // Самая длинная серия периодов расписания; -1, пока не вычислена
+    private int longestScheduledStreak = -1;
 
     /**
      * Конструктор класса Habit.
@@ -29,24 +57,423 @@ public class Habit {
      * @param frequency   частота выполнения
      */
     public Habit(String userId, String title, String description, Frequency frequency) {
-        this.id = UUID.randomUUID().toString();
+        this(UUID.randomUUID().toString(), userId, title, description, frequency);
 //        this.orderNumber = nextOrderNumber++;
-        this.userId = userId;
+    }
+
+    /**
+     * Конструктор класса Habit с известным идентификатором.
+     * Используется при восстановлении сохраненного состояния.
+     *
+     * @param id          идентификатор привычки
+     * @param userId      идентификатор пользователя-владельца привычки
+     * @param title       название привычки
+     * @param description описание привычки
+     * @param frequency   частота выполнения
+     */
+    public Habit(String id, String userId, String title, String description, Frequency frequency) {
+        this(id, userId, title, description, frequency, 0);
+    }
+
+    /**
+     * Конструктор класса Habit с известным идентификатором и порядковым номером создания.
+     *
+     * @param id          идентификатор привычки
+     * @param userId      идентификатор пользователя-владельца привычки
+     * @param title       название привычки
+     * @param description описание привычки
+     * @param frequency   частота выполнения
+     * @param sequence    порядковый номер создания, уникальный в пределах сервиса
+     */
+    public Habit(String id, String userId, String title, String description, Frequency frequency, long sequence) {
+        this(id, userId, title, description, Schedule.of(frequency), sequence);
+    }
+
+    /**
+     * Конструктор класса Habit с произвольным расписанием.
+     *
+     * @param id          идентификатор привычки
+     * @param userId      идентификатор пользователя-владельца привычки
+     * @param title       название привычки
+     * @param description описание привычки
+     * @param schedule    расписание выполнения
+     * @param sequence    порядковый номер создания, уникальный в пределах сервиса
+     */
+    public Habit(String id, String userId, String title, String description, Schedule schedule, long sequence) {
+        this(id, userId, title, description, schedule, sequence, null);
+    }
+
+    /**
+     * Конструктор класса Habit, хранящей даты выполнения вне кучи.
+     *
+     * @param id          идентификатор привычки
+     * @param userId      идентификатор пользователя-владельца привычки
+     * @param title       название привычки
+     * @param description описание привычки
+     * @param schedule    расписание выполнения
+     * @param sequence    порядковый номер создания, уникальный в пределах сервиса
+     * @param arena       хранилище истории выполнения или {@code null} для хранения в куче
+     */
+    public Habit(String id, String userId, String title, String description, Schedule schedule, long sequence,
+                 CompletionArena arena) {
+        this.idHigh = CompactId.high(id);
+        this.idLow = CompactId.low(id);
+        this.idText = CompactId.isCompact(id) ? null : id;
+        this.sequence = sequence;
+        this.userIdHigh = CompactId.high(userId);
+        this.userIdLow = CompactId.low(userId);
+        this.userIdText = CompactId.isCompact(userId) ? null : userId;
         this.title = title;
         this.description = description;
-        this.frequency = frequency;
-        this.completionDates = new ArrayList<>();
+        this.schedule = schedule;
+        this.completionDates = arena == null ? new CompletionHistory() : arena.newHistory();
     }
 
     /**
      * Отмечает привычку как выполненную в указанную дату.
      *
      * @param date дата выполнения привычки
+     * @return {@code true}, если дата отмечена впервые
+     * @throws IllegalArgumentException если дата вне диапазона от {@link CompletionHistory#MIN_DATE}
+     *                                  до {@link CompletionHistory#MAX_DATE}
+     */
+    public synchronized boolean markCompleted(LocalDate date) {
+        long day = date.toEpochDay();
+        long weekStart = mondayOf(day);
+        boolean newWeek = !completionDates.anyBetween(weekStart, weekStart + 6);
+        long previousLastDay = completionDates.lastDay();
+        if (!completionDates.add(date)) {
+            return false;
+        }
+
+        if (previousLastDay == CompletionHistory.NONE || day > previousLastDay) {
+            advance(day, previousLastDay, newWeek);
+        } else {
+            // Отметка задним числом: пересчитываем только затронутые серии
+            int run = completionDates.runEndingAt(day) + completionDates.runStartingAt(day) - 1;
+            longestDailyStreak = Math.max(longestDailyStreak, run);
+            if (day >= previousLastDay - lastRunWithGap - 2) {
+                lastRun = completionDates.runEndingAt(previousLastDay);
+                lastRunWithGap = lastRun + completionDates.runEndingAt(previousLastDay - lastRun - 1);
+            }
+            if (newWeek) {
+                int weeksBefore = weeksEndingAt(weekStart - 7);
+                int weeksAfter = weeksStartingAt(weekStart + 7);
+                longestWeeklyStreak = Math.max(longestWeeklyStreak, weeksBefore + 1 + weeksAfter);
+                if (weekStart + 7L * weeksAfter == mondayOf(previousLastDay)) {
+                    lastWeekRun = weeksBefore + 1 + weeksAfter;
+                }
+            }
+        }
+        resetScheduledStreaks();
+        return true;
+    }
+
+    /**
+     * Возвращает текущую серию выполнения относительно указанной даты.
+     * Для ежедневной привычки значение вычисляется за O(1) из поддерживаемых серий,
+     * для остальных кэшируется до следующей отметки или смены даты.
+     * Серия по расписанию — количество подряд выполненных периодов; текущий период,
+     * который еще не выполнен, серию не прерывает.
+     *
+     * @param today дата, относительно которой считается серия
+     * @return текущая серия
+     */
+    public synchronized int getCurrentStreak(LocalDate today) {
+        long lastDay = completionDates.lastDay();
+        if (lastDay == CompletionHistory.NONE) {
+            return 0;
+        }
+        long todayDay = today.toEpochDay();
+        Frequency frequency = schedule.getFrequency();
+        if (frequency == Frequency.DAILY) {
+            long gap = todayDay - lastDay;
+            if (gap == 0) {
+                return lastRunWithGap;
+            }
+            return gap == 1 ? lastRun : 0;
+        }
+        if (cachedStreakDay != todayDay) {
+            cachedStreak = frequency == Frequency.WEEKLY ? computeWeeklyStreak(todayDay) : computeScheduledStreak(todayDay);
+            cachedStreakDay = todayDay;
+        }
+        return cachedStreak;
+    }
+
+    /**
+     * Возвращает процент выполнения за период [startDate, endDate] за O(log n).
+     * Для ежедневной привычки считаются дни с отметкой, для еженедельной —
+     * семидневные интервалы от начальной даты, в которых есть хотя бы одна отметка.
+     * Для остальных расписаний считаются выполненные периоды, пересекающиеся с диапазоном;
+     * учитываются только отметки внутри диапазона, а обход идет по периодам, а не по дням.
+     *
+     * @param startDate начальная дата периода
+     * @param endDate   конечная дата периода, не раньше начальной
+     * @return процент выполнения
+     */
+    public synchronized double getCompletionPercentage(LocalDate startDate, LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        long totalUnits;
+        long completedUnits;
+
+        Frequency frequency = schedule.getFrequency();
+        if (frequency == Frequency.DAILY) {
+            totalUnits = to - from + 1;
+            completedUnits = completionDates.countBetween(from, to);
+        } else if (frequency == Frequency.WEEKLY) {
+            totalUnits = (to - from) / 7 + 1;
+            completedUnits = completionDates.countWeeksBetween(from, to);
+        } else {
+            totalUnits = schedule.countPeriods(from, to);
+            completedUnits = countCompletedPeriods(from, to);
+        }
+
+        return totalUnits == 0 ? 0 : ((double) completedUnits / totalUnits) * 100;
+    }
+
+    /**
+     * Возвращает самую длинную серию выполнения за всю историю:
+     * подряд идущих дней для ежедневной привычки, недель для еженедельной
+     * или выполненных периодов для остальных расписаний.
+     *
+     * @return самая длинная серия
+     */
+    public synchronized int getLongestStreak() {
+        Frequency frequency = schedule.getFrequency();
+        if (frequency == Frequency.DAILY) {
+            return longestDailyStreak;
+        }
+        if (frequency == Frequency.WEEKLY) {
+            return longestWeeklyStreak;
+        }
+        if (longestScheduledStreak < 0) {
+            longestScheduledStreak = computeLongestScheduledStreak();
+        }
+        return longestScheduledStreak;
+    }
+
+    /**
+     * Возвращает количество дат выполнения.
+     *
+     * @return количество отмеченных дат
+     */
+    public synchronized int getCompletionCount() {
+        return completionDates.size();
+    }
+
+    /**
+     * Возвращает количество дат выполнения в периоде [startDate, endDate] за O(log n).
+     *
+     * @param startDate начальная дата периода
+     * @param endDate   конечная дата периода
+     * @return количество отмеченных дат в периоде
+     */
+    public synchronized int getCompletionCount(LocalDate startDate, LocalDate endDate) {
+        return completionDates.countBetween(startDate.toEpochDay(), endDate.toEpochDay());
+    }
+
+    /**
+     * Возвращает битовый снимок дат выполнения для сохранения.
+     *
+     * @return снимок истории выполнения
+     */
+    public synchronized CompletionBits getCompletionBits() {
+        return completionDates.toBits();
+    }
+
+    /**
+     * Заменяет историю выполнения сохраненным снимком и пересчитывает серии
+     * одним проходом по отмеченным дням.
+     *
+     * @param bits снимок истории выполнения
      */
-    public void markCompleted(LocalDate date) {
-        if (!completionDates.contains(date)) {
-            completionDates.add(date);
+    public synchronized void restoreCompletions(CompletionBits bits) {
+        completionDates.load(bits);
+        lastRun = 0;
+        lastRunWithGap = 0;
+        longestDailyStreak = 0;
+        longestWeeklyStreak = 0;
+        lastWeekRun = 0;
+        resetScheduledStreaks();
+        long previous = CompletionHistory.NONE;
+        long[] words = bits.words();
+        for (int i = 0; i < words.length; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                long day = bits.firstDay() + ((long) i << 6) + Long.numberOfTrailingZeros(word);
+                advance(day, previous, previous == CompletionHistory.NONE || mondayOf(day) != mondayOf(previous));
+                previous = day;
+            }
+        }
+    }
+
+    /**
+     * Возвращает дату последнего выполнения привычки.
+     *
+     * @return дата последнего выполнения или {@code null}, если отметок нет
+     */
+    public synchronized LocalDate getLastCompletionDate() {
+        long lastDay = completionDates.lastDay();
+        return lastDay == CompletionHistory.NONE ? null : LocalDate.ofEpochDay(lastDay);
+    }
+
+    // Продлевает серии отметкой после последней за O(1)
+    private void advance(long day, long previousLastDay, boolean newWeek) {
+        long weekStart = mondayOf(day);
+        if (day == previousLastDay + 1) {
+            lastRun++;
+            lastRunWithGap++;
+        } else if (day == previousLastDay + 2) {
+            lastRunWithGap = lastRun + 1;
+            lastRun = 1;
+        } else {
+            lastRun = 1;
+            lastRunWithGap = 1;
+        }
+        longestDailyStreak = Math.max(longestDailyStreak, lastRun);
+        if (newWeek) {
+            boolean nextWeek = previousLastDay != CompletionHistory.NONE
+                    && weekStart == mondayOf(previousLastDay) + 7;
+            lastWeekRun = nextWeek ? lastWeekRun + 1 : 1;
+            longestWeeklyStreak = Math.max(longestWeeklyStreak, lastWeekRun);
+        }
+    }
+
+    // Количество подряд идущих недель с отметками, заканчивающихся неделей с указанного понедельника
+    private int weeksEndingAt(long weekStart) {
+        int run = 0;
+        for (long start = weekStart; completionDates.anyBetween(start, start + 6); start -= 7) {
+            run++;
+        }
+        return run;
+    }
+
+    // Количество подряд идущих недель с отметками, начинающихся неделей с указанного понедельника
+    private int weeksStartingAt(long weekStart) {
+        int run = 0;
+        for (long start = weekStart; completionDates.anyBetween(start, start + 6); start += 7) {
+            run++;
+        }
+        return run;
+    }
+
+    private static long mondayOf(long day) {
+        return Math.floorDiv(day + 3, 7) * 7 - 3; // 1970-01-01 был четвергом
+    }
+
+    // Обходит отметки от последней к ранним, пока недели идут без пропусков
+    private int computeWeeklyStreak(long todayDay) {
+        int streak = 0;
+        for (long day = completionDates.lastDay(); day != CompletionHistory.NONE;
+             day = completionDates.previousDay(day - 1)) {
+            long weeksBetween = (todayDay - day) / 7 - streak;
+            if (weeksBetween == 0 || weeksBetween == 1) {
+                streak++;
+            } else {
+                break;
+            }
         }
+        return streak;
+    }
+
+    // Обходит периоды расписания от текущего к ранним, пока они выполнены
+    private int computeScheduledStreak(long todayDay) {
+        long period = schedule.periodStart(todayDay);
+        if (period == Schedule.NONE) {
+            period = schedule.previousPeriodStart(todayDay);
+        } else if (!isPeriodCompleted(period)) {
+            period = schedule.previousPeriodStart(period);
+        }
+        int streak = 0;
+        for (; isPeriodCompleted(period); period = schedule.previousPeriodStart(period)) {
+            streak++;
+        }
+        return streak;
+    }
+
+    // Обходит отметки от последней к ранним и считает подряд идущие выполненные периоды
+    private int computeLongestScheduledStreak() {
+        int longest = 0;
+        int run = 0;
+        long runStart = Schedule.NONE; // самый ранний период текущей серии
+        long period = Schedule.NONE;
+        int marks = 0;
+        for (long day = completionDates.lastDay(); ; day = completionDates.previousDay(day - 1)) {
+            long dayPeriod = day == CompletionHistory.NONE ? Schedule.NONE : schedule.periodStart(day);
+            if (day != CompletionHistory.NONE && (dayPeriod == Schedule.NONE || dayPeriod == period)) {
+                if (dayPeriod != Schedule.NONE) {
+                    marks++;
+                }
+                continue;
+            }
+            if (period != Schedule.NONE) {
+                if (marks < schedule.required()) {
+                    run = 0;
+                } else {
+                    run = run > 0 && schedule.previousPeriodStart(runStart) == period ? run + 1 : 1;
+                    runStart = period;
+                    longest = Math.max(longest, run);
+                }
+            }
+            if (day == CompletionHistory.NONE) {
+                return longest;
+            }
+            period = dayPeriod;
+            marks = 1;
+        }
+    }
+
+    // Количество выполненных периодов, пересекающихся с [from, to], по отметкам внутри диапазона
+    private long countCompletedPeriods(long from, long to) {
+        long period = schedule.periodStart(from);
+        if (period == Schedule.NONE) {
+            period = schedule.nextPeriodStart(from);
+        }
+        long completed = 0;
+        for (; period <= to; period = schedule.nextPeriodStart(period)) {
+            long start = Math.max(period, from);
+            long end = Math.min(schedule.periodEnd(period), to);
+            if (completionDates.countBetween(start, end) >= schedule.required()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    private boolean isPeriodCompleted(long period) {
+        long end = schedule.periodEnd(period);
+        return schedule.required() == 1
+                ? completionDates.anyBetween(period, end)
+                : completionDates.countBetween(period, end) >= schedule.required();
+    }
+
+    private void resetScheduledStreaks() {
+        cachedStreakDay = CompletionHistory.NONE;
+        longestScheduledStreak = -1;
+    }
+
+    /**
+     * Проверяет, выполнена ли привычка в указанную дату.
+     *
+     * @param date дата
+     * @return {@code true}, если привычка отмечена в эту дату
+     */
+    public synchronized boolean isCompletedOn(LocalDate date) {
+        return completionDates.contains(date);
+    }
+
+    /**
+     * Проверяет, добавит ли {@link #markCompleted(LocalDate)} новую отметку, не изменяя историю.
+     * Позволяет записать изменение в журнал до его применения.
+     *
+     * @param date дата выполнения привычки
+     * @return {@code true}, если дата еще не отмечена
+     * @throws IllegalArgumentException если дата вне диапазона от {@link CompletionHistory#MIN_DATE}
+     *                                  до {@link CompletionHistory#MAX_DATE}
+     */
+    public synchronized boolean wouldMarkCompleted(LocalDate date) {
+        CompletionHistory.checkDay(date);
+        return !completionDates.contains(date);
     }
 
     // Геттеры и сеттеры
@@ -55,11 +482,31 @@ public class Habit {
 //    }
 
     public String getId() {
-        return id;
+        return idText != null ? idText : CompactId.toString(idHigh, idLow);
+    }
+
+    public long getIdHigh() {
+        return idHigh;
+    }
+
+    public long getIdLow() {
+        return idLow;
+    }
+
+    public long getSequence() {
+        return sequence;
     }
 
     public String getUserId() {
-        return userId;
+        return userIdText != null ? userIdText : CompactId.toString(userIdHigh, userIdLow);
+    }
+
+    public long getUserIdHigh() {
+        return userIdHigh;
+    }
+
+    public long getUserIdLow() {
+        return userIdLow;
     }
 
     public String getTitle() {
@@ -79,20 +526,30 @@ public class Habit {
     }
 
     public Frequency getFrequency() {
-        return frequency;
+        return schedule.getFrequency();
+    }
+
+    public synchronized void setFrequency(Frequency frequency) {
+        setSchedule(Schedule.of(frequency));
+    }
+
+    public Schedule getSchedule() {
+        return schedule;
     }
 
-    public void setFrequency(Frequency frequency) {
-        this.frequency = frequency;
+    public synchronized void setSchedule(Schedule schedule) {
+        this.schedule = schedule;
+        resetScheduledStreaks();
     }
 
     /**
-     * Возвращает копию списка дат выполнения привычки.
+     * Возвращает неизменяемый снимок дат выполнения привычки в порядке возрастания.
+     * Даты создаются лениво при обходе списка.
      *
      * @return Список дат выполнения
      */
-    public List<LocalDate> getCompletionDates() {
-        return Collections.unmodifiableList(completionDates);
+    public synchronized List<LocalDate> getCompletionDates() {
+        return completionDates.asList();
     }
 
     @Override
@@ -101,7 +558,7 @@ public class Habit {
                 "ID: " + getId() +
                 ", Название: " + getTitle() +
                 ", Описание: " + getDescription() +
-                ", Частота: " + getFrequency().getDescription() +
+                ", Частота: " + getSchedule().getDescription() +
                 ", Даты завершения: " + getCompletionDates() +
                 '}';
     }
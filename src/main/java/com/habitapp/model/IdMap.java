@@ -0,0 +1,218 @@
+package com.habitapp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Хеш-таблица с открытой адресацией по 128-битным ключам {@link CompactId}.
+ * Ключи хранятся парами в одном массиве long рядом друг с другом, а значения — в параллельном
+ * массиве ссылок, поэтому запись не создает объектов-узлов, а поиск просматривает соседние ячейки
+ * линейным пробированием. Удаление сдвигает следующие записи цепочки назад и не оставляет надгробий.
+ * Таблица удваивается при заполнении на три четверти.
+ * <p>
+ * Таблица не потокобезопасна. Чтение не бросает исключений и завершается, даже если
+ * выполняется одновременно с записью, поэтому его можно проверять оптимистичной
+ * блокировкой, как {@link java.util.concurrent.locks.StampedLock#tryOptimisticRead()}.
+ *
+ * @param <V> Тип значений; {@code null} значением быть не может.
+ */
+public final class IdMap<V> {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public IdMap() {
+        this(0);
+    }
+
+    /**
+     * Создает таблицу, вмещающую указанное количество записей без расширения.
+     *
+     * @param expectedSize Ожидаемое количество записей.
+     */
+    public IdMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3L / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity * 2];
+        this.values = new Object[capacity];
+    }
+
+    /**
+     * Возвращает значение по строковому идентификатору, не создавая объектов для UUID.
+     *
+     * @param id Идентификатор.
+     * @return Значение или {@code null}, если его нет.
+     */
+    public V get(String id) {
+        if (CompactId.isCompact(id)) {
+            return get(CompactId.parseHigh(id), CompactId.parseLow(id));
+        }
+        UUID key = CompactId.find(id);
+        return key != null ? get(key.getMostSignificantBits(), key.getLeastSignificantBits()) : null;
+    }
+
+    /**
+     * Возвращает значение по ключу.
+     *
+     * @param high Старшие 64 бита ключа.
+     * @param low  Младшие 64 бита ключа.
+     * @return Значение или {@code null}, если его нет.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long high, long low) {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        // Массивы разных поколений видны только читателю, конкурирующему с расширением
+        if (keys.length != values.length * 2) {
+            return null;
+        }
+        int mask = values.length - 1;
+        int index = hash(high, low) & mask;
+        for (int probes = 0; probes < values.length; probes++) {
+            Object value = values[index];
+            if (value == null) {
+                return null;
+            }
+            if (keys[index * 2] == high && keys[index * 2 + 1] == low) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Добавляет или заменяет значение.
+     *
+     * @param high  Старшие 64 бита ключа.
+     * @param low   Младшие 64 бита ключа.
+     * @param value Значение.
+     * @return Прежнее значение или {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long high, long low, V value) {
+        Objects.requireNonNull(value);
+        int mask = values.length - 1;
+        int index = hash(high, low) & mask;
+        while (values[index] != null) {
+            if (keys[index * 2] == high && keys[index * 2 + 1] == low) {
+                V previous = (V) values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index * 2] = high;
+        keys[index * 2 + 1] = low;
+        values[index] = value;
+        if (++size > values.length * 3 / 4) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Удаляет значение.
+     *
+     * @param high Старшие 64 бита ключа.
+     * @param low  Младшие 64 бита ключа.
+     * @return Удаленное значение или {@code null}, если его не было.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long high, long low) {
+        int mask = values.length - 1;
+        int index = hash(high, low) & mask;
+        while (values[index] != null) {
+            if (keys[index * 2] == high && keys[index * 2 + 1] == low) {
+                V removed = (V) values[index];
+                shiftBack(index, mask);
+                size--;
+                return removed;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Передает обработчику все значения в порядке ячеек таблицы.
+     *
+     * @param action Обработчик значения.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Возвращает копию всех значений.
+     *
+     * @return Значения в порядке ячеек таблицы.
+     */
+    public List<V> values() {
+        List<V> copy = new ArrayList<>(size);
+        forEach(copy::add);
+        return copy;
+    }
+
+    // Освобождает ячейку, перенося в нее записи цепочки, домашняя ячейка которых не позже освобождаемой
+    private void shiftBack(int free, int mask) {
+        int index = free;
+        while (true) {
+            index = (index + 1) & mask;
+            if (values[index] == null) {
+                break;
+            }
+            int home = hash(keys[index * 2], keys[index * 2 + 1]) & mask;
+            if (((index - home) & mask) >= ((index - free) & mask)) {
+                keys[free * 2] = keys[index * 2];
+                keys[free * 2 + 1] = keys[index * 2 + 1];
+                values[free] = values[index];
+                free = index;
+            }
+        }
+        values[free] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] newKeys = new long[capacity * 2];
+        Object[] newValues = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i * 2], oldKeys[i * 2 + 1]) & mask;
+                while (newValues[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                newKeys[index * 2] = oldKeys[i * 2];
+                newKeys[index * 2 + 1] = oldKeys[i * 2 + 1];
+                newValues[index] = oldValues[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    // Суррогатные ключи идут подряд, поэтому биты перемешиваются умножением
+    private static int hash(long high, long low) {
+        long mixed = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
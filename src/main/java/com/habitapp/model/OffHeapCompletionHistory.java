@@ -0,0 +1,320 @@
+package com.habitapp.model;
+
+import java.lang.ref.Cleaner;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * История выполнения, биты которой хранятся в слэбе {@link CompletionArena}.
+ * Слэб устроен так же, как массив слов {@link RankedBitSet}: слово 0 хранит номер дня,
+ * соответствующий первому биту (кратный 64), слово 1 — количество занятых слов, далее идут сами слова.
+ * Индекса префиксных сумм нет, чтобы в куче оставался только дескриптор, поэтому подсчеты
+ * линейны, а не логарифмичны, как в {@link CompletionHistory}: {@link #countBetween} суммирует биты
+ * слов диапазона, а {@link #countWeeksBetween} проверяет каждую неделю диапазона по одному-двум словам.
+ * Класс не синхронизирован: доступ к нему защищает владеющая им привычка.
+ */
+final class OffHeapCompletionHistory implements CompletionStore {
+    private static final long NONE = CompletionHistory.NONE;
+    private static final int HEADER = 2;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final CompletionArena arena;
+    // Дескриптор слэба в массиве, общем с действием очистки; 0, пока история пуста
+    private final long[] slab = new long[1];
+    private long lastDay = NONE;
+    private int size;
+
+    OffHeapCompletionHistory(CompletionArena arena) {
+        this.arena = arena;
+        CLEANER.register(this, new Release(arena, slab));
+    }
+
+    @Override
+    public boolean add(LocalDate date) {
+        long day = CompletionHistory.checkDay(date);
+        ensureCapacity(day);
+        long offset = day - first();
+        int index = HEADER + (int) (offset >>> 6);
+        long word = arena.getLong(slab[0], index);
+        long mask = 1L << offset;
+        if ((word & mask) != 0) {
+            return false;
+        }
+        arena.putLong(slab[0], index, word | mask);
+        size++;
+        lastDay = Math.max(lastDay, day);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long lastDay() {
+        return lastDay;
+    }
+
+    @Override
+    public boolean containsDay(long day) {
+        if (slab[0] == 0 || day < first()) {
+            return false;
+        }
+        long offset = day - first();
+        if ((offset >>> 6) >= used()) {
+            return false;
+        }
+        return (word((int) (offset >>> 6)) & (1L << offset)) != 0;
+    }
+
+    @Override
+    public long previousDay(long day) {
+        if (slab[0] == 0 || day < first()) {
+            return NONE;
+        }
+        long offset = Math.min(day - first(), ((long) used() << 6) - 1);
+        int index = (int) (offset >>> 6);
+        long word = word(index) & (-1L >>> (63 - (offset & 63)));
+        while (word == 0) {
+            if (--index < 0) {
+                return NONE;
+            }
+            word = word(index);
+        }
+        return first() + ((long) index << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    @Override
+    public CompletionBits toBits() {
+        if (size == 0) {
+            return new CompletionBits(0, new long[0]);
+        }
+        int from = 0;
+        while (word(from) == 0) {
+            from++;
+        }
+        int to = used();
+        while (word(to - 1) == 0) {
+            to--;
+        }
+        long[] words = new long[to - from];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = word(from + i);
+        }
+        return new CompletionBits(first() + ((long) from << 6), words);
+    }
+
+    @Override
+    public void load(CompletionBits bits) {
+        long[] words = bits.words();
+        release();
+        size = 0;
+        lastDay = NONE;
+        if (words.length == 0) {
+            return;
+        }
+        long handle = arena.allocate(HEADER + words.length);
+        arena.putLong(handle, 0, bits.firstDay());
+        arena.putLong(handle, 1, words.length);
+        for (int i = 0; i < words.length; i++) {
+            arena.putLong(handle, HEADER + i, words[i]);
+            size += Long.bitCount(words[i]);
+        }
+        slab[0] = handle;
+        lastDay = size == 0 ? NONE : previousDay(bits.firstDay() + ((long) words.length << 6) - 1);
+    }
+
+    @Override
+    public int runEndingAt(long day) {
+        int run = 0;
+        while (containsDay(day)) {
+            long offset = day - first();
+            int bit = (int) (offset & 63);
+            long word = word((int) (offset >>> 6)) << (63 - bit);
+            int ones = Math.min(Long.numberOfLeadingZeros(~word), bit + 1);
+            run += ones;
+            day -= ones;
+            if (ones <= bit) {
+                break;
+            }
+        }
+        return run;
+    }
+
+    @Override
+    public int runStartingAt(long day) {
+        int run = 0;
+        while (containsDay(day)) {
+            long offset = day - first();
+            int bit = (int) (offset & 63);
+            long word = word((int) (offset >>> 6)) >>> bit;
+            int ones = Math.min(Long.numberOfTrailingZeros(~word), 64 - bit);
+            run += ones;
+            day += ones;
+            if (ones < 64 - bit) {
+                break;
+            }
+        }
+        return run;
+    }
+
+    @Override
+    public boolean anyBetween(long from, long to) {
+        // Просматриваются только слова диапазона, а не все слова до предыдущей отметки
+        if (slab[0] == 0 || from > to) {
+            return false;
+        }
+        long first = first();
+        from = Math.max(from, first);
+        to = Math.min(to, first + ((long) used() << 6) - 1);
+        if (from > to) {
+            return false;
+        }
+        int fromIndex = (int) ((from - first) >>> 6);
+        int toIndex = (int) ((to - first) >>> 6);
+        long fromMask = -1L << (from - first);
+        long toMask = -1L >>> (63 - ((to - first) & 63));
+        if (fromIndex == toIndex) {
+            return (word(fromIndex) & fromMask & toMask) != 0;
+        }
+        if ((word(fromIndex) & fromMask) != 0 || (word(toIndex) & toMask) != 0) {
+            return true;
+        }
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            if (word(i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int countBetween(long from, long to) {
+        if (slab[0] == 0 || from > to) {
+            return 0;
+        }
+        long first = first();
+        long last = first + ((long) used() << 6) - 1;
+        from = Math.max(from, first);
+        to = Math.min(to, last);
+        if (from > to) {
+            return 0;
+        }
+        int fromIndex = (int) ((from - first) >>> 6);
+        int toIndex = (int) ((to - first) >>> 6);
+        long fromMask = -1L << (from - first);
+        long toMask = -1L >>> (63 - ((to - first) & 63));
+        if (fromIndex == toIndex) {
+            return Long.bitCount(word(fromIndex) & fromMask & toMask);
+        }
+        int count = Long.bitCount(word(fromIndex) & fromMask) + Long.bitCount(word(toIndex) & toMask);
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            count += Long.bitCount(word(i));
+        }
+        return count;
+    }
+
+    @Override
+    public int countWeeksBetween(long from, long to) {
+        int weeks = 0;
+        for (long start = from; start <= to && size > 0; start += 7) {
+            if (anyBetween(start, Math.min(start + 6, to))) {
+                weeks++;
+            }
+        }
+        return weeks;
+    }
+
+    @Override
+    public List<LocalDate> asList() {
+        return CompletionHistory.asList(toBits(), size);
+    }
+
+    private long first() {
+        return arena.getLong(slab[0], 0);
+    }
+
+    private int used() {
+        return (int) arena.getLong(slab[0], 1);
+    }
+
+    private long word(int index) {
+        return arena.getLong(slab[0], HEADER + index);
+    }
+
+    // Расширяет слэб в нужную сторону с удвоением; выросший слэб переносится в слэб следующего размера
+    private void ensureCapacity(long day) {
+        if (slab[0] == 0) {
+            long handle = arena.allocate(HEADER + 1);
+            arena.putLong(handle, 0, Math.floorDiv(day, 64) * 64);
+            arena.putLong(handle, 1, 1);
+            arena.putLong(handle, HEADER, 0);
+            slab[0] = handle;
+            return;
+        }
+        long first = first();
+        int used = used();
+        int shift;
+        int grownUsed;
+        if (day < first) {
+            int missing = (int) ((first - day + 63) >>> 6);
+            shift = Math.max(missing, used);
+            grownUsed = used + shift;
+        } else if (((day - first) >>> 6) >= used) {
+            shift = 0;
+            grownUsed = Math.max((int) ((day - first) >>> 6) + 1, used * 2);
+        } else {
+            return;
+        }
+        long handle = slab[0];
+        if (shift > 0 || HEADER + grownUsed > CompletionArena.capacity(handle)) {
+            handle = arena.allocate(HEADER + grownUsed);
+        }
+        // Слово копируется с конца, поэтому сдвиг внутри того же слэба не затирает непрочитанные слова
+        for (int i = used - 1; i >= 0; i--) {
+            arena.putLong(handle, HEADER + shift + i, arena.getLong(slab[0], HEADER + i));
+        }
+        // Переиспользованный слэб содержит чужие биты, поэтому новые слова обнуляются
+        for (int i = 0; i < shift; i++) {
+            arena.putLong(handle, HEADER + i, 0);
+        }
+        for (int i = shift + used; i < grownUsed; i++) {
+            arena.putLong(handle, HEADER + i, 0);
+        }
+        arena.putLong(handle, 0, first - ((long) shift << 6));
+        arena.putLong(handle, 1, grownUsed);
+        if (handle != slab[0]) {
+            arena.free(slab[0]);
+            slab[0] = handle;
+        }
+    }
+
+    private void release() {
+        if (slab[0] != 0) {
+            arena.free(slab[0]);
+            slab[0] = 0;
+        }
+    }
+
+    /**
+     * Возвращает слэб недостижимой истории в хранилище. Не ссылается на саму историю,
+     * иначе она никогда не стала бы недостижимой.
+     */
+    private static final class Release implements Runnable {
+        private final CompletionArena arena;
+        private final long[] slab;
+
+        Release(CompletionArena arena, long[] slab) {
+            this.arena = arena;
+            this.slab = slab;
+        }
+
+        @Override
+        public void run() {
+            if (slab[0] != 0) {
+                arena.free(slab[0]);
+            }
+        }
+    }
+}
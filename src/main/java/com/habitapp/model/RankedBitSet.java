@@ -0,0 +1,185 @@
+package com.habitapp.model;
+
+import java.util.Arrays;
+
+/**
+ * Растущий в обе стороны битовый набор с индексом префиксных сумм.
+ * Дерево Фенвика `tree` хранит количество установленных битов по 64-битным словам,
+ * поэтому подсчет битов в любом диапазоне выполняется за O(log n)
+ * без промежуточных аллокаций, а индекс занимает полбита на позицию.
+ */
+final class RankedBitSet {
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final long[] EMPTY_WORDS = new long[0];
+    private static final int[] EMPTY_TREE = new int[1];
+
+    private long[] words = EMPTY_WORDS;
+    private int[] tree = EMPTY_TREE; // 1-based дерево Фенвика по словам
+    private long first; // позиция, соответствующая младшему биту words[0]
+
+    /**
+     * Устанавливает бит.
+     *
+     * @return {@code true}, если бит не был установлен ранее
+     */
+    boolean set(long position) {
+        ensureCapacity(position);
+        int index = (int) ((position - first) >>> 6);
+        long mask = 1L << (position - first);
+        if ((words[index] & mask) != 0) {
+            return false;
+        }
+        words[index] |= mask;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i]++;
+        }
+        return true;
+    }
+
+    boolean get(long position) {
+        if (position < first || words.length == 0) {
+            return false;
+        }
+        long offset = position - first;
+        if ((offset >>> 6) >= words.length) {
+            return false;
+        }
+        return (words[(int) (offset >>> 6)] & (1L << offset)) != 0;
+    }
+
+    /**
+     * Возвращает количество установленных битов в диапазоне [from, to].
+     */
+    int count(long from, long to) {
+        if (from > to) {
+            return 0;
+        }
+        return rank(to) - rank(from - 1);
+    }
+
+    /**
+     * Возвращает ближайшую установленную позицию, не превышающую указанную, или {@link #NONE}.
+     */
+    long previous(long position) {
+        if (words.length == 0 || position < first) {
+            return NONE;
+        }
+        long offset = Math.min(position - first, ((long) words.length << 6) - 1);
+        int index = (int) (offset >>> 6);
+        int bit = (int) (offset & 63);
+        long word = words[index] & (-1L >>> (63 - bit));
+        while (word == 0) {
+            if (--index < 0) {
+                return NONE;
+            }
+            word = words[index];
+        }
+        return first + ((long) index << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+
+    /**
+     * Заменяет содержимое набора словами, младший бит первого из которых соответствует позиции `first`.
+     * Позиция должна быть кратна 64.
+     */
+    void load(long first, long[] words) {
+        this.first = first;
+        this.words = words.clone();
+        rebuildTree();
+    }
+
+    /**
+     * Возвращает длину непрерывной серии установленных битов, заканчивающейся позицией.
+     */
+    int runEndingAt(long position) {
+        int run = 0;
+        while (get(position)) {
+            long offset = position - first;
+            int bit = (int) (offset & 63);
+            long word = words[(int) (offset >>> 6)] << (63 - bit);
+            int ones = Math.min(Long.numberOfLeadingZeros(~word), bit + 1);
+            run += ones;
+            position -= ones;
+            if (ones <= bit) {
+                break;
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Возвращает длину непрерывной серии установленных битов, начинающейся с позиции.
+     */
+    int runStartingAt(long position) {
+        int run = 0;
+        while (get(position)) {
+            long offset = position - first;
+            int bit = (int) (offset & 63);
+            long word = words[(int) (offset >>> 6)] >>> bit;
+            int ones = Math.min(Long.numberOfTrailingZeros(~word), 64 - bit);
+            run += ones;
+            position += ones;
+            if (ones < 64 - bit) {
+                break;
+            }
+        }
+        return run;
+    }
+
+    long first() {
+        return first;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    // Количество установленных битов на позициях не больше указанной
+    private int rank(long position) {
+        if (words.length == 0 || position < first) {
+            return 0;
+        }
+        long offset = position - first;
+        int index = (int) Math.min(offset >>> 6, words.length);
+        int rank = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            rank += tree[i];
+        }
+        if (index < words.length) {
+            rank += Long.bitCount(words[index] & (-1L >>> (63 - (offset & 63))));
+        }
+        return rank;
+    }
+
+    // Расширяет массив в нужную сторону с удвоением и перестраивает индекс за O(n)
+    private void ensureCapacity(long position) {
+        if (words.length == 0) {
+            first = Math.floorDiv(position, 64) * 64;
+            words = new long[1];
+        } else if (position < first) {
+            int missing = (int) ((first - position + 63) >>> 6);
+            int extra = Math.max(missing, words.length);
+            long[] grown = new long[words.length + extra];
+            System.arraycopy(words, 0, grown, extra, words.length);
+            words = grown;
+            first -= (long) extra << 6;
+        } else if (((position - first) >>> 6) >= words.length) {
+            int index = (int) ((position - first) >>> 6);
+            words = Arrays.copyOf(words, Math.max(index + 1, words.length * 2));
+        } else {
+            return;
+        }
+        rebuildTree();
+    }
+
+    private void rebuildTree() {
+        tree = new int[words.length + 1];
+        for (int i = 1; i < tree.length; i++) {
+            tree[i] += Long.bitCount(words[i - 1]);
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,403 @@
+package com.habitapp.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Расписание выполнения привычки.
+ * Расписание делит календарь на периоды и задает, сколько отметок нужно в каждом периоде:
+ * окна по N дней, выбранные дни недели или календарные недели с понедельника с заданным
+ * количеством выполнений. Начало периода, соседние периоды и количество периодов
+ * в диапазоне вычисляются за O(1), поэтому серии и проценты выполнения обходят только периоды,
+ * а не календарные дни. Дни считаются номерами от эпохи ({@code LocalDate.toEpochDay()}).
+ * Ежедневное расписание и расписание «раз в неделю» соответствуют частотам
+ * {@link Frequency#DAILY} и {@link Frequency#WEEKLY}.
+ */
+public sealed interface Schedule permits Schedule.EveryNDays, Schedule.OnWeekdays, Schedule.TimesPerWeek {
+    /**
+     * Значение, возвращаемое вместо номера дня, если день не входит ни в один период.
+     */
+    long NONE = CompletionHistory.NONE;
+
+    /**
+     * Ежедневное расписание.
+     */
+    Schedule DAILY = new EveryNDays(1, 0);
+
+    /**
+     * Одно выполнение в календарную неделю.
+     */
+    Schedule WEEKLY = new TimesPerWeek(1);
+
+    /**
+     * Возвращает расписание для частоты без параметров.
+     *
+     * @param frequency частота {@link Frequency#DAILY} или {@link Frequency#WEEKLY}
+     * @return расписание
+     * @throws IllegalArgumentException если частоте нужны параметры расписания
+     */
+    static Schedule of(Frequency frequency) {
+        return switch (frequency) {
+            case DAILY -> DAILY;
+            case WEEKLY -> WEEKLY;
+            default -> throw new IllegalArgumentException("Для частоты \"" + frequency.getDescription()
+                    + "\" нужны параметры расписания");
+        };
+    }
+
+    /**
+     * Создает расписание «каждые N дней», отсчитываемое от указанной даты.
+     *
+     * @param days  длина окна в днях
+     * @param start любая дата, с которой начинается окно
+     * @return расписание
+     * @throws IllegalArgumentException если длина окна не положительна
+     */
+    static Schedule everyNDays(int days, LocalDate start) {
+        return new EveryNDays(days, start.toEpochDay());
+    }
+
+    /**
+     * Создает расписание по выбранным дням недели.
+     *
+     * @param days дни недели
+     * @return расписание
+     * @throws IllegalArgumentException если не выбран ни один день
+     */
+    static Schedule onWeekdays(Set<DayOfWeek> days) {
+        int mask = 0;
+        for (DayOfWeek day : days) {
+            mask |= 1 << (day.getValue() - 1);
+        }
+        return new OnWeekdays(mask);
+    }
+
+    /**
+     * Создает расписание «X раз в неделю».
+     *
+     * @param times количество выполнений в календарную неделю, от 1 до 7
+     * @return расписание
+     * @throws IllegalArgumentException если количество выполнений некорректно
+     */
+    static Schedule timesPerWeek(int times) {
+        return new TimesPerWeek(times);
+    }
+
+    /**
+     * Восстанавливает расписание из строки, полученной от {@link #encode()}.
+     * Строки {@code DAILY} и {@code WEEKLY} прежнего формата читаются как соответствующие расписания.
+     *
+     * @param value строковое представление
+     * @return расписание
+     * @throws IllegalArgumentException если строка некорректна
+     */
+    static Schedule parse(String value) {
+        String[] parts = value.split(":");
+        Frequency frequency = Frequency.valueOf(parts[0]);
+        return switch (frequency) {
+            case DAILY, WEEKLY -> of(frequency);
+            case EVERY_N_DAYS -> new EveryNDays(Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+            case WEEKDAYS -> {
+                Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+                for (String day : parts[1].split(",")) {
+                    days.add(DayOfWeek.valueOf(day));
+                }
+                yield onWeekdays(days);
+            }
+            case TIMES_PER_WEEK -> new TimesPerWeek(Integer.parseInt(parts[1]));
+        };
+    }
+
+    /**
+     * Возвращает вид расписания.
+     *
+     * @return частота
+     */
+    Frequency getFrequency();
+
+    /**
+     * Возвращает описание расписания для пользователя.
+     *
+     * @return строка с описанием
+     */
+    String getDescription();
+
+    /**
+     * Возвращает строковое представление расписания для сохранения.
+     *
+     * @return строковое представление
+     */
+    String encode();
+
+    /**
+     * Возвращает количество отметок, после которого период считается выполненным.
+     *
+     * @return количество отметок
+     */
+    int required();
+
+    /**
+     * Возвращает первый день периода, содержащего указанный день.
+     *
+     * @param day номер дня
+     * @return номер первого дня периода или {@link #NONE}, если день не входит в расписание
+     */
+    long periodStart(long day);
+
+    /**
+     * Возвращает последний день периода.
+     *
+     * @param periodStart номер первого дня периода
+     * @return номер последнего дня периода
+     */
+    long periodEnd(long periodStart);
+
+    /**
+     * Возвращает первый день ближайшего периода, начинающегося после указанного дня.
+     *
+     * @param day номер дня
+     * @return номер первого дня следующего периода
+     */
+    long nextPeriodStart(long day);
+
+    /**
+     * Возвращает первый день ближайшего периода, начинающегося до указанного дня.
+     *
+     * @param day номер дня
+     * @return номер первого дня предыдущего периода
+     */
+    long previousPeriodStart(long day);
+
+    /**
+     * Возвращает количество периодов, пересекающихся с диапазоном [from, to].
+     *
+     * @param from номер первого дня диапазона
+     * @param to   номер последнего дня диапазона, не меньше первого
+     * @return количество периодов
+     */
+    long countPeriods(long from, long to);
+
+    /**
+     * Каждые N дней: периоды — окна по N дней, выровненные по дню `offset` по модулю N;
+     * окно выполнено, если в нем есть отметка. При N = 1 это ежедневное расписание.
+     *
+     * @param days   длина окна в днях
+     * @param offset остаток от деления номера первого дня окна на длину окна
+     */
+    record EveryNDays(int days, long offset) implements Schedule {
+        public EveryNDays {
+            if (days < 1) {
+                throw new IllegalArgumentException("Интервал должен быть положительным");
+            }
+            offset = Math.floorMod(offset, days);
+        }
+
+        @Override
+        public Frequency getFrequency() {
+            return days == 1 ? Frequency.DAILY : Frequency.EVERY_N_DAYS;
+        }
+
+        @Override
+        public String getDescription() {
+            return days == 1 ? Frequency.DAILY.getDescription() : "Каждые " + days + " дн.";
+        }
+
+        @Override
+        public String encode() {
+            return days == 1 ? Frequency.DAILY.name() : Frequency.EVERY_N_DAYS.name() + ":" + days + ":" + offset;
+        }
+
+        @Override
+        public int required() {
+            return 1;
+        }
+
+        @Override
+        public long periodStart(long day) {
+            return day - Math.floorMod(day - offset, days);
+        }
+
+        @Override
+        public long periodEnd(long periodStart) {
+            return periodStart + days - 1;
+        }
+
+        @Override
+        public long nextPeriodStart(long day) {
+            return periodStart(day) + days;
+        }
+
+        @Override
+        public long previousPeriodStart(long day) {
+            return periodStart(day - 1);
+        }
+
+        @Override
+        public long countPeriods(long from, long to) {
+            return Math.floorDiv(to - offset, days) - Math.floorDiv(from - offset, days) + 1;
+        }
+    }
+
+    /**
+     * Выбранные дни недели: каждый выбранный день — отдельный период из одного дня.
+     *
+     * @param mask биты дней недели, младший бит — понедельник
+     */
+    record OnWeekdays(int mask) implements Schedule {
+        private static final int ALL_DAYS = (1 << 7) - 1;
+        private static final Locale RUSSIAN = Locale.forLanguageTag("ru");
+
+        public OnWeekdays {
+            if (mask == 0 || (mask & ~ALL_DAYS) != 0) {
+                throw new IllegalArgumentException("Нужно выбрать хотя бы один день недели");
+            }
+        }
+
+        /**
+         * Возвращает выбранные дни недели.
+         *
+         * @return дни недели
+         */
+        public Set<DayOfWeek> weekdays() {
+            Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+            for (int bits = mask; bits != 0; bits &= bits - 1) {
+                days.add(DayOfWeek.of(Integer.numberOfTrailingZeros(bits) + 1));
+            }
+            return days;
+        }
+
+        @Override
+        public Frequency getFrequency() {
+            return Frequency.WEEKDAYS;
+        }
+
+        @Override
+        public String getDescription() {
+            StringJoiner days = new StringJoiner(", ", "По дням недели: ", "");
+            for (DayOfWeek day : weekdays()) {
+                days.add(day.getDisplayName(TextStyle.SHORT, RUSSIAN));
+            }
+            return days.toString();
+        }
+
+        @Override
+        public String encode() {
+            StringJoiner days = new StringJoiner(",", Frequency.WEEKDAYS.name() + ":", "");
+            for (DayOfWeek day : weekdays()) {
+                days.add(day.name());
+            }
+            return days.toString();
+        }
+
+        @Override
+        public int required() {
+            return 1;
+        }
+
+        @Override
+        public long periodStart(long day) {
+            return (mask >>> weekday(day) & 1) != 0 ? day : NONE;
+        }
+
+        @Override
+        public long periodEnd(long periodStart) {
+            return periodStart;
+        }
+
+        // Маска повторена дважды, поэтому выбранные дни следующей недели идут сразу за текущей
+        @Override
+        public long nextPeriodStart(long day) {
+            int weekday = weekday(day);
+            int following = (mask | mask << 7) >>> (weekday + 1);
+            return day + Integer.numberOfTrailingZeros(following) + 1;
+        }
+
+        @Override
+        public long previousPeriodStart(long day) {
+            int weekday = weekday(day);
+            int preceding = (mask | mask << 7) & ((1 << (weekday + 7)) - 1);
+            return day - (weekday + 7 - (31 - Integer.numberOfLeadingZeros(preceding)));
+        }
+
+        @Override
+        public long countPeriods(long from, long to) {
+            return countUpTo(to) - countUpTo(from - 1);
+        }
+
+        // Количество выбранных дней от понедельника 1969-12-29 до указанного дня включительно
+        private long countUpTo(long day) {
+            long weeks = Math.floorDiv(day + 3, 7);
+            int partial = Integer.bitCount(mask & ((2 << weekday(day)) - 1));
+            return weeks * Integer.bitCount(mask) + partial;
+        }
+
+        // 0 — понедельник; 1970-01-01 был четвергом
+        private static int weekday(long day) {
+            return (int) Math.floorMod(day + 3, 7L);
+        }
+    }
+
+    /**
+     * X раз в неделю: периоды — календарные недели с понедельника, неделя выполнена,
+     * если в ней не меньше X отметок. При X = 1 это еженедельное расписание.
+     *
+     * @param times количество выполнений в неделю
+     */
+    record TimesPerWeek(int times) implements Schedule {
+        public TimesPerWeek {
+            if (times < 1 || times > 7) {
+                throw new IllegalArgumentException("Количество выполнений в неделю должно быть от 1 до 7");
+            }
+        }
+
+        @Override
+        public Frequency getFrequency() {
+            return times == 1 ? Frequency.WEEKLY : Frequency.TIMES_PER_WEEK;
+        }
+
+        @Override
+        public String getDescription() {
+            return times == 1 ? Frequency.WEEKLY.getDescription() : times + " раз(а) в неделю";
+        }
+
+        @Override
+        public String encode() {
+            return times == 1 ? Frequency.WEEKLY.name() : Frequency.TIMES_PER_WEEK.name() + ":" + times;
+        }
+
+        @Override
+        public int required() {
+            return times;
+        }
+
+        @Override
+        public long periodStart(long day) {
+            return Math.floorDiv(day + 3, 7) * 7 - 3;
+        }
+
+        @Override
+        public long periodEnd(long periodStart) {
+            return periodStart + 6;
+        }
+
+        @Override
+        public long nextPeriodStart(long day) {
+            return periodStart(day) + 7;
+        }
+
+        @Override
+        public long previousPeriodStart(long day) {
+            return periodStart(day - 1);
+        }
+
+        @Override
+        public long countPeriods(long from, long to) {
+            return Math.floorDiv(to + 3, 7) - Math.floorDiv(from + 3, 7) + 1;
+        }
+    }
+}
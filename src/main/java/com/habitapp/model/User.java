@@ -5,28 +5,49 @@ import java.util.Objects;
 
 /**
  * Класс User представляет собой модель пользователя.
- * Содержит поля email, пароль и имя пользователя.
+ * Содержит поля email, хеш пароля и имя пользователя.
+ * Пароль в открытом виде не хранится: его хеширует сервис пользователей.
+ * Поля видимы всем потокам, поэтому пользователя можно читать без блокировок.
+ * Идентификатор хранится как 128-битный ключ {@link CompactId}.
  */
 
 public class User {
-    private final String id;
-    private String email;
+    // Ключ идентификатора; строка хранится только для идентификаторов, не являющихся UUID
+    private final long idHigh;
+    private final long idLow;
+    private final String idText;
+    private volatile String email;
 
-    private String password;
-    private String name;
+    private volatile String passwordHash;
+    private volatile String name;
 
     /**
      * Конструктор класса User.
-     * Инициализирует email, пароль и имя пользователя.
+     * Инициализирует email, хеш пароля и имя пользователя.
      *
-     * @param email    электронная почта
-     * @param password пароль
-     * @param name     имя пользователя
+     * @param email        электронная почта
+     * @param passwordHash хеш пароля
+     * @param name         имя пользователя
      */
-    public User(String email, String password, String name) {
-        this.id = UUID.randomUUID().toString();
+    public User(String email, String passwordHash, String name) {
+        this(UUID.randomUUID().toString(), email, passwordHash, name);
+    }
+
+    /**
+     * Конструктор класса User с известным идентификатором.
+     * Используется при восстановлении сохраненного состояния.
+     *
+     * @param id           идентификатор пользователя
+     * @param email        электронная почта
+     * @param passwordHash хеш пароля
+     * @param name         имя пользователя
+     */
+    public User(String id, String email, String passwordHash, String name) {
+        this.idHigh = CompactId.high(id);
+        this.idLow = CompactId.low(id);
+        this.idText = CompactId.isCompact(id) ? null : id;
         this.email = email;
-        this.password = password;
+        this.passwordHash = passwordHash;
         this.name = name;
     }
 
@@ -38,10 +59,10 @@ public class User {
     }
 
     /*
-     * Возвращает пароль пользователя.
+     * Возвращает хеш пароля пользователя.
      */
-    public String getPassword() {
-        return password;
+    public String getPasswordHash() {
+        return passwordHash;
     }
 
     /*
@@ -62,7 +83,21 @@ public class User {
      * Возвращает идентификатор пользователя.
      */
     public String getId() {
-        return id;
+        return idText != null ? idText : CompactId.toString(idHigh, idLow);
+    }
+
+    /*
+     * Возвращает старшие 64 бита ключа идентификатора.
+     */
+    public long getIdHigh() {
+        return idHigh;
+    }
+
+    /*
+     * Возвращает младшие 64 бита ключа идентификатора.
+     */
+    public long getIdLow() {
+        return idLow;
     }
 
     /*
@@ -73,10 +108,10 @@ public class User {
     }
 
     /*
-     * Устанавливает новый пароль.
+     * Устанавливает новый хеш пароля.
      */
-    public void setPassword(String password) {
-        this.password = password;
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
     }
 
     @Override
@@ -84,12 +119,12 @@ public class User {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         User user = (User) o;
-        return Objects.equals(email, user.email) && Objects.equals(password, user.password) && Objects.equals(name, user.name);
+        return Objects.equals(email, user.email) && Objects.equals(passwordHash, user.passwordHash) && Objects.equals(name, user.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(email, password, name);
+        return Objects.hash(email, passwordHash, name);
     }
 
     @Override
@@ -0,0 +1,21 @@
+package com.habitapp.persistence;
+
+/**
+ * Политика сброса журнала упреждающей записи на диск.
+ */
+public enum FsyncPolicy {
+    /**
+     * Изменение подтверждается только после fsync. Одновременные записи
+     * подтверждаются общим вызовом fsync (групповая фиксация).
+     */
+    ALWAYS,
+    /**
+     * Фоновый поток выполняет fsync с заданным интервалом, запись не ждет диска.
+     * При сбое питания теряются изменения последнего интервала.
+     */
+    PERIODIC,
+    /**
+     * Сброс на диск выполняет операционная система.
+     */
+    NEVER
+}
@@ -0,0 +1,326 @@
+package com.habitapp.persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал упреждающей записи в локальном каталоге.
+ * Каждая запись получает возрастающий порядковый номер и хранится в формате
+ * [длина: int][номер: long][CRC32 данных: int][данные]. Запись выполняется
+ * одним системным вызовом без ожидания диска; момент fsync определяет {@link FsyncPolicy}.
+ * При открытии недописанный хвост журнала, оставшийся после сбоя, отбрасывается.
+ */
+public final class WriteAheadLog implements Closeable {
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService syncer;
+
+    private FileChannel channel;
+    private long nextSequence;
+    private volatile long writtenSequence;
+    private volatile long durableSequence;
+
+    private WriteAheadLog(Path directory, FsyncPolicy policy, Duration syncInterval) throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        Files.createDirectories(directory);
+
+        List<Path> segments = segments();
+        long lastSequence = 0;
+        Path active;
+        if (segments.isEmpty()) {
+            active = segmentPath(1);
+        } else {
+            active = segments.get(segments.size() - 1);
+            lastSequence = recover(active);
+        }
+        this.channel = FileChannel.open(active, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(channel.size());
+        this.nextSequence = lastSequence + 1;
+        this.writtenSequence = lastSequence;
+        this.durableSequence = lastSequence;
+
+        if (policy == FsyncPolicy.PERIODIC) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = Math.max(1, syncInterval.toMillis());
+            syncer.scheduleWithFixedDelay(this::syncQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            syncer = null;
+        }
+    }
+
+    /**
+     * Открывает журнал в каталоге, создавая его при необходимости.
+     *
+     * @param directory    каталог журнала
+     * @param policy       политика сброса на диск
+     * @param syncInterval интервал фонового fsync для {@link FsyncPolicy#PERIODIC}
+     * @return открытый журнал
+     * @throws IOException если журнал не удалось прочитать или создать
+     */
+    public static WriteAheadLog open(Path directory, FsyncPolicy policy, Duration syncInterval) throws IOException {
+        return new WriteAheadLog(directory, policy, syncInterval);
+    }
+
+    /**
+     * Дописывает запись в журнал без ожидания fsync.
+     *
+     * @param payload данные записи
+     * @return порядковый номер записи
+     * @throws UncheckedIOException если запись не удалась
+     */
+    public long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        synchronized (writeLock) {
+            long sequence = nextSequence;
+            buffer.putInt(payload.length).putLong(sequence).putInt((int) crc.getValue()).put(payload).flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось записать журнал", e);
+            }
+            nextSequence++;
+            writtenSequence = sequence;
+            return sequence;
+        }
+    }
+
+    /**
+     * Ожидает, пока запись с указанным номером станет устойчивой, если этого требует политика.
+     * Для {@link FsyncPolicy#ALWAYS} один fsync подтверждает все записанные к этому моменту записи,
+     * поэтому одновременно ожидающие потоки разделяют его стоимость.
+     *
+     * @param sequence порядковый номер записи
+     * @throws UncheckedIOException если fsync не удался
+     */
+    public void sync(long sequence) {
+        if (policy != FsyncPolicy.ALWAYS || durableSequence >= sequence) {
+            return;
+        }
+        try {
+            force(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось сбросить журнал на диск", e);
+        }
+    }
+
+    /**
+     * Возвращает номер последней записанной записи или 0, если журнал пуст.
+     *
+     * @return номер последней записи
+     */
+    public long lastSequence() {
+        return writtenSequence;
+    }
+
+    /**
+     * Завершает текущий сегмент и начинает новый, чтобы записи до возвращаемого номера
+     * можно было удалить после сохранения снимка состояния.
+     * Если текущий сегмент пуст, он остается активным.
+     *
+     * @return номер последней записи в завершенных сегментах
+     * @throws IOException если сегмент не удалось сбросить на диск или создать
+     */
+    public long roll() throws IOException {
+        synchronized (writeLock) {
+            synchronized (syncLock) {
+                long lastSequence = writtenSequence;
+                if (channel.size() == 0) {
+                    return lastSequence;
+                }
+                if (policy != FsyncPolicy.NEVER) {
+                    channel.force(false);
+                }
+                durableSequence = lastSequence;
+                channel.close();
+                channel = FileChannel.open(segmentPath(nextSequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                return lastSequence;
+            }
+        }
+    }
+
+    /**
+     * Удаляет завершенные сегменты, все записи которых имеют номер не больше указанного.
+     *
+     * @param sequence номер записи, до которой включительно журнал больше не нужен
+     * @throws IOException если сегмент не удалось удалить
+     */
+    public void deleteSegmentsUpTo(long sequence) throws IOException {
+        synchronized (writeLock) {
+            List<Path> segments = segments();
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstSequence(segments.get(i + 1)) - 1 <= sequence) {
+                    Files.delete(segments.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Последовательно передает обработчику все записи с номером больше указанного.
+     * Сегменты, целиком состоящие из более ранних записей, не читаются.
+     *
+     * @param afterSequence номер, после которого начинается воспроизведение
+     * @param handler       обработчик записей
+     * @throws IOException если журнал не удалось прочитать
+     */
+    public void replay(long afterSequence, RecordHandler handler) throws IOException {
+        synchronized (writeLock) {
+            List<Path> segments = segments();
+            for (int i = 0; i < segments.size(); i++) {
+                Path segment = segments.get(i);
+                if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) - 1 <= afterSequence) {
+                    continue;
+                }
+                try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                    Record record;
+                    while ((record = readRecord(input)) != null) {
+                        if (record.sequence > afterSequence) {
+                            handler.handle(record.sequence, ByteBuffer.wrap(record.payload));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            // Прерывание потока во время fsync закрыло бы канал, поэтому ждем завершения
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            if (policy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+        }
+    }
+
+    private void force(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            long target = writtenSequence;
+            channel.force(false);
+            durableSequence = target;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            if (durableSequence < writtenSequence) {
+                force(writtenSequence);
+            }
+        } catch (IOException e) {
+            // Повторим на следующем интервале
+        }
+    }
+
+    // Находит последнюю целую запись сегмента и обрезает все, что за ней
+    private static long recover(Path segment) throws IOException {
+        long lastSequence = firstSequence(segment) - 1;
+        long validLength = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            Record record;
+            while ((record = readRecord(input)) != null) {
+                lastSequence = record.sequence;
+                validLength += HEADER_SIZE + record.payload.length;
+            }
+        }
+        if (validLength < Files.size(segment)) {
+            try (FileChannel truncated = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                truncated.truncate(validLength);
+            }
+        }
+        return lastSequence;
+    }
+
+    // Возвращает null в конце сегмента или на поврежденной записи
+    private static Record readRecord(DataInputStream input) throws IOException {
+        try {
+            int length = input.readInt();
+            long sequence = input.readLong();
+            int checksum = input.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] payload = input.readNBytes(length);
+            if (payload.length < length) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            return new Record(sequence, payload);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>(files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .toList());
+            segments.sort(null); // номер в имени дополнен нулями
+            return segments;
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Обработчик записей журнала при воспроизведении.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void handle(long sequence, ByteBuffer payload);
+    }
+
+    private record Record(long sequence, byte[] payload) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.habitapp.security;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Хеширование паролей функцией PBKDF2 с HMAC-SHA256 и случайной солью.
+ * Хеш хранится в виде `pbkdf2-sha256$<итерации>$<соль>$<хеш>` (Base64),
+ * поэтому количество итераций можно менять без потери старых хешей:
+ * хеши с другой стоимостью проверяются с исходной и помечаются для пересчета.
+ * Стоимость по умолчанию задается системным свойством {@value #ITERATIONS_PROPERTY}.
+ */
+public final class PasswordHasher {
+    /**
+     * Системное свойство с количеством итераций по умолчанию.
+     */
+    public static final String ITERATIONS_PROPERTY = "habitapp.pbkdf2.iterations";
+    /**
+     * Количество итераций по умолчанию, рекомендованное OWASP для PBKDF2-HMAC-SHA256.
+     */
+    public static final int DEFAULT_ITERATIONS = Integer.getInteger(ITERATIONS_PROPERTY, 600_000);
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Создает хешер со стоимостью по умолчанию.
+     */
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Создает хешер с указанной стоимостью.
+     *
+     * @param iterations количество итераций PBKDF2
+     * @throws IllegalArgumentException если количество итераций не положительно
+     */
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Количество итераций должно быть положительным");
+        }
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Вычисляет хеш пароля со случайной солью.
+     *
+     * @param password пароль
+     * @return закодированный хеш
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + '$' + encoder.encodeToString(salt) + '$'
+                + encoder.encodeToString(derive(password, salt, iterations));
+    }
+
+    /**
+     * Проверяет пароль за время, не зависящее от совпадающего префикса.
+     * Значение без префикса формата считается паролем, сохраненным до перехода на хеши.
+     *
+     * @param password пароль
+     * @param encoded  сохраненный хеш
+     * @return {@code true}, если пароль верный
+     */
+    public boolean verify(String password, String encoded) {
+        if (password == null || encoded == null) {
+            return false;
+        }
+        if (!encoded.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), encoded.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[2]);
+            byte[] actual = derive(password, decoder.decode(parts[1]), Integer.parseInt(parts[0]));
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Проверяет, нужно ли пересчитать хеш с текущей стоимостью.
+     *
+     * @param encoded сохраненный хеш
+     * @return {@code true}, если хеш устаревшего формата или стоимости
+     */
+    public boolean needsRehash(String encoded) {
+        return encoded == null || !encoded.startsWith(PREFIX + iterations + '$');
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 недоступен", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.habitapp.security;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Хранилище сессий: непрозрачный токен сопоставляется идентификатору пользователя за O(1).
+ * Сессия истекает, если ею не пользовались дольше `ttl`, а при превышении емкости
+ * вытесняется сессия, к которой дольше всего не обращались.
+ * У всех сессий одинаковый срок бездействия, поэтому порядок последних обращений
+ * совпадает с порядком истечения: список в порядке доступа работает как колесо таймеров
+ * с одним слотом, и истекшие сессии снимаются с его головы при каждом обращении
+ * за амортизированное O(1) без фонового потока.
+ * Индекс сессий по пользователю позволяет отозвать все сессии пользователя сразу.
+ */
+public final class SessionStore {
+    /**
+     * Срок бездействия сессии по умолчанию.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(30);
+    /**
+     * Максимальное количество сессий по умолчанию.
+     */
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final long ttlNanos;
+    private final int capacity;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    // Порядок доступа: в голове сессия, которая истечет первой
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<String>> tokensByUser = new HashMap<>();
+
+    /**
+     * Создает хранилище со сроком бездействия и емкостью по умолчанию.
+     */
+    public SessionStore() {
+        this(DEFAULT_TTL, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Создает хранилище сессий.
+     *
+     * @param ttl      срок бездействия, после которого сессия истекает
+     * @param capacity максимальное количество сессий
+     * @throws IllegalArgumentException если срок или емкость не положительны
+     */
+    public SessionStore(Duration ttl, int capacity) {
+        this(ttl, capacity, System::nanoTime);
+    }
+
+    SessionStore(Duration ttl, int capacity, LongSupplier clock) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            throw new IllegalArgumentException("Срок действия сессии должен быть положительным");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Емкость хранилища сессий должна быть положительной");
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.capacity = capacity;
+        this.clock = clock;
+    }
+
+    /**
+     * Открывает сессию пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @return токен сессии
+     */
+    public String issue(String userId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        synchronized (this) {
+            long now = clock.getAsLong();
+            expire(now);
+            sessions.put(token, new Session(userId, now + ttlNanos));
+            tokensByUser.computeIfAbsent(userId, id -> new HashSet<>()).add(token);
+            while (sessions.size() > capacity) {
+                removeEldest();
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Возвращает пользователя сессии и продлевает ее срок.
+     *
+     * @param token токен сессии
+     * @return идентификатор пользователя или {@code null}, если сессия истекла, вытеснена или отозвана
+     */
+    public synchronized String resolve(String token) {
+        long now = clock.getAsLong();
+        expire(now);
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        session.expiresAt = now + ttlNanos;
+        return session.userId;
+    }
+
+    /**
+     * Отзывает сессию.
+     *
+     * @param token токен сессии
+     */
+    public synchronized void invalidate(String token) {
+        Session session = sessions.remove(token);
+        if (session != null) {
+            unindex(session.userId, token);
+        }
+    }
+
+    /**
+     * Отзывает все сессии пользователя.
+     *
+     * @param userId идентификатор пользователя
+     */
+    public synchronized void invalidateUser(String userId) {
+        Set<String> tokens = tokensByUser.remove(userId);
+        if (tokens != null) {
+            sessions.keySet().removeAll(tokens);
+        }
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    // Снимает истекшие сессии с головы списка
+    private void expire(long now) {
+        while (!sessions.isEmpty() && sessions.values().iterator().next().expiresAt - now <= 0) {
+            removeEldest();
+        }
+    }
+
+    private void removeEldest() {
+        Iterator<Map.Entry<String, Session>> iterator = sessions.entrySet().iterator();
+        Map.Entry<String, Session> eldest = iterator.next();
+        iterator.remove();
+        unindex(eldest.getValue().userId, eldest.getKey());
+    }
+
+    private void unindex(String userId, String token) {
+        Set<String> tokens = tokensByUser.get(userId);
+        tokens.remove(token);
+        if (tokens.isEmpty()) {
+            tokensByUser.remove(userId);
+        }
+    }
+
+    private static final class Session {
+        final String userId;
+        long expiresAt;
+
+        Session(String userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
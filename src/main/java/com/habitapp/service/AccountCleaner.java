@@ -0,0 +1,157 @@
+package com.habitapp.service;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновое удаление привычек удаленных пользователей.
+ * Удаление аккаунта только ставит пользователя в очередь за O(1), а привычки удаляются
+ * в отдельном потоке пакетами по `batchSize`. После каждого пакета очистка пользователя
+ * возвращается в конец очереди, поэтому пользователь с большой историей не задерживает остальных.
+ * Сервис привычек должен быть потокобезопасным: очистка идет параллельно с обычными запросами.
+ * Привычку, созданную параллельно с удалением аккаунта уже после последнего пакета, очистка не увидит,
+ * поэтому создающий код после создания проверяет, что владелец еще существует, и иначе удаляет ее сам.
+ * Если работа прервана закрытием, оставшиеся пользователи остаются в очереди,
+ * чтобы хранилище сохранило их и поставило в очередь заново при следующем запуске.
+ */
+public final class AccountCleaner implements Closeable {
+    /**
+     * Размер пакета удаления по умолчанию.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final HabitService habitService;
+    private final int batchSize;
+    private final ExecutorService executor;
+    private final Set<String> pending = new HashSet<>();
+    private volatile boolean closed;
+
+    public AccountCleaner(HabitService habitService) {
+        this(habitService, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Создает очистку с указанным размером пакета.
+     *
+     * @param habitService Потокобезопасный сервис привычек.
+     * @param batchSize    Количество привычек, удаляемых за один шаг.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    public AccountCleaner(HabitService habitService, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        this.habitService = habitService;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "account-cleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит в очередь удаление всех привычек пользователя.
+     * Повторная постановка пользователя, очистка которого еще идет, ничего не делает.
+     *
+     * @param userId Идентификатор удаленного пользователя.
+     */
+    public void enqueue(String userId) {
+        synchronized (pending) {
+            if (!pending.add(userId)) {
+                return;
+            }
+        }
+        submit(userId);
+    }
+
+    /**
+     * Ожидает, пока очередь очистки опустеет.
+     *
+     * @param timeout Максимальное время ожидания.
+     * @return {@code true}, если все поставленные в очередь пользователи очищены;
+     *         после закрытия очистки {@code false}, пока очередь не пуста.
+     * @throws InterruptedException если ожидание прервано.
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                if (closed) {
+                    return false;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Возвращает пользователей, очистка которых поставлена в очередь и еще не завершена.
+     *
+     * @return Копия очереди очистки.
+     */
+    List<String> pendingUsers() {
+        synchronized (pending) {
+            return List.copyOf(pending);
+        }
+    }
+
+    /**
+     * Останавливает очистку после текущего пакета.
+     */
+    @Override
+    public void close() {
+        // Прерывание потока во время записи журнала закрыло бы его канал, поэтому только ждем
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(String userId) {
+        try {
+            executor.execute(() -> cleanBatch(userId));
+        } catch (RejectedExecutionException e) {
+            // Очистка закрыта: пользователь остается в очереди, чтобы попасть в снимок состояния
+        }
+    }
+
+    private void cleanBatch(String userId) {
+        if (closed) {
+            return;
+        }
+        boolean done = true;
+        try {
+            done = habitService.deleteHabitsByUser(userId, batchSize).size() < batchSize;
+        } finally {
+            if (done) {
+                finish(userId);
+            }
+        }
+        if (!done) {
+            submit(userId);
+        }
+    }
+
+    private void finish(String userId) {
+        synchronized (pending) {
+            pending.remove(userId);
+            pending.notifyAll();
+        }
+    }
+}
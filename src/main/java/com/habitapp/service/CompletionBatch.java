@@ -0,0 +1,70 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompletionHistory;
+import com.habitapp.model.Habit;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Пакетная отметка выполнения привычек, общая для реализаций HabitService.
+ * Отметки группируются по привычке, поэтому каждая привычка ищется один раз,
+ * а ее даты применяются по возрастанию под одной блокировкой.
+ */
+final class CompletionBatch {
+
+    private CompletionBatch() {
+    }
+
+    /**
+     * Применяет пакет отметок.
+     *
+     * @param completions Отметки о выполнении.
+     * @param lookup      Поиск привычки по идентификатору.
+     * @param marker      Отметка привычки в указанный день; возвращает {@code true}, если отметка добавлена.
+     * @return Результаты в порядке отметок пакета; отметки с датой вне поддерживаемого диапазона
+     *         не применяются и получают статус {@link CompletionResult.Status#INVALID_DATE}.
+     */
+    static List<CompletionResult> apply(List<HabitCompletion> completions, Function<String, Habit> lookup,
+                                        BiPredicate<Habit, LocalDate> marker) {
+        CompletionResult[] results = new CompletionResult[completions.size()];
+        Map<String, List<Integer>> positionsByHabit = new HashMap<>();
+        for (int i = 0; i < completions.size(); i++) {
+            HabitCompletion completion = completions.get(i);
+            if (completion.date().isBefore(CompletionHistory.MIN_DATE) || completion.date().isAfter(CompletionHistory.MAX_DATE)) {
+                results[i] = result(completion, CompletionResult.Status.INVALID_DATE);
+                continue;
+            }
+            positionsByHabit.computeIfAbsent(completion.habitId(), k -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : positionsByHabit.entrySet()) {
+            List<Integer> positions = entry.getValue();
+            Habit habit = lookup.apply(entry.getKey());
+            if (habit == null) {
+                for (int position : positions) {
+                    results[position] = result(completions.get(position), CompletionResult.Status.HABIT_NOT_FOUND);
+                }
+                continue;
+            }
+
+            positions.sort(Comparator.comparing(position -> completions.get(position).date()));
+            synchronized (habit) {
+                for (int position : positions) {
+                    HabitCompletion completion = completions.get(position);
+                    boolean added = marker.test(habit, completion.date());
+                    results[position] = result(completion, added
+                            ? CompletionResult.Status.COMPLETED
+                            : CompletionResult.Status.ALREADY_COMPLETED);
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private static CompletionResult result(HabitCompletion completion, CompletionResult.Status status) {
+        return new CompletionResult(completion.habitId(), completion.date(), status);
+    }
+}
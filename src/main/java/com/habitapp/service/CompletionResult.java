@@ -0,0 +1,24 @@
+package com.habitapp.service;
+
+import java.time.LocalDate;
+
+/**
+ * Результат обработки одной отметки из пакета.
+ *
+ * @param habitId Идентификатор привычки.
+ * @param date    Дата выполнения.
+ * @param status  Итог обработки отметки.
+ */
+public record CompletionResult(String habitId, LocalDate date, Status status) {
+
+    public enum Status {
+        /** Отметка добавлена. */
+        COMPLETED,
+        /** Привычка уже была отмечена в эту дату. */
+        ALREADY_COMPLETED,
+        /** Привычка не найдена. */
+        HABIT_NOT_FOUND,
+        /** Дата вне поддерживаемого диапазона, отметка не применена. */
+        INVALID_DATE
+    }
+}
@@ -0,0 +1,339 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompletionBits;
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Предварительно агрегированные счетчики отметок для аналитики, общие для реализаций HabitService.
+ * Для каждого пользователя и для всех пользователей вместе, отдельно по расписанию привычек,
+ * хранятся количество привычек, количество отметок и количество выполненных периодов
+ * расписания по дням, календарным неделям и месяцам; выполненный период учитывается
+ * в корзине своего первого дня. Счетчики обновляются при каждой новой отметке,
+ * а при создании, удалении и смене расписания привычки ее история переносится целиком,
+ * поэтому сводный запрос за период складывает O(количество корзин) счетчиков
+ * для каждого расписания и не обходит истории привычек.
+ * Изменения одной привычки должны выполняться под ее монитором.
+ */
+final class CompletionRollups {
+    private final ConcurrentMap<String, ConcurrentMap<Schedule, Counters>> users = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Schedule, Counters> global = new ConcurrentHashMap<>();
+
+    /**
+     * Учитывает привычку вместе с ее историей выполнения.
+     *
+     * @param habit Привычка.
+     */
+    void add(Habit habit) {
+        Schedule schedule = habit.getSchedule();
+        users.compute(habit.getUserId(), (userId, groups) -> {
+            if (groups == null) {
+                groups = new ConcurrentHashMap<>();
+            }
+            groups.computeIfAbsent(schedule, key -> new Counters(IntSeries::new)).habits.incrementAndGet();
+            return groups;
+        });
+        global.compute(schedule, (key, counters) -> {
+            if (counters == null) {
+                counters = new Counters(AdderSeries::new);
+            }
+            counters.habits.incrementAndGet();
+            return counters;
+        });
+        applyHistory(habit, 1);
+    }
+
+    /**
+     * Исключает привычку вместе с ее историей выполнения.
+     *
+     * @param habit Привычка.
+     */
+    void remove(Habit habit) {
+        Schedule schedule = habit.getSchedule();
+        applyHistory(habit, -1);
+        // Группа без привычек удаляется: новые отметки в нее больше не попадут
+        global.computeIfPresent(schedule, (key, counters) -> counters.habits.decrementAndGet() == 0 ? null : counters);
+        users.computeIfPresent(habit.getUserId(), (userId, groups) -> {
+            groups.computeIfPresent(schedule, (key, counters) -> counters.habits.decrementAndGet() == 0 ? null : counters);
+            return groups.isEmpty() ? null : groups;
+        });
+    }
+
+    /**
+     * Учитывает новую отметку привычки.
+     * Вызывается под монитором привычки после того, как отметка добавлена.
+     *
+     * @param habit Привычка.
+     * @param date  Дата новой отметки.
+     */
+    void completed(Habit habit, LocalDate date) {
+        Schedule schedule = habit.getSchedule();
+        long day = date.toEpochDay();
+        long period = schedule.periodStart(day);
+        boolean completesPeriod = period != Schedule.NONE && habit.getCompletionCount(LocalDate.ofEpochDay(period),
+                LocalDate.ofEpochDay(schedule.periodEnd(period))) == schedule.required();
+        ConcurrentMap<Schedule, Counters> groups = users.get(habit.getUserId());
+        Counters user = groups == null ? null : groups.get(schedule);
+        record(user, day, completesPeriod ? period : Schedule.NONE, 1);
+        record(global.get(schedule), day, completesPeriod ? period : Schedule.NONE, 1);
+    }
+
+    /**
+     * Возвращает статистику привычек пользователя указанного вида расписания за период.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param frequency Вид расписания привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода, не раньше начальной.
+     * @return Статистика выполнения.
+     */
+    CompletionStats userStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        ConcurrentMap<Schedule, Counters> groups = users.get(userId);
+        return groups == null ? new CompletionStats(0, 0, 0, 0) : stats(groups, frequency, startDate, endDate);
+    }
+
+    /**
+     * Возвращает статистику всех привычек указанного вида расписания за период.
+     *
+     * @param frequency Вид расписания привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода, не раньше начальной.
+     * @return Статистика выполнения.
+     */
+    CompletionStats globalStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        return stats(global, frequency, startDate, endDate);
+    }
+
+    // Периоды расписания, пересекающиеся с диапазоном, начинаются не раньше периода первого дня
+    private static CompletionStats stats(Map<Schedule, Counters> groups, Frequency frequency,
+                                         LocalDate startDate, LocalDate endDate) {
+        long from = startDate.toEpochDay();
+        long to = endDate.toEpochDay();
+        int habits = 0;
+        long completions = 0;
+        long completedUnits = 0;
+        long totalUnits = 0;
+        for (Map.Entry<Schedule, Counters> group : groups.entrySet()) {
+            Schedule schedule = group.getKey();
+            if (schedule.getFrequency() != frequency) {
+                continue;
+            }
+            Counters counters = group.getValue();
+            int groupHabits = counters.habits.get();
+            long firstPeriod = schedule.periodStart(from);
+            if (firstPeriod == Schedule.NONE) {
+                firstPeriod = schedule.nextPeriodStart(from);
+            }
+            habits += groupHabits;
+            completions += counters.marks.sum(from, to);
+            completedUnits += firstPeriod <= to ? counters.periods.sum(firstPeriod, to) : 0;
+            totalUnits += groupHabits * schedule.countPeriods(from, to);
+        }
+        return new CompletionStats(habits, completions, completedUnits, totalUnits);
+    }
+
+    // Переносит историю привычки одним проходом по словам битового снимка
+    private void applyHistory(Habit habit, int sign) {
+        CompletionBits bits = habit.getCompletionBits();
+        long[] words = bits.words();
+        if (words.length == 0) {
+            return;
+        }
+        Schedule schedule = habit.getSchedule();
+        ConcurrentMap<Schedule, Counters> groups = users.get(habit.getUserId());
+        Counters user = groups == null ? null : groups.get(schedule);
+        Counters all = global.get(schedule);
+        long period = Schedule.NONE;
+        int periodMarks = 0;
+        for (int i = 0; i < words.length; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                long day = bits.firstDay() + ((long) i << 6) + Long.numberOfTrailingZeros(word);
+                long dayPeriod = schedule.periodStart(day);
+                if (dayPeriod != period) {
+                    period = dayPeriod;
+                    periodMarks = 0;
+                }
+                boolean completesPeriod = period != Schedule.NONE && ++periodMarks == schedule.required();
+                record(user, day, completesPeriod ? period : Schedule.NONE, sign);
+                record(all, day, completesPeriod ? period : Schedule.NONE, sign);
+            }
+        }
+    }
+
+    // Учитывает отметку и, если она завершила период, сам период
+    private static void record(Counters counters, long day, long completedPeriod, int delta) {
+        if (counters == null) {
+            return;
+        }
+        counters.marks.add(day, delta);
+        if (completedPeriod != Schedule.NONE) {
+            counters.periods.add(completedPeriod, delta);
+        }
+    }
+
+    private static long week(long day) {
+        return Math.floorDiv(day + 3, 7); // неделя с понедельника; 1970-01-01 был четвергом
+    }
+
+    private static long month(LocalDate date) {
+        return date.getYear() * 12L + date.getMonthValue() - 1;
+    }
+
+    /**
+     * Счетчики одной группы привычек с общим расписанием.
+     */
+    private static final class Counters {
+        final AtomicInteger habits = new AtomicInteger();
+        final Rollup marks;
+        final Rollup periods;
+
+        Counters(Supplier<Series> series) {
+            marks = new Rollup(series);
+            periods = new Rollup(series);
+        }
+    }
+
+    /**
+     * Счетчики событий по дням, неделям и месяцам.
+     */
+    private static final class Rollup {
+        final Series days;
+        final Series weeks;
+        final Series months;
+        // Границы учтенных дней; за их пределами счетчики нулевые, и сумма их не обходит
+        final AtomicLong firstDay = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong lastDay = new AtomicLong(Long.MIN_VALUE);
+
+        Rollup(Supplier<Series> series) {
+            days = series.get();
+            weeks = series.get();
+            months = series.get();
+        }
+
+        void add(long day, int delta) {
+            firstDay.accumulateAndGet(day, Math::min);
+            lastDay.accumulateAndGet(day, Math::max);
+            days.add(day, delta);
+            weeks.add(week(day), delta);
+            months.add(month(LocalDate.ofEpochDay(day)), delta);
+        }
+
+        // Покрывает диапазон целыми месяцами и неделями, а края — отдельными днями
+        long sum(long from, long to) {
+            from = Math.max(from, firstDay.get());
+            to = Math.min(to, lastDay.get());
+            long total = 0;
+            long day = from;
+            while (day <= to) {
+                LocalDate date = LocalDate.ofEpochDay(day);
+                long nextMonth = day + date.lengthOfMonth() - date.getDayOfMonth() + 1;
+                if (date.getDayOfMonth() == 1 && nextMonth - 1 <= to) {
+                    total += months.get(month(date));
+                    day = nextMonth;
+                } else if (Math.floorMod(day + 3, 7) == 0 && day + 6 <= to
+                        && (day + 7 <= nextMonth || nextMonth + 27 > to)) {
+                    total += weeks.get(week(day));
+                    day += 7;
+                } else {
+                    total += days.get(day);
+                    day++;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Счетчики по номерам корзин.
+     */
+    private interface Series {
+        void add(long bucket, int delta);
+
+        long get(long bucket);
+    }
+
+    /**
+     * Компактные счетчики пользователя в растущем массиве; конкуренция за них низкая.
+     * Если корзины разнесены дальше {@value #MAX_DENSE_BUCKETS}, например у расписания
+     * с очень длинным окном, счетчики переходят в разреженную таблицу.
+     */
+    private static final class IntSeries implements Series {
+        private static final int MAX_DENSE_BUCKETS = 1 << 17;
+
+        private int[] counts = new int[0];
+        private long first;
+        private Map<Long, Integer> sparse;
+
+        @Override
+        public synchronized void add(long bucket, int delta) {
+            if (sparse == null && counts.length > 0
+                    && Math.max(bucket, first + counts.length - 1) - Math.min(bucket, first) >= MAX_DENSE_BUCKETS) {
+                sparse = new HashMap<>();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] != 0) {
+                        sparse.put(first + i, counts[i]);
+                    }
+                }
+                counts = new int[0];
+            }
+            if (sparse != null) {
+                sparse.merge(bucket, delta, Integer::sum);
+                return;
+            }
+            if (counts.length == 0) {
+                first = bucket;
+                counts = new int[1];
+            } else if (bucket < first) {
+                int missing = (int) (first - bucket);
+                int extra = Math.max(missing, counts.length >> 1);
+                int[] grown = new int[counts.length + extra];
+                System.arraycopy(counts, 0, grown, extra, counts.length);
+                counts = grown;
+                first -= extra;
+            } else if (bucket - first >= counts.length) {
+                int needed = (int) (bucket - first + 1);
+                counts = Arrays.copyOf(counts, Math.max(needed, counts.length + (counts.length >> 1)));
+            }
+            counts[(int) (bucket - first)] += delta;
+        }
+
+        @Override
+        public synchronized long get(long bucket) {
+            if (sparse != null) {
+                return sparse.getOrDefault(bucket, 0);
+            }
+            long offset = bucket - first;
+            return offset >= 0 && offset < counts.length ? counts[(int) offset] : 0;
+        }
+    }
+
+    /**
+     * Общие для всех пользователей счетчики без блокировок: в них пишут все потоки.
+     */
+    private static final class AdderSeries implements Series {
+        private final ConcurrentMap<Long, LongAdder> counts = new ConcurrentHashMap<>();
+
+        @Override
+        public void add(long bucket, int delta) {
+            counts.computeIfAbsent(bucket, key -> new LongAdder()).add(delta);
+        }
+
+        @Override
+        public long get(long bucket) {
+            LongAdder count = counts.get(bucket);
+            return count == null ? 0 : count.sum();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.habitapp.service;
+
+/**
+ * Сводная статистика выполнения группы привычек одного вида расписания за период.
+ * Единица выполнения — период расписания привычки: день для ежедневных привычек,
+ * календарная неделя с понедельника по воскресенье для еженедельных. Период выполнен,
+ * если в нем набралось нужное расписанию количество отметок.
+ *
+ * @param habits         Количество привычек в группе.
+ * @param completions    Количество отметок о выполнении за период.
+ * @param completedUnits Количество выполненных единиц по всем привычкам группы.
+ * @param totalUnits     Количество единиц периода по всем привычкам группы.
+ */
+public record CompletionStats(int habits, long completions, long completedUnits, long totalUnits) {
+
+    /**
+     * Возвращает процент выполнения группы, равный среднему проценту выполнения ее привычек.
+     *
+     * @return Процент выполнения или 0, если в группе нет привычек.
+     */
+    public double percentage() {
+        return totalUnits == 0 ? 0 : ((double) completedUnits / totalUnits) * 100;
+    }
+}
@@ -0,0 +1,540 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompletionArena;
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Потокобезопасная реализация HabitService для управления привычками в памяти.
+ * Индексы `habits` и `userHabits` изменяются совместно внутри `compute`
+ * по ключу пользователя, поэтому операции разных пользователей не конкурируют
+ * за одну блокировку, а индексы остаются согласованными.
+ * Списки привычек пользователя неизменяемы и заменяются целиком при записи,
+ * поэтому чтение выполняется без блокировок и без копирования.
+ * Снимок всех привычек помечается номером версии набора привычек и переиспользуется,
+ * пока набор не изменится. Для постраничного вывода привычки дополнительно
+ * упорядочены по порядковому номеру создания, а списки пользователей хранятся в том же порядке.
+ * Сводные счетчики выполнения и календарь напоминаний изменяются под монитором привычки
+ * вместе с индексом `habits`, поэтому каждая отметка существующей привычки учитывается в них ровно один раз.
+ */
+public class ConcurrentHabitService implements HabitService {
+    private final ConcurrentMap<String, Habit> habits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, List<Habit>> userHabits = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Habit> habitsBySequence = new ConcurrentSkipListMap<>();
+    private final CompletionRollups rollups = new CompletionRollups();
+    private final DueHabitIndex dueHabits = new DueHabitIndex();
+    private final AtomicLong lastSequence = new AtomicLong();
+    // Увеличивается после каждого добавления или удаления привычки
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot allHabits = new Snapshot(0, List.of());
+    private final CompletionArena arena; // null, если даты выполнения хранятся в куче
+
+    public ConcurrentHabitService() {
+        this(null);
+    }
+
+    /**
+     * Создает сервис, хранящий даты выполнения привычек вне кучи.
+     * Подсчеты отметок за период вне кучи линейны по длине периода, а не логарифмичны.
+     *
+     * @param arena Хранилище истории выполнения или {@code null} для хранения в куче.
+     */
+    public ConcurrentHabitService(CompletionArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * Создает новую привычку.
+     *
+     * @param userId      Идентификатор пользователя-владельца привычки.
+     * @param title       Название привычки.
+     * @param description Описание привычки.
+     * @param schedule    Расписание выполнения привычки.
+     * @return Созданная привычка.
+     */
+    @Override
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        return createHabit(userId, title, description, schedule, habit -> { });
+    }
+
+    /**
+     * Создает новую привычку и сообщает о ней под монитором привычки до того,
+     * как привычка станет доступна другим потокам.
+     *
+     * @param userId      Идентификатор пользователя-владельца привычки.
+     * @param title       Название привычки.
+     * @param description Описание привычки.
+     * @param schedule    Расписание выполнения привычки.
+     * @param onCreated   Вызывается под блокировкой, применяющей изменение.
+     * @return Созданная привычка.
+     */
+    Habit createHabit(String userId, String title, String description, Schedule schedule,
+                      Consumer<Habit> onCreated) {
+        Habit habit = new Habit(UUID.randomUUID().toString(), userId, title, description, schedule, nextSequence(),
+                arena);
+        userHabits.compute(userId, (key, habitsList) -> {
+            synchronized (habit) {
+                onCreated.accept(habit);
+                habits.put(habit.getId(), habit);
+                rollups.add(habit);
+                dueHabits.add(habit);
+            }
+            habitsBySequence.put(habit.getSequence(), habit);
+            return append(habitsList, habit);
+        });
+        version.incrementAndGet();
+        return habit;
+    }
+
+    /**
+     * Получает привычку по ее идентификатору.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Привычка или {@code null}, если не найдена.
+     */
+    @Override
+    public Habit getHabitById(String habitId) {
+        return habits.get(habitId);
+    }
+
+    /**
+     * Обновляет существующую привычку.
+     *
+     * @param habitId     Идентификатор привычки.
+     * @param title       Новое название привычки.
+     * @param description Новое описание привычки.
+     * @param schedule    Новое расписание выполнения привычки.
+     * @return Обновленная привычка.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
+        Habit habit = requireHabit(habitId);
+        synchronized (habit) {
+            habit.setTitle(title);
+            habit.setDescription(description);
+            if (!habit.getSchedule().equals(schedule)) {
+                rollups.remove(habit);
+                dueHabits.remove(habit);
+                habit.setSchedule(schedule);
+                if (habits.get(habitId) == habit) {
+                    rollups.add(habit);
+                    dueHabits.add(habit);
+                }
+            }
+        }
+        return habit;
+    }
+
+    /**
+     * Удаляет привычку по ее идентификатору.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return {@code true}, если удаление прошло успешно, {@code false} иначе.
+     */
+    @Override
+    public boolean deleteHabit(String habitId) {
+        return deleteHabit(habitId, habit -> { });
+    }
+
+    /**
+     * Удаляет привычку и сообщает об удалении под той же блокировкой, под которой привычка удаляется из индексов.
+     *
+     * @param habitId   Идентификатор привычки.
+     * @param onDeleted Вызывается под блокировкой, применяющей изменение.
+     * @return {@code true}, если удаление прошло успешно, {@code false} иначе.
+     */
+    boolean deleteHabit(String habitId, Consumer<Habit> onDeleted) {
+        Habit habit = habits.get(habitId);
+        if (habit == null) {
+            return false;
+        }
+        boolean[] removed = new boolean[1];
+        userHabits.computeIfPresent(habit.getUserId(), (key, habitsList) -> {
+            if (removeHabit(habit, onDeleted)) {
+                habitsBySequence.remove(habit.getSequence());
+                removed[0] = true;
+                return remove(habitsList, habit);
+            }
+            return habitsList;
+        });
+        if (removed[0]) {
+            version.incrementAndGet();
+        }
+        return removed[0];
+    }
+
+    /**
+     * Удаляет пакет привычек пользователя, начиная с самых ранних.
+     * Пакет удаляется атомарно относительно других изменений привычек этого пользователя.
+     *
+     * @param userId Идентификатор пользователя.
+     * @param limit  Максимальное количество удаляемых привычек.
+     * @return Удаленные привычки.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        return deleteHabitsByUser(userId, limit, habit -> { });
+    }
+
+    /**
+     * Удаляет пакет привычек пользователя и сообщает об удалении каждой под блокировкой, применяющей изменение.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param limit     Максимальное количество удаляемых привычек.
+     * @param onDeleted Вызывается для каждой удаляемой привычки.
+     * @return Удаленные привычки.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    List<Habit> deleteHabitsByUser(String userId, int limit, Consumer<Habit> onDeleted) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        List<Habit> removed = new ArrayList<>();
+        RuntimeException[] failure = new RuntimeException[1];
+        userHabits.computeIfPresent(userId, (key, habitsList) -> {
+            int count = Math.min(limit, habitsList.size());
+            for (Habit habit : habitsList.subList(0, count)) {
+                try {
+                    removeHabit(habit, onDeleted);
+                } catch (RuntimeException e) {
+                    // Уже удаленные привычки пакета остаются удаленными, а список сокращается только на них
+                    failure[0] = e;
+                    break;
+                }
+                habitsBySequence.remove(habit.getSequence());
+                removed.add(habit);
+            }
+            int done = removed.size();
+            return done == habitsList.size() ? null : List.copyOf(habitsList.subList(done, habitsList.size()));
+        });
+        if (!removed.isEmpty()) {
+            version.incrementAndGet();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return removed;
+    }
+
+    /**
+     * Отмечает выполнение привычки в указанный день.
+     *
+     * @param habitId Идентификатор привычки.
+     * @param date    Дата выполнения.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public void markHabitAsCompleted(String habitId, LocalDate date) {
+        markCompleted(requireHabit(habitId), date);
+    }
+
+    /**
+     * Отмечает выполнение нескольких привычек за один проход.
+     *
+     * @param completions Отметки о выполнении.
+     * @return Результаты обработки в порядке отметок пакета.
+     */
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        return CompletionBatch.apply(completions, habits::get, this::markCompleted);
+    }
+
+    /**
+     * Возвращает текущую серию выполнения привычки.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Текущая серия.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public int getCurrentStreak(String habitId) {
+        return requireHabit(habitId).getCurrentStreak(LocalDate.now());
+    }
+
+    /**
+     * Возвращает процент выполнения привычки за указанный период.
+     *
+     * @param habitId   Идентификатор привычки.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Процент выполнения.
+     * @throws IllegalArgumentException если привычка не найдена или даты некорректны.
+     */
+    @Override
+    public double getCompletionPercentage(String habitId, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        return requireHabit(habitId).getCompletionPercentage(startDate, endDate);
+    }
+
+    /**
+     * Получает рейтинг привычек всех пользователей по текущей серии выполнения.
+     *
+     * @param limit Размер рейтинга.
+     * @return Позиции по убыванию серии.
+     * @throws IllegalArgumentException если размер рейтинга некорректен.
+     */
+    @Override
+    public List<HabitStreak> getTopStreaks(int limit) {
+        return StreakLeaderboard.top(habits.values(), limit, LocalDate.now());
+    }
+
+    /**
+     * Получает сводную статистику выполнения привычек пользователя указанной частоты за период.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        return rollups.userStats(userId, frequency, startDate, endDate);
+    }
+
+    /**
+     * Получает сводную статистику выполнения привычек всех пользователей указанной частоты за период.
+     *
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        return rollups.globalStats(frequency, startDate, endDate);
+    }
+
+    /**
+     * Получает привычки, которые ожидают выполнения в указанный день.
+     *
+     * @param date Дата.
+     * @return Ожидающие выполнения привычки.
+     */
+    @Override
+    public List<Habit> getHabitsDueOn(LocalDate date) {
+        return dueHabits.dueOn(date);
+    }
+
+    /**
+     * Получает список привычек конкретного пользователя.
+     *
+     * @param userId Идентификатор пользователя.
+     * @return Неизменяемый список привычек пользователя.
+     */
+    @Override
+    public List<Habit> getHabitsByUser(String userId) {
+        return userHabits.getOrDefault(userId, Collections.emptyList());
+    }
+
+    /**
+     * Получает список всех привычек.
+     * Копия создается, только если набор привычек изменился с момента предыдущего снимка.
+     *
+     * @return Неизменяемый список всех привычек.
+     */
+    @Override
+    public List<Habit> getHabits() {
+        long current = version.get();
+        Snapshot snapshot = allHabits;
+        if (snapshot.version() == current) {
+            return snapshot.habits();
+        }
+        // Изменения с номером не больше current завершены до чтения версии и попадут в копию
+        List<Habit> habitsList = List.copyOf(habits.values());
+        allHabits = new Snapshot(current, habitsList);
+        return habitsList;
+    }
+
+    /**
+     * Получает страницу привычек пользователя в порядке их создания.
+     *
+     * @param userId         Идентификатор пользователя.
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(getHabitsByUser(userId), cursor, limit, includeHistory);
+    }
+
+    /**
+     * Получает страницу всех привычек в порядке их создания.
+     *
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(habitsBySequence, cursor, limit, includeHistory);
+    }
+
+    @Override
+    public void forEachHabit(Consumer<? super Habit> action) {
+        habits.values().forEach(action);
+    }
+
+    /**
+     * Получает список дат выполнения для конкретной привычки.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Список дат выполнения привычки.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public List<LocalDate> getCompletedDatesForHabit(String habitId) {
+        return requireHabit(habitId).getCompletionDates();
+    }
+
+    /**
+     * Восстанавливает привычку с сохраненным идентификатором, если ее еще нет.
+     *
+     * @param habit Привычка.
+     */
+    void restoreHabit(Habit habit) {
+        lastSequence.accumulateAndGet(habit.getSequence(), Math::max);
+        userHabits.compute(habit.getUserId(), (key, habitsList) -> {
+            synchronized (habit) {
+                if (habits.putIfAbsent(habit.getId(), habit) != null) {
+                    return habitsList;
+                }
+                rollups.add(habit);
+                dueHabits.add(habit);
+            }
+            habitsBySequence.put(habit.getSequence(), habit);
+            return append(habitsList, habit);
+        });
+        version.incrementAndGet();
+    }
+
+    /**
+     * Выделяет следующий порядковый номер создания привычки.
+     *
+     * @return Порядковый номер.
+     */
+    long nextSequence() {
+        return lastSequence.incrementAndGet();
+    }
+
+    /**
+     * Возвращает слабо согласованное представление всех привычек в порядке создания,
+     * обход которого не блокирует изменения.
+     *
+     * @return Привычки.
+     */
+    Collection<Habit> habits() {
+        return habitsBySequence.values();
+    }
+
+    /**
+     * Отмечает выполнение привычки и учитывает новую отметку в сводных счетчиках и календаре напоминаний.
+     *
+     * @param habit Привычка.
+     * @param date  Дата выполнения.
+     * @return {@code true}, если отметка добавлена.
+     */
+    boolean markCompleted(Habit habit, LocalDate date) {
+        return markCompleted(habit, date, (completed, day) -> { });
+    }
+
+    /**
+     * Отмечает выполнение привычки и сообщает о новой отметке под монитором привычки.
+     * Получатель вызывается до изменения истории, поэтому его ошибка оставляет привычку,
+     * сводные счетчики и календарь без изменений.
+     *
+     * @param habit       Привычка.
+     * @param date        Дата выполнения.
+     * @param onCompleted Вызывается под монитором привычки, только если отметка будет добавлена.
+     * @return {@code true}, если отметка добавлена.
+     */
+    boolean markCompleted(Habit habit, LocalDate date, BiConsumer<Habit, LocalDate> onCompleted) {
+        synchronized (habit) {
+            if (!habit.wouldMarkCompleted(date)) {
+                return false;
+            }
+            onCompleted.accept(habit, date);
+            habit.markCompleted(date);
+            // Привычка учитывается в счетчиках, пока она есть в индексе; оба изменяются под ее монитором
+            if (habits.get(habit.getId()) == habit) {
+                rollups.completed(habit, date);
+                dueHabits.completed(habit, date);
+            }
+            return true;
+        }
+    }
+
+    // Вызывается внутри compute по ключу владельца; монитор привычки берется после блокировки индекса
+    private boolean removeHabit(Habit habit, Consumer<Habit> onDeleted) {
+        synchronized (habit) {
+            // Привычка удаляется только под ее монитором, поэтому проверка и удаление не разделены гонкой;
+            // получатель вызывается до изменения индексов, чтобы его ошибка не оставила их частично измененными
+            if (habits.get(habit.getId()) != habit) {
+                return false;
+            }
+            onDeleted.accept(habit);
+            habits.remove(habit.getId());
+            rollups.remove(habit);
+            dueHabits.remove(habit);
+            return true;
+        }
+    }
+
+    private Habit requireHabit(String habitId) {
+        Habit habit = habits.get(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        return habit;
+    }
+
+    // Вставляет привычку с сохранением порядка номеров; номер выделяется до блокировки, поэтому вставка не всегда в конец
+    private static List<Habit> append(List<Habit> habitsList, Habit habit) {
+        if (habitsList == null) {
+            return List.of(habit);
+        }
+        Habit[] updated = habitsList.toArray(new Habit[habitsList.size() + 1]);
+        int position = habitsList.size();
+        while (position > 0 && updated[position - 1].getSequence() > habit.getSequence()) {
+            updated[position] = updated[position - 1];
+            position--;
+        }
+        updated[position] = habit;
+        return List.of(updated);
+    }
+
+    // Возвращает null для пустого списка, чтобы compute удалил запись пользователя
+    private static List<Habit> remove(List<Habit> habitsList, Habit habit) {
+        List<Habit> updated = new ArrayList<>(habitsList);
+        updated.remove(habit);
+        return updated.isEmpty() ? null : List.copyOf(updated);
+    }
+
+    private record Snapshot(long version, List<Habit> habits) {
+    }
+}
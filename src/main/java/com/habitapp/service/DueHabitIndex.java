@@ -0,0 +1,193 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompletionBits;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Календарь напоминаний, общий для реализаций HabitService. Привычки разложены по группам
+ * с одинаковым расписанием: у привычек группы общие границы периодов, поэтому день запроса
+ * переводится в период один раз на группу, а группы, в расписание которых этот день не входит,
+ * пропускаются целиком.
+ * <p>
+ * Для текущего и будущих периодов группа хранит корзины привычек, уже выполнивших период,
+ * по первому дню периода. Заранее отмечают редко, поэтому корзины малы, а ожидающие привычки
+ * такого периода — все привычки группы, кроме лежащих в его корзине: запрос не читает историй
+ * выполнения и занимает время, пропорциональное ответу. Корзина пополняется за O(1) отметкой,
+ * выполнившей период, а корзины закончившихся периодов удаляются при запросах.
+ * <p>
+ * Прошедшие периоды в корзинах не хранятся, иначе календарь повторял бы истории выполнения:
+ * за прошедший день проверяются истории привычек только тех групп, в расписание которых входит день.
+ * Запрос не изменяет состояние привычек, поэтому даты запросов могут идти в любом порядке.
+ * Изменения одной привычки должны выполняться под ее монитором.
+ */
+final class DueHabitIndex {
+    private final ConcurrentMap<Schedule, Group> groups = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Habit, Group> members = new ConcurrentHashMap<>();
+    // Сегодняшний день не убывает, иначе запрос счел бы хранимыми уже удаленные корзины
+    private final AtomicLong today = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Добавляет привычку в группу ее расписания вместе с уже выполненными текущим и будущими периодами.
+     *
+     * @param habit Привычка.
+     */
+    void add(Habit habit) {
+        Schedule schedule = habit.getSchedule();
+        long tracked = firstTrackedPeriod(schedule, today());
+        // Корзины заполняются до появления привычки в группе, чтобы запрос не счел ее ожидающей
+        Group group = groups.compute(schedule, (key, existing) -> {
+            Group target = existing != null ? existing : new Group(key);
+            LocalDate last = habit.getLastCompletionDate();
+            if (last != null && last.toEpochDay() >= tracked) {
+                addDonePeriods(target, habit, tracked);
+            }
+            target.habits.add(habit);
+            return target;
+        });
+        members.put(habit, group);
+    }
+
+    /**
+     * Исключает привычку из календаря.
+     *
+     * @param habit Привычка.
+     */
+    void remove(Habit habit) {
+        Group group = members.remove(habit);
+        if (group == null) {
+            return;
+        }
+        groups.computeIfPresent(group.schedule, (key, existing) -> {
+            existing.habits.remove(habit);
+            for (Set<Habit> done : existing.done.values()) {
+                done.remove(habit);
+            }
+            return existing.habits.isEmpty() ? null : existing;
+        });
+    }
+
+    /**
+     * Кладет привычку в корзину периода, если новая отметка выполнила текущий или будущий период.
+     * Вызывается под монитором привычки после того, как отметка добавлена.
+     *
+     * @param habit Привычка.
+     * @param date  Дата новой отметки.
+     */
+    void completed(Habit habit, LocalDate date) {
+        Group group = members.get(habit);
+        if (group == null) {
+            return;
+        }
+        Schedule schedule = group.schedule;
+        long period = schedule.periodStart(date.toEpochDay());
+        if (period != Schedule.NONE && period >= firstTrackedPeriod(schedule, today())
+                && isDone(habit, schedule, period)) {
+            group.done.computeIfAbsent(period, key -> ConcurrentHashMap.newKeySet()).add(habit);
+        }
+    }
+
+    /**
+     * Возвращает привычки, период расписания которых содержит указанный день и еще не выполнен.
+     *
+     * @param date Дата.
+     * @return Ожидающие выполнения привычки.
+     */
+    List<Habit> dueOn(LocalDate date) {
+        long now = today();
+        long day = date.toEpochDay();
+        List<Habit> due = new ArrayList<>();
+        for (Group group : groups.values()) {
+            Schedule schedule = group.schedule;
+            long tracked = firstTrackedPeriod(schedule, now);
+            group.done.headMap(tracked).clear();
+            long period = schedule.periodStart(day);
+            if (period == Schedule.NONE) {
+                continue;
+            }
+            if (period >= tracked) {
+                Set<Habit> done = group.done.getOrDefault(period, Set.of());
+                for (Habit habit : group.habits) {
+                    if (!done.contains(habit)) {
+                        due.add(habit);
+                    }
+                }
+            } else {
+                for (Habit habit : group.habits) {
+                    if (!isDone(habit, schedule, period)) {
+                        due.add(habit);
+                    }
+                }
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Проверяет, содержит ли период расписания привычки указанный день и не выполнен ли он.
+     *
+     * @param habit Привычка.
+     * @param day   День в виде номера эпохального дня.
+     * @return {@code true}, если привычка ожидает выполнения в этот день.
+     */
+    static boolean isDue(Habit habit, long day) {
+        Schedule schedule = habit.getSchedule();
+        long period = schedule.periodStart(day);
+        return period != Schedule.NONE && !isDone(habit, schedule, period);
+    }
+
+    private long today() {
+        return today.accumulateAndGet(LocalDate.now().toEpochDay(), Math::max);
+    }
+
+    // Первый день самого раннего периода, выполнение которого хранится в корзинах
+    private static long firstTrackedPeriod(Schedule schedule, long today) {
+        long period = schedule.periodStart(today);
+        return period != Schedule.NONE ? period : today;
+    }
+
+    // Раскладывает по корзинам выполненные периоды, начиная с указанного
+    private static void addDonePeriods(Group group, Habit habit, long tracked) {
+        Schedule schedule = group.schedule;
+        CompletionBits bits = habit.getCompletionBits();
+        long[] words = bits.words();
+        long previous = Schedule.NONE;
+        for (int i = (int) Math.max(0, (tracked - bits.firstDay()) >> 6); i < words.length; i++) {
+            for (long word = words[i]; word != 0; word &= word - 1) {
+                long day = bits.firstDay() + ((long) i << 6) + Long.numberOfTrailingZeros(word);
+                long period = day < tracked ? Schedule.NONE : schedule.periodStart(day);
+                if (period != Schedule.NONE && period != previous && isDone(habit, schedule, period)) {
+                    group.done.computeIfAbsent(period, key -> ConcurrentHashMap.newKeySet()).add(habit);
+                }
+                previous = period;
+            }
+        }
+    }
+
+    private static boolean isDone(Habit habit, Schedule schedule, long period) {
+        return habit.getCompletionCount(LocalDate.ofEpochDay(period),
+                LocalDate.ofEpochDay(schedule.periodEnd(period))) >= schedule.required();
+    }
+
+    /**
+     * Привычки с одним расписанием и корзины выполненных ими текущего и будущих периодов.
+     */
+    private static final class Group {
+        final Schedule schedule;
+        final Set<Habit> habits = ConcurrentHashMap.newKeySet();
+        final ConcurrentSkipListMap<Long, Set<Habit>> done = new ConcurrentSkipListMap<>();
+
+        Group(Schedule schedule) {
+            this.schedule = schedule;
+        }
+    }
+}
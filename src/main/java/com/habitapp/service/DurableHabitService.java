@@ -0,0 +1,140 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.persistence.WriteAheadLog;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Реализация HabitService, записывающая каждое изменение в журнал упреждающей записи.
+ * Запись дописывается в журнал до применения изменения и под той же блокировкой, поэтому
+ * порядок записей об одной привычке совпадает с порядком применения изменений, а сбой записи
+ * оставляет состояние без изменений. Ожидание fsync выполняется уже после снятия блокировки.
+ * При воспроизведении записи об отсутствующих привычках пропускаются.
+ */
+class DurableHabitService extends ConcurrentHabitService {
+    private final WriteAheadLog log;
+
+    DurableHabitService(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        long[] sequence = new long[1];
+        Habit habit = createHabit(userId, title, description, schedule,
+                created -> sequence[0] = log.append(LogRecords.createHabit(created)));
+        log.sync(sequence[0]);
+        return habit;
+    }
+
+    @Override
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        long sequence;
+        synchronized (habit) {
+            // Новое состояние записывается до применения, чтобы сбой записи не изменил привычку
+            sequence = log.append(LogRecords.updateHabit(habitId, title, description, schedule));
+            super.updateHabit(habitId, title, description, schedule);
+        }
+        log.sync(sequence);
+        return habit;
+    }
+
+    @Override
+    public boolean deleteHabit(String habitId) {
+        long[] sequence = new long[1];
+        if (!deleteHabit(habitId, deleted -> sequence[0] = log.append(LogRecords.deleteHabit(deleted.getId())))) {
+            return false;
+        }
+        log.sync(sequence[0]);
+        return true;
+    }
+
+    // Записи об удалении пакета дописываются подряд и подтверждаются одним fsync
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        long[] sequence = new long[1];
+        List<Habit> removed = deleteHabitsByUser(userId, limit,
+                deleted -> sequence[0] = log.append(LogRecords.deleteHabit(deleted.getId())));
+        log.sync(sequence[0]);
+        return removed;
+    }
+
+    @Override
+    public void markHabitAsCompleted(String habitId, LocalDate date) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        long[] sequence = new long[1];
+        if (markCompleted(habit, date, (completed, day) -> sequence[0] = log.append(
+                LogRecords.markCompleted(completed.getId(), day)))) {
+            log.sync(sequence[0]);
+        }
+    }
+
+    // Отметки пакета дописываются по мере применения и подтверждаются одним fsync
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        long[] sequence = new long[1];
+        List<CompletionResult> results = CompletionBatch.apply(completions, this::getHabitById,
+                (habit, date) -> markCompleted(habit, date, (completed, day) -> sequence[0] = log.append(
+                        LogRecords.markCompleted(completed.getId(), day))));
+        log.sync(sequence[0]);
+        return results;
+    }
+
+    /**
+     * Применяет запись журнала без повторной записи в журнал.
+     *
+     * @param type    Тип записи.
+     * @param payload Данные записи после байта типа.
+     * @return {@code true}, если запись относится к привычкам.
+     */
+    boolean replay(byte type, ByteBuffer payload) {
+        switch (type) {
+            case LogRecords.CREATE_HABIT -> {
+                String id = LogRecords.readString(payload);
+                String userId = LogRecords.readString(payload);
+                String title = LogRecords.readString(payload);
+                String description = LogRecords.readString(payload);
+                Schedule schedule = LogRecords.readSchedule(payload);
+                long sequence = payload.hasRemaining() ? payload.getLong() : nextSequence();
+                restoreHabit(new Habit(id, userId, title, description, schedule, sequence));
+                return true;
+            }
+            case LogRecords.UPDATE_HABIT -> {
+                String id = LogRecords.readString(payload);
+                String title = LogRecords.readString(payload);
+                String description = LogRecords.readString(payload);
+                Schedule schedule = LogRecords.readSchedule(payload);
+                if (getHabitById(id) != null) {
+                    super.updateHabit(id, title, description, schedule);
+                }
+                return true;
+            }
+            case LogRecords.DELETE_HABIT -> {
+                super.deleteHabit(LogRecords.readString(payload));
+                return true;
+            }
+            case LogRecords.MARK_COMPLETED -> {
+                Habit habit = getHabitById(LogRecords.readString(payload));
+                LocalDate date = LogRecords.readDate(payload);
+                if (habit != null) {
+                    markCompleted(habit, date);
+                }
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.habitapp.service;
+
+import com.habitapp.persistence.FsyncPolicy;
+import com.habitapp.persistence.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Долговременное хранилище пользователей и привычек.
+ * Сервисы хранят состояние в памяти и записывают каждое изменение в общий
+ * журнал упреждающей записи. Снимок состояния периодически сохраняется в фоне,
+ * после чего предшествующие ему сегменты журнала удаляются, поэтому при открытии
+ * загружается последний снимок и воспроизводятся только записи после него.
+ * Снимок нечеткий: он снимается без остановки записи, а записи журнала,
+ * попавшие в него частично, идемпотентны и повторно применяются при восстановлении.
+ * Привычки удаленных пользователей удаляются в фоне {@link AccountCleaner}; если хранилище
+ * закрыто раньше, очистка возобновляется при следующем открытии.
+ */
+public final class DurableStorage implements Closeable {
+    private final Path directory;
+    private final WriteAheadLog log;
+    private final DurableUserService userService;
+    private final DurableHabitService habitService;
+    private final AccountCleaner cleaner;
+    private final ScheduledExecutorService snapshotter;
+
+    private DurableStorage(Path directory, WriteAheadLog log, DurableUserService userService,
+                           DurableHabitService habitService, Collection<String> deletedUsers,
+                           Duration snapshotInterval) {
+        this.directory = directory;
+        this.log = log;
+        this.userService = userService;
+        this.habitService = habitService;
+        this.cleaner = new AccountCleaner(habitService);
+        userService.addDeletionListener(cleaner::enqueue);
+        // Очистка, не завершенная до остановки, продолжается
+        deletedUsers.forEach(cleaner::enqueue);
+        if (snapshotInterval.isZero() || snapshotInterval.isNegative()) {
+            snapshotter = null;
+        } else {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = snapshotInterval.toMillis();
+            snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Открывает хранилище в каталоге без фоновых снимков и восстанавливает сохраненное состояние.
+     *
+     * @param directory    Каталог хранилища.
+     * @param policy       Политика сброса журнала на диск.
+     * @param syncInterval Интервал фонового fsync для {@link FsyncPolicy#PERIODIC}.
+     * @return Открытое хранилище.
+     * @throws IOException если журнал не удалось прочитать.
+     */
+    public static DurableStorage open(Path directory, FsyncPolicy policy, Duration syncInterval) throws IOException {
+        return open(directory, policy, syncInterval, Duration.ZERO);
+    }
+
+    /**
+     * Открывает хранилище в каталоге и восстанавливает сохраненное состояние
+     * из последнего снимка и записей журнала после него.
+     *
+     * @param directory        Каталог хранилища.
+     * @param policy           Политика сброса журнала на диск.
+     * @param syncInterval     Интервал фонового fsync для {@link FsyncPolicy#PERIODIC}.
+     * @param snapshotInterval Интервал фоновых снимков; нулевой интервал отключает их.
+     * @return Открытое хранилище.
+     * @throws IOException если снимок или журнал не удалось прочитать.
+     */
+    public static DurableStorage open(Path directory, FsyncPolicy policy, Duration syncInterval,
+                                      Duration snapshotInterval) throws IOException {
+        WriteAheadLog log = WriteAheadLog.open(directory, policy, syncInterval);
+        DurableUserService userService = new DurableUserService(log);
+        DurableHabitService habitService = new DurableHabitService(log);
+        Path snapshot = SnapshotFile.latest(directory);
+        // Удаленные пользователи, привычки которых, возможно, еще не удалены
+        Set<String> deletedUsers = new HashSet<>();
+        long snapshotSequence = snapshot == null ? 0
+                : SnapshotFile.load(snapshot, userService, habitService, deletedUsers);
+        log.replay(snapshotSequence, (sequence, payload) -> {
+            byte type = payload.get();
+            if (type == LogRecords.DELETE_ACCOUNT) {
+                deletedUsers.add(LogRecords.readString(payload.duplicate()));
+            }
+            if (!userService.replay(type, payload) && !habitService.replay(type, payload)) {
+                throw new IllegalStateException("Неизвестный тип записи журнала: " + type);
+            }
+        });
+        return new DurableStorage(directory, log, userService, habitService, deletedUsers, snapshotInterval);
+    }
+
+    /**
+     * Сохраняет снимок текущего состояния и удаляет ставшие ненужными сегменты журнала.
+     * Запись продолжается во время снятия снимка.
+     *
+     * @throws IOException если снимок не удалось записать.
+     */
+    public synchronized void snapshot() throws IOException {
+        long sequence = log.roll();
+        // Аргументы вычисляются слева направо: очередь очистки читается после копирования пользователей,
+        // поэтому в нее попадают все удаления, записанные в журнал до снимка
+        Path snapshot = SnapshotFile.write(directory, sequence, userService.copyUsers(), habitService.habits(),
+                cleaner.pendingUsers());
+        SnapshotFile.deleteOlder(directory, snapshot);
+        log.deleteSegmentsUpTo(sequence);
+    }
+
+    public UserService getUserService() {
+        return userService;
+    }
+
+    public HabitService getHabitService() {
+        return habitService;
+    }
+
+    AccountCleaner getCleaner() {
+        return cleaner;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cleaner.close();
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            // Журнал остается полным, повторим на следующем интервале
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.habitapp.service;
+
+import com.habitapp.model.User;
+import com.habitapp.persistence.WriteAheadLog;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реализация UserService, записывающая каждое изменение в журнал упреждающей записи.
+ * Изменение проверяется, дописывается в журнал и только затем применяется в памяти под одной блокировкой,
+ * поэтому порядок записей совпадает с порядком изменений, сбой записи в журнал
+ * не оставляет в памяти неучтенного изменения, а ожидание fsync
+ * выполняется уже вне блокировки и объединяется с другими потоками.
+ * Хеш пароля вычисляется до захвата блокировки, а чтение идет без нее,
+ * поэтому дорогая проверка пароля не задерживает другие операции.
+ * В журнал и снимки попадает только хеш пароля.
+ */
+class DurableUserService extends InMemoryUserService {
+    private final WriteAheadLog log;
+
+    DurableUserService(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    @Override
+    User insertUser(User user) {
+        long sequence;
+        synchronized (this) {
+            if (isEmailTaken(user.getEmail())) {
+                throw new IllegalArgumentException("Такой email уже существует");
+            }
+            sequence = log.append(LogRecords.register(user));
+            super.insertUser(user);
+        }
+        log.sync(sequence);
+        return user;
+    }
+
+    @Override
+    User applyProfile(String userId, String name, String email, String passwordHash) {
+        User user;
+        long sequence;
+        synchronized (this) {
+            User current = getUserById(userId);
+            if (current == null) {
+                throw new IllegalArgumentException("Пользователь не найден");
+            }
+            if (!current.getEmail().equals(email) && isEmailTaken(email)) {
+                throw new IllegalArgumentException("Такой email уже существует");
+            }
+            sequence = log.append(LogRecords.updateProfile(userId, email,
+                    passwordHash != null ? passwordHash : current.getPasswordHash(), name));
+            user = super.applyProfile(userId, name, email, passwordHash);
+        }
+        log.sync(sequence);
+        return user;
+    }
+
+    @Override
+    boolean replacePasswordHash(User user, String expected, String passwordHash) {
+        long sequence;
+        synchronized (this) {
+            if (getUserById(user.getId()) != user || !expected.equals(user.getPasswordHash())) {
+                return false;
+            }
+            sequence = log.append(LogRecords.updateProfile(user.getId(), user.getEmail(), passwordHash,
+                    user.getName()));
+            super.replacePasswordHash(user, expected, passwordHash);
+        }
+        log.sync(sequence);
+        return true;
+    }
+
+    // Подписчики уведомляются под той же блокировкой после записи об удалении, поэтому
+    // записи, сделанные подписчиками, следуют в журнале за ней, а снимок, копирующий
+    // пользователей под этой блокировкой, видит все уже уведомленные удаления
+    @Override
+    public boolean deleteAccount(String userId) {
+        long sequence;
+        synchronized (this) {
+            if (getUserById(userId) == null) {
+                return false;
+            }
+            sequence = log.append(LogRecords.deleteAccount(userId));
+            removeUser(userId);
+            notifyDeleted(userId);
+        }
+        log.sync(sequence);
+        return true;
+    }
+
+    /**
+     * Копирует всех пользователей для снимка состояния.
+     * Блокировка удерживается только на время копирования полей.
+     *
+     * @return Копии пользователей.
+     */
+    synchronized List<User> copyUsers() {
+        List<User> copies = new ArrayList<>(users().size());
+        for (User user : users()) {
+            copies.add(new User(user.getId(), user.getEmail(), user.getPasswordHash(), user.getName()));
+        }
+        return copies;
+    }
+
+    /**
+     * Применяет запись журнала без повторной записи в журнал.
+     *
+     * @param type    Тип записи.
+     * @param payload Данные записи после байта типа.
+     * @return {@code true}, если запись относится к пользователям.
+     */
+    synchronized boolean replay(byte type, ByteBuffer payload) {
+        switch (type) {
+            case LogRecords.REGISTER, LogRecords.UPDATE_PROFILE -> {
+                String id = LogRecords.readString(payload);
+                String email = LogRecords.readString(payload);
+                String passwordHash = LogRecords.readString(payload);
+                String name = LogRecords.readString(payload);
+                restoreUser(new User(id, email, passwordHash, name));
+                return true;
+            }
+            case LogRecords.DELETE_ACCOUNT -> {
+                super.removeUser(LogRecords.readString(payload));
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+}
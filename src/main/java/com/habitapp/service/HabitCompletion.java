@@ -0,0 +1,12 @@
+package com.habitapp.service;
+
+import java.time.LocalDate;
+
+/**
+ * Отметка о выполнении привычки для пакетной обработки.
+ *
+ * @param habitId Идентификатор привычки.
+ * @param date    Дата выполнения.
+ */
+public record HabitCompletion(String habitId, LocalDate date) {
+}
@@ -0,0 +1,118 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+
+import java.util.*;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+/**
+ * Постраничный вывод привычек, общий для реализаций HabitService.
+ * Привычки упорядочены по порядковому номеру создания, а курсор хранит номер
+ * последней выданной привычки, поэтому страницы не смещаются при добавлении
+ * и удалении привычек между запросами.
+ */
+final class HabitPages {
+
+    private HabitPages() {
+    }
+
+    /**
+     * Возвращает страницу из списка, упорядоченного по номеру создания.
+     *
+     * @param habits         Привычки в порядке возрастания номера.
+     * @param cursor         Курсор предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница представлений привычек.
+     */
+    static Page<HabitSummary> page(List<Habit> habits, String cursor, int limit, boolean includeHistory) {
+        checkLimit(limit);
+        long after = parseCursor(cursor);
+        int low = 0;
+        int high = habits.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (habits.get(middle).getSequence() <= after) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = Math.min(habits.size(), low + limit);
+        List<HabitSummary> items = new ArrayList<>(end - low);
+        for (int i = low; i < end; i++) {
+            items.add(HabitSummary.of(habits.get(i), includeHistory));
+        }
+        String next = end < habits.size() ? Long.toString(habits.get(end - 1).getSequence()) : null;
+        return new Page<>(items, next);
+    }
+
+    /**
+     * Возвращает страницу из индекса привычек по номеру создания.
+     *
+     * @param habits         Привычки по номеру создания.
+     * @param cursor         Курсор предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница представлений привычек.
+     */
+    static Page<HabitSummary> page(NavigableMap<Long, Habit> habits, String cursor, int limit, boolean includeHistory) {
+        checkLimit(limit);
+        Iterator<Habit> iterator = habits.tailMap(parseCursor(cursor), false).values().iterator();
+        List<HabitSummary> items = new ArrayList<>(Math.min(limit, 16));
+        long last = 0;
+        while (items.size() < limit && iterator.hasNext()) {
+            Habit habit = iterator.next();
+            items.add(HabitSummary.of(habit, includeHistory));
+            last = habit.getSequence();
+        }
+        return new Page<>(items, iterator.hasNext() ? Long.toString(last) : null);
+    }
+
+    /**
+     * Возвращает страницу привычек, номера которых идут подряд от 1 до последнего.
+     *
+     * @param last           Номер последней созданной привычки.
+     * @param live           Проверка, существует ли привычка с номером.
+     * @param habitAt        Привычка с номером; вызывается только для существующих привычек.
+     * @param cursor         Курсор предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница представлений привычек.
+     */
+    static Page<HabitSummary> page(long last, LongPredicate live, LongFunction<Habit> habitAt, String cursor,
+                                   int limit, boolean includeHistory) {
+        checkLimit(limit);
+        long sequence = Math.max(parseCursor(cursor), 0);
+        List<HabitSummary> items = new ArrayList<>(Math.min(limit, 16));
+        while (items.size() < limit && sequence < last) {
+            if (live.test(++sequence)) {
+                items.add(HabitSummary.of(habitAt.apply(sequence), includeHistory));
+            }
+        }
+        for (long next = sequence + 1; next <= last; next++) {
+            if (live.test(next)) {
+                return new Page<>(items, Long.toString(sequence));
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 1 || limit > HabitService.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + HabitService.MAX_PAGE_SIZE);
+        }
+    }
+
+    private static long parseCursor(String cursor) {
+        if (cursor == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы");
+        }
+    }
+}
@@ -2,9 +2,11 @@ package com.habitapp.service;
 
 import com.habitapp.model.Frequency;
 import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс для управления привычками.
@@ -12,6 +14,11 @@ import java.util.List;
  * а также для отслеживания выполнения и анализа прогресса.
  */
 public interface HabitService {
+    /**
+     * Максимальный размер страницы постраничного вывода.
+     */
+    int MAX_PAGE_SIZE = 100;
+
     /**
      * Создает новую привычку.
      *
@@ -20,8 +27,22 @@ public interface HabitService {
      * @param description Описание привычки.
      * @param frequency   Частота выполнения привычки (DAILY, WEEKLY).
      * @return Созданная привычка.
+     * @throws IllegalArgumentException если частоте нужны параметры расписания.
      */
-    Habit createHabit(String userId, String title, String description, Frequency frequency);
+    default Habit createHabit(String userId, String title, String description, Frequency frequency) {
+        return createHabit(userId, title, description, Schedule.of(frequency));
+    }
+
+    /**
+     * Создает новую привычку с произвольным расписанием.
+     *
+     * @param userId      Идентификатор пользователя-владельца привычки.
+     * @param title       Название привычки.
+     * @param description Описание привычки.
+     * @param schedule    Расписание выполнения привычки.
+     * @return Созданная привычка.
+     */
+    Habit createHabit(String userId, String title, String description, Schedule schedule);
 
     /**
      * Получает привычку по ее идентификатору.
@@ -48,9 +69,23 @@ public interface HabitService {
      * @param description Новое описание привычки.
      * @param frequency   Новая частота выполнения привычки.
      * @return Обновленная привычка.
+     * @throws IllegalArgumentException если привычка не найдена или частоте нужны параметры расписания.
+     */
+    default Habit updateHabit(String habitId, String title, String description, Frequency frequency) {
+        return updateHabit(habitId, title, description, Schedule.of(frequency));
+    }
+
+    /**
+     * Обновляет существующую привычку, заменяя ее расписание.
+     *
+     * @param habitId     Идентификатор привычки.
+     * @param title       Новое название привычки.
+     * @param description Новое описание привычки.
+     * @param schedule    Новое расписание выполнения привычки.
+     * @return Обновленная привычка.
      * @throws IllegalArgumentException если привычка не найдена.
      */
-    Habit updateHabit(String habitId, String title, String description, Frequency frequency);
+    Habit updateHabit(String habitId, String title, String description, Schedule schedule);
 
     /**
      * Удаляет привычку по ее идентификатору.
@@ -60,6 +95,17 @@ public interface HabitService {
      */
     boolean deleteHabit(String habitId);
 
+    /**
+     * Удаляет пакет привычек пользователя, начиная с самых ранних.
+     * Повторные вызовы удаляют следующие пакеты, пока у пользователя не останется привычек.
+     *
+     * @param userId Идентификатор пользователя.
+     * @param limit  Максимальное количество удаляемых привычек.
+     * @return Удаленные привычки; меньше {@code limit}, если привычек больше не осталось.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    List<Habit> deleteHabitsByUser(String userId, int limit);
+
     /**
      * Отмечает привычку как выполненную в указанную дату.
      *
@@ -69,6 +115,16 @@ public interface HabitService {
      */
     void markHabitAsCompleted(String habitId, LocalDate date);
 
+    /**
+     * Отмечает выполнение нескольких привычек за один проход.
+     * Отметки группируются по привычке, повторы дат не добавляются,
+     * а неизвестные привычки и недопустимые даты не прерывают обработку пакета.
+     *
+     * @param completions Отметки о выполнении.
+     * @return Результаты обработки в порядке отметок пакета.
+     */
+    List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions);
+
     /**
      * Получает текущую серию выполнения привычки.
      *
@@ -89,21 +145,118 @@ public interface HabitService {
      */
     double getCompletionPercentage(String habitId, LocalDate startDate, LocalDate endDate);
 
+    /**
+     * Получает рейтинг привычек всех пользователей по текущей серии выполнения.
+     * Привычки без текущей серии в рейтинг не попадают.
+     *
+     * @param limit Размер рейтинга, от 1 до {@link #MAX_PAGE_SIZE}.
+     * @return Позиции по убыванию серии; при равной серии порядок задается идентификатором привычки.
+     * @throws IllegalArgumentException если размер рейтинга некорректен.
+     */
+    List<HabitStreak> getTopStreaks(int limit);
+
+    /**
+     * Получает сводную статистику выполнения всех привычек пользователя указанной частоты за период.
+     * Ответ собирается из предварительно агрегированных счетчиков по дням, неделям и месяцам
+     * и не зависит от количества привычек и длины их истории.
+     * Единицей служит период расписания привычки, пересекающийся с указанным периодом:
+     * день для ежедневных привычек, календарная неделя с понедельника для еженедельных.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Получает сводную статистику выполнения привычек всех пользователей указанной частоты за период.
+     *
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     * @see #getUserCompletionStats(String, Frequency, LocalDate, LocalDate)
+     */
+    CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Получает привычки, которые ожидают выполнения в указанный день: период расписания,
+     * содержащий этот день, еще не выполнен. Календарь группирует привычки по расписанию и помнит
+     * заранее выполненные периоды, поэтому запрос за сегодняшний или будущий день обходит только
+     * привычки, в расписание которых входит этот день, не читая историй выполнения.
+     * Запрос не изменяет состояние, поэтому даты запросов могут идти в любом порядке.
+     *
+     * @param date Дата.
+     * @return Ожидающие выполнения привычки.
+     * @see ReminderDispatcher
+     */
+    List<Habit> getHabitsDueOn(LocalDate date);
+
     /**
      * Получает список привычек конкретного пользователя.
+     * Список является неизменяемым снимком и не копируется при каждом вызове.
      *
      * @param userId Идентификатор пользователя.
-     * @return Список привычек пользователя.
+     * @return Неизменяемый список привычек пользователя.
      */
     List<Habit> getHabitsByUser(String userId);
 
     /**
      * Получает список всех привычек.
+     * Список является неизменяемым снимком, который пересоздается только после изменения набора привычек.
      *
-     * @return Список всех привычек.
+     * @return Неизменяемый список всех привычек.
      */
     List<Habit> getHabits();
 
+    /**
+     * Получает страницу привычек пользователя в порядке их создания.
+     * Курсор остается действительным при добавлении и удалении привычек между запросами.
+     *
+     * @param userId         Идентификатор пользователя.
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы, от 1 до {@link #MAX_PAGE_SIZE}.
+     * @param includeHistory Включать ли в представления даты выполнения.
+     * @return Страница кратких представлений привычек.
+     * @throws IllegalArgumentException если размер страницы или курсор некорректны.
+     */
+    Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory);
+
+    /**
+     * Получает страницу всех привычек в порядке их создания.
+     *
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы, от 1 до {@link #MAX_PAGE_SIZE}.
+     * @param includeHistory Включать ли в представления даты выполнения.
+     * @return Страница кратких представлений привычек.
+     * @throws IllegalArgumentException если размер страницы или курсор некорректны.
+     */
+    Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory);
+
+    /**
+     * Передает обработчику привычки пользователя без создания промежуточного списка.
+     *
+     * @param userId Идентификатор пользователя.
+     * @param action Обработчик привычки.
+     */
+    default void forEachHabit(String userId, Consumer<? super Habit> action) {
+        getHabitsByUser(userId).forEach(action);
+    }
+
+    /**
+     * Передает обработчику все привычки без создания промежуточного списка.
+     * Привычки, созданные или удаленные во время обхода, могут быть как пропущены, так и переданы.
+     *
+     * @param action Обработчик привычки.
+     */
+    default void forEachHabit(Consumer<? super Habit> action) {
+        getHabits().forEach(action);
+    }
+
     /**
      * Получает список дат выполнения для конкретной привычки.
      *
@@ -0,0 +1,15 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+
+/**
+ * Позиция привычки в рейтинге текущих серий выполнения.
+ *
+ * @param habitId   Идентификатор привычки.
+ * @param userId    Идентификатор пользователя-владельца.
+ * @param title     Название привычки.
+ * @param frequency Частота выполнения; серия считается в днях или неделях.
+ * @param streak    Текущая серия выполнения.
+ */
+public record HabitStreak(String habitId, String userId, String title, Frequency frequency, int streak) {
+}
@@ -0,0 +1,62 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Краткое представление привычки для списков.
+ * История выполнения включается только по запросу, поэтому размер представления
+ * не зависит от количества отметок.
+ *
+ * @param id                 Идентификатор привычки.
+ * @param userId             Идентификатор пользователя-владельца.
+ * @param title              Название привычки.
+ * @param description        Описание привычки.
+ * @param schedule           Расписание выполнения.
+ * @param completionCount    Количество дат выполнения.
+ * @param lastCompletionDate Дата последнего выполнения или {@code null}.
+ * @param completionDates    Даты выполнения или {@code null}, если история не запрошена.
+ */
+public record HabitSummary(String id, String userId, String title, String description, Schedule schedule,
+                           int completionCount, LocalDate lastCompletionDate, List<LocalDate> completionDates) {
+
+    /**
+     * Создает представление привычки, согласованно читая ее поля под монитором привычки.
+     *
+     * @param habit          Привычка.
+     * @param includeHistory Включить ли даты выполнения.
+     * @return Представление привычки.
+     */
+    public static HabitSummary of(Habit habit, boolean includeHistory) {
+        synchronized (habit) {
+            return new HabitSummary(habit.getId(), habit.getUserId(), habit.getTitle(), habit.getDescription(),
+                    habit.getSchedule(), habit.getCompletionCount(), habit.getLastCompletionDate(),
+                    includeHistory ? habit.getCompletionDates() : null);
+        }
+    }
+
+    /**
+     * Возвращает вид расписания привычки.
+     *
+     * @return Частота выполнения.
+     */
+    public Frequency frequency() {
+        return schedule.getFrequency();
+    }
+
+    @Override
+    public String toString() {
+        return "Привычка{" +
+                "ID: " + id +
+                ", Название: " + title +
+                ", Описание: " + description +
+                ", Частота: " + schedule.getDescription() +
+                ", Выполнено раз: " + completionCount +
+                (lastCompletionDate != null ? ", Последнее выполнение: " + lastCompletionDate : "") +
+                '}';
+    }
+}
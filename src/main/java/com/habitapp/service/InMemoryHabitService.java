@@ -1,28 +1,64 @@
 package com.habitapp.service;
 
+import com.habitapp.model.CompactId;
+import com.habitapp.model.CompletionArena;
 import com.habitapp.model.Frequency;
 import com.habitapp.model.Habit;
+import com.habitapp.model.IdMap;
+import com.habitapp.model.Schedule;
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Реализация HabitService для управления привычками в памяти.
  * - `createHabit`: создание новой привычки.
  * - `updateHabit`: редактирование привычки.
  * - `deleteHabit`: удаление привычки.
+ * - `deleteHabitsByUser`: пакетное удаление привычек пользователя.
  * - `getHabits`: получение списка всех привычек.
  * - `markHabitAsCompleted`: отметка о выполнении привычки.
+ * - `markHabitsAsCompleted`: пакетная отметка о выполнении привычек.
  * - `getCurrentStreak`: получение текущей серии выполнения.
  * - `getCompletionPercentage`: получение процента выполнения за период.
+ * - `getTopStreaks`: рейтинг привычек по текущей серии выполнения.
+ * - `getUserCompletionStats`, `getCompletionStats`: сводная статистика выполнения по предварительно агрегированным счетчикам.
+ * - `getHabitsDueOn`: привычки, ожидающие выполнения в указанный день, по календарю напоминаний.
  * - `getHabitsByUser`: получение привычек конкретного пользователя.
  * - `getCompletedDatesForHabit`: получение дат выполнения привычки.
+ * - `listHabitsByUser`, `listHabits`: постраничный вывод привычек в порядке создания.
+ * Списки привычек пользователя неизменяемы и заменяются целиком при записи,
+ * а снимок всех привычек пересоздается только после создания или удаления привычки,
+ * поэтому чтение списков не копирует их при каждом вызове.
+ * Индексы привычек и пользователей построены по 128-битным ключам {@link CompactId}
+ * в таблицах {@link IdMap} без объектов-узлов: строка идентификатора разбирается в два long,
+ * и поиск не хеширует строку из 36 символов.
  */
 public class InMemoryHabitService implements HabitService {
-    private final Map<String, Habit> habits = new HashMap<>();
+    private final IdMap<Habit> habits = new IdMap<>();
 //    private final Map<Integer, Habit> habitsNyNumber = new HashMap<>();
-    private final Map<String, List<Habit>> userHabits = new HashMap<>();
+    private final IdMap<List<Habit>> userHabits = new IdMap<>();
+    private final NavigableMap<Long, Habit> habitsBySequence = new TreeMap<>();
+    private final CompletionRollups rollups = new CompletionRollups();
+    private final DueHabitIndex dueHabits = new DueHabitIndex();
+    private List<Habit> allHabits; // null, если набор привычек изменился
+    private long lastSequence;
+    private final CompletionArena arena; // null, если даты выполнения хранятся в куче
+
+    public InMemoryHabitService() {
+        this(null);
+    }
+
+    /**
+     * Создает сервис, хранящий даты выполнения привычек вне кучи.
+     * Подсчеты отметок за период вне кучи линейны по длине периода, а не логарифмичны.
+     *
+     * @param arena Хранилище истории выполнения или {@code null} для хранения в куче.
+     */
+    public InMemoryHabitService(CompletionArena arena) {
+        this.arena = arena;
+    }
 
     /**
      * Создает новую привычку.
@@ -30,15 +66,21 @@ public class InMemoryHabitService implements HabitService {
      * @param userId      Идентификатор пользователя-владельца привычки.
      * @param title       Название привычки.
      * @param description Описание привычки.
-     * @param frequency   Частота выполнения привычки.
+     * @param schedule    Расписание выполнения привычки.
      * @return Созданная привычка.
      */
     @Override
-    public Habit createHabit(String userId, String title, String description, Frequency frequency) {
-        Habit habit = new Habit(userId, title, description, frequency);
-        habits.put(habit.getId(), habit);
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        Habit habit = new Habit(UUID.randomUUID().toString(), userId, title, description, schedule, ++lastSequence,
+                arena);
+        habits.put(habit.getIdHigh(), habit.getIdLow(), habit);
+        habitsBySequence.put(habit.getSequence(), habit);
 //        habitsNyNumber.put(habit.getOrderNumber(), habit);
-        userHabits.computeIfAbsent(userId, k -> new ArrayList<>()).add(habit);
+        userHabits.put(habit.getUserIdHigh(), habit.getUserIdLow(),
+                append(userHabits.get(habit.getUserIdHigh(), habit.getUserIdLow()), habit));
+        rollups.add(habit);
+        dueHabits.add(habit);
+        allHabits = null;
         return habit;
     }
 
@@ -70,19 +112,25 @@ public class InMemoryHabitService implements HabitService {
      * @param habitId     Идентификатор привычки.
      * @param title       Новое название привычки.
      * @param description Новое описание привычки.
-     * @param frequency   Новая частота выполнения привычки.
+     * @param schedule    Новое расписание выполнения привычки.
      * @return Обновленная привычка.
      * @throws IllegalArgumentException если привычка не найдена.
      */
     @Override
-    public Habit updateHabit(String habitId, String title, String description, Frequency frequency) {
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
         Habit habit = habits.get(habitId);
         if (habit == null) {
             throw new IllegalArgumentException("Привычка не найдена");
         }
         habit.setTitle(title);
         habit.setDescription(description);
-        habit.setFrequency(frequency);
+        if (!habit.getSchedule().equals(schedule)) {
+            rollups.remove(habit);
+            dueHabits.remove(habit);
+            habit.setSchedule(schedule);
+            rollups.add(habit);
+            dueHabits.add(habit);
+        }
         return habit;
     }
 
@@ -94,20 +142,59 @@ public class InMemoryHabitService implements HabitService {
      */
     @Override
     public boolean deleteHabit(String habitId) {
-        Habit removed = habits.remove(habitId);
+        Habit removed = habits.get(habitId);
         if (removed != null) {
-            List<Habit> userHabitList = userHabits.get(removed.getUserId());
-            if (userHabitList != null) {
-                userHabitList.remove(removed);
-                if (userHabitList.isEmpty()) {
-                    userHabits.remove(removed.getUserId());
-                }
+            habits.remove(removed.getIdHigh(), removed.getIdLow());
+            habitsBySequence.remove(removed.getSequence());
+            List<Habit> userHabitList = remove(userHabits.get(removed.getUserIdHigh(), removed.getUserIdLow()), removed);
+            if (userHabitList == null) {
+                userHabits.remove(removed.getUserIdHigh(), removed.getUserIdLow());
+            } else {
+                userHabits.put(removed.getUserIdHigh(), removed.getUserIdLow(), userHabitList);
             }
+            rollups.remove(removed);
+            dueHabits.remove(removed);
+            allHabits = null;
             return true;
         }
         return false;
     }
 
+    /**
+     * Удаляет пакет привычек пользователя, начиная с самых ранних.
+     *
+     * @param userId Идентификатор пользователя.
+     * @param limit  Максимальное количество удаляемых привычек.
+     * @return Удаленные привычки.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        List<Habit> userHabitList = userHabits.get(userId);
+        if (userHabitList == null) {
+            return List.of();
+        }
+        Habit owner = userHabitList.get(0);
+        int count = Math.min(limit, userHabitList.size());
+        List<Habit> removed = userHabitList.subList(0, count);
+        for (Habit habit : removed) {
+            habits.remove(habit.getIdHigh(), habit.getIdLow());
+            habitsBySequence.remove(habit.getSequence());
+            rollups.remove(habit);
+            dueHabits.remove(habit);
+        }
+        if (count == userHabitList.size()) {
+            userHabits.remove(owner.getUserIdHigh(), owner.getUserIdLow());
+        } else {
+            userHabits.put(owner.getUserIdHigh(), owner.getUserIdLow(), List.copyOf(userHabitList.subList(count, userHabitList.size())));
+        }
+        allHabits = null;
+        return removed;
+    }
+
     /**
      * Отмечает выполнение привычки в указанный день.
      *
@@ -121,7 +208,18 @@ public class InMemoryHabitService implements HabitService {
         if (habit == null) {
             throw new IllegalArgumentException("Привычка не найдена");
         }
-        habit.markCompleted(date);
+        markCompleted(habit, date);
+    }
+
+    /**
+     * Отмечает выполнение нескольких привычек за один проход.
+     *
+     * @param completions Отметки о выполнении.
+     * @return Результаты обработки в порядке отметок пакета.
+     */
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        return CompletionBatch.apply(completions, habits::get, this::markCompleted);
     }
 
     /**
@@ -138,35 +236,7 @@ public class InMemoryHabitService implements HabitService {
             throw new IllegalArgumentException("Привычка не найдена");
         }
 
-        List<LocalDate> dates = new ArrayList<>(habit.getCompletionDates());
-        if (dates.isEmpty()) {
-            return 0;
-        }
-
-        Collections.sort(dates);
-        int streak = 0;
-        LocalDate today = LocalDate.now();
-
-        for (int i = dates.size() - 1; i >= 0; i--) {
-            LocalDate date = dates.get(i);
-            if (habit.getFrequency() == Frequency.DAILY) {
-                long daysBetween = ChronoUnit.DAYS.between(date, today) - streak;
-                if (daysBetween == 0 || daysBetween == 1) {
-                    streak++;
-                } else {
-                    break;
-                }
-            } else if (habit.getFrequency() == Frequency.WEEKLY) {
-                long weeksBetween = ChronoUnit.WEEKS.between(date, today) - streak;
-                if (weeksBetween == 0 || weeksBetween == 1) {
-                    streak++;
-                } else {
-                    break;
-                }
-            }
-        }
-
-        return streak;
+        return habit.getCurrentStreak(LocalDate.now());
     }
 
     /**
@@ -189,66 +259,124 @@ public class InMemoryHabitService implements HabitService {
             throw new IllegalArgumentException("Привычка не найдена");
         }
 
-        List<LocalDate> dates = habit.getCompletionDates();
-        if (dates.isEmpty()) {
-            return 0.0;
-        }
-
-        // Фильтруем даты в указанном диапазоне
-        List<LocalDate> filteredDates = new ArrayList<>();
-        for (LocalDate date : dates) {
-            if ((date.isEqual(startDate) || date.isAfter(startDate)) &&
-                    (date.isEqual(endDate) || date.isBefore(endDate))) {
-                filteredDates.add(date);
-            }
-        }
+        return habit.getCompletionPercentage(startDate, endDate);
+    }
 
-        long totalUnits;
-        long completedUnits = 0;
+    /**
+     * Получает рейтинг привычек всех пользователей по текущей серии выполнения.
+     *
+     * @param limit Размер рейтинга.
+     * @return Позиции по убыванию серии.
+     * @throws IllegalArgumentException если размер рейтинга некорректен.
+     */
+    @Override
+    public List<HabitStreak> getTopStreaks(int limit) {
+        return StreakLeaderboard.top(getHabits(), limit, LocalDate.now());
+    }
 
-        if (habit.getFrequency() == Frequency.DAILY) {
-            totalUnits = ChronoUnit.DAYS.between(startDate, endDate) + 1;
-            completedUnits = filteredDates.size();
-        } else { // WEEKLY
-            totalUnits = ChronoUnit.WEEKS.between(startDate, endDate) + 1;
-            // Для еженедельных привычек считаем количество недель с завершением
-            Set<Long> completedWeeks = new HashSet<>();
-            for (LocalDate date : filteredDates) {
-                completedWeeks.add(ChronoUnit.WEEKS.between(startDate, date));
-            }
-            completedUnits = completedWeeks.size();
+    /**
+     * Получает сводную статистику выполнения привычек пользователя указанной частоты за период.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
         }
+        return rollups.userStats(userId, frequency, startDate, endDate);
+    }
 
-        if (totalUnits == 0) {
-            return 0.0;
+    /**
+     * Получает сводную статистику выполнения привычек всех пользователей указанной частоты за период.
+     *
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
         }
+        return rollups.globalStats(frequency, startDate, endDate);
+    }
 
-        return ((double) completedUnits / totalUnits) * 100;
+    /**
+     * Получает привычки, которые ожидают выполнения в указанный день.
+     *
+     * @param date Дата.
+     * @return Ожидающие выполнения привычки.
+     */
+    @Override
+    public List<Habit> getHabitsDueOn(LocalDate date) {
+        return dueHabits.dueOn(date);
     }
 
     /**
      * Получает список привычек конкретного пользователя.
      *
      * @param userId Идентификатор пользователя.
-     * @return Список привычек пользователя.
+     * @return Неизменяемый список привычек пользователя.
      */
     @Override
     public List<Habit> getHabitsByUser(String userId) {
-        List<Habit> habitsList = userHabits.get(userId);
-        if (habitsList == null) {
-            return Collections.emptyList();
-        }
-        return new ArrayList<>(habitsList); // Возвращаем копию списка для безопасности
+        List<Habit> userHabitList = userHabits.get(userId);
+        return userHabitList != null ? userHabitList : Collections.emptyList();
     }
 
     /**
      * Получает список всех привычек.
      *
-     * @return Список всех привычек.
+     * @return Неизменяемый список всех привычек.
      */
     @Override
     public List<Habit> getHabits() {
-        return new ArrayList<>(habits.values());
+        List<Habit> snapshot = allHabits;
+        if (snapshot == null) {
+            snapshot = List.copyOf(habits.values());
+            allHabits = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Получает страницу привычек пользователя в порядке их создания.
+     *
+     * @param userId         Идентификатор пользователя.
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(getHabitsByUser(userId), cursor, limit, includeHistory);
+    }
+
+    /**
+     * Получает страницу всех привычек в порядке их создания.
+     *
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(habitsBySequence, cursor, limit, includeHistory);
+    }
+
+    @Override
+    public void forEachHabit(Consumer<? super Habit> action) {
+        habits.forEach(action);
     }
 
     /**
@@ -266,4 +394,39 @@ public class InMemoryHabitService implements HabitService {
         }
         return habit.getCompletionDates();
     }
-}
\ No newline at end of file
+
+    /**
+     * Отмечает выполнение привычки и учитывает новую отметку в сводных счетчиках и календаре напоминаний.
+     *
+     * @param habit Привычка.
+     * @param date  Дата выполнения.
+     * @return {@code true}, если отметка добавлена.
+     */
+    boolean markCompleted(Habit habit, LocalDate date) {
+        synchronized (habit) {
+            boolean added = habit.markCompleted(date);
+            // Удаленная привычка уже исключена из счетчиков
+            if (added && habits.get(habit.getIdHigh(), habit.getIdLow()) == habit) {
+                rollups.completed(habit, date);
+                dueHabits.completed(habit, date);
+            }
+            return added;
+        }
+    }
+
+    private static List<Habit> append(List<Habit> habitsList, Habit habit) {
+        if (habitsList == null) {
+            return List.of(habit);
+        }
+        Habit[] updated = habitsList.toArray(new Habit[habitsList.size() + 1]);
+        updated[habitsList.size()] = habit;
+        return List.of(updated);
+    }
+
+    // Возвращает null для пустого списка, чтобы запись пользователя была удалена
+    private static List<Habit> remove(List<Habit> habitsList, Habit habit) {
+        List<Habit> updated = new ArrayList<>(habitsList);
+        updated.remove(habit);
+        return updated.isEmpty() ? null : List.copyOf(updated);
+    }
+}
@@ -1,8 +1,16 @@
 package com.habitapp.service;
+import com.habitapp.model.IdMap;
 import com.habitapp.model.User;
+import com.habitapp.security.PasswordHasher;
+import com.habitapp.security.SessionStore;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
 /**
  * Реализация UserService для управления пользователями в памяти.
@@ -11,9 +19,43 @@ import java.util.Map;
  * - `updateProfile`: обновление профиля пользователя.
  * - `deleteAccount`: удаление пользователя.
  * - `getUserById`: получение пользователя по идентификатору.
+ * Вторичный индекс `usersByEmail` позволяет проверять занятость email
+ * и авторизовывать пользователя за константное время.
+ * Основной индекс `users` — таблица {@link IdMap} по 128-битному ключу идентификатора:
+ * запись защищена блокировкой {@link StampedLock}, а чтение идет без блокировки
+ * и повторяется под блокировкой чтения, только если пересеклось с записью.
+ * После входа пользователь получает токен сессии из {@link SessionStore}, и дальнейшие
+ * обращения проверяют только токен. Удаление аккаунта и смена пароля отзывают все сессии пользователя.
+ * Пароли хешируются {@link PasswordHasher}. Хеш вычисляется до изменения состояния,
+ * а само изменение выполняют отдельные методы, поэтому наследники могут защищать
+ * блокировкой только их, не удерживая ее на время вычисления хеша.
  */
 public class InMemoryUserService implements UserService {
-    private final Map<String, User> users = new HashMap<>();
+    private final IdMap<User> users = new IdMap<>();
+    private final StampedLock usersLock = new StampedLock();
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final PasswordHasher hasher;
+    private final SessionStore sessions;
+    private final List<Consumer<String>> deletionListeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryUserService() {
+        this(new PasswordHasher());
+    }
+
+    public InMemoryUserService(PasswordHasher hasher) {
+        this(hasher, new SessionStore());
+    }
+
+    /**
+     * Создает сервис с указанной стоимостью хеширования и хранилищем сессий.
+     *
+     * @param hasher   Хешер паролей.
+     * @param sessions Хранилище сессий.
+     */
+    public InMemoryUserService(PasswordHasher hasher, SessionStore sessions) {
+        this.hasher = hasher;
+        this.sessions = sessions;
+    }
 
     /**
      * Регистрирует нового пользователя.
@@ -26,13 +68,11 @@ public class InMemoryUserService implements UserService {
      */
     @Override
     public User register(String name, String email, String password) {
-        if (users.values().stream().anyMatch(user -> user.getEmail().equals(email))) {
+        // Занятый email отклоняется до вычисления хеша и повторно проверяется при вставке
+        if (usersByEmail.containsKey(email)) {
             throw new IllegalArgumentException("Такой email уже существует");
         }
-        User user = new User(email, password, name);
-        users.put(user.getId(), user);
-        System.out.println(users);
-        return user;
+        return insertUser(new User(email, hasher.hash(password), name));
     }
 
     /**
@@ -44,10 +84,8 @@ public class InMemoryUserService implements UserService {
      */
     @Override
     public User login(String email, String password) {
-        return users.values().stream()
-                .filter(user -> user.getEmail().equals(email) && user.getPassword().equals(password))
-                .findFirst()
-                .orElse(null);
+        User user = usersByEmail.get(email);
+        return user != null && verify(user, password) != null ? user : null;
     }
 
     /**
@@ -56,37 +94,276 @@ public class InMemoryUserService implements UserService {
      * @param userId Идентификатор пользователя.
      * @param name Новое имя пользователя.
      * @param email Новый email пользователя.
-     * @param password Новый пароль пользователя.
+     * @param password Новый пароль пользователя или {@code null}, чтобы оставить прежний.
      * @return Обновленный пользователь.
-     * @throws IllegalArgumentException если пользователь не найден.
+     * @throws IllegalArgumentException если пользователь не найден или новый email уже занят.
      */
     @Override
     public User updateProfile(String userId, String name, String email, String password) {
-        User user = users.get(userId);
-
-        if (user == null) {
+        if (findUser(userId) == null) {
             throw new IllegalArgumentException("Пользователь не найден");
         }
-        user.setName(name);
-        user.setEmail(email);
-        user.setPassword(password);
-        return user;
+        return applyProfile(userId, name, email, password == null ? null : hasher.hash(password));
     }
 
     /**
-     * Удаляет пользователя.
+     * Удаляет пользователя и уведомляет подписчиков на удаление аккаунтов.
      *
      * @param userId Идентификатор пользователя.
      * @return {@code true} если удаление прошло успешно, {@code false} иначе.
      */
     @Override
     public boolean deleteAccount(String userId) {
-        return users.remove(userId) != null;
+        if (!removeUser(userId)) {
+            return false;
+        }
+        notifyDeleted(userId);
+        return true;
     }
 
     @Override
     public User getUserById(String userId) {
-        return users.get(userId);
+        return findUser(userId);
+    }
+
+    @Override
+    public String authenticate(String email, String password) {
+        User user = usersByEmail.get(email);
+        String passwordHash = user == null ? null : verify(user, password);
+        if (passwordHash == null) {
+            return null;
+        }
+        String token = sessions.issue(user.getId());
+        // Аккаунт удалили или пароль сменили во время проверки: их отзыв сессий уже прошел
+        if (findUser(user) != user || !passwordHash.equals(user.getPasswordHash())) {
+            sessions.invalidate(token);
+            return null;
+        }
+        return token;
+    }
+
+    @Override
+    public User getUserByToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        String userId = sessions.resolve(token);
+        return userId == null ? null : findUser(userId);
+    }
+
+    @Override
+    public void logout(String token) {
+        if (token != null) {
+            sessions.invalidate(token);
+        }
+    }
+
+    /**
+     * Проверяет пароль пользователя.
+     * Хеш, вычисленный с устаревшей стоимостью или сохраненный открытым текстом
+     * до перехода на хеши, пересчитывается после успешной проверки.
+     *
+     * @param user     Пользователь.
+     * @param password Пароль.
+     * @return Актуальный хеш пароля или {@code null}, если пароль неверный.
+     */
+    private String verify(User user, String password) {
+        String passwordHash = user.getPasswordHash();
+        if (!hasher.verify(password, passwordHash)) {
+            return null;
+        }
+        if (hasher.needsRehash(passwordHash)) {
+            String rehashed = hasher.hash(password);
+            if (replacePasswordHash(user, passwordHash, rehashed)) {
+                return rehashed;
+            }
+        }
+        return passwordHash;
     }
 
+    /**
+     * Подписывает обработчик на удаление аккаунтов, например для удаления данных пользователя
+     * в других сервисах. Обработчик вызывается в потоке удаления после того, как удаление
+     * применено, поэтому он должен быстро возвращать управление.
+     *
+     * @param listener Обработчик, получающий идентификатор удаленного пользователя.
+     */
+    public void addDeletionListener(Consumer<String> listener) {
+        deletionListeners.add(listener);
+    }
+
+    /**
+     * Удаляет пользователя из индексов и отзывает его сессии.
+     *
+     * @param userId Идентификатор пользователя.
+     * @return {@code true}, если пользователь был удален.
+     */
+    boolean removeUser(String userId) {
+        User removed = unindexUser(userId);
+        if (removed == null) {
+            return false;
+        }
+        usersByEmail.remove(removed.getEmail());
+        sessions.invalidateUser(userId);
+        return true;
+    }
+
+    /**
+     * Уведомляет подписчиков об удалении аккаунта.
+     *
+     * @param userId Идентификатор удаленного пользователя.
+     */
+    void notifyDeleted(String userId) {
+        for (Consumer<String> listener : deletionListeners) {
+            listener.accept(userId);
+        }
+    }
+
+    /**
+     * Проверяет, занят ли email.
+     *
+     * @param email Email.
+     * @return {@code true}, если email принадлежит существующему пользователю.
+     */
+    boolean isEmailTaken(String email) {
+        return usersByEmail.containsKey(email);
+    }
+
+    /**
+     * Добавляет пользователя с уже вычисленным хешем пароля.
+     *
+     * @param user Пользователь.
+     * @return Добавленный пользователь.
+     * @throws IllegalArgumentException если email уже занят.
+     */
+    User insertUser(User user) {
+        if (usersByEmail.putIfAbsent(user.getEmail(), user) != null) {
+            throw new IllegalArgumentException("Такой email уже существует");
+        }
+        indexUser(user);
+        return user;
+    }
+
+    /**
+     * Применяет изменения профиля с уже вычисленным хешем пароля.
+     *
+     * @param userId       Идентификатор пользователя.
+     * @param name         Новое имя пользователя.
+     * @param email        Новый email пользователя.
+     * @param passwordHash Новый хеш пароля или {@code null}, чтобы оставить прежний.
+     * @return Обновленный пользователь.
+     * @throws IllegalArgumentException если пользователь не найден или новый email уже занят.
+     */
+    User applyProfile(String userId, String name, String email, String passwordHash) {
+        User user = findUser(userId);
+
+        if (user == null) {
+            throw new IllegalArgumentException("Пользователь не найден");
+        }
+        if (!user.getEmail().equals(email)) {
+            if (usersByEmail.putIfAbsent(email, user) != null) {
+                throw new IllegalArgumentException("Такой email уже существует");
+            }
+            usersByEmail.remove(user.getEmail());
+        }
+        user.setName(name);
+        user.setEmail(email);
+        if (passwordHash != null) {
+            user.setPasswordHash(passwordHash);
+            sessions.invalidateUser(userId);
+        }
+        return user;
+    }
+
+    /**
+     * Заменяет хеш пароля, если он не изменился с момента проверки.
+     *
+     * @param user         Пользователь.
+     * @param expected     Хеш, с которым прошла проверка.
+     * @param passwordHash Новый хеш пароля.
+     * @return {@code true}, если хеш заменен.
+     */
+    boolean replacePasswordHash(User user, String expected, String passwordHash) {
+        if (findUser(user) != user || !expected.equals(user.getPasswordHash())) {
+            return false;
+        }
+        user.setPasswordHash(passwordHash);
+        return true;
+    }
+
+    /**
+     * Восстанавливает пользователя с сохраненным идентификатором,
+     * заменяя ранее восстановленную версию.
+     *
+     * @param user Пользователь.
+     */
+    void restoreUser(User user) {
+        User previous = indexUser(user);
+        if (previous != null) {
+            usersByEmail.remove(previous.getEmail(), previous);
+        }
+        usersByEmail.put(user.getEmail(), user);
+    }
+
+    /**
+     * Возвращает представление всех пользователей.
+     *
+     * @return Пользователи.
+     */
+    Collection<User> users() {
+        long stamp = usersLock.readLock();
+        try {
+            return users.values();
+        } finally {
+            usersLock.unlockRead(stamp);
+        }
+    }
+
+    private User findUser(String userId) {
+        long stamp = usersLock.tryOptimisticRead();
+        User user = users.get(userId);
+        if (!usersLock.validate(stamp)) {
+            stamp = usersLock.readLock();
+            try {
+                user = users.get(userId);
+            } finally {
+                usersLock.unlockRead(stamp);
+            }
+        }
+        return user;
+    }
+
+    // Текущая версия пользователя с тем же идентификатором, без разбора строки идентификатора
+    private User findUser(User user) {
+        long stamp = usersLock.tryOptimisticRead();
+        User current = users.get(user.getIdHigh(), user.getIdLow());
+        if (!usersLock.validate(stamp)) {
+            stamp = usersLock.readLock();
+            try {
+                current = users.get(user.getIdHigh(), user.getIdLow());
+            } finally {
+                usersLock.unlockRead(stamp);
+            }
+        }
+        return current;
+    }
+
+    private User indexUser(User user) {
+        long stamp = usersLock.writeLock();
+        try {
+            return users.put(user.getIdHigh(), user.getIdLow(), user);
+        } finally {
+            usersLock.unlockWrite(stamp);
+        }
+    }
+
+    private User unindexUser(String userId) {
+        long stamp = usersLock.writeLock();
+        try {
+            User user = users.get(userId);
+            return user != null ? users.remove(user.getIdHigh(), user.getIdLow()) : null;
+        } finally {
+            usersLock.unlockWrite(stamp);
+        }
+    }
 }
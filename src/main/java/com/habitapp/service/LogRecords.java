@@ -0,0 +1,103 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Двоичный формат записей журнала изменений пользователей и привычек.
+ * Первый байт записи задает тип изменения, строки хранятся как длина и байты UTF-8.
+ */
+final class LogRecords {
+    static final byte REGISTER = 1;
+    static final byte UPDATE_PROFILE = 2;
+    static final byte DELETE_ACCOUNT = 3;
+    static final byte CREATE_HABIT = 4;
+    static final byte UPDATE_HABIT = 5;
+    static final byte DELETE_HABIT = 6;
+    static final byte MARK_COMPLETED = 7;
+
+    private LogRecords() {
+    }
+
+    static byte[] register(User user) {
+        return encode(REGISTER, user.getId(), user.getEmail(), user.getPasswordHash(), user.getName());
+    }
+
+    // Новое состояние профиля записывается до его применения
+    static byte[] updateProfile(String userId, String email, String passwordHash, String name) {
+        return encode(UPDATE_PROFILE, userId, email, passwordHash, name);
+    }
+
+    static byte[] deleteAccount(String userId) {
+        return encode(DELETE_ACCOUNT, userId);
+    }
+
+    // Порядковый номер создания дописывается после строк; записи без него получают номер при воспроизведении
+    static byte[] createHabit(Habit habit) {
+        byte[] fields = encode(CREATE_HABIT, habit.getId(), habit.getUserId(), habit.getTitle(), habit.getDescription(),
+                habit.getSchedule().encode());
+        return ByteBuffer.allocate(fields.length + Long.BYTES).put(fields).putLong(habit.getSequence()).array();
+    }
+
+    static byte[] updateHabit(String habitId, String title, String description, Schedule schedule) {
+        return encode(UPDATE_HABIT, habitId, title, description, schedule.encode());
+    }
+
+    static byte[] deleteHabit(String habitId) {
+        return encode(DELETE_HABIT, habitId);
+    }
+
+    static byte[] markCompleted(String habitId, LocalDate date) {
+        byte[] id = habitId.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(1 + Integer.BYTES + id.length + Long.BYTES)
+                .put(MARK_COMPLETED).putInt(id.length).put(id).putLong(date.toEpochDay())
+                .array();
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    // Прежние записи содержат имя частоты, которое читается как расписание без параметров
+    static Schedule readSchedule(ByteBuffer buffer) {
+        return Schedule.parse(readString(buffer));
+    }
+
+    static LocalDate readDate(ByteBuffer buffer) {
+        return LocalDate.ofEpochDay(buffer.getLong());
+    }
+
+    private static byte[] encode(byte type, String... fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(type);
+            for (String field : fields) {
+                if (field == null) {
+                    output.writeInt(-1);
+                } else {
+                    byte[] encoded = field.getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(encoded.length);
+                    output.write(encoded);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
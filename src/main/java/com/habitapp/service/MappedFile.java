@@ -0,0 +1,111 @@
+package com.habitapp.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Файл, отображенный в память сегментами по {@value #SEGMENT_BYTES} байт.
+ * Сегменты отображаются при первом обращении, а файл растет вместе с ними, поэтому
+ * открытие не читает содержимое, а страницы загружает и вытесняет кэш страниц ОС.
+ * Значение не может пересекать границу сегментов: вызывающий код размещает записи так,
+ * чтобы они помещались в сегмент целиком.
+ * Класс не синхронизирован.
+ */
+final class MappedFile implements Closeable {
+    static final int SEGMENT_BYTES = 1 << 24;
+
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /**
+     * Открывает файл, создавая его при необходимости.
+     *
+     * @param path Путь к файлу.
+     * @throws IOException если файл не удалось открыть.
+     */
+    MappedFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Проверяет, пуст ли файл, то есть создан ли он только что.
+     *
+     * @return {@code true}, если в файле нет данных.
+     * @throws IOException если размер файла не удалось прочитать.
+     */
+    boolean isEmpty() throws IOException {
+        return channel.size() == 0;
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) {
+        segment(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) {
+        segment(position).putLong(offset(position), value);
+    }
+
+    void get(long position, byte[] bytes) {
+        segment(position).get(offset(position), bytes);
+    }
+
+    void put(long position, byte[] bytes) {
+        segment(position).put(offset(position), bytes);
+    }
+
+    /**
+     * Сбрасывает измененные страницы отображенных сегментов на диск.
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private MappedByteBuffer segment(long position) {
+        int index = (int) (position / SEGMENT_BYTES);
+        if (index >= segments.length) {
+            map(index);
+        }
+        return segments[index];
+    }
+
+    private void map(int index) {
+        MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+        try {
+            for (int i = segments.length; i <= index; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * SEGMENT_BYTES, SEGMENT_BYTES);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось отобразить файл " + path, e);
+        }
+        segments = grown;
+    }
+
+    private static int offset(long position) {
+        return (int) (position % SEGMENT_BYTES);
+    }
+}
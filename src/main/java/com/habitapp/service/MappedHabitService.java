@@ -0,0 +1,715 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompactId;
+import com.habitapp.model.CompletionBits;
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.IdMap;
+import com.habitapp.model.Schedule;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Реализация HabitService, данные которой хранятся в отображенных в память файлах каталога.
+ * <ul>
+ *     <li>{@code habits.dat} — записи привычек фиксированной длины {@value #RECORD_BYTES} байт:
+ *     [ключ привычки: 2 long][ключ владельца: 2 long][ссылки на строки владельца, названия, описания
+ *     и расписания: 4 long][последняя отметка: long][состояние: int][количество отметок: int].
+ *     Номер записи совпадает с порядковым номером создания привычки.</li>
+ *     <li>{@code strings.dat} — таблица строк: [длина: int][UTF-8]. Ссылка на строку — ее смещение,
+ *     ссылка 0 означает {@code null}; строка владельца хранится только для идентификаторов,
+ *     не являющихся UUID.</li>
+ *     <li>{@code completions.dat} — отметки в порядке поступления: [номер дня: long][предыдущая отметка
+ *     той же привычки: long], поэтому отметки привычки связаны в цепочку от последней к первой.</li>
+ * </ul>
+ * Первая запись каждого файла — заголовок с магическим числом, версией и количеством записей.
+ * Все файлы только дописываются, кроме полей записи привычки: изменение названия или расписания
+ * добавляет новые строки, удаление помечает запись, а прежние строки и отметки остаются в файлах.
+ * <p>
+ * Рабочий набор хранит кэш страниц ОС, а не куча: при открытии читаются только ключи записей
+ * для индекса идентификаторов, а привычка с историей выполнения собирается из файлов при обращении.
+ * В куче остаются индексы идентификаторов и небольшой кэш недавно использованных привычек, через который
+ * проходят все изменения. Привычки, выданные запросами по всем привычкам, не кэшируются и не отражают
+ * последующих изменений.
+ * <p>
+ * Запросы по всем привычкам загружают в кучу каждую привычку вместе с историей выполнения:
+ * {@link #getHabits()} и {@link #getTopStreaks(int)} держат их все одновременно, а
+ * {@link #getCompletionStats(Frequency, LocalDate, LocalDate)} и {@link #getHabitsDueOn(LocalDate)}
+ * собирают их по одной при каждом запросе, так как счетчиков и календаря напоминаний в памяти нет.
+ * Поэтому рабочий набор таких запросов растет с числом привычек, как у реализаций в куче.
+ * <p>
+ * Изменения попадают на диск, когда ОС сбрасывает страницы, или при {@link #flush()} и {@link #close()}.
+ * Порядок сброса страниц не определен, поэтому после сбоя процесса или ОС без {@link #flush()} файлы
+ * могут содержать счетчик записей без самих записей или изменения без счетчика. Журнала изменений
+ * у этой реализации нет: {@link DurableStorage} восстанавливает данные в собственный
+ * {@link ConcurrentHabitService} и не оборачивает этот класс, поэтому каждое изменение сохраняется
+ * надежно только при использовании {@link DurableStorage} вместо {@code MappedHabitService}.
+ * Класс не потокобезопасен, как и {@link InMemoryHabitService}.
+ */
+public final class MappedHabitService implements HabitService, Closeable {
+    static final int RECORD_BYTES = 80;
+    private static final int COMPLETION_BYTES = 16;
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+    private static final int VERSION = 1;
+    private static final int RECORDS_MAGIC = 0x48524543; // "HREC"
+    private static final int STRINGS_MAGIC = 0x48535452; // "HSTR"
+    private static final int COMPLETIONS_MAGIC = 0x48434D50; // "HCMP"
+    private static final int RECORDS_PER_SEGMENT = MappedFile.SEGMENT_BYTES / RECORD_BYTES;
+
+    // Заголовок файла
+    private static final int MAGIC = 0;
+    private static final int FORMAT_VERSION = 4;
+    private static final int COUNT = 8;
+    private static final int STRINGS_START = 16;
+
+    // Поля записи привычки
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = 8;
+    private static final int USER_ID_HIGH = 16;
+    private static final int USER_ID_LOW = 24;
+    private static final int USER_ID_TEXT = 32;
+    private static final int TITLE = 40;
+    private static final int DESCRIPTION = 48;
+    private static final int SCHEDULE = 56;
+    private static final int LAST_COMPLETION = 64;
+    private static final int STATE = 72;
+    private static final int COMPLETIONS = 76;
+
+    private static final int LIVE = 1;
+    private static final int DELETED = 2;
+
+    private final MappedFile records;
+    private final MappedFile strings;
+    private final MappedFile completions;
+    // Номера записей по ключам привычек и пользователей
+    private final IdMap<Integer> habits = new IdMap<>();
+    private final IdMap<int[]> userHabits = new IdMap<>();
+    private final Map<Schedule, Long> scheduleRefs = new HashMap<>();
+    private final Map<Integer, Habit> cache;
+    private int lastSequence;
+    private long stringsEnd;
+    private long lastCompletion;
+
+    private MappedHabitService(MappedFile records, MappedFile strings, MappedFile completions, int cacheSize) {
+        this.records = records;
+        this.strings = strings;
+        this.completions = completions;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Habit> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Открывает сервис в каталоге, создавая файлы при необходимости.
+     *
+     * @param directory Каталог данных.
+     * @return Сервис.
+     * @throws IOException если файлы не удалось открыть или их формат неизвестен.
+     */
+    public static MappedHabitService open(Path directory) throws IOException {
+        return open(directory, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Открывает сервис в каталоге, создавая файлы при необходимости.
+     *
+     * @param directory Каталог данных.
+     * @param cacheSize Количество недавно использованных привычек, хранимых в куче.
+     * @return Сервис.
+     * @throws IOException              если файлы не удалось открыть или их формат неизвестен.
+     * @throws IllegalArgumentException если размер кэша отрицателен.
+     */
+    public static MappedHabitService open(Path directory, int cacheSize) throws IOException {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным");
+        }
+        Files.createDirectories(directory);
+        List<MappedFile> opened = new ArrayList<>();
+        try {
+            MappedFile records = openFile(directory.resolve("habits.dat"), RECORDS_MAGIC, opened);
+            MappedFile strings = openFile(directory.resolve("strings.dat"), STRINGS_MAGIC, opened);
+            MappedFile completions = openFile(directory.resolve("completions.dat"), COMPLETIONS_MAGIC, opened);
+            MappedHabitService service = new MappedHabitService(records, strings, completions, cacheSize);
+            service.loadIndexes();
+            return service;
+        } catch (IOException | RuntimeException e) {
+            for (MappedFile file : opened) {
+                file.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Создает новую привычку.
+     *
+     * @param userId      Идентификатор пользователя-владельца привычки.
+     * @param title       Название привычки.
+     * @param description Описание привычки.
+     * @param schedule    Расписание выполнения привычки.
+     * @return Созданная привычка.
+     */
+    @Override
+    public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+        if (lastSequence == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Достигнуто максимальное количество привычек");
+        }
+        int index = lastSequence + 1;
+        Habit habit = new Habit(UUID.randomUUID().toString(), userId, title, description, schedule, index);
+        long position = position(index);
+        records.putLong(position + ID_HIGH, habit.getIdHigh());
+        records.putLong(position + ID_LOW, habit.getIdLow());
+        if (CompactId.isCompact(userId)) {
+            records.putLong(position + USER_ID_HIGH, habit.getUserIdHigh());
+            records.putLong(position + USER_ID_LOW, habit.getUserIdLow());
+            records.putLong(position + USER_ID_TEXT, 0);
+        } else {
+            // Суррогатный ключ действует только в этом процессе, поэтому хранится сама строка
+            records.putLong(position + USER_ID_HIGH, 0);
+            records.putLong(position + USER_ID_LOW, 0);
+            records.putLong(position + USER_ID_TEXT, writeString(userId));
+        }
+        records.putLong(position + TITLE, writeString(title));
+        records.putLong(position + DESCRIPTION, writeString(description));
+        records.putLong(position + SCHEDULE, scheduleRef(schedule));
+        records.putLong(position + LAST_COMPLETION, 0);
+        records.putInt(position + COMPLETIONS, 0);
+        records.putInt(position + STATE, LIVE);
+        lastSequence = index;
+        records.putLong(COUNT, lastSequence);
+        index(habit.getIdHigh(), habit.getIdLow(), habit.getUserIdHigh(), habit.getUserIdLow(), index);
+        cache.put(index, habit);
+        return habit;
+    }
+
+    /**
+     * Получает привычку по ее идентификатору.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Привычка или {@code null}, если не найдена.
+     */
+    @Override
+    public Habit getHabitById(String habitId) {
+        Integer index = habits.get(habitId);
+        return index != null ? habitAt(index, true) : null;
+    }
+
+    /**
+     * Обновляет существующую привычку.
+     *
+     * @param habitId     Идентификатор привычки.
+     * @param title       Новое название привычки.
+     * @param description Новое описание привычки.
+     * @param schedule    Новое расписание выполнения привычки.
+     * @return Обновленная привычка.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public Habit updateHabit(String habitId, String title, String description, Schedule schedule) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        long position = position((int) habit.getSequence());
+        if (!Objects.equals(title, habit.getTitle())) {
+            records.putLong(position + TITLE, writeString(title));
+            habit.setTitle(title);
+        }
+        if (!Objects.equals(description, habit.getDescription())) {
+            records.putLong(position + DESCRIPTION, writeString(description));
+            habit.setDescription(description);
+        }
+        if (!habit.getSchedule().equals(schedule)) {
+            records.putLong(position + SCHEDULE, scheduleRef(schedule));
+            habit.setSchedule(schedule);
+        }
+        return habit;
+    }
+
+    /**
+     * Удаляет привычку по ее идентификатору.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return {@code true}, если удаление прошло успешно, {@code false} иначе.
+     */
+    @Override
+    public boolean deleteHabit(String habitId) {
+        Integer index = habits.get(habitId);
+        if (index == null) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * Удаляет пакет привычек пользователя, начиная с самых ранних.
+     *
+     * @param userId Идентификатор пользователя.
+     * @param limit  Максимальное количество удаляемых привычек.
+     * @return Удаленные привычки.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    @Override
+    public List<Habit> deleteHabitsByUser(String userId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        int[] userHabitList = userHabits.get(userId);
+        if (userHabitList == null) {
+            return List.of();
+        }
+        int count = Math.min(limit, userHabitList.length);
+        List<Habit> removed = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            removed.add(habitAt(userHabitList[i], false));
+            remove(userHabitList[i]);
+        }
+        return removed;
+    }
+
+    /**
+     * Отмечает выполнение привычки в указанный день.
+     *
+     * @param habitId Идентификатор привычки.
+     * @param date    Дата выполнения.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public void markHabitAsCompleted(String habitId, LocalDate date) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        markCompleted(habit, date);
+    }
+
+    /**
+     * Отмечает выполнение нескольких привычек за один проход.
+     *
+     * @param completions Отметки о выполнении.
+     * @return Результаты обработки в порядке отметок пакета.
+     */
+    @Override
+    public List<CompletionResult> markHabitsAsCompleted(List<HabitCompletion> completions) {
+        return CompletionBatch.apply(completions, this::getHabitById, this::markCompleted);
+    }
+
+    /**
+     * Возвращает текущую серию выполнения привычки.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Текущая серия.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public int getCurrentStreak(String habitId) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        return habit.getCurrentStreak(LocalDate.now());
+    }
+
+    /**
+     * Возвращает процент выполнения привычки за указанный период.
+     *
+     * @param habitId   Идентификатор привычки.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Процент выполнения.
+     * @throws IllegalArgumentException если привычка не найдена или даты некорректны.
+     */
+    @Override
+    public double getCompletionPercentage(String habitId, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        return habit.getCompletionPercentage(startDate, endDate);
+    }
+
+    /**
+     * Получает рейтинг привычек всех пользователей по текущей серии выполнения.
+     * Обходит все записи.
+     *
+     * @param limit Размер рейтинга.
+     * @return Позиции по убыванию серии.
+     * @throws IllegalArgumentException если размер рейтинга некорректен.
+     */
+    @Override
+    public List<HabitStreak> getTopStreaks(int limit) {
+        return StreakLeaderboard.top(getHabits(), limit, LocalDate.now());
+    }
+
+    /**
+     * Получает сводную статистику выполнения привычек пользователя указанной частоты за период.
+     * Счетчики собираются по привычкам пользователя при каждом запросе.
+     *
+     * @param userId    Идентификатор пользователя.
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getUserCompletionStats(String userId, Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        CompletionRollups rollups = new CompletionRollups();
+        for (Habit habit : getHabitsByUser(userId)) {
+            if (habit.getFrequency() == frequency) {
+                rollups.add(habit);
+            }
+        }
+        return rollups.userStats(userId, frequency, startDate, endDate);
+    }
+
+    /**
+     * Получает сводную статистику выполнения привычек всех пользователей указанной частоты за период.
+     * Счетчики собираются по всем записям при каждом запросе.
+     *
+     * @param frequency Частота привычек.
+     * @param startDate Начальная дата периода.
+     * @param endDate   Конечная дата периода.
+     * @return Статистика выполнения.
+     * @throws IllegalArgumentException если даты некорректны.
+     */
+    @Override
+    public CompletionStats getCompletionStats(Frequency frequency, LocalDate startDate, LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            throw new IllegalArgumentException("Начальная дата должна быть до конечной даты");
+        }
+        CompletionRollups rollups = new CompletionRollups();
+        forEachHabit(habit -> {
+            if (habit.getFrequency() == frequency) {
+                rollups.add(habit);
+            }
+        });
+        return rollups.globalStats(frequency, startDate, endDate);
+    }
+
+    /**
+     * Получает привычки, период расписания которых содержит указанный день и еще не выполнен.
+     * Обходит все записи вместо календаря напоминаний, чтобы не держать его в куче.
+     *
+     * @param date Дата.
+     * @return Ожидающие выполнения привычки.
+     */
+    @Override
+    public List<Habit> getHabitsDueOn(LocalDate date) {
+        long day = date.toEpochDay();
+        List<Habit> due = new ArrayList<>();
+        forEachHabit(habit -> {
+            if (DueHabitIndex.isDue(habit, day)) {
+                due.add(habit);
+            }
+        });
+        return due;
+    }
+
+    /**
+     * Получает список привычек конкретного пользователя в порядке создания.
+     *
+     * @param userId Идентификатор пользователя.
+     * @return Неизменяемый список привычек пользователя.
+     */
+    @Override
+    public List<Habit> getHabitsByUser(String userId) {
+        int[] userHabitList = userHabits.get(userId);
+        if (userHabitList == null) {
+            return Collections.emptyList();
+        }
+        Habit[] userHabitArray = new Habit[userHabitList.length];
+        for (int i = 0; i < userHabitList.length; i++) {
+            userHabitArray[i] = habitAt(userHabitList[i], true);
+        }
+        return List.of(userHabitArray);
+    }
+
+    /**
+     * Получает список всех привычек в порядке создания. Обходит все записи.
+     *
+     * @return Неизменяемый список всех привычек.
+     */
+    @Override
+    public List<Habit> getHabits() {
+        List<Habit> all = new ArrayList<>(habits.size());
+        forEachHabit(all::add);
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Получает страницу привычек пользователя в порядке их создания.
+     *
+     * @param userId         Идентификатор пользователя.
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabitsByUser(String userId, String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(getHabitsByUser(userId), cursor, limit, includeHistory);
+    }
+
+    /**
+     * Получает страницу всех привычек в порядке их создания, читая только записи страницы.
+     *
+     * @param cursor         Курсор из предыдущей страницы или {@code null} для первой страницы.
+     * @param limit          Размер страницы.
+     * @param includeHistory Включать ли даты выполнения.
+     * @return Страница кратких представлений привычек.
+     */
+    @Override
+    public Page<HabitSummary> listHabits(String cursor, int limit, boolean includeHistory) {
+        return HabitPages.page(lastSequence, sequence -> isLive((int) sequence),
+                sequence -> habitAt((int) sequence, false), cursor, limit, includeHistory);
+    }
+
+    @Override
+    public void forEachHabit(Consumer<? super Habit> action) {
+        for (int index = 1; index <= lastSequence; index++) {
+            if (isLive(index)) {
+                action.accept(habitAt(index, false));
+            }
+        }
+    }
+
+    /**
+     * Получает список дат выполнения для конкретной привычки.
+     *
+     * @param habitId Идентификатор привычки.
+     * @return Список дат выполнения привычки.
+     * @throws IllegalArgumentException если привычка не найдена.
+     */
+    @Override
+    public List<LocalDate> getCompletedDatesForHabit(String habitId) {
+        Habit habit = getHabitById(habitId);
+        if (habit == null) {
+            throw new IllegalArgumentException("Привычка не найдена");
+        }
+        return habit.getCompletionDates();
+    }
+
+    /**
+     * Сбрасывает изменения всех файлов на диск.
+     */
+    public void flush() {
+        records.force();
+        strings.force();
+        completions.force();
+    }
+
+    /**
+     * Сбрасывает изменения на диск и закрывает файлы.
+     *
+     * @throws IOException если файл не удалось закрыть.
+     */
+    @Override
+    public void close() throws IOException {
+        try (records; strings; completions) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Отмечает выполнение привычки и дописывает отметку в цепочку ее записи.
+     *
+     * @param habit Привычка.
+     * @param date  Дата выполнения.
+     * @return {@code true}, если отметка добавлена.
+     */
+    boolean markCompleted(Habit habit, LocalDate date) {
+        synchronized (habit) {
+            int index = (int) habit.getSequence();
+            // Удаленная привычка больше не пишет в файлы
+            if (!habit.markCompleted(date) || !isLive(index)) {
+                return false;
+            }
+            long position = position(index);
+            long entry = lastCompletion + 1;
+            completions.putLong(entry * COMPLETION_BYTES, date.toEpochDay());
+            completions.putLong(entry * COMPLETION_BYTES + 8, records.getLong(position + LAST_COMPLETION));
+            lastCompletion = entry;
+            completions.putLong(COUNT, lastCompletion);
+            records.putLong(position + LAST_COMPLETION, entry);
+            records.putInt(position + COMPLETIONS, records.getInt(position + COMPLETIONS) + 1);
+            return true;
+        }
+    }
+
+    // Строит индексы по ключам записей; строки и отметки не читаются
+    private void loadIndexes() {
+        lastSequence = (int) records.getLong(COUNT);
+        stringsEnd = Math.max(strings.getLong(COUNT), STRINGS_START);
+        lastCompletion = completions.getLong(COUNT);
+        for (int index = 1; index <= lastSequence; index++) {
+            long position = position(index);
+            if (records.getInt(position + STATE) != LIVE) {
+                continue;
+            }
+            long userIdText = records.getLong(position + USER_ID_TEXT);
+            long userIdHigh;
+            long userIdLow;
+            if (userIdText == 0) {
+                userIdHigh = records.getLong(position + USER_ID_HIGH);
+                userIdLow = records.getLong(position + USER_ID_LOW);
+            } else {
+                String userId = readString(userIdText);
+                userIdHigh = CompactId.high(userId);
+                userIdLow = CompactId.low(userId);
+            }
+            index(records.getLong(position + ID_HIGH), records.getLong(position + ID_LOW), userIdHigh, userIdLow, index);
+        }
+    }
+
+    private void index(long idHigh, long idLow, long userIdHigh, long userIdLow, int index) {
+        habits.put(idHigh, idLow, index);
+        int[] userHabitList = userHabits.get(userIdHigh, userIdLow);
+        if (userHabitList == null) {
+            userHabits.put(userIdHigh, userIdLow, new int[]{index});
+        } else {
+            int[] appended = Arrays.copyOf(userHabitList, userHabitList.length + 1);
+            appended[userHabitList.length] = index;
+            userHabits.put(userIdHigh, userIdLow, appended);
+        }
+    }
+
+    private void remove(int index) {
+        Habit habit = habitAt(index, false);
+        records.putInt(position(index) + STATE, DELETED);
+        habits.remove(habit.getIdHigh(), habit.getIdLow());
+        int[] userHabitList = userHabits.get(habit.getUserIdHigh(), habit.getUserIdLow());
+        if (userHabitList.length == 1) {
+            userHabits.remove(habit.getUserIdHigh(), habit.getUserIdLow());
+        } else {
+            int[] remaining = new int[userHabitList.length - 1];
+            int next = 0;
+            for (int other : userHabitList) {
+                if (other != index) {
+                    remaining[next++] = other;
+                }
+            }
+            userHabits.put(habit.getUserIdHigh(), habit.getUserIdLow(), remaining);
+        }
+        cache.remove(index);
+    }
+
+    private boolean isLive(int index) {
+        return records.getInt(position(index) + STATE) == LIVE;
+    }
+
+    // Возвращает привычку из кэша или собирает ее из записи и цепочки отметок
+    private Habit habitAt(int index, boolean cached) {
+        Habit habit = cache.get(index);
+        if (habit != null) {
+            return habit;
+        }
+        long position = position(index);
+        String userId = readString(records.getLong(position + USER_ID_TEXT));
+        if (userId == null) {
+            userId = CompactId.toString(records.getLong(position + USER_ID_HIGH), records.getLong(position + USER_ID_LOW));
+        }
+        habit = new Habit(CompactId.toString(records.getLong(position + ID_HIGH), records.getLong(position + ID_LOW)),
+                userId, readString(records.getLong(position + TITLE)), readString(records.getLong(position + DESCRIPTION)),
+                Schedule.parse(readString(records.getLong(position + SCHEDULE))), index);
+        int count = records.getInt(position + COMPLETIONS);
+        if (count > 0) {
+            long[] days = new long[count];
+            long entry = records.getLong(position + LAST_COMPLETION);
+            for (int i = 0; i < count; i++) {
+                days[i] = completions.getLong(entry * COMPLETION_BYTES);
+                entry = completions.getLong(entry * COMPLETION_BYTES + 8);
+            }
+            habit.restoreCompletions(toBits(days));
+        }
+        if (cached) {
+            cache.put(index, habit);
+        }
+        return habit;
+    }
+
+    private static CompletionBits toBits(long[] days) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long day : days) {
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        long firstDay = Math.floorDiv(min, 64) * 64;
+        long[] words = new long[(int) ((max - firstDay) >>> 6) + 1];
+        for (long day : days) {
+            words[(int) ((day - firstDay) >>> 6)] |= 1L << (day - firstDay);
+        }
+        return new CompletionBits(firstDay, words);
+    }
+
+    private long scheduleRef(Schedule schedule) {
+        return scheduleRefs.computeIfAbsent(schedule, key -> writeString(key.encode()));
+    }
+
+    private String readString(long ref) {
+        if (ref == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[strings.getInt(ref)];
+        strings.get(ref + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Строка не пересекает границу сегментов: хвост сегмента, в который она не помещается, пропускается
+    private long writeString(String value) {
+        if (value == null) {
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = Integer.BYTES + bytes.length;
+        if (size > MappedFile.SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Строка слишком длинная");
+        }
+        long ref = stringsEnd;
+        if (ref % MappedFile.SEGMENT_BYTES + size > MappedFile.SEGMENT_BYTES) {
+            ref = (ref / MappedFile.SEGMENT_BYTES + 1) * MappedFile.SEGMENT_BYTES;
+        }
+        strings.putInt(ref, bytes.length);
+        strings.put(ref + Integer.BYTES, bytes);
+        stringsEnd = ref + size;
+        strings.putLong(COUNT, stringsEnd);
+        return ref;
+    }
+
+    // Записи не пересекают границу сегментов; запись 0 — заголовок файла
+    private static long position(int index) {
+        return (long) (index / RECORDS_PER_SEGMENT) * MappedFile.SEGMENT_BYTES
+                + (long) (index % RECORDS_PER_SEGMENT) * RECORD_BYTES;
+    }
+
+    private static MappedFile openFile(Path path, int magic, List<MappedFile> opened) throws IOException {
+        MappedFile file = new MappedFile(path);
+        opened.add(file);
+        if (file.isEmpty()) {
+            file.putInt(MAGIC, magic);
+            file.putInt(FORMAT_VERSION, VERSION);
+            file.putLong(COUNT, 0);
+        } else if (file.getInt(MAGIC) != magic || file.getInt(FORMAT_VERSION) != VERSION) {
+            throw new IOException("Неизвестный формат файла: " + path);
+        }
+        return file;
+    }
+}
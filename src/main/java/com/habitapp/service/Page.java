@@ -0,0 +1,22 @@
+package com.habitapp.service;
+
+import java.util.List;
+
+/**
+ * Страница результатов постраничного вывода.
+ *
+ * @param items      Элементы страницы.
+ * @param nextCursor Курсор следующей страницы или {@code null}, если страница последняя.
+ * @param <T>        Тип элементов.
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+
+    /**
+     * Проверяет, есть ли после этой страницы еще элементы.
+     *
+     * @return {@code true}, если есть следующая страница.
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,58 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Рассылка напоминаний о привычках, ожидающих выполнения.
+ * Привычки на день берутся из календаря напоминаний сервиса за время, пропорциональное
+ * их количеству, и передаются получателю пакетами по `batchSize`.
+ * Рассылки за разные дни должны идти в порядке дат.
+ */
+public final class ReminderDispatcher {
+    /**
+     * Размер пакета напоминаний по умолчанию.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final HabitService habitService;
+    private final ReminderNotifier notifier;
+    private final int batchSize;
+
+    public ReminderDispatcher(HabitService habitService, ReminderNotifier notifier) {
+        this(habitService, notifier, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Создает рассылку с указанным размером пакета.
+     *
+     * @param habitService Сервис привычек.
+     * @param notifier     Получатель напоминаний.
+     * @param batchSize    Максимальное количество привычек в одном пакете.
+     * @throws IllegalArgumentException если размер пакета не положителен.
+     */
+    public ReminderDispatcher(HabitService habitService, ReminderNotifier notifier, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Размер пакета должен быть положительным");
+        }
+        this.habitService = habitService;
+        this.notifier = notifier;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Отправляет напоминания обо всех привычках, ожидающих выполнения в указанный день.
+     *
+     * @param date Дата.
+     * @return Количество привычек, о которых отправлены напоминания.
+     */
+    public int dispatch(LocalDate date) {
+        List<Habit> due = habitService.getHabitsDueOn(date);
+        for (int from = 0; from < due.size(); from += batchSize) {
+            notifier.send(date, due.subList(from, Math.min(from + batchSize, due.size())));
+        }
+        return due.size();
+    }
+}
@@ -0,0 +1,21 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Получатель напоминаний о привычках, ожидающих выполнения.
+ * Реализация доставляет напоминания владельцам привычек любым способом: почтой, push-уведомлением и т.п.
+ */
+@FunctionalInterface
+public interface ReminderNotifier {
+    /**
+     * Отправляет напоминания о пакете привычек.
+     *
+     * @param date   День, на который приходятся напоминания.
+     * @param habits Пакет привычек; список действителен только во время вызова.
+     */
+    void send(LocalDate date, List<Habit> habits);
+}
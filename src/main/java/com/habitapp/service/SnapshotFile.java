@@ -0,0 +1,363 @@
+package com.habitapp.service;
+
+import com.habitapp.model.CompletionBits;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный снимок состояния пользователей и привычек.
+ * Формат: [магическое число: int][версия: int][номер последней записи журнала: long],
+ * затем пользователи, привычки в порядке создания и удаленные пользователи, очистка привычек
+ * которых не завершена; каждая запись начинается байтом-маркером. Завершает файл
+ * [CRC32 всего предшествующего содержимого: int]. История выполнения хранится
+ * битовым массивом без пустых слов по краям, по одному биту на день.
+ * Файл пишется через FileChannel во временный файл, сбрасывается на диск
+ * и атомарно переименовывается, поэтому на диске не бывает недописанных снимков.
+ */
+final class SnapshotFile {
+    private static final int MAGIC = 0x48534E50; // "HSNP"
+    private static final int VERSION = 3;
+    private static final int VERSION_WITHOUT_CLEANUP = 2;
+    private static final byte RECORD = 1;
+    private static final byte END = 0;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Записывает снимок в каталог.
+     *
+     * @param directory    Каталог хранилища.
+     * @param sequence     Номер последней записи журнала, отраженной в снимке.
+     * @param users        Пользователи.
+     * @param habits       Привычки; каждая читается под своим монитором.
+     * @param deletedUsers Удаленные пользователи, привычки которых еще удаляются.
+     * @return Путь к записанному снимку.
+     * @throws IOException если снимок не удалось записать.
+     */
+    static Path write(Path directory, long sequence, Collection<User> users, Collection<Habit> habits,
+                      Collection<String> deletedUsers) throws IOException {
+        Path target = path(directory, sequence);
+        Path temp = directory.resolve(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            output.putInt(MAGIC);
+            output.putInt(VERSION);
+            output.putLong(sequence);
+            for (User user : users) {
+                output.put(RECORD);
+                output.putString(user.getId());
+                output.putString(user.getEmail());
+                output.putString(user.getPasswordHash());
+                output.putString(user.getName());
+            }
+            output.put(END);
+            for (Habit habit : habits) {
+                synchronized (habit) {
+                    output.put(RECORD);
+                    output.putString(habit.getId());
+                    output.putString(habit.getUserId());
+                    output.putString(habit.getTitle());
+                    output.putString(habit.getDescription());
+                    output.putString(habit.getSchedule().encode());
+                    output.putLong(habit.getSequence());
+                    CompletionBits bits = habit.getCompletionBits();
+                    output.putLong(bits.firstDay());
+                    output.putInt(bits.words().length);
+                    for (long word : bits.words()) {
+                        output.putLong(word);
+                    }
+                }
+            }
+            output.put(END);
+            for (String userId : deletedUsers) {
+                output.put(RECORD);
+                output.putString(userId);
+            }
+            output.put(END);
+            output.finish();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+        return target;
+    }
+
+    /**
+     * Загружает снимок в сервисы.
+     *
+     * @param file         Файл снимка.
+     * @param userService  Сервис пользователей.
+     * @param habitService Сервис привычек.
+     * @param deletedUsers Сюда добавляются удаленные пользователи, очистку которых нужно продолжить.
+     * @return Номер последней записи журнала, отраженной в снимке.
+     * @throws IOException если снимок не удалось прочитать или он поврежден.
+     */
+    static long load(Path file, DurableUserService userService, DurableHabitService habitService,
+                     Collection<String> deletedUsers) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input input = new Input(channel);
+            int version = input.getInt() == MAGIC ? input.getInt() : -1;
+            if (version != VERSION && version != VERSION_WITHOUT_CLEANUP) {
+                throw new IOException("Неизвестный формат снимка: " + file);
+            }
+            long lastSequence = input.getLong();
+            while (input.get() == RECORD) {
+                String id = input.getString();
+                String email = input.getString();
+                String passwordHash = input.getString();
+                String name = input.getString();
+                userService.restoreUser(new User(id, email, passwordHash, name));
+            }
+            while (input.get() == RECORD) {
+                String id = input.getString();
+                String userId = input.getString();
+                String title = input.getString();
+                String description = input.getString();
+                Schedule schedule = Schedule.parse(input.getString());
+                long sequence = input.getLong();
+                long firstDay = input.getLong();
+                long[] words = new long[input.getInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = input.getLong();
+                }
+                Habit habit = new Habit(id, userId, title, description, schedule, sequence);
+                habit.restoreCompletions(new CompletionBits(firstDay, words));
+                habitService.restoreHabit(habit);
+            }
+            while (version >= VERSION && input.get() == RECORD) {
+                deletedUsers.add(input.getString());
+            }
+            input.verify();
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Возвращает самый свежий снимок в каталоге и удаляет оставшиеся после сбоя временные файлы.
+     *
+     * @param directory Каталог хранилища.
+     * @return Путь к снимку или {@code null}, если снимков нет.
+     * @throws IOException если каталог не удалось прочитать.
+     */
+    static Path latest(Path directory) throws IOException {
+        for (Path temp : list(directory, TEMP_SUFFIX)) {
+            Files.deleteIfExists(temp);
+        }
+        List<Path> snapshots = list(directory, SUFFIX);
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    /**
+     * Удаляет снимки, предшествующие указанному.
+     *
+     * @param directory Каталог хранилища.
+     * @param current   Актуальный снимок.
+     * @throws IOException если снимок не удалось удалить.
+     */
+    static void deleteOlder(Path directory, Path current) throws IOException {
+        for (Path snapshot : list(directory, SUFFIX)) {
+            if (snapshot.getFileName().toString().compareTo(current.getFileName().toString()) < 0) {
+                Files.deleteIfExists(snapshot);
+            }
+        }
+    }
+
+    private static Path path(Path directory, long sequence) {
+        return directory.resolve(String.format("%s%019d%s", PREFIX, sequence, SUFFIX));
+    }
+
+    private static List<Path> list(Path directory, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> snapshots = new ArrayList<>(files
+                    .filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(PREFIX) && name.endsWith(suffix);
+                    })
+                    .toList());
+            snapshots.sort(null); // номер в имени дополнен нулями
+            return snapshots;
+        }
+    }
+
+    // Сбрасывает на диск запись каталога о переименовании; поддерживается не всеми системами
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Переименование все равно станет устойчивым при следующей синхронизации файловой системы
+        }
+    }
+
+    /**
+     * Буферизованная запись в канал с подсчетом контрольной суммы.
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void put(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        // Дописывает буфер и контрольную сумму
+        void finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Буферизованное чтение из канала с проверкой контрольной суммы.
+     * Последние четыре байта файла содержат контрольную сумму и не входят в данные.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final long dataEnd;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).limit(0);
+        private long position;
+
+        Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.dataEnd = channel.size() - Integer.BYTES;
+        }
+
+        byte get() throws IOException {
+            ensure(Byte.BYTES);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            for (int offset = 0; offset < length; ) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, chunk);
+                offset += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Проверяет, что данные прочитаны полностью и совпадают с контрольной суммой
+        void verify() throws IOException {
+            if (buffer.hasRemaining() || position != dataEnd) {
+                throw new IOException("Снимок содержит лишние данные");
+            }
+            ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES);
+            while (checksum.hasRemaining()) {
+                if (channel.read(checksum, dataEnd + checksum.position()) < 0) {
+                    throw new IOException("Снимок обрезан");
+                }
+            }
+            if (checksum.getInt(0) != (int) crc.getValue()) {
+                throw new IOException("Контрольная сумма снимка не совпадает");
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                long available = dataEnd - position;
+                if (available <= 0) {
+                    throw new IOException("Снимок обрезан");
+                }
+                int start = buffer.position();
+                if (available < buffer.remaining()) {
+                    buffer.limit(start + (int) available);
+                }
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Снимок обрезан");
+                }
+                position += read;
+                crc.update(buffer.duplicate().flip().position(start));
+                buffer.limit(buffer.capacity());
+            }
+            buffer.flip();
+        }
+    }
+}
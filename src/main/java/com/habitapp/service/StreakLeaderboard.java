@@ -0,0 +1,86 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Habit;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * Рейтинг привычек по текущей серии выполнения, общий для реализаций HabitService.
+ * Привычки обходятся параллельным потоком в общем пуле fork-join; каждая часть обхода
+ * собирает лучшие позиции в собственную кучу размером не больше `limit`, а кучи
+ * сливаются попарно, поэтому память не зависит от количества привычек,
+ * а время — O(n log limit / число ядер). Текущая серия читается за O(1) под монитором привычки.
+ * Серия зависит от текущей даты и обрывается без каких-либо изменений привычки,
+ * поэтому рейтинг каждый раз строится заново, а не поддерживается инкрементально.
+ */
+final class StreakLeaderboard {
+    // Сначала длинные серии; при равенстве порядок задается идентификатором
+    private static final Comparator<HabitStreak> RANKING = Comparator.comparingInt(HabitStreak::streak)
+            .reversed()
+            .thenComparing(HabitStreak::habitId);
+
+    private StreakLeaderboard() {
+    }
+
+    /**
+     * Возвращает привычки с самыми длинными текущими сериями.
+     * Привычки без текущей серии в рейтинг не попадают.
+     *
+     * @param habits Привычки; коллекция должна допускать обход параллельно с изменениями.
+     * @param limit  Размер рейтинга, от 1 до {@link HabitService#MAX_PAGE_SIZE}.
+     * @param today  Дата, относительно которой считаются серии.
+     * @return Позиции по убыванию серии.
+     * @throws IllegalArgumentException если размер рейтинга некорректен.
+     */
+    static List<HabitStreak> top(Collection<Habit> habits, int limit, LocalDate today) {
+        if (limit < 1 || limit > HabitService.MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер рейтинга должен быть от 1 до " + HabitService.MAX_PAGE_SIZE);
+        }
+        return habits.parallelStream().collect(topCollector(limit, today));
+    }
+
+    // Куча с худшей позицией в вершине, чтобы вытеснять ее за O(log limit)
+    private static Collector<Habit, PriorityQueue<HabitStreak>, List<HabitStreak>> topCollector(int limit, LocalDate today) {
+        return Collector.of(
+                () -> new PriorityQueue<>(limit + 1, RANKING.reversed()),
+                (heap, habit) -> offer(heap, habit, limit, today),
+                (left, right) -> {
+                    PriorityQueue<HabitStreak> larger = left.size() >= right.size() ? left : right;
+                    PriorityQueue<HabitStreak> smaller = larger == left ? right : left;
+                    for (HabitStreak entry : smaller) {
+                        offer(larger, entry, limit);
+                    }
+                    return larger;
+                },
+                heap -> {
+                    List<HabitStreak> ranking = new ArrayList<>(heap);
+                    ranking.sort(RANKING);
+                    return List.copyOf(ranking);
+                },
+                Collector.Characteristics.UNORDERED);
+    }
+
+    // Позиция создается, только если серия может попасть в кучу
+    private static void offer(PriorityQueue<HabitStreak> heap, Habit habit, int limit, LocalDate today) {
+        HabitStreak entry;
+        synchronized (habit) {
+            int streak = habit.getCurrentStreak(today);
+            if (streak == 0 || heap.size() == limit && streak < heap.peek().streak()) {
+                return;
+            }
+            entry = new HabitStreak(habit.getId(), habit.getUserId(), habit.getTitle(), habit.getFrequency(), streak);
+        }
+        offer(heap, entry, limit);
+    }
+
+    private static void offer(PriorityQueue<HabitStreak> heap, HabitStreak entry, int limit) {
+        if (heap.size() < limit) {
+            heap.add(entry);
+        } else if (RANKING.compare(entry, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+}
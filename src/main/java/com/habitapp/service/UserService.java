@@ -6,12 +6,51 @@ import com.habitapp.model.User;
  * Интерфейс `UserService` определяет методы для управления пользователями в системе.
  * Предоставляет функциональность для регистрации, авторизации, обновления профиля,
  * удаления аккаунта и получения информации о пользователе.
+ * Пароли хранятся только в виде соленых хешей; проверка пароля намеренно дорогая,
+ * поэтому при входе открывается сессия, и последующие обращения предъявляют
+ * ее токен, который проверяется за O(1) без вычисления хеша.
  */
 
 public interface UserService {
     User register(String name, String email, String password);
     User login(String email, String password);
+
+    /**
+     * Обновляет профиль пользователя.
+     * Пароль {@code null} оставляет прежний пароль без повторного хеширования,
+     * а новый пароль отзывает все сессии пользователя.
+     */
     User updateProfile(String userId, String name, String email, String password);
+
+    /**
+     * Удаляет пользователя и отзывает все его сессии.
+     */
     boolean deleteAccount(String userId);
     User getUserById(String userId);
+
+    /**
+     * Проверяет email и пароль и открывает сессию.
+     * Сессия истекает после периода бездействия и может быть вытеснена
+     * при переполнении хранилища сессий.
+     *
+     * @param email    Email пользователя.
+     * @param password Пароль пользователя.
+     * @return Токен сессии или {@code null}, если неверные данные.
+     */
+    String authenticate(String email, String password);
+
+    /**
+     * Возвращает пользователя сессии без проверки пароля и продлевает сессию.
+     *
+     * @param token Токен, выданный {@link #authenticate(String, String)}.
+     * @return Пользователь или {@code null}, если сессия истекла или отозвана.
+     */
+    User getUserByToken(String token);
+
+    /**
+     * Завершает сессию.
+     *
+     * @param token Токен сессии.
+     */
+    void logout(String token);
 }
@@ -0,0 +1,576 @@
+package com.habitapp.web;
+
+import com.habitapp.metrics.InstrumentedHabitService;
+import com.habitapp.metrics.InstrumentedUserService;
+import com.habitapp.metrics.MetricsFileReporter;
+import com.habitapp.metrics.MetricsRegistry;
+import com.habitapp.model.CompletionArena;
+import com.habitapp.model.CompletionHistory;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.model.User;
+import com.habitapp.persistence.FsyncPolicy;
+import com.habitapp.service.AccountCleaner;
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.DurableStorage;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.HabitStreak;
+import com.habitapp.service.HabitSummary;
+import com.habitapp.service.InMemoryUserService;
+import com.habitapp.service.Page;
+import com.habitapp.service.UserService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Встроенный HTTP/JSON-интерфейс к сервисам пользователей и привычек на основе {@code com.sun.net.httpserver}.
+ * Каждый запрос обрабатывается в отдельном виртуальном потоке, поэтому блокирующие вызовы сервисов,
+ * например хеширование пароля или fsync журнала, не занимают потоки платформы,
+ * и один процесс обслуживает тысячи одновременных клиентов. Сервисы должны быть потокобезопасными.
+ * <p>
+ * После входа через {@code POST /sessions} клиент передает токен сессии в заголовке
+ * {@code Authorization: Bearer <токен>}; привычки других пользователей для него не существуют.
+ * <ul>
+ *     <li>{@code POST /users} — регистрация: {@code {"name", "email", "password"}}.</li>
+ *     <li>{@code POST /sessions} — вход: {@code {"email", "password"}} → {@code {"token"}};
+ *     {@code DELETE /sessions} — выход.</li>
+ *     <li>{@code GET|PUT|DELETE /users/me} — профиль текущего пользователя.</li>
+ *     <li>{@code GET /habits?cursor=&limit=&history=} — страница привычек пользователя;
+ *     {@code POST /habits} — создание: {@code {"title", "description", "schedule"}}, где расписание
+ *     записано как в {@link Schedule#encode()}, например {@code "DAILY"} или {@code "TIMES_PER_WEEK:3"}.</li>
+ *     <li>{@code GET|PUT|DELETE /habits/{id}} — привычка.</li>
+ *     <li>{@code POST /habits/{id}/completions} — отметка выполнения: {@code {"date"}}, по умолчанию сегодня;
+ *     дата не позже завтрашнего дня и не раньше чем за 10 лет.</li>
+ *     <li>{@code GET /habits/{id}/stats?from=&to=} — серии и процент выполнения, по умолчанию за 30 дней;
+ *     период не длиннее 10 лет.</li>
+ *     <li>{@code GET /leaderboard?limit=} — рейтинг привычек по текущей серии. Чужие привычки
+ *     представлены только местом, расписанием и серией; название и идентификатор видны только у своих.</li>
+ * </ul>
+ * Ошибки возвращаются как {@code {"error": "..."}}: некорректные данные — 400,
+ * отсутствие сессии — 401, неизвестный путь или чужая привычка — 404.
+ */
+public final class HabitHttpServer implements Closeable {
+    private static final int BACKLOG = 4096;
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int DEFAULT_LEADERBOARD_SIZE = 10;
+    private static final int DEFAULT_STATS_DAYS = 30;
+    // Ограничивают размер истории и стоимость расчета, которые может вызвать один запрос
+    private static final int MAX_COMPLETION_AGE_DAYS = 3660;
+    private static final int MAX_STATS_DAYS = 3660;
+    private static final String BEARER = "Bearer ";
+    private static final String METRICS_FILE_PROPERTY = "habitapp.metrics.file";
+    private static final Duration METRICS_INTERVAL = Duration.ofSeconds(10);
+    private static final String OFF_HEAP_PROPERTY = "habitapp.completions.offheap";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final UserService userService;
+    private final HabitService habitService;
+
+    private HabitHttpServer(HttpServer server, UserService userService, HabitService habitService) {
+        this.server = server;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.userService = userService;
+        this.habitService = habitService;
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Запускает сервер на указанном адресе.
+     *
+     * @param address      Адрес; порт 0 выбирает свободный порт.
+     * @param userService  Потокобезопасный сервис пользователей.
+     * @param habitService Потокобезопасный сервис привычек.
+     * @return Запущенный сервер.
+     * @throws IOException если адрес не удалось занять.
+     */
+    public static HabitHttpServer start(InetSocketAddress address, UserService userService,
+                                        HabitService habitService) throws IOException {
+        HabitHttpServer httpServer = new HabitHttpServer(HttpServer.create(address, BACKLOG), userService, habitService);
+        httpServer.server.start();
+        return httpServer;
+    }
+
+    /**
+     * Возвращает порт, на котором сервер принимает соединения.
+     *
+     * @return Номер порта.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Останавливает прием соединений и дожидается завершения начатых запросов.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    /**
+     * Запускает сервер: {@code HabitHttpServer <порт> [каталог данных]}.
+     * Если каталог указан, данные сохраняются в нем между запусками.
+     * Вызовы сервисов учитываются в счетчиках; если задано свойство {@code habitapp.metrics.file},
+     * их снимок периодически записывается в указанный файл.
+     * Без каталога данных свойство {@code habitapp.completions.offheap} переносит даты выполнения
+     * из кучи в {@link CompletionArena}: значение {@code direct} выбирает прямые буферы,
+     * любое другое считается путем к файлу отображения. По умолчанию история остается в куче:
+     * вне кучи у нее нет индекса префиксных сумм, поэтому подсчет отметок за период занимает
+     * O(слов периода), а подсчет недель с выполнением — O(недель периода) вместо O(log n).
+     * Процент выполнения и статистика за период длиной до {@value #MAX_STATS_DAYS} дней
+     * замедляются соответственно, поэтому свойство стоит задавать, только когда куча не вмещает историю.
+     *
+     * @param args Аргументы командной строки.
+     * @throws IOException если сервер или хранилище не удалось открыть.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        UserService userService;
+        HabitService habitService;
+        Closeable resources;
+        if (args.length > 1) {
+            DurableStorage storage = DurableStorage.open(Path.of(args[1]), FsyncPolicy.PERIODIC,
+                    Duration.ofMillis(100), Duration.ofMinutes(10));
+            userService = storage.getUserService();
+            habitService = storage.getHabitService();
+            resources = storage;
+        } else {
+            // Вне кучи подсчеты за период линейны по его длине, поэтому это выбирается только явно
+            String offHeap = System.getProperty(OFF_HEAP_PROPERTY);
+            CompletionArena arena = offHeap == null ? null
+                    : offHeap.equals("direct") ? CompletionArena.direct() : CompletionArena.mapped(Path.of(offHeap));
+            InMemoryUserService inMemoryUserService = new InMemoryUserService();
+            habitService = new ConcurrentHabitService(arena);
+            AccountCleaner cleaner = new AccountCleaner(habitService);
+            inMemoryUserService.addDeletionListener(cleaner::enqueue);
+            userService = inMemoryUserService;
+            resources = arena == null ? cleaner : () -> {
+                try (arena) {
+                    cleaner.close();
+                }
+            };
+        }
+        MetricsRegistry metrics = new MetricsRegistry();
+        String metricsFile = System.getProperty(METRICS_FILE_PROPERTY);
+        MetricsFileReporter reporter = metricsFile != null
+                ? new MetricsFileReporter(metrics, Path.of(metricsFile), METRICS_INTERVAL) : null;
+        HabitHttpServer server = start(new InetSocketAddress(port), new InstrumentedUserService(userService, metrics),
+                new InstrumentedHabitService(habitService, metrics));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                if (reporter != null) {
+                    reporter.close();
+                }
+                resources.close();
+            } catch (IOException e) {
+                System.err.println("Не удалось завершить работу: " + e.getMessage());
+            }
+        }));
+        System.out.println("Сервер запущен на порту " + server.getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Response response;
+            try {
+                response = route(exchange);
+            } catch (HttpError e) {
+                response = error(e.status, e.getMessage());
+            } catch (IllegalArgumentException | DateTimeException e) {
+                response = error(400, e.getMessage());
+            } catch (RuntimeException e) {
+                response = error(500, "Внутренняя ошибка сервера");
+            }
+            send(exchange, response);
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        List<String> path = segments(exchange.getRequestURI().getRawPath());
+        if (path.isEmpty()) {
+            throw new HttpError(404, "Ресурс не найден");
+        }
+        switch (path.get(0)) {
+            case "users" -> {
+                if (path.size() == 1) {
+                    requireMethod(method, "POST");
+                    return register(readBody(exchange));
+                }
+                if (path.size() == 2 && path.get(1).equals("me")) {
+                    User user = currentUser(exchange);
+                    return switch (method) {
+                        case "GET" -> new Response(200, userJson(user));
+                        case "PUT" -> updateProfile(user, readBody(exchange));
+                        case "DELETE" -> {
+                            userService.deleteAccount(user.getId());
+                            yield new Response(204, null);
+                        }
+                        default -> throw methodNotAllowed();
+                    };
+                }
+            }
+            case "sessions" -> {
+                if (path.size() == 1) {
+                    return switch (method) {
+                        case "POST" -> authenticate(readBody(exchange));
+                        case "DELETE" -> {
+                            userService.logout(token(exchange));
+                            yield new Response(204, null);
+                        }
+                        default -> throw methodNotAllowed();
+                    };
+                }
+            }
+            case "habits" -> {
+                User user = currentUser(exchange);
+                if (path.size() == 1) {
+                    return switch (method) {
+                        case "GET" -> listHabits(user, query(exchange));
+                        case "POST" -> createHabit(user, readBody(exchange));
+                        default -> throw methodNotAllowed();
+                    };
+                }
+                Habit habit = ownHabit(user, path.get(1));
+                if (path.size() == 2) {
+                    return switch (method) {
+                        case "GET" -> new Response(200, habitJson(HabitSummary.of(habit, true)));
+                        case "PUT" -> updateHabit(habit, readBody(exchange));
+                        case "DELETE" -> {
+                            habitService.deleteHabit(habit.getId());
+                            yield new Response(204, null);
+                        }
+                        default -> throw methodNotAllowed();
+                    };
+                }
+                if (path.size() == 3 && path.get(2).equals("completions")) {
+                    requireMethod(method, "POST");
+                    return markCompleted(habit, readBody(exchange));
+                }
+                if (path.size() == 3 && path.get(2).equals("stats")) {
+                    requireMethod(method, "GET");
+                    return stats(habit, query(exchange));
+                }
+            }
+            case "leaderboard" -> {
+                if (path.size() == 1) {
+                    requireMethod(method, "GET");
+                    return leaderboard(currentUser(exchange), query(exchange));
+                }
+            }
+            default -> {
+            }
+        }
+        throw new HttpError(404, "Ресурс не найден");
+    }
+
+    private Response register(Map<String, Object> body) {
+        User user = userService.register(string(body, "name"), string(body, "email"), string(body, "password"));
+        return new Response(201, userJson(user));
+    }
+
+    private Response authenticate(Map<String, Object> body) {
+        String token = userService.authenticate(string(body, "email"), string(body, "password"));
+        if (token == null) {
+            throw new HttpError(401, "Неверный email или пароль");
+        }
+        return new Response(200, Map.of("token", token));
+    }
+
+    private Response updateProfile(User user, Map<String, Object> body) {
+        String name = optionalString(body, "name");
+        String email = optionalString(body, "email");
+        User updated = userService.updateProfile(user.getId(), name != null ? name : user.getName(),
+                email != null ? email : user.getEmail(), optionalString(body, "password"));
+        return new Response(200, userJson(updated));
+    }
+
+    private Response listHabits(User user, Map<String, String> query) {
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit")) : DEFAULT_PAGE_SIZE;
+        boolean history = Boolean.parseBoolean(query.get("history"));
+        Page<HabitSummary> page = habitService.listHabitsByUser(user.getId(), query.get("cursor"), limit, history);
+        List<Object> items = new ArrayList<>(page.items().size());
+        for (HabitSummary summary : page.items()) {
+            items.add(habitJson(summary));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        json.put("nextCursor", page.nextCursor());
+        return new Response(200, json);
+    }
+
+    private Response createHabit(User user, Map<String, Object> body) {
+        Habit habit = habitService.createHabit(user.getId(), string(body, "title"), descriptionOf(body),
+                schedule(body));
+        // Аккаунт удаляется до постановки в очередь очистки, поэтому привычку, созданную после
+        // последнего пакета очистки, застанет удаленной эта проверка, а не очистка
+        if (userService.getUserById(user.getId()) == null) {
+            habitService.deleteHabit(habit.getId());
+            throw new HttpError(401, "Требуется вход");
+        }
+        return new Response(201, habitJson(HabitSummary.of(habit, false)));
+    }
+
+    private Response updateHabit(Habit habit, Map<String, Object> body) {
+        String title = optionalString(body, "title");
+        String description = optionalString(body, "description");
+        Schedule schedule = body.containsKey("schedule") ? schedule(body) : habit.getSchedule();
+        habitService.updateHabit(habit.getId(), title != null ? title : habit.getTitle(),
+                description != null ? description : habit.getDescription(), schedule);
+        return new Response(200, habitJson(HabitSummary.of(habit, false)));
+    }
+
+    private Response markCompleted(Habit habit, Map<String, Object> body) {
+        String value = optionalString(body, "date");
+        LocalDate today = LocalDate.now();
+        LocalDate date = value != null ? LocalDate.parse(value) : today;
+        LocalDate earliest = today.minusDays(MAX_COMPLETION_AGE_DAYS);
+        LocalDate latest = today.plusDays(1);
+        if (date.isBefore(earliest) || date.isAfter(latest)) {
+            throw new HttpError(400, "Дата выполнения должна быть от " + earliest + " до " + latest);
+        }
+        habitService.markHabitAsCompleted(habit.getId(), date);
+        return new Response(204, null);
+    }
+
+    private Response stats(Habit habit, Map<String, String> query) {
+        LocalDate to = query.containsKey("to") ? LocalDate.parse(query.get("to")) : LocalDate.now();
+        LocalDate from = query.containsKey("from")
+                ? LocalDate.parse(query.get("from")) : to.minusDays(DEFAULT_STATS_DAYS - 1);
+        if (from.isAfter(to)) {
+            throw new HttpError(400, "Начало периода не может быть позже его конца");
+        }
+        if (from.isBefore(CompletionHistory.MIN_DATE) || to.isAfter(CompletionHistory.MAX_DATE)) {
+            throw new HttpError(400, "Период должен быть от " + CompletionHistory.MIN_DATE
+                    + " до " + CompletionHistory.MAX_DATE);
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_STATS_DAYS) {
+            throw new HttpError(400, "Период не может быть длиннее " + MAX_STATS_DAYS + " дней");
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("from", from);
+        json.put("to", to);
+        json.put("completionPercentage", habitService.getCompletionPercentage(habit.getId(), from, to));
+        json.put("currentStreak", habitService.getCurrentStreak(habit.getId()));
+        json.put("longestStreak", habit.getLongestStreak());
+        return new Response(200, json);
+    }
+
+    // Чужие привычки не раскрываются: для клиента это только место в рейтинге и серия
+    private Response leaderboard(User user, Map<String, String> query) {
+        int limit = query.containsKey("limit") ? parseInt(query.get("limit")) : DEFAULT_LEADERBOARD_SIZE;
+        List<Object> items = new ArrayList<>();
+        for (HabitStreak streak : habitService.getTopStreaks(limit)) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("rank", items.size() + 1);
+            if (streak.userId().equals(user.getId())) {
+                json.put("habitId", streak.habitId());
+                json.put("title", streak.title());
+            }
+            json.put("frequency", streak.frequency().name());
+            json.put("streak", streak.streak());
+            items.add(json);
+        }
+        return new Response(200, items);
+    }
+
+    private User currentUser(HttpExchange exchange) {
+        String token = token(exchange);
+        User user = token != null ? userService.getUserByToken(token) : null;
+        if (user == null) {
+            throw new HttpError(401, "Требуется вход");
+        }
+        return user;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith(BEARER) ? header.substring(BEARER.length()) : null;
+    }
+
+    // Чужие привычки не раскрываются: для клиента их нет
+    private Habit ownHabit(User user, String habitId) {
+        Habit habit = habitService.getHabitById(habitId);
+        if (habit == null || !habit.getUserId().equals(user.getId())) {
+            throw new HttpError(404, "Привычка не найдена");
+        }
+        return habit;
+    }
+
+    private static Map<String, Object> userJson(User user) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", user.getId());
+        json.put("name", user.getName());
+        json.put("email", user.getEmail());
+        return json;
+    }
+
+    private static Map<String, Object> habitJson(HabitSummary summary) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", summary.id());
+        json.put("title", summary.title());
+        json.put("description", summary.description());
+        json.put("schedule", summary.schedule().encode());
+        json.put("scheduleDescription", summary.schedule().getDescription());
+        json.put("completionCount", summary.completionCount());
+        json.put("lastCompletionDate", summary.lastCompletionDate());
+        if (summary.completionDates() != null) {
+            json.put("completionDates", summary.completionDates());
+        }
+        return json;
+    }
+
+    private static String descriptionOf(Map<String, Object> body) {
+        String description = optionalString(body, "description");
+        return description != null ? description : "";
+    }
+
+    private static Schedule schedule(Map<String, Object> body) {
+        try {
+            return Schedule.parse(string(body, "schedule"));
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Некорректное расписание");
+        }
+    }
+
+    private static String string(Map<String, Object> body, String field) {
+        String value = optionalString(body, field);
+        if (value == null) {
+            throw new IllegalArgumentException("Не указано поле \"" + field + "\"");
+        }
+        return value;
+    }
+
+    private static String optionalString(Map<String, Object> body, String field) {
+        Object value = body.get(field);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Поле \"" + field + "\" должно быть строкой");
+        }
+        return (String) value;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное число: " + value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream body = exchange.getRequestBody()) {
+            bytes = body.readNBytes(MAX_BODY_SIZE + 1);
+        }
+        if (bytes.length > MAX_BODY_SIZE) {
+            throw new HttpError(413, "Слишком большой запрос");
+        }
+        if (bytes.length == 0) {
+            return Map.of();
+        }
+        Object body = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+        if (!(body instanceof Map)) {
+            throw new IllegalArgumentException("Тело запроса должно быть JSON-объектом");
+        }
+        return (Map<String, Object>) body;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static List<String> segments(String rawPath) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : rawPath.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw methodNotAllowed();
+        }
+    }
+
+    private static HttpError methodNotAllowed() {
+        return new HttpError(405, "Метод не поддерживается");
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, Map.of("error", message != null ? message : "Некорректный запрос"));
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        if (response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        byte[] bytes = Json.write(response.body()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * Ответ на запрос.
+     *
+     * @param status Код статуса HTTP.
+     * @param body   Значение для записи в JSON или {@code null} для ответа без тела.
+     */
+    private record Response(int status, Object body) {
+    }
+
+    /**
+     * Ошибка с заданным кодом статуса HTTP.
+     */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
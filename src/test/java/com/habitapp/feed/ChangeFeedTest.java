@@ -0,0 +1,286 @@
+package com.habitapp.feed;
+
+import com.habitapp.model.CompletionHistory;
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.User;
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.HabitCompletion;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.InMemoryUserService;
+import com.habitapp.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class ChangeFeedTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testMutationsArePublishedInOrder() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(64)) {
+            UserService userService = new PublishingUserService(new InMemoryUserService(), feed);
+            HabitService habitService = new PublishingHabitService(new ConcurrentHabitService(), feed);
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            feed.subscribe(subscriber);
+            subscriber.awaitSubscription();
+
+            User user = userService.register("Анна", "anna@example.com", "password");
+            Habit habit = habitService.createHabit(user.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+            LocalDate today = LocalDate.now();
+            habitService.markHabitAsCompleted(habit.getId(), today);
+            habitService.markHabitAsCompleted(habit.getId(), today);
+            habitService.markHabitsAsCompleted(List.of(new HabitCompletion(habit.getId(), today),
+                    new HabitCompletion(habit.getId(), today.minusDays(1))));
+            habitService.updateHabit(habit.getId(), "Бегать", "Бегать вечером", Frequency.DAILY);
+            habitService.deleteHabit(habit.getId());
+            userService.deleteAccount(user.getId());
+
+            List<ChangeEvent> events = subscriber.take(7);
+            assertEquals(List.of(ChangeEvent.Type.USER_REGISTERED, ChangeEvent.Type.HABIT_CREATED,
+                    ChangeEvent.Type.HABIT_COMPLETED, ChangeEvent.Type.HABIT_COMPLETED, ChangeEvent.Type.HABIT_UPDATED,
+                    ChangeEvent.Type.HABIT_DELETED, ChangeEvent.Type.USER_DELETED),
+                    events.stream().map(ChangeEvent::type).toList());
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i + 1, events.get(i).sequence());
+                assertEquals(user.getId(), events.get(i).userId());
+            }
+            assertEquals(today, events.get(2).date());
+            assertEquals(today.minusDays(1), events.get(3).date());
+            assertEquals(habit.getId(), events.get(5).habitId());
+            assertEquals(7, feed.lastSequence());
+        }
+    }
+
+    @Test
+    void testConcurrentDuplicateCompletionsArePublishedOnce() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(1024)) {
+            HabitService habitService = new PublishingHabitService(new ConcurrentHabitService(), feed);
+            Habit habit = habitService.createHabit("user", "Бегать", "Бегать по утрам", Frequency.DAILY);
+            LocalDate today = LocalDate.now();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 50; i++) {
+                        habitService.markHabitAsCompleted(habit.getId(), today.minusDays(i));
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            // Создание и по событию на каждую из 50 дат
+            assertEquals(51, feed.lastSequence());
+            assertThrows(IllegalArgumentException.class, () -> habitService.markHabitAsCompleted("missing", today));
+            assertThrows(IllegalArgumentException.class, () -> habitService.markHabitAsCompleted(habit.getId(),
+                    CompletionHistory.MAX_DATE.plusDays(1)));
+            assertEquals(51, feed.lastSequence());
+        }
+    }
+
+    @Test
+    void testDeliveryFollowsRequestedDemand() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(64)) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(2);
+            feed.subscribe(subscriber);
+            subscriber.awaitSubscription();
+            for (int i = 0; i < 5; i++) {
+                feed.publish(ChangeEvent.Type.USER_UPDATED, "user" + i, null, null);
+            }
+
+            assertEquals(List.of(1L, 2L), sequences(subscriber.take(2)));
+            assertNull(subscriber.events.poll(100, TimeUnit.MILLISECONDS));
+            subscriber.subscription.request(10);
+            assertEquals(List.of(3L, 4L, 5L), sequences(subscriber.take(3)));
+
+            subscriber.subscription.request(0);
+            assertInstanceOf(IllegalArgumentException.class, subscriber.error.poll(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testSubscriberResumesFromSequence() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(16)) {
+            for (int i = 0; i < 10; i++) {
+                feed.publish(ChangeEvent.Type.HABIT_CREATED, "user", "habit" + i, null);
+            }
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            feed.subscribe(subscriber, 8);
+
+            List<ChangeEvent> events = subscriber.take(3);
+            assertEquals(List.of(8L, 9L, 10L), sequences(events));
+            assertEquals("habit7", events.get(0).habitId());
+            assertThrows(IllegalArgumentException.class, () -> feed.subscribe(new RecordingSubscriber(1), 12));
+            assertThrows(IllegalArgumentException.class, () -> feed.subscribe(new RecordingSubscriber(1), 0));
+        }
+    }
+
+    @Test
+    void testDropPolicySkipsOverwrittenEvents() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(8)) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(0);
+            feed.subscribe(subscriber);
+            subscriber.awaitSubscription();
+            // Писатели не ждут получателя без спроса, даже если буфер давно переполнен
+            for (int i = 0; i < 100; i++) {
+                feed.publish(ChangeEvent.Type.HABIT_COMPLETED, "user", "habit", LocalDate.ofEpochDay(i));
+            }
+            subscriber.subscription.request(Long.MAX_VALUE);
+
+            List<Long> sequences = sequences(subscriber.take(8));
+            assertEquals(List.of(93L, 94L, 95L, 96L, 97L, 98L, 99L, 100L), sequences);
+        }
+    }
+
+    @Test
+    void testSpillPolicyDeliversOverwrittenEvents() throws Exception {
+        try (ChangeFeed feed = new ChangeFeed(8, directory.resolve("feed.log"))) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(0);
+            feed.subscribe(subscriber);
+            subscriber.awaitSubscription();
+            for (int i = 0; i < 1000; i++) {
+                feed.publish(ChangeEvent.Type.HABIT_COMPLETED, "user" + i, i % 2 == 0 ? "привычка" + i : null,
+                        i % 3 == 0 ? LocalDate.ofEpochDay(i) : null);
+                // Архиватор должен успевать за писателем, чтобы в файле не было разрывов
+                if (i % 4 == 3) {
+                    Thread.sleep(1);
+                }
+            }
+            subscriber.subscription.request(Long.MAX_VALUE);
+
+            List<ChangeEvent> events = subscriber.take(1000);
+            for (int i = 0; i < events.size(); i++) {
+                ChangeEvent event = events.get(i);
+                assertEquals(i + 1, event.sequence());
+                assertEquals("user" + i, event.userId());
+                assertEquals(i % 2 == 0 ? "привычка" + i : null, event.habitId());
+                assertEquals(i % 3 == 0 ? LocalDate.ofEpochDay(i) : null, event.date());
+            }
+
+            RecordingSubscriber late = new RecordingSubscriber(Long.MAX_VALUE);
+            feed.subscribe(late, 300);
+            assertEquals(300, late.take(1).get(0).sequence());
+        }
+    }
+
+    @Test
+    void testSpillFailureIsReportedToLaggingSubscribers() throws Exception {
+        // Запись в /dev/full всегда завершается ошибкой нехватки места
+        Path full = Path.of("/dev/full");
+        assumeTrue(Files.isWritable(full));
+        try (ChangeFeed feed = new ChangeFeed(8, full)) {
+            RecordingSubscriber lagging = new RecordingSubscriber(0);
+            feed.subscribe(lagging);
+            lagging.awaitSubscription();
+            for (int i = 0; i < 100; i++) {
+                feed.publish(ChangeEvent.Type.HABIT_COMPLETED, "user", "habit", LocalDate.ofEpochDay(i));
+            }
+            RecordingSubscriber current = new RecordingSubscriber(Long.MAX_VALUE);
+            feed.subscribe(current);
+            current.awaitSubscription();
+            lagging.subscription.request(Long.MAX_VALUE);
+
+            Throwable error = lagging.error.poll(5, TimeUnit.SECONDS);
+            assertInstanceOf(IOException.class, error);
+            assertTrue(lagging.events.isEmpty());
+            feed.publish(ChangeEvent.Type.USER_UPDATED, "user", null, null);
+            assertEquals(101, current.take(1).get(0).sequence());
+        }
+    }
+
+    @Test
+    void testCloseCompletesSubscribers() throws IOException, InterruptedException {
+        ChangeFeed feed = new ChangeFeed(8);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        feed.subscribe(subscriber);
+        subscriber.awaitSubscription();
+        feed.close();
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, feed.publish(ChangeEvent.Type.USER_UPDATED, "user", null, null));
+        RecordingSubscriber late = new RecordingSubscriber(1);
+        feed.subscribe(late);
+        assertTrue(late.completed.await(5, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new ChangeFeed(12));
+    }
+
+    private static List<Long> sequences(List<ChangeEvent> events) {
+        return events.stream().map(ChangeEvent::sequence).toList();
+    }
+
+    private static final class RecordingSubscriber implements Flow.Subscriber<ChangeEvent> {
+        final BlockingQueue<ChangeEvent> events = new LinkedBlockingQueue<>();
+        final BlockingQueue<Throwable> error = new LinkedBlockingQueue<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        private final long initialRequest;
+        volatile Flow.Subscription subscription;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        void awaitSubscription() throws InterruptedException {
+            assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        }
+
+        List<ChangeEvent> take(int count) throws InterruptedException {
+            List<ChangeEvent> taken = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+                assertNotNull(event, "Получено только " + i + " событий из " + count);
+                taken.add(event);
+            }
+            return taken;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(ChangeEvent item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.habitapp.metrics;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.InMemoryUserService;
+import com.habitapp.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentedHabitServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCallsAndErrorsAreCountedPerMethod() {
+        MetricsRegistry registry = new MetricsRegistry();
+        HabitService habitService = new InstrumentedHabitService(new ConcurrentHabitService(), registry);
+        UserService userService = new InstrumentedUserService(new InMemoryUserService(), registry);
+
+        userService.register("Анна", "anna@example.com", "password");
+        assertThrows(IllegalArgumentException.class, () -> userService.register("Анна", "anna@example.com", "password"));
+        Habit habit = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        habitService.markHabitAsCompleted(habit.getId(), LocalDate.now());
+        assertEquals(1, habitService.getCurrentStreak(habit.getId()));
+        assertThrows(IllegalArgumentException.class, () -> habitService.getCurrentStreak("несуществующий_id"));
+        assertThrows(IllegalArgumentException.class, () -> habitService.markHabitAsCompleted("несуществующий_id", LocalDate.now()));
+
+        Map<String, MethodSnapshot> methods = registry.snapshot().stream()
+                .collect(Collectors.toMap(MethodSnapshot::name, Function.identity()));
+        assertCounts(methods.get("users.register"), 2, 1);
+        assertCounts(methods.get("habits.createHabit"), 1, 0);
+        assertCounts(methods.get("habits.markHabitAsCompleted"), 2, 1);
+        assertCounts(methods.get("habits.getCurrentStreak"), 2, 1);
+        assertCounts(methods.get("habits.getHabits"), 0, 0);
+        assertTrue(methods.get("users.register").latency().max() > 0);
+        assertEquals(methods.keySet().stream().sorted().toList(),
+                registry.snapshot().stream().map(MethodSnapshot::name).toList());
+    }
+
+    @Test
+    void testReporterWritesSnapshotToFile() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        HabitService habitService = new InstrumentedHabitService(new ConcurrentHabitService(), registry);
+        Path file = directory.resolve("metrics.txt");
+        MetricsFileReporter reporter = new MetricsFileReporter(registry, file, Duration.ofMinutes(1));
+        habitService.getHabitById("несуществующий_id");
+        reporter.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(0).startsWith("# "));
+        String line = lines.stream().filter(l -> l.startsWith("habits.getHabitById ")).findFirst().orElseThrow();
+        String[] columns = line.trim().split("\\s+");
+        assertEquals("1", columns[1]);
+        assertEquals("0", columns[2]);
+        assertFalse(Files.exists(directory.resolve("metrics.txt.tmp")));
+        assertThrows(IllegalArgumentException.class, () -> new MetricsFileReporter(registry, file, Duration.ZERO));
+    }
+
+    @Test
+    void testReporterFailuresAreObservable() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Path file = directory.resolve("missing").resolve("metrics.txt");
+        MetricsFileReporter reporter = new MetricsFileReporter(registry, file, Duration.ofMillis(10));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (reporter.lastFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertInstanceOf(IOException.class, reporter.lastFailure());
+        assertThrows(IOException.class, reporter::close);
+        MethodSnapshot reports = registry.snapshot().stream()
+                .filter(method -> method.name().equals(MetricsFileReporter.REPORT_METHOD)).findFirst().orElseThrow();
+        assertTrue(reports.errors() > 0);
+        assertEquals(reports.calls(), reports.errors());
+    }
+
+    private static void assertCounts(MethodSnapshot method, long calls, long errors) {
+        assertEquals(calls, method.calls(), method.name());
+        assertEquals(errors, method.errors(), method.name());
+    }
+}
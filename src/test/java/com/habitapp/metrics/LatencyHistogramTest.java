@@ -0,0 +1,100 @@
+package com.habitapp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsCoverValuesWithBoundedRelativeError() {
+        Random random = new Random(20);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(LatencyHistogram.MAX_VALUE + 1) >>> random.nextInt(40);
+            int index = LatencyHistogram.index(value);
+            long upper = LatencyHistogram.upperBound(index);
+            assertTrue(upper >= value, "значение " + value);
+            assertTrue(upper - value <= value / 32, "значение " + value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.upperBound(index - 1) < value, "значение " + value);
+            }
+        }
+        assertEquals(31, LatencyHistogram.upperBound(LatencyHistogram.index(31)));
+    }
+
+    @Test
+    void testPercentilesMatchSortedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(21);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.count());
+        assertEquals(values[values.length - 1], snapshot.max());
+        assertEquals(Arrays.stream(values).average().orElseThrow(), snapshot.mean(), 1e-6);
+        for (double quantile : new double[]{0.0, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+            long expected = values[Math.max(0, (int) Math.ceil(quantile * values.length) - 1)];
+            long actual = snapshot.percentile(quantile);
+            assertTrue(actual >= expected && actual - expected <= expected / 32,
+                    "перцентиль " + quantile + ": " + actual + " вместо " + expected);
+        }
+        assertEquals(0, new LatencyHistogram().snapshot().percentile(0.99));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.percentile(1.5));
+    }
+
+    @Test
+    void testConcurrentRecordingLosesNoValues() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= 50_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(200_000, snapshot.count());
+        assertEquals(4L * 50_000 * 50_001 / 2, snapshot.sum());
+        assertEquals(50_000, snapshot.max());
+    }
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        MethodMetrics metrics = new MetricsRegistry().method("habits.getHabitById");
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+            metrics.record(System.nanoTime());
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+            metrics.record(System.nanoTime());
+            metrics.error();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // Допуск на служебные выделения самого замера
+        assertTrue(allocated < 1024, "выделено байт: " + allocated);
+    }
+}
@@ -0,0 +1,58 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactIdTest {
+
+    @Test
+    void testRandomUuidRoundTrips() {
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = UUID.randomUUID();
+            String id = uuid.toString();
+            assertTrue(CompactId.isCompact(id));
+            assertEquals(uuid.getMostSignificantBits(), CompactId.high(id));
+            assertEquals(uuid.getLeastSignificantBits(), CompactId.low(id));
+            assertEquals(uuid, CompactId.find(id));
+            assertEquals(id, CompactId.toString(CompactId.high(id), CompactId.low(id)));
+        }
+    }
+
+    @Test
+    void testOtherIdsGetStableSurrogates() {
+        String upper = UUID.randomUUID().toString().toUpperCase();
+        assertFalse(CompactId.isCompact(upper));
+        assertFalse(CompactId.isCompact("00000000-0000-1000-8000-000000000000"));
+        assertFalse(CompactId.isCompact("user1"));
+        assertNull(CompactId.find("идентификатор-без-суррогата"));
+
+        long surrogate = CompactId.low("user1");
+        assertEquals(0, CompactId.high("user1"));
+        assertEquals(surrogate, CompactId.low("user1"));
+        assertEquals(new UUID(0, surrogate), CompactId.find("user1"));
+        assertNotEquals(surrogate, CompactId.low(upper));
+    }
+
+    @Test
+    void testModelKeepsPublicIds() {
+        String habitId = UUID.randomUUID().toString();
+        String userId = UUID.randomUUID().toString();
+        Habit habit = new Habit(habitId, userId, "Бегать", "Бегать по утрам", Frequency.DAILY);
+        habit.markCompleted(LocalDate.now());
+        assertEquals(habitId, habit.getId());
+        assertEquals(userId, habit.getUserId());
+        assertEquals(UUID.fromString(userId).getMostSignificantBits(), habit.getUserIdHigh());
+
+        Habit legacy = new Habit("habit1", "user1", "Читать", "Читать книги", Frequency.WEEKLY);
+        assertEquals("habit1", legacy.getId());
+        assertEquals("user1", legacy.getUserId());
+
+        User user = new User("anna@example.com", "hash", "Анна");
+        assertTrue(CompactId.isCompact(user.getId()));
+        assertEquals(user.getId(), CompactId.toString(user.getIdHigh(), user.getIdLow()));
+    }
+}
@@ -0,0 +1,83 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionArenaTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testOffHeapHabitMatchesOnHeapHabit() throws IOException {
+        try (CompletionArena arena = CompletionArena.mapped(directory.resolve("completions.bin"))) {
+            for (Schedule schedule : new Schedule[]{Schedule.of(Frequency.DAILY), Schedule.of(Frequency.WEEKLY)}) {
+                Random random = new Random(7);
+                LocalDate origin = LocalDate.of(2022, 1, 1);
+                Habit onHeap = new Habit("habit", "user", "Привычка", "Описание", schedule, 1);
+                Habit offHeap = new Habit("habit", "user", "Привычка", "Описание", schedule, 1, arena);
+
+                for (int i = 0; i < 600; i++) {
+                    // Отметки приходят вразнобой, поэтому история растет в обе стороны
+                    LocalDate date = origin.plusDays(random.nextInt(1_500) - 200);
+                    assertEquals(onHeap.markCompleted(date), offHeap.markCompleted(date));
+
+                    LocalDate today = date.plusDays(random.nextInt(3));
+                    LocalDate start = origin.plusDays(random.nextInt(1_600) - 250);
+                    LocalDate end = start.plusDays(random.nextInt(300));
+                    assertEquals(onHeap.getCurrentStreak(today), offHeap.getCurrentStreak(today));
+                    assertEquals(onHeap.getLongestStreak(), offHeap.getLongestStreak());
+                    assertEquals(onHeap.getCompletionPercentage(start, end),
+                            offHeap.getCompletionPercentage(start, end), 1e-9);
+                    assertEquals(onHeap.getCompletionCount(start, end), offHeap.getCompletionCount(start, end));
+                    assertEquals(onHeap.isCompletedOn(start), offHeap.isCompletedOn(start));
+                }
+                assertEquals(onHeap.getCompletionDates(), offHeap.getCompletionDates());
+                assertEquals(onHeap.getLastCompletionDate(), offHeap.getLastCompletionDate());
+
+                Habit restored = new Habit("habit", "user", "Привычка", "Описание", schedule, 1, arena);
+                restored.restoreCompletions(offHeap.getCompletionBits());
+                assertEquals(onHeap.getCompletionDates(), restored.getCompletionDates());
+                assertEquals(onHeap.getLongestStreak(), restored.getLongestStreak());
+            }
+        }
+    }
+
+    @Test
+    void testSlabsAreReused() throws IOException {
+        try (CompletionArena arena = CompletionArena.direct()) {
+            CompletionStore first = arena.newHistory();
+            LocalDate origin = LocalDate.of(2024, 1, 1);
+            first.add(origin);
+            long small = arena.usedBytes();
+            assertEquals(CompletionArena.MIN_SLAB_BYTES, small);
+
+            // Рост истории переносит ее в больший слэб, а прежний возвращается в список свободных
+            first.add(origin.plusYears(3));
+            long grown = arena.usedBytes();
+            assertTrue(grown > small);
+            CompletionStore second = arena.newHistory();
+            second.add(origin.plusDays(1));
+            assertEquals(grown + small, arena.usedBytes());
+            assertFalse(second.contains(origin));
+            assertEquals(1, second.size());
+
+            second.load(new CompletionBits(0, new long[0]));
+            assertEquals(grown, arena.usedBytes());
+            assertTrue(second.isEmpty());
+            assertEquals(CompletionHistory.NONE, second.lastDay());
+            assertEquals(2, first.countBetween(origin.toEpochDay(), origin.plusYears(3).toEpochDay()));
+            assertTrue(arena.reservedBytes() >= arena.usedBytes());
+        }
+        CompletionArena closed = CompletionArena.direct();
+        closed.close();
+        assertThrows(IllegalStateException.class, () -> closed.newHistory().add(LocalDate.now()));
+    }
+}
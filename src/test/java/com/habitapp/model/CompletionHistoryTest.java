@@ -0,0 +1,145 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionHistoryTest {
+
+    private CompletionHistory history;
+
+    @BeforeEach
+    void setUp() {
+        history = new CompletionHistory();
+    }
+
+    @Test
+    void testAddIgnoresDuplicates() {
+        LocalDate today = LocalDate.now();
+
+        assertTrue(history.add(today));
+        assertFalse(history.add(today));
+        assertEquals(1, history.size());
+        assertTrue(history.contains(today));
+        assertFalse(history.contains(today.minusDays(1)));
+    }
+
+    @Test
+    void testGrowsInBothDirections() {
+        LocalDate date = LocalDate.of(2024, 6, 15);
+
+        history.add(date);
+        history.add(date.minusYears(5));
+        history.add(date.plusYears(5));
+
+        assertEquals(List.of(date.minusYears(5), date, date.plusYears(5)), history.asList());
+    }
+
+    @Test
+    void testRejectsDatesOutsideSupportedRange() {
+        Habit habit = new Habit("user", "Привычка", "Описание", Frequency.DAILY);
+        habit.markCompleted(LocalDate.of(2024, 1, 1));
+
+        assertThrows(IllegalArgumentException.class, () -> habit.markCompleted(LocalDate.MAX));
+        assertThrows(IllegalArgumentException.class, () -> habit.markCompleted(LocalDate.MIN));
+        assertThrows(IllegalArgumentException.class, () -> history.add(CompletionHistory.MAX_DATE.plusDays(1)));
+        assertTrue(history.add(CompletionHistory.MIN_DATE));
+        assertTrue(history.add(CompletionHistory.MAX_DATE));
+        assertEquals(List.of(LocalDate.of(2024, 1, 1)), habit.getCompletionDates());
+        assertEquals(1, habit.getCurrentStreak(LocalDate.of(2024, 1, 1)));
+    }
+
+    @Test
+    void testAsListMatchesSortedDates() {
+        Random random = new Random(42);
+        TreeSet<LocalDate> expected = new TreeSet<>();
+        LocalDate origin = LocalDate.of(2020, 1, 1);
+
+        for (int i = 0; i < 2_000; i++) {
+            LocalDate date = origin.plusDays(random.nextInt(3_000) - 1_500);
+            assertEquals(expected.add(date), history.add(date));
+        }
+
+        List<LocalDate> dates = history.asList();
+        assertEquals(new ArrayList<>(expected), new ArrayList<>(dates));
+        int index = 0;
+        for (LocalDate date : expected) {
+            assertEquals(date, dates.get(index++));
+            assertTrue(dates.contains(date));
+        }
+    }
+
+    @Test
+    void testAsListIsSnapshot() {
+        LocalDate today = LocalDate.now();
+        history.add(today);
+
+        List<LocalDate> snapshot = history.asList();
+        history.add(today.minusDays(1));
+
+        assertEquals(List.of(today), snapshot);
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(today));
+    }
+
+    @Test
+    void testRangeCountsMatchFullScan() {
+        Random random = new Random(5);
+        TreeSet<LocalDate> expected = new TreeSet<>();
+        LocalDate origin = LocalDate.of(2023, 1, 1);
+
+        for (int i = 0; i < 400; i++) {
+            LocalDate date = origin.plusDays(random.nextInt(1_000));
+            history.add(date);
+            expected.add(date);
+
+            LocalDate start = origin.plusDays(random.nextInt(1_100) - 50);
+            LocalDate end = start.plusDays(random.nextInt(400));
+            assertEquals(expected.subSet(start, true, end, true).size(),
+                    history.countBetween(start.toEpochDay(), end.toEpochDay()));
+            assertEquals(completedWeeks(expected, start, end),
+                    history.countWeeksBetween(start.toEpochDay(), end.toEpochDay()),
+                    () -> start + " - " + end);
+        }
+    }
+
+    @Test
+    void testCompletionPercentageMatchesFullScan() {
+        Random random = new Random(11);
+        LocalDate origin = LocalDate.of(2023, 1, 1);
+        Habit daily = new Habit("user", "Привычка", "Описание", Frequency.DAILY);
+        Habit weekly = new Habit("user", "Привычка", "Описание", Frequency.WEEKLY);
+        TreeSet<LocalDate> expected = new TreeSet<>();
+
+        for (int i = 0; i < 300; i++) {
+            LocalDate date = origin.plusDays(random.nextInt(500));
+            daily.markCompleted(date);
+            weekly.markCompleted(date);
+            expected.add(date);
+
+            LocalDate start = origin.plusDays(random.nextInt(520) - 10);
+            LocalDate end = start.plusDays(random.nextInt(200));
+            long days = ChronoUnit.DAYS.between(start, end) + 1;
+            long weeks = ChronoUnit.WEEKS.between(start, end) + 1;
+            assertEquals((double) expected.subSet(start, true, end, true).size() / days * 100,
+                    daily.getCompletionPercentage(start, end), 1e-9);
+            assertEquals((double) completedWeeks(expected, start, end) / weeks * 100,
+                    weekly.getCompletionPercentage(start, end), 1e-9);
+        }
+    }
+
+    // Исходный подсчет недель: номера недель от начальной даты для дат внутри периода
+    private static int completedWeeks(SortedSet<LocalDate> dates, LocalDate start, LocalDate end) {
+        Set<Long> weeks = new HashSet<>();
+        for (LocalDate date : dates) {
+            if (!date.isBefore(start) && !date.isAfter(end)) {
+                weeks.add(ChronoUnit.WEEKS.between(start, date));
+            }
+        }
+        return weeks.size();
+    }
+}
@@ -0,0 +1,166 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сверяет инкрементально поддерживаемые серии со сплошным пересчётом
+ * по случайным историям, включая отметки задним числом и в будущем.
+ */
+class HabitStreakTest {
+
+    private static final int CASES = 500;
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 14);
+
+    @Test
+    void testCurrentStreakMatchesSortingAlgorithm() {
+        Random random = new Random(20240314);
+        for (int c = 0; c < CASES; c++) {
+            Frequency frequency = random.nextBoolean() ? Frequency.DAILY : Frequency.WEEKLY;
+            Habit habit = new Habit("user", "Привычка", "Описание", frequency);
+            List<LocalDate> marked = new ArrayList<>();
+            int span = 1 + random.nextInt(200);
+            double density = 0.3 + random.nextDouble() * 0.7;
+
+            int marks = random.nextInt(span * 2);
+            for (int i = 0; i < marks; i++) {
+                LocalDate date = randomDate(random, span, density);
+                habit.markCompleted(date);
+                marked.add(date);
+
+                LocalDate today = TODAY.plusDays(random.nextInt(5) - 1);
+                assertEquals(legacyStreak(marked, frequency, today), habit.getCurrentStreak(today),
+                        () -> "Частота " + frequency + ", даты " + marked + ", сегодня " + today);
+            }
+        }
+    }
+
+    @Test
+    void testLongestStreakMatchesFullScan() {
+        Random random = new Random(7);
+        for (int c = 0; c < CASES; c++) {
+            Habit habit = new Habit("user", "Привычка", "Описание", Frequency.DAILY);
+            TreeSet<LocalDate> marked = new TreeSet<>();
+            int span = 1 + random.nextInt(300);
+            for (int i = random.nextInt(span); i >= 0; i--) {
+                LocalDate date = TODAY.minusDays(random.nextInt(span));
+                habit.markCompleted(date);
+                marked.add(date);
+            }
+
+            assertEquals(longestDailyRun(marked), habit.getLongestStreak());
+            habit.setFrequency(Frequency.WEEKLY);
+            assertEquals(longestWeeklyRun(marked), habit.getLongestStreak());
+            assertEquals(marked.last(), habit.getLastCompletionDate());
+        }
+    }
+
+    @Test
+    void testRestoredHabitMatchesOriginal() {
+        Random random = new Random(8);
+        for (int c = 0; c < CASES; c++) {
+            Frequency frequency = random.nextBoolean() ? Frequency.DAILY : Frequency.WEEKLY;
+            Habit habit = new Habit("user", "Привычка", "Описание", frequency);
+            int span = 1 + random.nextInt(400);
+            for (int i = random.nextInt(span); i >= 0; i--) {
+                habit.markCompleted(randomDate(random, span, 0.8));
+            }
+
+            Habit restored = new Habit(habit.getId(), "user", "Привычка", "Описание", frequency);
+            restored.restoreCompletions(habit.getCompletionBits());
+
+            assertEquals(habit.getCompletionDates(), restored.getCompletionDates());
+            assertEquals(habit.getLongestStreak(), restored.getLongestStreak());
+            assertEquals(habit.getLastCompletionDate(), restored.getLastCompletionDate());
+            for (int d = -1; d <= 3; d++) {
+                assertEquals(habit.getCurrentStreak(TODAY.plusDays(d)), restored.getCurrentStreak(TODAY.plusDays(d)));
+            }
+            LocalDate date = randomDate(random, span, 0.8);
+            assertEquals(habit.markCompleted(date), restored.markCompleted(date));
+            assertEquals(habit.getCurrentStreak(TODAY), restored.getCurrentStreak(TODAY));
+            assertEquals(habit.getLongestStreak(), restored.getLongestStreak());
+        }
+    }
+
+    @Test
+    void testEmptyHabit() {
+        Habit habit = new Habit("user", "Привычка", "Описание", Frequency.DAILY);
+
+        assertEquals(0, habit.getCurrentStreak(TODAY));
+        assertEquals(0, habit.getLongestStreak());
+        assertNull(habit.getLastCompletionDate());
+    }
+
+    private static LocalDate randomDate(Random random, int span, double density) {
+        if (random.nextDouble() < 0.05) {
+            return TODAY.plusDays(1 + random.nextInt(10));
+        }
+        int offset = random.nextDouble() < density ? random.nextInt(Math.min(span, 20)) : random.nextInt(span);
+        return TODAY.minusDays(offset);
+    }
+
+    // Исходный алгоритм InMemoryHabitService: сортировка и обход от последней даты
+    private static int legacyStreak(List<LocalDate> marked, Frequency frequency, LocalDate today) {
+        List<LocalDate> dates = new ArrayList<>(new HashSet<>(marked));
+        if (dates.isEmpty()) {
+            return 0;
+        }
+
+        Collections.sort(dates);
+        int streak = 0;
+
+        for (int i = dates.size() - 1; i >= 0; i--) {
+            LocalDate date = dates.get(i);
+            if (frequency == Frequency.DAILY) {
+                long daysBetween = ChronoUnit.DAYS.between(date, today) - streak;
+                if (daysBetween == 0 || daysBetween == 1) {
+                    streak++;
+                } else {
+                    break;
+                }
+            } else if (frequency == Frequency.WEEKLY) {
+                long weeksBetween = ChronoUnit.WEEKS.between(date, today) - streak;
+                if (weeksBetween == 0 || weeksBetween == 1) {
+                    streak++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        return streak;
+    }
+
+    private static int longestDailyRun(SortedSet<LocalDate> dates) {
+        int longest = 0;
+        int run = 0;
+        LocalDate previous = null;
+        for (LocalDate date : dates) {
+            run = previous != null && previous.plusDays(1).equals(date) ? run + 1 : 1;
+            longest = Math.max(longest, run);
+            previous = date;
+        }
+        return longest;
+    }
+
+    private static int longestWeeklyRun(SortedSet<LocalDate> dates) {
+        SortedSet<LocalDate> mondays = new TreeSet<>();
+        for (LocalDate date : dates) {
+            mondays.add(date.minusDays(date.getDayOfWeek().getValue() - 1));
+        }
+        int longest = 0;
+        int run = 0;
+        LocalDate previous = null;
+        for (LocalDate monday : mondays) {
+            run = previous != null && previous.plusWeeks(1).equals(monday) ? run + 1 : 1;
+            longest = Math.max(longest, run);
+            previous = monday;
+        }
+        return longest;
+    }
+}
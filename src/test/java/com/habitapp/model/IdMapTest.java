@@ -0,0 +1,55 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdMapTest {
+
+    @Test
+    void testRandomOperationsMatchHashMap() {
+        Random random = new Random(7);
+        IdMap<Integer> map = new IdMap<>();
+        Map<UUID, Integer> expected = new HashMap<>();
+        // Узкий диапазон ключей дает длинные цепочки, удаления и повторные вставки
+        for (int i = 0; i < 200_000; i++) {
+            UUID key = new UUID(random.nextInt(4), random.nextInt(5_000));
+            long high = key.getMostSignificantBits();
+            long low = key.getLeastSignificantBits();
+            switch (random.nextInt(3)) {
+                case 0 -> assertEquals(expected.put(key, i), map.put(high, low, i));
+                case 1 -> assertEquals(expected.remove(key), map.remove(high, low));
+                default -> assertEquals(expected.get(key), map.get(high, low));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<UUID, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey().getMostSignificantBits(),
+                    entry.getKey().getLeastSignificantBits()));
+        }
+        List<Integer> values = map.values();
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    @Test
+    void testLookupByStringId() {
+        IdMap<String> map = new IdMap<>(3);
+        String uuid = UUID.randomUUID().toString();
+        map.put(CompactId.high(uuid), CompactId.low(uuid), "uuid");
+        map.put(CompactId.high("user1"), CompactId.low("user1"), "user1");
+
+        assertEquals("uuid", map.get(uuid));
+        assertEquals("user1", map.get("user1"));
+        assertNull(map.get(UUID.randomUUID().toString()));
+        assertNull(map.get("неизвестный-идентификатор"));
+        assertNull(map.get(uuid.toUpperCase()));
+        assertThrows(NullPointerException.class, () -> map.put(1, 2, null));
+    }
+}
@@ -0,0 +1,174 @@
+package com.habitapp.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сверяет вычисления периодов расписаний за O(1) с обходом календарных дней,
+ * а серии и проценты по расписанию — с прямым подсчетом по отмеченным датам.
+ */
+class ScheduleTest {
+
+    private static final LocalDate ORIGIN = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void testPeriodsMatchDayByDayScan() {
+        Random random = new Random(17);
+        for (int c = 0; c < 300; c++) {
+            Schedule schedule = randomSchedule(random);
+            long from = ORIGIN.toEpochDay() - 400 + random.nextInt(800);
+            long to = from + random.nextInt(120);
+
+            Set<Long> starts = new TreeSet<>();
+            for (long day = from; day <= to; day++) {
+                long start = schedule.periodStart(day);
+                if (start != Schedule.NONE) {
+                    assertTrue(start <= day && day <= schedule.periodEnd(start), schedule::toString);
+                    starts.add(start);
+                }
+            }
+            assertEquals(starts.size(), schedule.countPeriods(from, to), schedule::toString);
+
+            long start = schedule.periodStart(from);
+            if (start == Schedule.NONE) {
+                start = schedule.nextPeriodStart(from);
+            }
+            List<Long> walked = new ArrayList<>();
+            for (; start <= to; start = schedule.nextPeriodStart(start)) {
+                walked.add(start);
+                assertEquals(start, schedule.periodStart(start));
+            }
+            assertEquals(new ArrayList<>(starts), walked, schedule::toString);
+            for (int i = 1; i < walked.size(); i++) {
+                assertEquals(walked.get(i - 1), schedule.previousPeriodStart(walked.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void testEncodeRoundTripAndLegacyNames() {
+        Random random = new Random(3);
+        for (int c = 0; c < 50; c++) {
+            Schedule schedule = randomSchedule(random);
+            assertEquals(schedule, Schedule.parse(schedule.encode()));
+        }
+        assertSame(Schedule.DAILY, Schedule.parse("DAILY"));
+        assertSame(Schedule.WEEKLY, Schedule.parse("WEEKLY"));
+        assertEquals(Frequency.DAILY, Schedule.everyNDays(1, ORIGIN).getFrequency());
+        assertEquals(Frequency.WEEKLY, Schedule.timesPerWeek(1).getFrequency());
+        assertThrows(IllegalArgumentException.class, () -> Schedule.of(Frequency.EVERY_N_DAYS));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.onWeekdays(Set.of()));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.timesPerWeek(8));
+        assertThrows(IllegalArgumentException.class, () -> Schedule.everyNDays(0, ORIGIN));
+    }
+
+    @Test
+    void testScheduledStreaksAndPercentageMatchFullScan() {
+        Random random = new Random(2024);
+        for (int c = 0; c < 300; c++) {
+            Schedule schedule = randomSchedule(random);
+            if (schedule.getFrequency() == Frequency.DAILY || schedule.getFrequency() == Frequency.WEEKLY) {
+                continue; // для них сохраняется прежний расчет, его проверяет HabitStreakTest
+            }
+            Habit habit = new Habit("id", "user", "Привычка", "Описание", schedule, 1);
+            Set<Long> marked = new HashSet<>();
+            double density = 0.3 + random.nextDouble() * 0.7;
+            for (int day = 0; day < 120; day++) {
+                if (random.nextDouble() < density) {
+                    habit.markCompleted(ORIGIN.plusDays(day));
+                    marked.add(ORIGIN.toEpochDay() + day);
+                }
+            }
+
+            LocalDate today = ORIGIN.plusDays(random.nextInt(130));
+            assertEquals(currentStreak(schedule, marked, today.toEpochDay()), habit.getCurrentStreak(today),
+                    schedule::toString);
+            assertEquals(longestStreak(schedule, marked), habit.getLongestStreak(), schedule::toString);
+
+            LocalDate start = ORIGIN.plusDays(random.nextInt(100));
+            LocalDate end = start.plusDays(random.nextInt(40));
+            assertEquals(percentage(schedule, marked, start.toEpochDay(), end.toEpochDay()),
+                    habit.getCompletionPercentage(start, end), 1e-9, schedule::toString);
+        }
+    }
+
+    private static Schedule randomSchedule(Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                return Schedule.everyNDays(1 + random.nextInt(10), ORIGIN.plusDays(random.nextInt(30)));
+            case 1:
+                Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    if (random.nextInt(3) == 0) {
+                        days.add(day);
+                    }
+                }
+                days.add(DayOfWeek.of(1 + random.nextInt(7)));
+                return Schedule.onWeekdays(days);
+            default:
+                return Schedule.timesPerWeek(1 + random.nextInt(7));
+        }
+    }
+
+    // Выполнен ли период: отметки ищутся обходом его дней
+    private static boolean completed(Schedule schedule, Set<Long> marked, long start, long from, long to) {
+        int count = 0;
+        for (long day = Math.max(start, from); day <= Math.min(schedule.periodEnd(start), to); day++) {
+            if (marked.contains(day)) {
+                count++;
+            }
+        }
+        return count >= schedule.required();
+    }
+
+    private static int currentStreak(Schedule schedule, Set<Long> marked, long today) {
+        // Невыполненный текущий период серию не прерывает; в день вне расписания текущего периода нет
+        long start = schedule.periodStart(today);
+        if (start == Schedule.NONE) {
+            start = today - 1;
+            while (schedule.periodStart(start) == Schedule.NONE) {
+                start--;
+            }
+        } else if (!completed(schedule, marked, start, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            start = schedule.previousPeriodStart(start);
+        }
+        int streak = 0;
+        while (completed(schedule, marked, start, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            streak++;
+            start = schedule.previousPeriodStart(start);
+        }
+        return streak;
+    }
+
+    private static int longestStreak(Schedule schedule, Set<Long> marked) {
+        int longest = 0;
+        int run = 0;
+        long first = ORIGIN.toEpochDay() - 7;
+        long start = schedule.periodStart(first) == Schedule.NONE ? schedule.nextPeriodStart(first) : schedule.periodStart(first);
+        for (; start <= ORIGIN.toEpochDay() + 130; start = schedule.nextPeriodStart(start)) {
+            run = completed(schedule, marked, start, Long.MIN_VALUE, Long.MAX_VALUE) ? run + 1 : 0;
+            longest = Math.max(longest, run);
+        }
+        return longest;
+    }
+
+    private static double percentage(Schedule schedule, Set<Long> marked, long from, long to) {
+        int total = 0;
+        int done = 0;
+        for (long day = from; day <= to; day++) {
+            long start = schedule.periodStart(day);
+            if (start != Schedule.NONE && (start == day || day == from)) {
+                total++;
+                if (completed(schedule, marked, start, from, to)) {
+                    done++;
+                }
+            }
+        }
+        return total == 0 ? 0 : (double) done / total * 100;
+    }
+}
@@ -0,0 +1,126 @@
+package com.habitapp.persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReplayReturnsRecordsInOrder() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.NEVER, Duration.ZERO)) {
+            assertEquals(1, log.append(bytes("первая")));
+            assertEquals(2, log.append(bytes("вторая")));
+            assertEquals(3, log.append(bytes("третья")));
+        }
+
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.NEVER, Duration.ZERO)) {
+            assertEquals(3, log.lastSequence());
+            assertEquals(List.of("вторая", "третья"), replay(log, 1));
+            assertEquals(4, log.append(bytes("четвертая")));
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            log.sync(log.append(bytes("целая")));
+            log.sync(log.append(bytes("оборванная")));
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            assertEquals(List.of("целая"), replay(log, 0));
+            assertEquals(2, log.append(bytes("новая")));
+        }
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            assertEquals(List.of("целая", "новая"), replay(log, 0));
+        }
+    }
+
+    @Test
+    void testConcurrentAppendsWithGroupCommit() throws Exception {
+        int threads = 8;
+        int appendsPerThread = 200;
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        log.sync(log.append(bytes(thread + ":" + i)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+        }
+
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            List<String> records = replay(log, 0);
+            assertEquals(threads * appendsPerThread, records.size());
+            assertEquals(threads * appendsPerThread, new HashSet<>(records).size());
+        }
+    }
+
+    @Test
+    void testRollAndDeleteOldSegments() throws IOException {
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            log.append(bytes("первая"));
+            log.append(bytes("вторая"));
+            assertEquals(2, log.roll());
+            assertEquals(2, log.roll());
+            log.append(bytes("третья"));
+
+            log.deleteSegmentsUpTo(2);
+            assertEquals(List.of("третья"), replay(log, 0));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.ALWAYS, Duration.ZERO)) {
+            assertEquals(3, log.lastSequence());
+            assertEquals(4, log.append(bytes("четвертая")));
+            assertEquals(List.of("четвертая"), replay(log, 3));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> replay(WriteAheadLog log, long afterSequence) throws IOException {
+        List<String> records = new ArrayList<>();
+        log.replay(afterSequence, (sequence, payload) -> {
+            byte[] data = new byte[payload.remaining()];
+            payload.get(data);
+            records.add(new String(data, StandardCharsets.UTF_8));
+        });
+        return records;
+    }
+}
@@ -0,0 +1,46 @@
+package com.habitapp.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHasherTest {
+
+    private final PasswordHasher hasher = new PasswordHasher(1_000);
+
+    @Test
+    void testHashIsSaltedAndVerifies() {
+        String first = hasher.hash("boris_password");
+        String second = hasher.hash("boris_password");
+
+        assertNotEquals(first, second);
+        assertFalse(first.contains("boris_password"));
+        assertTrue(hasher.verify("boris_password", first));
+        assertTrue(hasher.verify("boris_password", second));
+        assertFalse(hasher.verify("boris_password_wrong", first));
+        assertFalse(hasher.needsRehash(first));
+    }
+
+    @Test
+    void testHashWithOtherCostVerifiesAndNeedsRehash() {
+        String cheap = new PasswordHasher(10).hash("boris_password");
+
+        assertTrue(hasher.verify("boris_password", cheap));
+        assertTrue(hasher.needsRehash(cheap));
+    }
+
+    @Test
+    void testLegacyPlainTextVerifiesAndNeedsRehash() {
+        assertTrue(hasher.verify("boris_password", "boris_password"));
+        assertFalse(hasher.verify("boris_password_wrong", "boris_password"));
+        assertTrue(hasher.needsRehash("boris_password"));
+    }
+
+    @Test
+    void testMalformedHashIsRejected() {
+        assertFalse(hasher.verify("boris_password", "pbkdf2-sha256$1000$не-base64"));
+        assertFalse(hasher.verify("boris_password", "pbkdf2-sha256$x$AAAA$AAAA"));
+        assertFalse(hasher.verify(null, hasher.hash("boris_password")));
+        assertThrows(IllegalArgumentException.class, () -> new PasswordHasher(0));
+    }
+}
@@ -0,0 +1,79 @@
+package com.habitapp.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testSessionExpiresAfterIdleTtl() {
+        SessionStore store = new SessionStore(Duration.ofMinutes(30), 10, now::get);
+        String token = store.issue("1");
+
+        now.addAndGet(Duration.ofMinutes(20).toNanos());
+        assertEquals("1", store.resolve(token));
+        now.addAndGet(Duration.ofMinutes(20).toNanos());
+        assertEquals("1", store.resolve(token), "обращение продлевает сессию");
+        now.addAndGet(Duration.ofMinutes(30).toNanos());
+
+        assertNull(store.resolve(token));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testExpiredSessionsAreRemovedOnIssue() {
+        SessionStore store = new SessionStore(Duration.ofMinutes(30), 10, now::get);
+        store.issue("1");
+        store.issue("2");
+        now.addAndGet(Duration.ofMinutes(31).toNanos());
+
+        String token = store.issue("3");
+
+        assertEquals(1, store.size());
+        assertEquals("3", store.resolve(token));
+    }
+
+    @Test
+    void testLeastRecentlyUsedSessionIsEvictedOverCapacity() {
+        SessionStore store = new SessionStore(Duration.ofMinutes(30), 2, now::get);
+        String first = store.issue("1");
+        String second = store.issue("2");
+        assertEquals("1", store.resolve(first));
+
+        String third = store.issue("3");
+
+        assertEquals(2, store.size());
+        assertEquals("1", store.resolve(first));
+        assertNull(store.resolve(second));
+        assertEquals("3", store.resolve(third));
+    }
+
+    @Test
+    void testInvalidateUserRemovesAllItsSessions() {
+        SessionStore store = new SessionStore(Duration.ofMinutes(30), 10, now::get);
+        String first = store.issue("1");
+        String second = store.issue("1");
+        String other = store.issue("2");
+
+        store.invalidate(first);
+        assertNull(store.resolve(first));
+        assertEquals("1", store.resolve(second));
+
+        store.invalidateUser("1");
+        assertNull(store.resolve(second));
+        assertEquals("2", store.resolve(other));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testInvalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SessionStore(Duration.ZERO, 10));
+        assertThrows(IllegalArgumentException.class, () -> new SessionStore(Duration.ofMinutes(1), 0));
+    }
+}
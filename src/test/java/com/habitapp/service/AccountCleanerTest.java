@@ -0,0 +1,50 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountCleanerTest {
+
+    @Test
+    void testDeletingAccountRemovesHabitsInBackground() throws InterruptedException {
+        InMemoryUserService userService = new InMemoryUserService();
+        HabitService habitService = new ConcurrentHabitService();
+        try (AccountCleaner cleaner = new AccountCleaner(habitService, 16)) {
+            userService.addDeletionListener(cleaner::enqueue);
+            User boris = userService.register("Борис", "boris@example.com", "boris_password");
+            User barbara = userService.register("Барбара", "barbara@example.com", "barbara_password");
+            for (int i = 0; i < 100; i++) {
+                habitService.createHabit(boris.getId(), "Привычка " + i, "Описание", Frequency.DAILY);
+            }
+            Habit kept = habitService.createHabit(barbara.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+
+            assertTrue(userService.deleteAccount(boris.getId()));
+
+            assertTrue(cleaner.awaitIdle(Duration.ofSeconds(10)));
+            assertTrue(habitService.getHabitsByUser(boris.getId()).isEmpty());
+            assertEquals(1, habitService.getHabits().size());
+            assertSame(kept, habitService.getHabitById(kept.getId()));
+        }
+    }
+
+    @Test
+    void testClosedCleanerKeepsUsersPending() throws InterruptedException {
+        HabitService habitService = new ConcurrentHabitService();
+        habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        AccountCleaner cleaner = new AccountCleaner(habitService);
+        cleaner.close();
+
+        cleaner.enqueue("user1");
+
+        assertFalse(cleaner.awaitIdle(Duration.ofSeconds(1)));
+        assertEquals(List.of("user1"), cleaner.pendingUsers());
+        assertEquals(1, habitService.getHabitsByUser("user1").size());
+    }
+}
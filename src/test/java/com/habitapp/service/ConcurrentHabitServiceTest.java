@@ -0,0 +1,258 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentHabitServiceTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+    private static final int USERS = 16;
+
+    private HabitService habitService;
+
+    @BeforeEach
+    void setUp() {
+        habitService = new ConcurrentHabitService();
+    }
+
+    @Test
+    void testCreateAndDeleteHabit() {
+        Habit habit = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+
+        assertSame(habit, habitService.getHabitById(habit.getId()));
+        assertEquals(List.of(habit), habitService.getHabitsByUser("user1"));
+        assertTrue(habitService.deleteHabit(habit.getId()));
+        assertFalse(habitService.deleteHabit(habit.getId()));
+        assertTrue(habitService.getHabitsByUser("user1").isEmpty());
+    }
+
+    @Test
+    void testReadViewsAreReusedSnapshots() {
+        Habit first = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        List<Habit> userHabits = habitService.getHabitsByUser("user1");
+        List<Habit> allHabits = habitService.getHabits();
+
+        assertSame(userHabits, habitService.getHabitsByUser("user1"));
+        assertSame(allHabits, habitService.getHabits());
+        assertThrows(UnsupportedOperationException.class, () -> allHabits.add(first));
+
+        Habit second = habitService.createHabit("user1", "Читать", "Читать книгу", Frequency.DAILY);
+        assertEquals(List.of(first), userHabits);
+        assertEquals(List.of(first), allHabits);
+        assertEquals(List.of(first, second), habitService.getHabitsByUser("user1"));
+        assertEquals(Set.of(first, second), new HashSet<>(habitService.getHabits()));
+
+        List<Habit> visited = new ArrayList<>();
+        habitService.forEachHabit("user1", visited::add);
+        habitService.forEachHabit(visited::add);
+        assertEquals(4, visited.size());
+    }
+
+    @Test
+    void testPagesCoverHabitsCreatedConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    habitService.createHabit("user" + (i % 2), "Привычка", "Описание", Frequency.DAILY);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        for (String userId : List.of("user0", "user1")) {
+            List<String> paged = new ArrayList<>();
+            String cursor = null;
+            do {
+                Page<HabitSummary> page = habitService.listHabitsByUser(userId, cursor, HabitService.MAX_PAGE_SIZE, false);
+                page.items().forEach(summary -> paged.add(summary.id()));
+                cursor = page.nextCursor();
+            } while (cursor != null);
+            assertEquals(habitService.getHabitsByUser(userId).stream().map(Habit::getId).toList(), paged);
+        }
+
+        long previous = 0;
+        int total = 0;
+        String cursor = null;
+        do {
+            Page<HabitSummary> page = habitService.listHabits(cursor, 70, false);
+            for (HabitSummary summary : page.items()) {
+                long sequence = habitService.getHabitById(summary.id()).getSequence();
+                assertTrue(sequence > previous);
+                previous = sequence;
+                total++;
+            }
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        assertEquals(THREADS * 500, total);
+    }
+
+    @Test
+    void testMarkNonExistingHabitAsCompleted() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            habitService.markHabitAsCompleted("несуществующий_id_в_виде_строки", LocalDate.now());
+        });
+    }
+
+    @Test
+    void testIndexesStayConsistentUnderConcurrentLoad() throws Exception {
+        Map<String, String> createdOwners = new ConcurrentHashMap<>();
+        Set<String> deletedIds = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                start.await();
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    String userId = "user" + random.nextInt(USERS);
+                    List<Habit> userHabits = habitService.getHabitsByUser(userId);
+                    int operation = random.nextInt(3);
+                    if (operation == 0 || userHabits.isEmpty()) {
+                        Habit habit = habitService.createHabit(userId, "Привычка " + i, "Описание", Frequency.DAILY);
+                        createdOwners.put(habit.getId(), userId);
+                    } else {
+                        Habit habit = userHabits.get(random.nextInt(userHabits.size()));
+                        if (operation == 1) {
+                            if (habitService.deleteHabit(habit.getId())) {
+                                assertTrue(deletedIds.add(habit.getId()));
+                            }
+                        } else {
+                            try {
+                                habitService.markHabitAsCompleted(habit.getId(), LocalDate.now().minusDays(random.nextInt(30)));
+                            } catch (IllegalArgumentException e) {
+                                // Привычку успел удалить другой поток
+                            }
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Map<String, String> expectedOwners = new HashMap<>(createdOwners);
+        expectedOwners.keySet().removeAll(deletedIds);
+        List<Habit> allHabits = habitService.getHabits();
+        assertEquals(expectedOwners.size(), allHabits.size());
+
+        int indexedByUser = 0;
+        for (int u = 0; u < USERS; u++) {
+            String userId = "user" + u;
+            for (Habit habit : habitService.getHabitsByUser(userId)) {
+                assertEquals(userId, habit.getUserId());
+                assertEquals(userId, expectedOwners.get(habit.getId()));
+                assertSame(habit, habitService.getHabitById(habit.getId()));
+                indexedByUser++;
+            }
+        }
+        assertEquals(allHabits.size(), indexedByUser);
+
+        for (Habit habit : allHabits) {
+            assertTrue(habitService.getHabitsByUser(habit.getUserId()).contains(habit));
+        }
+    }
+
+    @Test
+    void testConcurrentMarksOnSameHabitAreNotLost() throws Exception {
+        Habit habit = habitService.createHabit("user1", "Читать", "Читать книгу", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            futures.add(executor.submit(() -> {
+                for (int day = offset; day < 400; day += THREADS) {
+                    habitService.markHabitAsCompleted(habit.getId(), today.minusDays(day));
+                    habitService.markHabitAsCompleted(habit.getId(), today.minusDays(day));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(400, habitService.getCompletedDatesForHabit(habit.getId()).size());
+        assertEquals(400, habitService.getCurrentStreak(habit.getId()));
+    }
+
+    @Test
+    void testCompletionStatsCountConcurrentMarksOnce() throws Exception {
+        List<Habit> habits = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            habits.add(habitService.createHabit("user" + i % 4, "Привычка " + i, "Описание", Frequency.DAILY));
+        }
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 5_000; i++) {
+                    Habit habit = habits.get(random.nextInt(habits.size()));
+                    habitService.markHabitAsCompleted(habit.getId(), start.plusDays(random.nextInt(366)));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        LocalDate end = LocalDate.of(2024, 12, 31);
+        long total = habits.stream().mapToLong(Habit::getCompletionCount).sum();
+        CompletionStats stats = habitService.getCompletionStats(Frequency.DAILY, start, end);
+        assertEquals(total, stats.completions());
+        assertEquals(USERS * 366L, stats.totalUnits());
+        long user0 = habitService.getHabitsByUser("user0").stream().mapToLong(Habit::getCompletionCount).sum();
+        assertEquals(user0, habitService.getUserCompletionStats("user0", Frequency.DAILY, start, end).completions());
+    }
+
+    @Test
+    void testTopStreaksMatchSequentialRanking() {
+        Random random = new Random(16);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 5_000; i++) {
+            Habit habit = habitService.createHabit("user" + i % USERS, "Привычка " + i, "Описание",
+                    i % 3 == 0 ? Frequency.WEEKLY : Frequency.DAILY);
+            int length = random.nextInt(60);
+            int step = habit.getFrequency() == Frequency.WEEKLY ? 7 : 1;
+            for (int day = 0; day < length; day++) {
+                habitService.markHabitAsCompleted(habit.getId(), today.minusDays((long) day * step));
+            }
+        }
+
+        List<HabitStreak> expected = habitService.getHabits().stream()
+                .map(habit -> new HabitStreak(habit.getId(), habit.getUserId(), habit.getTitle(),
+                        habit.getFrequency(), habitService.getCurrentStreak(habit.getId())))
+                .filter(entry -> entry.streak() > 0)
+                .sorted(Comparator.comparingInt(HabitStreak::streak).reversed().thenComparing(HabitStreak::habitId))
+                .limit(HabitService.MAX_PAGE_SIZE)
+                .toList();
+        assertEquals(expected, habitService.getTopStreaks(HabitService.MAX_PAGE_SIZE));
+    }
+}
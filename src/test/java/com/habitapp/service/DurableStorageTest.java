@@ -0,0 +1,346 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.model.User;
+import com.habitapp.persistence.FsyncPolicy;
+import com.habitapp.persistence.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableStorageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testStateSurvivesReopen() throws IOException {
+        LocalDate today = LocalDate.now();
+        String userId;
+        String habitId;
+        String deletedHabitId;
+
+        try (DurableStorage storage = open()) {
+            UserService userService = storage.getUserService();
+            HabitService habitService = storage.getHabitService();
+
+            User user = userService.register("Борис", "boris@example.com", "boris_password");
+            userService.updateProfile(user.getId(), "Барбара", "barbara@example.com", "barbara_password");
+            User deleted = userService.register("Удаленный", "deleted@example.com", "password");
+            userService.deleteAccount(deleted.getId());
+
+            Habit habit = habitService.createHabit(user.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+            habitService.updateHabit(habit.getId(), "Плавать", "Плавать по утрам", Frequency.DAILY);
+            habitService.markHabitAsCompleted(habit.getId(), today);
+            habitService.markHabitsAsCompleted(List.of(
+                    new HabitCompletion(habit.getId(), today.minusDays(1)),
+                    new HabitCompletion(habit.getId(), today.minusDays(2))));
+            Habit deletedHabit = habitService.createHabit(user.getId(), "Курить", "Бросить", Frequency.WEEKLY);
+            habitService.deleteHabit(deletedHabit.getId());
+
+            userId = user.getId();
+            habitId = habit.getId();
+            deletedHabitId = deletedHabit.getId();
+        }
+
+        try (DurableStorage storage = open()) {
+            UserService userService = storage.getUserService();
+            HabitService habitService = storage.getHabitService();
+
+            User user = userService.login("barbara@example.com", "barbara_password");
+            assertNotNull(user);
+            assertEquals(userId, user.getId());
+            assertEquals("Барбара", user.getName());
+            assertNull(userService.login("boris@example.com", "boris_password"));
+            assertNull(userService.login("deleted@example.com", "password"));
+
+            Habit habit = habitService.getHabitById(habitId);
+            assertEquals("Плавать", habit.getTitle());
+            assertEquals(userId, habit.getUserId());
+            assertEquals(3, habitService.getCurrentStreak(habitId));
+            assertNull(habitService.getHabitById(deletedHabitId));
+            assertEquals(List.of(habit), habitService.getHabitsByUser(userId));
+        }
+    }
+
+    @Test
+    void testChangesAfterReopenAreAppended() throws IOException {
+        String habitId;
+        try (DurableStorage storage = open()) {
+            habitId = storage.getHabitService().createHabit("user1", "Читать", "Читать книгу", Frequency.DAILY).getId();
+        }
+        try (DurableStorage storage = open()) {
+            storage.getHabitService().markHabitAsCompleted(habitId, LocalDate.now());
+        }
+        try (DurableStorage storage = open()) {
+            assertEquals(1, storage.getHabitService().getCompletedDatesForHabit(habitId).size());
+        }
+    }
+
+    @Test
+    void testStartupFromSnapshotAndLaterRecords() throws IOException {
+        LocalDate today = LocalDate.now();
+        String userId;
+        String habitId;
+        String deletedHabitId;
+
+        try (DurableStorage storage = open()) {
+            UserService userService = storage.getUserService();
+            HabitService habitService = storage.getHabitService();
+            User user = userService.register("Борис", "boris@example.com", "boris_password");
+            Habit habit = habitService.createHabit(user.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+            Habit deletedHabit = habitService.createHabit(user.getId(), "Курить", "Бросить", Frequency.WEEKLY);
+            habitService.markHabitAsCompleted(habit.getId(), today.minusDays(2));
+            habitService.markHabitAsCompleted(habit.getId(), today.minusDays(1));
+            habitService.markHabitAsCompleted(habit.getId(), today.minusYears(3));
+
+            storage.snapshot();
+
+            userService.updateProfile(user.getId(), "Барбара", "barbara@example.com", "barbara_password");
+            habitService.markHabitAsCompleted(habit.getId(), today);
+            habitService.deleteHabit(deletedHabit.getId());
+            userId = user.getId();
+            habitId = habit.getId();
+            deletedHabitId = deletedHabit.getId();
+        }
+        assertEquals(1, countFiles("wal-"));
+        assertEquals(1, countFiles("snapshot-"));
+
+        try (DurableStorage storage = open()) {
+            UserService userService = storage.getUserService();
+            HabitService habitService = storage.getHabitService();
+
+            assertNull(userService.login("boris@example.com", "boris_password"));
+            assertEquals(userId, userService.login("barbara@example.com", "barbara_password").getId());
+            assertEquals(3, habitService.getCurrentStreak(habitId));
+            assertEquals(4, habitService.getCompletedDatesForHabit(habitId).size());
+            assertEquals(3, habitService.getHabitById(habitId).getLongestStreak());
+            assertNull(habitService.getHabitById(deletedHabitId));
+
+            storage.snapshot();
+        }
+        assertEquals(1, countFiles("snapshot-"));
+
+        try (DurableStorage storage = open()) {
+            assertEquals(List.of(habitId), storage.getHabitService().getHabitsByUser(userId).stream()
+                    .map(Habit::getId).toList());
+            assertEquals(3, storage.getHabitService().getCurrentStreak(habitId));
+
+            Habit added = storage.getHabitService().createHabit(userId, "Читать", "Читать книгу", Frequency.DAILY);
+            assertEquals(List.of(habitId, added.getId()), storage.getHabitService()
+                    .listHabitsByUser(userId, null, 10, false).items().stream().map(HabitSummary::id).toList());
+        }
+    }
+
+    @Test
+    void testSchedulesSurviveLogReplayAndSnapshot() throws IOException {
+        Schedule weekdays = Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY));
+        Schedule interval = Schedule.everyNDays(3, LocalDate.of(2024, 1, 1));
+        String loggedId;
+        String updatedId;
+
+        try (DurableStorage storage = open()) {
+            HabitService habitService = storage.getHabitService();
+            loggedId = habitService.createHabit("user1", "Йога", "Йога по утрам", weekdays).getId();
+            Habit updated = habitService.createHabit("user1", "Полив", "Полить цветы", Frequency.DAILY);
+            habitService.markHabitAsCompleted(updated.getId(), LocalDate.of(2024, 1, 2));
+            habitService.updateHabit(updated.getId(), "Полив", "Полить цветы", interval);
+            updatedId = updated.getId();
+        }
+
+        try (DurableStorage storage = open()) {
+            HabitService habitService = storage.getHabitService();
+            assertEquals(weekdays, habitService.getHabitById(loggedId).getSchedule());
+            assertEquals(interval, habitService.getHabitById(updatedId).getSchedule());
+            assertEquals(1, habitService.getUserCompletionStats("user1", Frequency.EVERY_N_DAYS,
+                    LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3)).completedUnits());
+            storage.snapshot();
+        }
+
+        try (DurableStorage storage = open()) {
+            HabitService habitService = storage.getHabitService();
+            assertEquals(weekdays, habitService.getHabitById(loggedId).getSchedule());
+            assertEquals(interval, habitService.getHabitById(updatedId).getSchedule());
+        }
+    }
+
+    @Test
+    void testHabitsOfDeletedUserAreRemovedAfterReopen() throws IOException, InterruptedException {
+        String deletedId;
+        String keptHabitId;
+        try (DurableStorage storage = open()) {
+            User deleted = storage.getUserService().register("Борис", "boris@example.com", "boris_password");
+            User kept = storage.getUserService().register("Барбара", "barbara@example.com", "barbara_password");
+            for (int i = 0; i < 10; i++) {
+                storage.getHabitService().createHabit(deleted.getId(), "Привычка " + i, "Описание", Frequency.DAILY);
+            }
+            keptHabitId = storage.getHabitService().createHabit(kept.getId(), "Бегать", "Бегать по утрам",
+                    Frequency.DAILY).getId();
+            deletedId = deleted.getId();
+            // Очистка останавливается до удаления, чтобы ее пришлось продолжить после перезапуска
+            storage.getCleaner().close();
+            assertTrue(storage.getUserService().deleteAccount(deletedId));
+            assertEquals(10, storage.getHabitService().getHabitsByUser(deletedId).size());
+        }
+
+        try (DurableStorage storage = open()) {
+            assertTrue(storage.getCleaner().awaitIdle(Duration.ofSeconds(10)));
+            assertTrue(storage.getHabitService().getHabitsByUser(deletedId).isEmpty());
+            assertEquals(List.of(keptHabitId), storage.getHabitService().getHabits().stream()
+                    .map(Habit::getId).toList());
+        }
+    }
+
+    @Test
+    void testPendingCleanupSurvivesSnapshot() throws IOException, InterruptedException {
+        String deletedId;
+        try (DurableStorage storage = open()) {
+            User deleted = storage.getUserService().register("Борис", "boris@example.com", "boris_password");
+            storage.getHabitService().createHabit(deleted.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+            deletedId = deleted.getId();
+            storage.getCleaner().close();
+            storage.getUserService().deleteAccount(deletedId);
+            storage.snapshot();
+        }
+        assertEquals(1, countFiles("wal-"), "запись об удалении осталась только в снимке");
+
+        try (DurableStorage storage = open()) {
+            assertTrue(storage.getCleaner().awaitIdle(Duration.ofSeconds(10)));
+            assertTrue(storage.getHabitService().getHabits().isEmpty());
+        }
+    }
+
+    @Test
+    void testConcurrentChangesAreLoggedInApplyOrder() throws IOException, InterruptedException {
+        LocalDate today = LocalDate.now();
+        Map<String, List<LocalDate>> expected = new HashMap<>();
+        try (DurableStorage storage = DurableStorage.open(directory, FsyncPolicy.NEVER, Duration.ofSeconds(1))) {
+            HabitService habitService = storage.getHabitService();
+            AtomicBoolean running = new AtomicBoolean(true);
+            // Отметки приходят сразу после появления привычки, поэтому запись о создании должна их опережать
+            Thread marker = new Thread(() -> {
+                while (running.get()) {
+                    for (Habit habit : habitService.getHabits()) {
+                        try {
+                            habitService.markHabitAsCompleted(habit.getId(), today);
+                        } catch (IllegalArgumentException e) {
+                            // Привычка удалена между обходом и отметкой
+                        }
+                    }
+                }
+            });
+            marker.start();
+            Thread[] writers = new Thread[4];
+            for (int t = 0; t < writers.length; t++) {
+                String userId = "user" + t;
+                writers[t] = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        Habit habit = habitService.createHabit(userId, "Привычка " + i, "Описание", Frequency.DAILY);
+                        habitService.markHabitAsCompleted(habit.getId(), today.minusDays(1));
+                        if (i % 3 == 0) {
+                            habitService.deleteHabit(habit.getId());
+                        }
+                    }
+                });
+                writers[t].start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            running.set(false);
+            marker.join();
+            for (Habit habit : habitService.getHabits()) {
+                expected.put(habit.getId(), habit.getCompletionDates());
+            }
+        }
+
+        try (DurableStorage storage = open()) {
+            Map<String, List<LocalDate>> restored = new HashMap<>();
+            for (Habit habit : storage.getHabitService().getHabits()) {
+                restored.put(habit.getId(), habit.getCompletionDates());
+            }
+            assertEquals(expected, restored);
+        }
+    }
+
+    @Test
+    void testFailedLogAppendLeavesStateUnchanged() throws IOException {
+        LocalDate today = LocalDate.now();
+        WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.NEVER, Duration.ofSeconds(1));
+        DurableUserService userService = new DurableUserService(log);
+        DurableHabitService habitService = new DurableHabitService(log);
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        Habit habit = habitService.createHabit(user.getId(), "Бегать", "Бегать по утрам", Frequency.DAILY);
+        habitService.markHabitAsCompleted(habit.getId(), today);
+        CompletionStats stats = habitService.getCompletionStats(Frequency.DAILY, today.minusDays(7), today);
+        // Закрытый журнал отклоняет запись, как при ошибке диска
+        log.close();
+
+        assertThrows(UncheckedIOException.class, () -> habitService.markHabitAsCompleted(habit.getId(), today.minusDays(1)));
+        assertThrows(UncheckedIOException.class, () -> habitService.markHabitsAsCompleted(
+                List.of(new HabitCompletion(habit.getId(), today.minusDays(2)))));
+        assertThrows(UncheckedIOException.class, () -> habitService.updateHabit(habit.getId(), "Плавать", "", Frequency.WEEKLY));
+        assertThrows(UncheckedIOException.class, () -> habitService.deleteHabit(habit.getId()));
+        assertThrows(UncheckedIOException.class, () -> habitService.createHabit(user.getId(), "Читать", "", Frequency.DAILY));
+        assertEquals(List.of(today), habit.getCompletionDates());
+        assertEquals("Бегать", habit.getTitle());
+        assertEquals(Schedule.of(Frequency.DAILY), habit.getSchedule());
+        assertEquals(List.of(habit), habitService.getHabits());
+        assertEquals(stats, habitService.getCompletionStats(Frequency.DAILY, today.minusDays(7), today));
+
+        assertThrows(UncheckedIOException.class, () -> userService.updateProfile(user.getId(), "Барбара",
+                "barbara@example.com", null));
+        assertThrows(UncheckedIOException.class, () -> userService.deleteAccount(user.getId()));
+        assertEquals("Борис", user.getName());
+        assertNotNull(userService.login("boris@example.com", "boris_password"));
+        assertNull(userService.login("barbara@example.com", "boris_password"));
+        assertEquals(user, userService.getUserById(user.getId()));
+    }
+
+    @Test
+    void testCorruptedSnapshotIsRejected() throws IOException {
+        try (DurableStorage storage = open()) {
+            storage.getUserService().register("Борис", "boris@example.com", "boris_password");
+            storage.snapshot();
+        }
+        Path snapshot;
+        try (Stream<Path> files = Files.list(directory)) {
+            snapshot = files.filter(path -> path.getFileName().toString().startsWith("snapshot-"))
+                    .findFirst().orElseThrow();
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        assertThrows(IOException.class, this::open);
+    }
+
+    private long countFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    private DurableStorage open() throws IOException {
+        return DurableStorage.open(directory, FsyncPolicy.ALWAYS, Duration.ofMillis(10));
+    }
+}
@@ -1,12 +1,18 @@
 package com.habitapp.service;
 
+import com.habitapp.model.CompletionHistory;
 import com.habitapp.model.Frequency;
 import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -67,6 +73,26 @@ class InMemoryHabitServiceTest {
         assertNull(habitService.getHabitById(habit.getId()));
     }
 
+    @Test
+    void testDeleteHabitsByUserRemovesBatchesInCreationOrder() {
+        List<Habit> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            created.add(habitService.createHabit("Мария", "Привычка " + i, "Описание", Frequency.DAILY));
+        }
+        Habit other = habitService.createHabit("Федор", "Пить воду", "8 стаканов в день", Frequency.DAILY);
+
+        assertEquals(created.subList(0, 2), habitService.deleteHabitsByUser("Мария", 2));
+        assertEquals(created.subList(2, 5), habitService.getHabitsByUser("Мария"));
+        assertEquals(created.subList(2, 5), habitService.deleteHabitsByUser("Мария", 10));
+        assertEquals(List.of(), habitService.deleteHabitsByUser("Мария", 10));
+
+        assertTrue(habitService.getHabitsByUser("Мария").isEmpty());
+        assertNull(habitService.getHabitById(created.get(4).getId()));
+        assertEquals(List.of(other), habitService.getHabits());
+        assertEquals(1, habitService.listHabits(null, 10, false).items().size());
+        assertThrows(IllegalArgumentException.class, () -> habitService.deleteHabitsByUser("Федор", 0));
+    }
+
     @Test
     void testDeleteNonExistingHabit() {
         boolean deleted = habitService.deleteHabit("несуществующий_id_в_виде_строки");
@@ -93,6 +119,52 @@ class InMemoryHabitServiceTest {
         });
     }
 
+    @Test
+    void testMarkHabitsAsCompleted() {
+        String userId = UUID.randomUUID().toString();
+        Habit habit = habitService.createHabit(userId, "Гулять", "Гулять в парке", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+        habitService.markHabitAsCompleted(habit.getId(), today.minusDays(2));
+
+        List<CompletionResult> results = habitService.markHabitsAsCompleted(List.of(
+                new HabitCompletion(habit.getId(), today),
+                new HabitCompletion("несуществующий_id_в_виде_строки", today),
+                new HabitCompletion(habit.getId(), today.minusDays(2)),
+                new HabitCompletion(habit.getId(), today.minusDays(1)),
+                new HabitCompletion(habit.getId(), today)));
+
+        assertEquals(List.of(
+                new CompletionResult(habit.getId(), today, CompletionResult.Status.COMPLETED),
+                new CompletionResult("несуществующий_id_в_виде_строки", today, CompletionResult.Status.HABIT_NOT_FOUND),
+                new CompletionResult(habit.getId(), today.minusDays(2), CompletionResult.Status.ALREADY_COMPLETED),
+                new CompletionResult(habit.getId(), today.minusDays(1), CompletionResult.Status.COMPLETED),
+                new CompletionResult(habit.getId(), today, CompletionResult.Status.ALREADY_COMPLETED)), results);
+        assertEquals(3, habitService.getCompletedDatesForHabit(habit.getId()).size());
+        assertEquals(3, habitService.getCurrentStreak(habit.getId()));
+    }
+
+    @Test
+    void testMarkHabitsAsCompletedAppliesValidDatesAroundInvalidOnes() {
+        String userId = UUID.randomUUID().toString();
+        Habit habit = habitService.createHabit(userId, "Гулять", "Гулять в парке", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+        LocalDate tooEarly = CompletionHistory.MIN_DATE.minusDays(1);
+        LocalDate tooLate = CompletionHistory.MAX_DATE.plusDays(1);
+
+        List<CompletionResult> results = habitService.markHabitsAsCompleted(List.of(
+                new HabitCompletion(habit.getId(), tooEarly),
+                new HabitCompletion(habit.getId(), today),
+                new HabitCompletion("несуществующий_id_в_виде_строки", tooLate),
+                new HabitCompletion(habit.getId(), today.minusDays(1))));
+
+        assertEquals(List.of(
+                new CompletionResult(habit.getId(), tooEarly, CompletionResult.Status.INVALID_DATE),
+                new CompletionResult(habit.getId(), today, CompletionResult.Status.COMPLETED),
+                new CompletionResult("несуществующий_id_в_виде_строки", tooLate, CompletionResult.Status.INVALID_DATE),
+                new CompletionResult(habit.getId(), today.minusDays(1), CompletionResult.Status.COMPLETED)), results);
+        assertEquals(List.of(today.minusDays(1), today), habitService.getCompletedDatesForHabit(habit.getId()));
+    }
+
     @Test
     void testGetCurrentStreak() {
         String userId = UUID.randomUUID().toString();
@@ -140,6 +212,147 @@ class InMemoryHabitServiceTest {
         });
     }
 
+    @Test
+    void testGetTopStreaksRanksCurrentStreaks() {
+        LocalDate today = LocalDate.now();
+        Habit longest = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        Habit shorter = habitService.createHabit("user2", "Читать", "Читать книгу", Frequency.DAILY);
+        Habit broken = habitService.createHabit("user2", "Плавать", "Плавать в бассейне", Frequency.DAILY);
+        habitService.createHabit("user3", "Рисовать", "Рисовать скетчи", Frequency.DAILY);
+        for (int day = 0; day < 10; day++) {
+            habitService.markHabitAsCompleted(longest.getId(), today.minusDays(day));
+            habitService.markHabitAsCompleted(broken.getId(), today.minusDays(day + 5));
+        }
+        for (int day = 0; day < 3; day++) {
+            habitService.markHabitAsCompleted(shorter.getId(), today.minusDays(day));
+        }
+
+        List<HabitStreak> top = habitService.getTopStreaks(10);
+
+        assertEquals(List.of(
+                new HabitStreak(longest.getId(), "user1", "Бегать", Frequency.DAILY, 10),
+                new HabitStreak(shorter.getId(), "user2", "Читать", Frequency.DAILY, 3)), top);
+        assertEquals(top.subList(0, 1), habitService.getTopStreaks(1));
+        assertThrows(IllegalArgumentException.class, () -> habitService.getTopStreaks(0));
+        assertThrows(IllegalArgumentException.class, () -> habitService.getTopStreaks(HabitService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void testCompletionStatsMatchPerHabitPercentages() {
+        Random random = new Random(15);
+        LocalDate origin = LocalDate.of(2023, 1, 2); // понедельник
+        for (int i = 0; i < 12; i++) {
+            Frequency frequency = i % 3 == 0 ? Frequency.WEEKLY : Frequency.DAILY;
+            Habit habit = habitService.createHabit("user" + i % 3, "Привычка " + i, "Описание", frequency);
+            for (int mark = 0; mark < 200; mark++) {
+                habitService.markHabitAsCompleted(habit.getId(), origin.plusDays(random.nextInt(730)));
+            }
+        }
+        List<Habit> habits = habitService.getHabits();
+        habitService.deleteHabit(habits.get(1).getId());
+        habitService.updateHabit(habits.get(2).getId(), "Привычка", "Описание", Frequency.WEEKLY);
+        habitService.markHabitsAsCompleted(List.of(new HabitCompletion(habits.get(2).getId(), origin.plusDays(800))));
+
+        for (int range = 0; range < 50; range++) {
+            LocalDate start = origin.plusWeeks(random.nextInt(90));
+            LocalDate end = start.plusWeeks(1 + random.nextInt(30)).minusDays(1);
+            for (Frequency frequency : Frequency.values()) {
+                for (int u = 0; u < 3; u++) {
+                    String userId = "user" + u;
+                    List<Habit> group = habitService.getHabitsByUser(userId).stream()
+                            .filter(habit -> habit.getFrequency() == frequency)
+                            .toList();
+                    CompletionStats stats = habitService.getUserCompletionStats(userId, frequency, start, end);
+                    double expected = group.stream()
+                            .mapToDouble(habit -> habitService.getCompletionPercentage(habit.getId(), start, end))
+                            .average().orElse(0);
+                    assertEquals(group.size(), stats.habits());
+                    assertEquals(expected, stats.percentage(), 1e-9);
+                    assertEquals(group.stream().mapToLong(habit -> habit.getCompletionCount(start, end)).sum(),
+                            stats.completions());
+                }
+                List<Habit> all = habitService.getHabits().stream()
+                        .filter(habit -> habit.getFrequency() == frequency)
+                        .toList();
+                CompletionStats global = habitService.getCompletionStats(frequency, start, end);
+                assertEquals(all.size(), global.habits());
+                assertEquals(all.stream().mapToLong(habit -> habit.getCompletionCount(start, end)).sum(),
+                        global.completions());
+            }
+        }
+    }
+
+    @Test
+    void testCompletionStatsForLongWindowSchedule() {
+        LocalDate origin = LocalDate.of(2024, 1, 1);
+        // Периоды отметок по разные стороны начала окна отстоят друг от друга на миллион дней
+        Habit habit = habitService.createHabit("user1", "Привычка", "Описание", Schedule.everyNDays(1_000_000, origin));
+        habitService.markHabitAsCompleted(habit.getId(), origin);
+        habitService.markHabitAsCompleted(habit.getId(), origin.minusDays(1));
+        habitService.markHabitAsCompleted(habit.getId(), CompletionHistory.MIN_DATE);
+
+        CompletionStats stats = habitService.getUserCompletionStats("user1", Frequency.EVERY_N_DAYS,
+                origin.minusDays(10), origin.plusDays(10));
+        assertEquals(1, stats.habits());
+        assertEquals(2, stats.completions());
+        assertEquals(2, stats.completedUnits());
+        assertEquals(2, stats.totalUnits());
+        assertEquals(stats, habitService.getCompletionStats(Frequency.EVERY_N_DAYS, origin.minusDays(10),
+                origin.plusDays(10)));
+    }
+
+    @Test
+    void testCompletionStatsForCustomSchedulesMatchPerHabitPercentages() {
+        Random random = new Random(17);
+        LocalDate origin = LocalDate.of(2024, 1, 1); // понедельник
+        List<Schedule> schedules = List.of(
+                Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY, DayOfWeek.SATURDAY)),
+                Schedule.onWeekdays(EnumSet.of(DayOfWeek.SUNDAY)),
+                Schedule.timesPerWeek(3),
+                Schedule.everyNDays(3, origin));
+        for (int i = 0; i < 12; i++) {
+            Habit habit = habitService.createHabit("user1", "Привычка " + i, "Описание", schedules.get(i % schedules.size()));
+            for (int mark = 0; mark < 150; mark++) {
+                habitService.markHabitAsCompleted(habit.getId(), origin.plusDays(random.nextInt(365)));
+            }
+        }
+
+        // Диапазоны выровнены по неделям и трехдневным окнам, поэтому периоды не обрезаются
+        for (int range = 0; range < 30; range++) {
+            LocalDate start = origin.plusWeeks(3L * random.nextInt(15));
+            LocalDate end = start.plusWeeks(3L * (1 + random.nextInt(5))).minusDays(1);
+            for (Frequency frequency : List.of(Frequency.WEEKDAYS, Frequency.TIMES_PER_WEEK, Frequency.EVERY_N_DAYS)) {
+                List<Habit> group = habitService.getHabitsByUser("user1").stream()
+                        .filter(habit -> habit.getFrequency() == frequency)
+                        .toList();
+                CompletionStats stats = habitService.getUserCompletionStats("user1", frequency, start, end);
+                double completedUnits = 0;
+                long totalUnits = 0;
+                for (Habit habit : group) {
+                    long units = habit.getSchedule().countPeriods(start.toEpochDay(), end.toEpochDay());
+                    completedUnits += habitService.getCompletionPercentage(habit.getId(), start, end) * units / 100;
+                    totalUnits += units;
+                }
+                assertEquals(group.size(), stats.habits());
+                assertEquals(totalUnits, stats.totalUnits());
+                assertEquals(Math.round(completedUnits), stats.completedUnits());
+            }
+        }
+    }
+
+    @Test
+    void testCompletionStatsForUnknownUserAndInvalidRange() {
+        LocalDate today = LocalDate.now();
+
+        assertEquals(new CompletionStats(0, 0, 0, 0),
+                habitService.getUserCompletionStats("user1", Frequency.DAILY, today.minusDays(7), today));
+        assertEquals(0, habitService.getCompletionStats(Frequency.WEEKLY, today, today).percentage());
+        assertThrows(IllegalArgumentException.class,
+                () -> habitService.getUserCompletionStats("user1", Frequency.DAILY, today, today.minusDays(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> habitService.getCompletionStats(Frequency.DAILY, today, today.minusDays(1)));
+    }
+
     @Test
     void testGetHabitsByUser() {
         habitService.createHabit("user1", "Habit 1", "Description 1", Frequency.DAILY);
@@ -162,6 +375,146 @@ class InMemoryHabitServiceTest {
         assertEquals(2, habits.size());
     }
 
+    @Test
+    void testReadViewsAreImmutableSnapshots() {
+        Habit first = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        List<Habit> userHabits = habitService.getHabitsByUser("user1");
+        List<Habit> allHabits = habitService.getHabits();
+
+        assertSame(allHabits, habitService.getHabits());
+        assertThrows(UnsupportedOperationException.class, () -> userHabits.add(first));
+
+        habitService.deleteHabit(first.getId());
+        assertEquals(List.of(first), userHabits);
+        assertEquals(List.of(first), allHabits);
+        assertTrue(habitService.getHabitsByUser("user1").isEmpty());
+        assertTrue(habitService.getHabits().isEmpty());
+    }
+
+    @Test
+    void testListHabitsByUserPagesInCreationOrder() {
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            created.add(habitService.createHabit("user1", "Привычка " + i, "Описание", Frequency.DAILY).getId());
+        }
+        habitService.createHabit("user2", "Чужая", "Описание", Frequency.DAILY);
+
+        Page<HabitSummary> first = habitService.listHabitsByUser("user1", null, 3, false);
+        assertEquals(created.subList(0, 3), first.items().stream().map(HabitSummary::id).toList());
+        assertTrue(first.hasNext());
+
+        // Удаление уже выданной привычки и добавление новой не смещают следующую страницу
+        habitService.deleteHabit(created.get(1));
+        String added = habitService.createHabit("user1", "Новая", "Описание", Frequency.DAILY).getId();
+        Page<HabitSummary> second = habitService.listHabitsByUser("user1", first.nextCursor(), 3, false);
+        assertEquals(created.subList(3, 6), second.items().stream().map(HabitSummary::id).toList());
+
+        Page<HabitSummary> last = habitService.listHabitsByUser("user1", second.nextCursor(), 3, false);
+        assertEquals(List.of(created.get(6), added), last.items().stream().map(HabitSummary::id).toList());
+        assertFalse(last.hasNext());
+        assertNull(last.nextCursor());
+    }
+
+    @Test
+    void testListHabitsIncludesHistoryOnRequest() {
+        Habit habit = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        habitService.createHabit("user2", "Читать", "Читать книгу", Frequency.WEEKLY);
+        LocalDate today = LocalDate.now();
+        habitService.markHabitAsCompleted(habit.getId(), today.minusDays(1));
+        habitService.markHabitAsCompleted(habit.getId(), today);
+
+        Page<HabitSummary> page = habitService.listHabits(null, 1, false);
+        HabitSummary summary = page.items().get(0);
+        assertEquals(habit.getId(), summary.id());
+        assertEquals(2, summary.completionCount());
+        assertEquals(today, summary.lastCompletionDate());
+        assertNull(summary.completionDates());
+
+        Page<HabitSummary> next = habitService.listHabits(page.nextCursor(), 1, true);
+        assertEquals("Читать", next.items().get(0).title());
+        assertEquals(List.of(), next.items().get(0).completionDates());
+        assertFalse(next.hasNext());
+        assertEquals(List.of(today.minusDays(1), today),
+                habitService.listHabits(null, 1, true).items().get(0).completionDates());
+    }
+
+    @Test
+    void testListHabitsRejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> habitService.listHabits(null, 0, false));
+        assertThrows(IllegalArgumentException.class,
+                () -> habitService.listHabits(null, HabitService.MAX_PAGE_SIZE + 1, false));
+        assertThrows(IllegalArgumentException.class, () -> habitService.listHabitsByUser("user1", "abc", 10, false));
+        assertTrue(habitService.listHabitsByUser("user1", null, 10, false).items().isEmpty());
+    }
+
+    @Test
+    void testHabitsDueOnMatchSchedulesAndCompletions() {
+        LocalDate today = LocalDate.now();
+        List<Schedule> schedules = List.of(Schedule.DAILY, Schedule.WEEKLY, Schedule.everyNDays(3, today),
+                Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.THURSDAY)), Schedule.timesPerWeek(3));
+        Random random = new Random(18);
+        List<Habit> habits = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            habits.add(habitService.createHabit("user" + i % 3, "Привычка " + i, "Описание",
+                    schedules.get(i % schedules.size())));
+        }
+
+        for (int offset = 0; offset < 60; offset++) {
+            LocalDate day = today.plusDays(offset);
+            for (int i = 0; i < 30; i++) {
+                Habit habit = habits.get(random.nextInt(habits.size()));
+                habitService.markHabitAsCompleted(habit.getId(), day.plusDays(random.nextInt(10) - 3));
+            }
+            if (offset % 7 == 3) {
+                Habit habit = habits.remove(random.nextInt(habits.size()));
+                if (random.nextBoolean()) {
+                    habitService.deleteHabit(habit.getId());
+                } else {
+                    Schedule schedule = schedules.get(random.nextInt(schedules.size()));
+                    habits.add(habitService.updateHabit(habit.getId(), habit.getTitle(), "", schedule));
+                }
+            }
+
+            // Прошедшие дни проверяются по расписанию и отметкам, будущие — по календарю
+            for (LocalDate queried : List.of(day, today.minusDays(offset + 1))) {
+                List<String> expected = new ArrayList<>();
+                for (Habit habit : habits) {
+                    Schedule schedule = habit.getSchedule();
+                    long period = schedule.periodStart(queried.toEpochDay());
+                    if (period != Schedule.NONE && habit.getCompletionCount(LocalDate.ofEpochDay(period),
+                            LocalDate.ofEpochDay(schedule.periodEnd(period))) < schedule.required()) {
+                        expected.add(habit.getId());
+                    }
+                }
+                List<String> actual = new ArrayList<>(habitService.getHabitsDueOn(queried).stream()
+                        .map(Habit::getId).toList());
+                expected.sort(null);
+                actual.sort(null);
+                assertEquals(expected, actual, "день " + queried);
+            }
+        }
+    }
+
+    @Test
+    void testHabitsDueOnIsIdempotent() {
+        Habit habit = habitService.createHabit("user1", "Бегать", "Бегать по утрам", Frequency.DAILY);
+        LocalDate today = LocalDate.now();
+
+        assertEquals(List.of(habit), habitService.getHabitsDueOn(today));
+        habitService.markHabitAsCompleted(habit.getId(), today);
+        assertEquals(List.of(), habitService.getHabitsDueOn(today));
+        assertEquals(List.of(habit), habitService.getHabitsDueOn(today.plusDays(1)));
+        assertEquals(List.of(), habitService.getHabitsDueOn(today));
+        // Прошедшие дни проверяются по отметкам
+        assertEquals(List.of(habit), habitService.getHabitsDueOn(today.minusDays(1)));
+        habitService.markHabitAsCompleted(habit.getId(), today.minusDays(1));
+        assertEquals(List.of(), habitService.getHabitsDueOn(today.minusDays(1)));
+
+        habitService.deleteHabit(habit.getId());
+        assertEquals(List.of(), habitService.getHabitsDueOn(today.plusDays(1)));
+        assertEquals(List.of(), habitService.getHabitsDueOn(today.minusDays(2)));
+    }
+
     @Test
     void testGetCompletedDatesForHabit() {
         String userId = UUID.randomUUID().toString();
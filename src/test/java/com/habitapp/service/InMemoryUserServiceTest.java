@@ -1,9 +1,13 @@
 package com.habitapp.service;
 
 import com.habitapp.model.User;
+import com.habitapp.security.PasswordHasher;
+import com.habitapp.security.SessionStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryUserServiceTest {
@@ -82,4 +86,112 @@ class InMemoryUserServiceTest {
         assertNotNull(retrievedUser);
         assertEquals("Борис", retrievedUser.getName());
     }
+
+    @Test
+    void testLoginAfterEmailChange() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        userService.updateProfile(user.getId(), "Борис", "boris.new@example.com", "boris_password");
+
+        assertNull(userService.login("boris@example.com", "boris_password"));
+        assertEquals(user, userService.login("boris.new@example.com", "boris_password"));
+    }
+
+    @Test
+    void testUpdateProfileWithTakenEmail() {
+        userService.register("Борис", "boris@example.com", "boris_password");
+        User user = userService.register("Барбара", "barbara@example.com", "barbara_password");
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            userService.updateProfile(user.getId(), "Барбара", "boris@example.com", "barbara_password");
+        });
+        assertEquals(user, userService.login("barbara@example.com", "barbara_password"));
+    }
+
+    @Test
+    void testRegisterWithEmailOfDeletedAccount() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        userService.deleteAccount(user.getId());
+
+        assertNull(userService.login("boris@example.com", "boris_password"));
+        User newUser = userService.register("Барбарис", "boris@example.com", "new_password");
+        assertEquals(newUser, userService.login("boris@example.com", "new_password"));
+    }
+
+    @Test
+    void testPasswordIsStoredAsHash() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+
+        assertNotEquals("boris_password", user.getPasswordHash());
+        assertFalse(user.getPasswordHash().contains("boris_password"));
+    }
+
+    @Test
+    void testUpdateProfileWithoutPasswordKeepsHash() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        String passwordHash = user.getPasswordHash();
+
+        userService.updateProfile(user.getId(), "Барбара", "boris@example.com", null);
+
+        assertEquals(passwordHash, user.getPasswordHash());
+        assertEquals(user, userService.login("boris@example.com", "boris_password"));
+    }
+
+    @Test
+    void testSessionResolvesUserUntilPasswordChange() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        assertNull(userService.authenticate("boris@example.com", "boris_password_wrong"));
+
+        String first = userService.authenticate("boris@example.com", "boris_password");
+        String second = userService.authenticate("boris@example.com", "boris_password");
+        assertNotNull(first);
+        assertEquals(user, userService.getUserByToken(first));
+
+        userService.updateProfile(user.getId(), "Борис Петрович", "boris@example.com", null);
+        assertEquals(user, userService.getUserByToken(first));
+
+        userService.updateProfile(user.getId(), "Борис", "boris@example.com", "new_password");
+        assertNull(userService.getUserByToken(first));
+        assertNull(userService.getUserByToken(second));
+        assertNotNull(userService.getUserByToken(userService.authenticate("boris@example.com", "new_password")));
+    }
+
+    @Test
+    void testSessionExpiresAfterTtl() throws InterruptedException {
+        UserService service = new InMemoryUserService(new PasswordHasher(1_000),
+                new SessionStore(Duration.ofMillis(50), 10));
+        User user = service.register("Борис", "boris@example.com", "boris_password");
+        String token = service.authenticate("boris@example.com", "boris_password");
+        assertEquals(user, service.getUserByToken(token));
+
+        Thread.sleep(100);
+
+        assertNull(service.getUserByToken(token));
+    }
+
+    @Test
+    void testSessionIsInvalidatedByDeleteAndLogout() {
+        User user = userService.register("Борис", "boris@example.com", "boris_password");
+        String first = userService.authenticate("boris@example.com", "boris_password");
+        String second = userService.authenticate("boris@example.com", "boris_password");
+
+        userService.logout(first);
+        assertNull(userService.getUserByToken(first));
+        assertEquals(user, userService.getUserByToken(second));
+
+        userService.deleteAccount(user.getId());
+        assertNull(userService.getUserByToken(second));
+        assertNull(userService.getUserByToken(null));
+    }
+
+    @Test
+    void testLegacyPlainTextPasswordIsRehashedOnLogin() {
+        InMemoryUserService service = new InMemoryUserService(new PasswordHasher(1_000));
+        User legacy = new User("boris@example.com", "boris_password", "Борис");
+        service.restoreUser(legacy);
+
+        assertEquals(legacy, service.login("boris@example.com", "boris_password"));
+        assertNotEquals("boris_password", legacy.getPasswordHash());
+        assertEquals(legacy, service.login("boris@example.com", "boris_password"));
+        assertNull(service.login("boris@example.com", "boris_password_wrong"));
+    }
 }
@@ -0,0 +1,137 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedHabitServiceTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testStateSurvivesReopen() throws IOException {
+        String userId = UUID.randomUUID().toString();
+        LocalDate today = LocalDate.now();
+        String runId;
+        String readId;
+        String deletedId;
+        try (MappedHabitService service = MappedHabitService.open(directory)) {
+            Habit run = service.createHabit(userId, "Бегать", "Бегать по утрам", Frequency.DAILY);
+            Habit read = service.createHabit("legacy-user", "Читать", null, Schedule.timesPerWeek(3));
+            Habit deleted = service.createHabit(userId, "Пить воду", "8 стаканов", Frequency.DAILY);
+            runId = run.getId();
+            readId = read.getId();
+            deletedId = deleted.getId();
+            for (int i = 0; i < 5; i++) {
+                service.markHabitAsCompleted(runId, today.minusDays(i));
+            }
+            service.markHabitAsCompleted(runId, today);
+            service.markHabitAsCompleted(readId, today);
+            service.updateHabit(runId, "Бегать", "Бегать вечером", Frequency.DAILY);
+            assertTrue(service.deleteHabit(deletedId));
+        }
+
+        try (MappedHabitService service = MappedHabitService.open(directory)) {
+            Habit run = service.getHabitById(runId);
+            assertEquals(userId, run.getUserId());
+            assertEquals("Бегать вечером", run.getDescription());
+            assertEquals(1, run.getSequence());
+            assertEquals(5, service.getCurrentStreak(runId));
+            assertEquals(5, service.getCompletedDatesForHabit(runId).size());
+
+            Habit read = service.getHabitById(readId);
+            assertEquals("legacy-user", read.getUserId());
+            assertNull(read.getDescription());
+            assertEquals(Schedule.timesPerWeek(3), read.getSchedule());
+            assertEquals(List.of(today), read.getCompletionDates());
+
+            assertNull(service.getHabitById(deletedId));
+            assertEquals(List.of(run), service.getHabitsByUser(userId));
+            assertEquals(List.of(read), service.getHabitsByUser("legacy-user"));
+
+            // Номера новых привычек продолжают номера сохраненных
+            Habit created = service.createHabit(userId, "Спать", "Ложиться до полуночи", Frequency.WEEKLY);
+            assertEquals(4, created.getSequence());
+            Page<HabitSummary> first = service.listHabits(null, 2, false);
+            assertEquals(List.of(runId, readId), first.items().stream().map(HabitSummary::id).toList());
+            Page<HabitSummary> second = service.listHabits(first.nextCursor(), 2, false);
+            assertEquals(List.of(created.getId()), second.items().stream().map(HabitSummary::id).toList());
+            assertNull(second.nextCursor());
+        }
+    }
+
+    @Test
+    void testQueriesMatchInMemoryService() throws IOException {
+        Random random = new Random(3);
+        LocalDate origin = LocalDate.of(2024, 1, 1);
+        InMemoryHabitService expected = new InMemoryHabitService();
+        // Маленький кэш заставляет собирать привычки из файлов
+        try (MappedHabitService service = MappedHabitService.open(directory, 2)) {
+            List<String> users = List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString(), "user");
+            Map<String, String> ids = new HashMap<>();
+            for (int i = 0; i < 12; i++) {
+                String userId = users.get(i % users.size());
+                Schedule schedule = i % 3 == 0 ? Schedule.of(Frequency.WEEKLY)
+                        : i % 3 == 1 ? Schedule.of(Frequency.DAILY) : Schedule.onWeekdays(EnumSet.of(DayOfWeek.MONDAY));
+                Habit habit = service.createHabit(userId, "Привычка " + i, "Описание", schedule);
+                ids.put(habit.getId(), expected.createHabit(userId, "Привычка " + i, "Описание", schedule).getId());
+            }
+            List<String> habitIds = new ArrayList<>(ids.keySet());
+            for (int i = 0; i < 500; i++) {
+                String habitId = habitIds.get(random.nextInt(habitIds.size()));
+                LocalDate date = origin.plusDays(random.nextInt(200));
+                service.markHabitAsCompleted(habitId, date);
+                expected.markHabitAsCompleted(ids.get(habitId), date);
+            }
+            service.deleteHabitsByUser(users.get(2), 2);
+            expected.deleteHabitsByUser(users.get(2), 2);
+
+            LocalDate start = origin.plusDays(20);
+            LocalDate end = origin.plusDays(150);
+            for (Frequency frequency : Frequency.values()) {
+                assertEquals(expected.getCompletionStats(frequency, start, end),
+                        service.getCompletionStats(frequency, start, end));
+                for (String userId : users) {
+                    assertEquals(expected.getUserCompletionStats(userId, frequency, start, end),
+                            service.getUserCompletionStats(userId, frequency, start, end));
+                }
+            }
+            for (Habit habit : service.getHabits()) {
+                Habit other = expected.getHabitById(ids.get(habit.getId()));
+                assertEquals(other.getCompletionDates(), habit.getCompletionDates());
+                assertEquals(other.getLongestStreak(), habit.getLongestStreak());
+                assertEquals(other.getCompletionPercentage(start, end),
+                        service.getCompletionPercentage(habit.getId(), start, end), 1e-9);
+            }
+            assertEquals(expected.getHabits().size(), service.getHabits().size());
+
+            String habitId = service.getHabits().get(0).getId();
+            LocalDate date = origin.plusDays(300);
+            List<CompletionResult> results = service.markHabitsAsCompleted(List.of(new HabitCompletion(habitId, date),
+                    new HabitCompletion(habitId, date), new HabitCompletion("missing", date)));
+            assertEquals(List.of(CompletionResult.Status.COMPLETED, CompletionResult.Status.ALREADY_COMPLETED,
+                    CompletionResult.Status.HABIT_NOT_FOUND), results.stream().map(CompletionResult::status).toList());
+            assertTrue(service.getHabitById(habitId).isCompletedOn(date));
+        }
+    }
+
+    @Test
+    void testUnknownFormatIsRejected() throws IOException {
+        Files.write(directory.resolve("habits.dat"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> MappedHabitService.open(directory));
+        assertThrows(IllegalArgumentException.class, () -> MappedHabitService.open(directory.resolve("other"), -1));
+    }
+}
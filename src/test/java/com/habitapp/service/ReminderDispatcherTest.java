@@ -0,0 +1,51 @@
+package com.habitapp.service;
+
+import com.habitapp.model.Frequency;
+import com.habitapp.model.Habit;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReminderDispatcherTest {
+
+    @Test
+    void testDispatchSendsDueHabitsInBatches() {
+        HabitService habitService = new ConcurrentHabitService();
+        LocalDate today = LocalDate.now();
+        Set<Habit> due = new HashSet<>();
+        for (int i = 0; i < 25; i++) {
+            Habit habit = habitService.createHabit("user" + i % 4, "Привычка " + i, "Описание", Frequency.DAILY);
+            if (i % 5 == 0) {
+                habitService.markHabitAsCompleted(habit.getId(), today);
+            } else {
+                due.add(habit);
+            }
+        }
+        List<Integer> batchSizes = new ArrayList<>();
+        Set<Habit> notified = new HashSet<>();
+        ReminderDispatcher dispatcher = new ReminderDispatcher(habitService, (date, habits) -> {
+            batchSizes.add(habits.size());
+            notified.addAll(habits);
+        }, 8);
+
+        assertEquals(20, dispatcher.dispatch(today));
+
+        assertEquals(List.of(8, 8, 4), batchSizes);
+        assertEquals(due, notified);
+        notified.clear();
+        assertEquals(25, dispatcher.dispatch(today.plusDays(1)));
+        assertEquals(Set.copyOf(habitService.getHabits()), notified);
+    }
+
+    @Test
+    void testDispatcherRejectsInvalidBatchSize() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReminderDispatcher(new ConcurrentHabitService(), (date, habits) -> { }, 0));
+    }
+}
@@ -0,0 +1,236 @@
+package com.habitapp.web;
+
+import com.habitapp.model.Habit;
+import com.habitapp.model.Schedule;
+import com.habitapp.service.ConcurrentHabitService;
+import com.habitapp.service.HabitService;
+import com.habitapp.service.InMemoryUserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HabitHttpServerTest {
+
+    private HabitService habitService;
+    private HabitHttpServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        habitService = new ConcurrentHabitService();
+        server = HabitHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new InMemoryUserService(), habitService);
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void testHabitLifecycleOverHttp() throws Exception {
+        String token = signUp("Анна", "anna@example.com");
+
+        HttpResponse<String> created = send("POST", "/habits", token,
+                "{\"title\": \"Бегать\", \"description\": \"По утрам\", \"schedule\": \"DAILY\"}");
+        assertEquals(201, created.statusCode());
+        String habitId = (String) json(created).get("id");
+
+        LocalDate today = LocalDate.now();
+        assertEquals(204, send("POST", "/habits/" + habitId + "/completions", token,
+                "{\"date\": \"" + today.minusDays(1) + "\"}").statusCode());
+        assertEquals(204, send("POST", "/habits/" + habitId + "/completions", token, "").statusCode());
+
+        Map<String, Object> habit = json(send("GET", "/habits/" + habitId, token, null));
+        assertEquals("Бегать", habit.get("title"));
+        assertEquals(2L, habit.get("completionCount"));
+        assertEquals(List.of(today.minusDays(1).toString(), today.toString()), habit.get("completionDates"));
+
+        Map<String, Object> stats = json(send("GET", "/habits/" + habitId + "/stats?from=" + today.minusDays(3)
+                + "&to=" + today, token, null));
+        assertEquals(2L, stats.get("currentStreak"));
+        assertEquals(50.0, stats.get("completionPercentage"));
+
+        Map<String, Object> updated = json(send("PUT", "/habits/" + habitId, token,
+                "{\"schedule\": \"TIMES_PER_WEEK:3\"}"));
+        assertEquals("TIMES_PER_WEEK:3", updated.get("schedule"));
+        assertEquals("По утрам", updated.get("description"));
+
+        Map<String, Object> page = json(send("GET", "/habits?limit=10", token, null));
+        assertEquals(1, ((List<?>) page.get("items")).size());
+        assertNull(page.get("nextCursor"));
+
+        assertEquals(204, send("DELETE", "/habits/" + habitId, token, null).statusCode());
+        assertNull(habitService.getHabitById(habitId));
+        assertEquals(404, send("GET", "/habits/" + habitId, token, null).statusCode());
+    }
+
+    @Test
+    void testRequestsAreAuthorizedAndValidated() throws Exception {
+        String anna = signUp("Анна", "anna@example.com");
+        String boris = signUp("Борис", "boris@example.com");
+        String habitId = (String) json(send("POST", "/habits", anna,
+                "{\"title\": \"Читать\", \"schedule\": \"WEEKLY\"}")).get("id");
+
+        assertEquals(401, send("GET", "/habits", null, null).statusCode());
+        assertEquals(401, send("GET", "/habits", "unknown-token", null).statusCode());
+        assertEquals(404, send("GET", "/habits/" + habitId, boris, null).statusCode());
+        assertEquals(401, send("POST", "/sessions", null,
+                "{\"email\": \"anna@example.com\", \"password\": \"неверный\"}").statusCode());
+        assertEquals(400, send("POST", "/users", null,
+                "{\"name\": \"Анна\", \"email\": \"anna@example.com\", \"password\": \"пароль\"}").statusCode());
+
+        HttpResponse<String> invalid = send("POST", "/habits", anna, "{\"title\": \"Спать\", \"schedule\": \"HOURLY\"}");
+        assertEquals(400, invalid.statusCode());
+        assertNotNull(json(invalid).get("error"));
+        assertEquals(400, send("POST", "/habits", anna, "{\"title\": ").statusCode());
+        assertEquals(400, send("POST", "/habits/" + habitId + "/completions", anna,
+                "{\"date\": \"вчера\"}").statusCode());
+        assertEquals(405, send("PATCH", "/habits", anna, null).statusCode());
+        assertEquals(404, send("GET", "/unknown", anna, null).statusCode());
+
+        assertEquals(204, send("DELETE", "/sessions", anna, null).statusCode());
+        assertEquals(401, send("GET", "/users/me", anna, null).statusCode());
+    }
+
+    @Test
+    void testDatesAndStatsPeriodAreBounded() throws Exception {
+        String token = signUp("Анна", "anna@example.com");
+        String habitId = (String) json(send("POST", "/habits", token,
+                "{\"title\": \"Бегать\", \"schedule\": \"DAILY\"}")).get("id");
+        LocalDate today = LocalDate.now();
+        String completions = "/habits/" + habitId + "/completions";
+
+        assertEquals(204, send("POST", completions, token, "{\"date\": \"" + today.plusDays(1) + "\"}").statusCode());
+        assertEquals(400, send("POST", completions, token, "{\"date\": \"" + today.plusDays(2) + "\"}").statusCode());
+        assertEquals(400, send("POST", completions, token, "{\"date\": \"+999999999-12-31\"}").statusCode());
+        assertEquals(400, send("POST", completions, token, "{\"date\": \"" + today.minusYears(11) + "\"}").statusCode());
+        assertEquals(1, habitService.getHabitById(habitId).getCompletionCount());
+
+        String stats = "/habits/" + habitId + "/stats";
+        assertEquals(200, send("GET", stats + "?from=" + today.minusYears(5) + "&to=" + today, token, null)
+                .statusCode());
+        assertEquals(400, send("GET", stats + "?from=" + today + "&to=" + today.minusDays(1), token, null)
+                .statusCode());
+        assertEquals(400, send("GET", stats + "?from=" + today.minusYears(20) + "&to=" + today, token, null)
+                .statusCode());
+        assertEquals(400, send("GET", stats + "?from=-999999999-01-01&to=-999999999-01-02", token, null)
+                .statusCode());
+    }
+
+    @Test
+    void testLeaderboardHidesOtherUsersHabits() throws Exception {
+        String anna = signUp("Анна", "anna@example.com");
+        String boris = signUp("Борис", "boris@example.com");
+        String annaHabit = (String) json(send("POST", "/habits", anna,
+                "{\"title\": \"Бегать\", \"schedule\": \"DAILY\"}")).get("id");
+        String borisHabit = (String) json(send("POST", "/habits", boris,
+                "{\"title\": \"Курить меньше\", \"schedule\": \"DAILY\"}")).get("id");
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 3; i++) {
+            send("POST", "/habits/" + borisHabit + "/completions", boris, "{\"date\": \"" + today.minusDays(i) + "\"}");
+        }
+        send("POST", "/habits/" + annaHabit + "/completions", anna, null);
+
+        HttpResponse<String> response = send("GET", "/leaderboard", anna, null);
+        assertEquals(200, response.statusCode());
+        List<?> items = (List<?>) Json.parse(response.body());
+        assertEquals(2, items.size());
+        Map<?, ?> first = (Map<?, ?>) items.get(0);
+        assertEquals(1L, first.get("rank"));
+        assertEquals(3L, first.get("streak"));
+        assertFalse(first.containsKey("habitId"));
+        assertFalse(first.containsKey("userId"));
+        assertFalse(first.containsKey("title"));
+        Map<?, ?> second = (Map<?, ?>) items.get(1);
+        assertEquals(annaHabit, second.get("habitId"));
+        assertEquals("Бегать", second.get("title"));
+        assertFalse(response.body().contains(borisHabit));
+    }
+
+    @Test
+    void testHabitCreatedWhileAccountIsDeletedIsRemoved() throws Exception {
+        InMemoryUserService userService = new InMemoryUserService();
+        // Аккаунт удаляется после проверки токена, но до добавления привычки
+        HabitService racingService = new ConcurrentHabitService() {
+            @Override
+            public Habit createHabit(String userId, String title, String description, Schedule schedule) {
+                userService.deleteAccount(userId);
+                return super.createHabit(userId, title, description, schedule);
+            }
+        };
+        server.close();
+        server = HabitHttpServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                userService, racingService);
+        String token = signUp("Анна", "anna@example.com");
+
+        assertEquals(401, send("POST", "/habits", token, "{\"title\": \"Бегать\", \"schedule\": \"DAILY\"}")
+                .statusCode());
+        assertTrue(racingService.getHabits().isEmpty());
+    }
+
+    @Test
+    void testConcurrentClientsAreServed() throws Exception {
+        String token = signUp("Анна", "anna@example.com");
+        String habitId = (String) json(send("POST", "/habits", token,
+                "{\"title\": \"Бегать\", \"schedule\": \"DAILY\"}")).get("id");
+        LocalDate start = LocalDate.now().minusDays(199);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String body = "{\"date\": \"" + start.plusDays(i) + "\"}";
+                statuses.add(clients.submit(() ->
+                        send("POST", "/habits/" + habitId + "/completions", token, body).statusCode()));
+            }
+            for (Future<Integer> status : statuses) {
+                assertEquals(204, status.get());
+            }
+        }
+
+        assertEquals(200, habitService.getHabitById(habitId).getCompletionCount());
+        assertEquals(200L, json(send("GET", "/habits/" + habitId + "/stats", token, null)).get("currentStreak"));
+    }
+
+    private String signUp(String name, String email) throws Exception {
+        assertEquals(201, send("POST", "/users", null, "{\"name\": \"" + name + "\", \"email\": \"" + email
+                + "\", \"password\": \"пароль\"}").statusCode());
+        HttpResponse<String> session = send("POST", "/sessions", null,
+                "{\"email\": \"" + email + "\", \"password\": \"пароль\"}");
+        assertEquals(200, session.statusCode());
+        return (String) json(session).get("token");
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> json(HttpResponse<String> response) {
+        return (Map<String, Object>) Json.parse(response.body());
+    }
+}